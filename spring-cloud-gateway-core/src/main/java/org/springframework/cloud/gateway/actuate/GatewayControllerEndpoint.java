@@ -18,6 +18,7 @@
 package org.springframework.cloud.gateway.actuate;
 
 import java.net.URI;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -27,7 +28,13 @@ import org.apache.commons.logging.LogFactory;
 import org.springframework.boot.actuate.endpoint.web.annotation.RestControllerEndpoint;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
 import org.springframework.cloud.gateway.filter.factory.GatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.ratelimit.HeavyHitters;
+import org.springframework.cloud.gateway.filter.ratelimit.HeavyHitters.HeavyHitter;
 import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
+import org.springframework.cloud.gateway.loadbalancer.ActiveHealthChecker;
+import org.springframework.cloud.gateway.loadbalancer.ActiveHealthChecker.TargetHealth;
+import org.springframework.cloud.gateway.loadbalancer.LoadBalancerStats;
+import org.springframework.cloud.gateway.loadbalancer.LoadBalancerStats.InstanceStats;
 import org.springframework.cloud.gateway.route.Route;
 import org.springframework.cloud.gateway.route.RouteDefinition;
 import org.springframework.cloud.gateway.route.RouteDefinitionLocator;
@@ -61,6 +68,9 @@ public class GatewayControllerEndpoint implements ApplicationEventPublisherAware
 	private RouteDefinitionWriter routeDefinitionWriter;
 	private RouteLocator routeLocator;
 	private ApplicationEventPublisher publisher;
+	private LoadBalancerStats loadBalancerStats;
+	private ActiveHealthChecker healthChecker;
+	private HeavyHitters heavyHitters;
 
 	public GatewayControllerEndpoint(RouteDefinitionLocator routeDefinitionLocator, List<GlobalFilter> globalFilters,
 									 List<GatewayFilterFactory> GatewayFilters, RouteDefinitionWriter routeDefinitionWriter,
@@ -77,6 +87,18 @@ public class GatewayControllerEndpoint implements ApplicationEventPublisherAware
 		this.publisher = publisher;
 	}
 
+	public void setLoadBalancerStats(LoadBalancerStats loadBalancerStats) {
+		this.loadBalancerStats = loadBalancerStats;
+	}
+
+	public void setHealthChecker(ActiveHealthChecker healthChecker) {
+		this.healthChecker = healthChecker;
+	}
+
+	public void setHeavyHitters(HeavyHitters heavyHitters) {
+		this.heavyHitters = heavyHitters;
+	}
+
 	// TODO: Add uncommited or new but not active routes endpoint
 
 	@PostMapping("/refresh")
@@ -109,6 +131,30 @@ public class GatewayControllerEndpoint implements ApplicationEventPublisherAware
 		return map;
 	}
 
+	@GetMapping("/loadbalancer")
+	public Mono<Map<String, Map<String, InstanceStats>>> loadbalancer() {
+		if (this.loadBalancerStats == null) {
+			return Mono.just(Collections.emptyMap());
+		}
+		return Mono.fromSupplier(this.loadBalancerStats::getStats);
+	}
+
+	@GetMapping("/healthchecks")
+	public Mono<Map<String, TargetHealth>> healthchecks() {
+		if (this.healthChecker == null) {
+			return Mono.just(Collections.emptyMap());
+		}
+		return Mono.fromSupplier(this.healthChecker::getTargets);
+	}
+
+	@GetMapping("/heavyhitters")
+	public Mono<List<HeavyHitter>> heavyhitters() {
+		if (this.heavyHitters == null) {
+			return Mono.just(Collections.emptyList());
+		}
+		return Mono.fromSupplier(this.heavyHitters::getTop);
+	}
+
 	// TODO: Add support for RouteLocator
 	@GetMapping("/routes")
 	public Mono<Map<String, List>> routes() {
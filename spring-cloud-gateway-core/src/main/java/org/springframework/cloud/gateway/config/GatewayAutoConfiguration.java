@@ -33,6 +33,8 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.web.reactive.HttpHandlerAutoConfiguration;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.context.properties.PropertyMapper;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
 import org.springframework.cloud.gateway.actuate.GatewayControllerEndpoint;
 import org.springframework.cloud.gateway.filter.ForwardRoutingFilter;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
@@ -41,9 +43,14 @@ import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
 import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
 import org.springframework.cloud.gateway.filter.RouteToRequestUrlFilter;
 import org.springframework.cloud.gateway.filter.WebsocketRoutingFilter;
+import org.springframework.cloud.gateway.filter.concurrency.ConcurrencyLimiterMetrics;
 import org.springframework.cloud.gateway.filter.factory.AddRequestHeaderGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.AddRequestParameterGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.AddResponseHeaderGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.factory.CircuitBreakerGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.factory.ConcurrencyLimiterGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.factory.ConsistentHashGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.factory.FlushPolicyGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.GatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.HystrixGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.PrefixPathGatewayFilterFactory;
@@ -51,6 +58,7 @@ import org.springframework.cloud.gateway.filter.factory.PreserveHostHeaderGatewa
 import org.springframework.cloud.gateway.filter.factory.RedirectToGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.RemoveRequestHeaderGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.RemoveResponseHeaderGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.factory.RequestQuotaGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.RequestRateLimiterGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.RetryGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.RewritePathGatewayFilterFactory;
@@ -62,12 +70,17 @@ import org.springframework.cloud.gateway.filter.factory.SetRequestHeaderGatewayF
 import org.springframework.cloud.gateway.filter.factory.SetResponseHeaderGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.SetStatusGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.StripPrefixGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.shedding.LoadSheddingWebFilter;
+import org.springframework.cloud.gateway.filter.shedding.SaturationMonitor;
 import org.springframework.cloud.gateway.filter.headers.ForwardedHeadersFilter;
 import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
 import org.springframework.cloud.gateway.filter.headers.RemoveHopByHopHeadersFilter;
 import org.springframework.cloud.gateway.filter.headers.XForwardedHeadersFilter;
+import org.springframework.cloud.gateway.filter.ratelimit.HeavyHitters;
 import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
+import org.springframework.cloud.gateway.filter.ratelimit.LocalQuotaLimiter;
 import org.springframework.cloud.gateway.filter.ratelimit.PrincipalNameKeyResolver;
+import org.springframework.cloud.gateway.filter.ratelimit.QuotaLimiter;
 import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
 import org.springframework.cloud.gateway.handler.FilteringWebHandler;
 import org.springframework.cloud.gateway.handler.RoutePredicateHandlerMapping;
@@ -83,6 +96,9 @@ import org.springframework.cloud.gateway.handler.predicate.QueryRoutePredicateFa
 import org.springframework.cloud.gateway.handler.predicate.RemoteAddrRoutePredicateFactory;
 import org.springframework.cloud.gateway.handler.predicate.RoutePredicateFactory;
 import org.springframework.cloud.gateway.handler.predicate.WeightRoutePredicateFactory;
+import org.springframework.cloud.gateway.loadbalancer.ActiveHealthChecker;
+import org.springframework.cloud.gateway.loadbalancer.LoadBalancerStats;
+import org.springframework.cloud.gateway.loadbalancer.ServiceInstanceCache;
 import org.springframework.cloud.gateway.route.CachingRouteLocator;
 import org.springframework.cloud.gateway.route.CompositeRouteDefinitionLocator;
 import org.springframework.cloud.gateway.route.CompositeRouteLocator;
@@ -94,6 +110,8 @@ import org.springframework.cloud.gateway.route.RouteDefinitionWriter;
 import org.springframework.cloud.gateway.route.RouteLocator;
 import org.springframework.cloud.gateway.route.RouteRefreshListener;
 import org.springframework.cloud.gateway.route.builder.RouteLocatorBuilder;
+import org.springframework.cloud.gateway.support.FlushPolicy;
+import org.springframework.cloud.gateway.support.FlushPolicyResolver;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Bean;
@@ -109,14 +127,20 @@ import org.springframework.web.reactive.socket.server.WebSocketService;
 import org.springframework.web.reactive.socket.server.support.HandshakeWebSocketService;
 
 import com.netflix.hystrix.HystrixObservableCommand;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 
 import static org.springframework.cloud.gateway.config.HttpClientProperties.Pool.PoolType.FIXED;
 
+import io.netty.channel.ChannelOption;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
 import reactor.core.publisher.Flux;
+import reactor.ipc.netty.http.HttpResources;
 import reactor.ipc.netty.http.client.HttpClient;
 import reactor.ipc.netty.http.client.HttpClientOptions;
 import reactor.ipc.netty.options.ClientProxyOptions;
+import reactor.ipc.netty.resources.LoopResources;
 import reactor.ipc.netty.resources.PoolResources;
 import rx.RxReactiveStreams;
 
@@ -136,10 +160,66 @@ public class GatewayAutoConfiguration {
 	@ConditionalOnClass(HttpClient.class)
 	protected static class NettyConfiguration {
 
+		@Bean(destroyMethod = "dispose")
+		@ConditionalOnProperty(prefix = "spring.cloud.gateway.httpclient.loop", name = "threads")
+		public LoopResources gatewayLoopResources(HttpClientProperties properties) {
+			HttpClientProperties.Loop loop = properties.getLoop();
+			return LoopResources.create(loop.getThreadPrefix(), loop.getThreads(), true);
+		}
+
+		@Bean
+		@ConditionalOnClass(NettyReactiveWebServerFactory.class)
+		@ConditionalOnProperty(prefix = "spring.cloud.gateway.httpclient.loop", name = "shared-with-server")
+		public WebServerFactoryCustomizer<NettyReactiveWebServerFactory> gatewayLoopResourcesServerCustomizer(
+				HttpClientProperties properties,
+				@Qualifier("gatewayLoopResources") ObjectProvider<LoopResources> loopResources) {
+			// the client side colocates on these loops, so the upstream connection of a
+			// request is handled by the thread that accepted it
+			return factory -> {
+				LoopResources resources = loopResources.getIfAvailable();
+				if (resources != null) {
+					factory.addServerCustomizers(builder -> builder
+							.loopResources(resources)
+							.preferNative(properties.getLoop().isPreferNative()));
+				}
+			};
+		}
+
 		@Bean // 1.1
-		public Consumer<? super HttpClientOptions.Builder> nettyClientOptions(HttpClientProperties properties) {
+		public Consumer<? super HttpClientOptions.Builder> nettyClientOptions(HttpClientProperties properties,
+				@Qualifier("gatewayLoopResources") ObjectProvider<LoopResources> loopResources) {
 			return opts -> {
 
+				// configure transport and event loops
+				HttpClientProperties.Loop loop = properties.getLoop();
+				opts.preferNative(loop.isPreferNative());
+
+				LoopResources resources = loopResources.getIfAvailable();
+				if (resources != null) {
+					opts.loopResources(resources);
+				}
+
+				// configure channel options
+				HttpClientProperties.Socket socket = properties.getSocket();
+
+				PropertyMapper socketMap = PropertyMapper.get();
+				socketMap.from(socket::getTcpNoDelay)
+						.whenNonNull()
+						.to(tcpNoDelay -> opts.option(ChannelOption.TCP_NODELAY, tcpNoDelay));
+				socketMap.from(socket::getKeepAlive)
+						.whenNonNull()
+						.to(keepAlive -> opts.option(ChannelOption.SO_KEEPALIVE, keepAlive));
+				socketMap.from(socket::getSendBufferSize)
+						.whenNonNull()
+						.to(size -> opts.option(ChannelOption.SO_SNDBUF, size));
+				socketMap.from(socket::getReceiveBufferSize)
+						.whenNonNull()
+						.to(size -> opts.option(ChannelOption.SO_RCVBUF, size));
+				if (socket.getWriteBufferLowWaterMark() != null && socket.getWriteBufferHighWaterMark() != null) {
+					opts.option(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(
+							socket.getWriteBufferLowWaterMark(), socket.getWriteBufferHighWaterMark()));
+				}
+
 				// configure ssl
 				HttpClientProperties.Ssl ssl = properties.getSsl();
 
@@ -204,15 +284,21 @@ public class GatewayAutoConfiguration {
 
 		@Bean // 1.4
 		public NettyRoutingFilter routingFilter(HttpClient httpClient,
-												ObjectProvider<List<HttpHeadersFilter>> headersFilters) {
+												ObjectProvider<List<HttpHeadersFilter>> headersFilters,
+												GatewayProperties properties) {
 			// 根据http https 前缀(scheme) 过滤处理，
-			return new NettyRoutingFilter(httpClient, headersFilters);
+			// batch bulk uploads, flush streaming ones on each buffer
+			FlushPolicyResolver flushPolicies = new FlushPolicyResolver(properties.getFlushPolicies(),
+					properties.getStreamingMediaTypes(), FlushPolicy.size(FlushPolicy.DEFAULT_SIZE_THRESHOLD));
+			return new NettyRoutingFilter(httpClient, headersFilters, flushPolicies);
 		}
 
 		@Bean // 1.5
 		public NettyWriteResponseFilter nettyWriteResponseFilter(GatewayProperties properties) {
 			 // 从 exchange.attribute.get('client_response_attr')获得响应，给客户端
-			return new NettyWriteResponseFilter(properties.getStreamingMediaTypes());
+			FlushPolicyResolver flushPolicies = new FlushPolicyResolver(properties.getFlushPolicies(),
+					properties.getStreamingMediaTypes(), FlushPolicy.end());
+			return new NettyWriteResponseFilter(flushPolicies);
 		}
 
 		@Bean // 1.6 用于上下文websocketRoutingFilter 的bean 创建 // TODO 不知道说的什么意思，
@@ -304,8 +390,12 @@ public class GatewayAutoConfiguration {
 
 	// route 刷新监听器
 	@Bean
-	public RouteRefreshListener routeRefreshListener(ApplicationEventPublisher publisher) {
-		return new RouteRefreshListener(publisher);
+	public RouteRefreshListener routeRefreshListener(ApplicationEventPublisher publisher,
+			ObjectProvider<ServiceInstanceCache> instances) {
+		RouteRefreshListener listener = new RouteRefreshListener(publisher);
+		// 服务实例缓存在心跳后异步重新加载，加载完成后再由其刷新路由，避免用旧的服务列表构建路由
+		listener.setRefreshOnHeartbeat(instances.getIfAvailable() == null);
+		return listener;
 	}
 
 
@@ -347,6 +437,43 @@ public class GatewayAutoConfiguration {
 		return new WeightCalculatorWebFilter(validator);
 	}
 
+	// 网关自身饱和（event loop 延迟、直接内存、处理中的请求过多）时，在查找路由之前按优先级丢弃请求
+	@Configuration
+	@ConditionalOnClass(HttpClient.class)
+	@ConditionalOnProperty(name = "spring.cloud.gateway.load-shedding.enabled")
+	protected static class LoadSheddingConfiguration {
+
+		@Bean
+		public LoadSheddingProperties loadSheddingProperties() {
+			return new LoadSheddingProperties();
+		}
+
+		@Bean
+		@ConditionalOnMissingBean
+		public SaturationMonitor saturationMonitor(LoadSheddingProperties properties,
+				HttpClientProperties httpClientProperties,
+				@Qualifier("gatewayLoopResources") ObjectProvider<LoopResources> loopResources) {
+			// the loops of the server: the gateway loops only when the server runs on them,
+			// otherwise those of HttpResources, which the server uses by default
+			LoopResources loops = httpClientProperties.getLoop().isSharedWithServer()
+					? loopResources.getIfAvailable(HttpResources::get) : HttpResources.get();
+			return new SaturationMonitor(loops.onServer(loops.preferNative()), properties.getMaxEventLoopLag(),
+					properties.getMaxDirectMemoryRatio(), properties.getProbeInterval());
+		}
+
+		@Bean
+		public LoadSheddingWebFilter loadSheddingWebFilter(SaturationMonitor monitor,
+				LoadSheddingProperties properties) {
+			LoadSheddingWebFilter filter = new LoadSheddingWebFilter(monitor);
+			filter.setPriorityHeader(properties.getPriorityHeader());
+			filter.setDefaultPriority(properties.getDefaultPriority());
+			filter.setPriorityPaths(properties.getPaths());
+			filter.setThresholds(properties.getThresholds());
+			filter.setMaxInFlight(properties.getMaxInFlight());
+			return filter;
+		}
+	}
+
 	/*@Bean
 	//TODO: default over netty? configurable
 	public WebClientHttpRoutingFilter webClientHttpRoutingFilter() {
@@ -436,6 +563,39 @@ public class GatewayAutoConfiguration {
 		return new AddResponseHeaderGatewayFilterFactory();
 	}
 
+	@Bean
+	public CircuitBreakerGatewayFilterFactory circuitBreakerGatewayFilterFactory(DispatcherHandler dispatcherHandler) {
+		return new CircuitBreakerGatewayFilterFactory(dispatcherHandler);
+	}
+
+	@Bean
+	public ConcurrencyLimiterGatewayFilterFactory concurrencyLimiterGatewayFilterFactory(
+			ObjectProvider<ConcurrencyLimiterMetrics> metrics) {
+		return new ConcurrencyLimiterGatewayFilterFactory(metrics.getIfAvailable());
+	}
+
+	// 将并发上限、处理中与排队的请求数、拒绝次数发布为 Micrometer 指标
+	@Configuration
+	@ConditionalOnClass(MeterRegistry.class)
+	protected static class ConcurrencyLimiterMetricsConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public ConcurrencyLimiterMetrics concurrencyLimiterMetrics(ObjectProvider<MeterRegistry> registry) {
+			return new ConcurrencyLimiterMetrics(registry.getIfAvailable(() -> Metrics.globalRegistry));
+		}
+	}
+
+	@Bean
+	public ConsistentHashGatewayFilterFactory consistentHashGatewayFilterFactory() {
+		return new ConsistentHashGatewayFilterFactory();
+	}
+
+	@Bean
+	public FlushPolicyGatewayFilterFactory flushPolicyGatewayFilterFactory() {
+		return new FlushPolicyGatewayFilterFactory();
+	}
+
 	@Configuration
 	@ConditionalOnClass({HystrixObservableCommand.class, RxReactiveStreams.class})
 	protected static class HystrixConfiguration {
@@ -470,6 +630,12 @@ public class GatewayAutoConfiguration {
 		return new RemoveResponseHeaderGatewayFilterFactory();
 	}
 
+	@Bean
+	public RequestQuotaGatewayFilterFactory requestQuotaGatewayFilterFactory(ObjectProvider<QuotaLimiter> quotaLimiter) {
+		// 没有 Redis 时使用本地内存的配额
+		return new RequestQuotaGatewayFilterFactory(quotaLimiter.getIfAvailable(LocalQuotaLimiter::new));
+	}
+
 	@Bean(name = PrincipalNameKeyResolver.BEAN_NAME)
 	@ConditionalOnBean(RateLimiter.class)
 	public PrincipalNameKeyResolver principalNameKeyResolver() {
@@ -478,8 +644,29 @@ public class GatewayAutoConfiguration {
 
 	@Bean
 	@ConditionalOnBean({RateLimiter.class, KeyResolver.class})
-	public RequestRateLimiterGatewayFilterFactory requestRateLimiterGatewayFilterFactory(RateLimiter rateLimiter, PrincipalNameKeyResolver resolver) {
-		return new RequestRateLimiterGatewayFilterFactory(rateLimiter, resolver);
+	public RequestRateLimiterGatewayFilterFactory requestRateLimiterGatewayFilterFactory(RateLimiter rateLimiter, PrincipalNameKeyResolver resolver,
+																						 ObjectProvider<HeavyHitters> heavyHitters) {
+		RequestRateLimiterGatewayFilterFactory factory = new RequestRateLimiterGatewayFilterFactory(rateLimiter, resolver);
+		factory.setHeavyHitters(heavyHitters.getIfAvailable());
+		return factory;
+	}
+
+	// 统计请求最多的限流键，通过 /actuator/gateway/heavyhitters 查看
+	@Configuration
+	@ConditionalOnProperty(name = "spring.cloud.gateway.heavy-hitters.enabled")
+	protected static class HeavyHittersConfiguration {
+
+		@Bean
+		public HeavyHittersProperties heavyHittersProperties() {
+			return new HeavyHittersProperties();
+		}
+
+		@Bean
+		@ConditionalOnMissingBean
+		public HeavyHitters heavyHitters(HeavyHittersProperties properties) {
+			return new HeavyHitters(properties.getDepth(), properties.getWidth(),
+					properties.getCapacity(), properties.getHalfLife());
+		}
 	}
 
 	@Bean
@@ -529,7 +716,7 @@ public class GatewayAutoConfiguration {
 
 	// --------------------------------- PrefixPathGatewayFilterFactory 结束  -----------------------------
 
-	// 提供一个route 的管理接口， 支持刷新route， 获取globalfilters，获取routefilters， 获取routes列表， 增加，删除
+	// 提供一个route 的管理接口， 支持刷新route， 获取globalfilters，获取routefilters， 获取routes列表， 增加，删除，获取负载均衡实例统计、健康检查结果及请求最多的限流键
 	@Configuration
 	@ConditionalOnClass(Health.class)
 	protected static class GatewayActuatorConfiguration {
@@ -538,8 +725,14 @@ public class GatewayAutoConfiguration {
 		@ConditionalOnEnabledEndpoint
 		public GatewayControllerEndpoint gatewayControllerEndpoint(RouteDefinitionLocator routeDefinitionLocator, List<GlobalFilter> globalFilters,
 																List<GatewayFilterFactory> GatewayFilters, RouteDefinitionWriter routeDefinitionWriter,
-																RouteLocator routeLocator) {
-			return new GatewayControllerEndpoint(routeDefinitionLocator, globalFilters, GatewayFilters, routeDefinitionWriter, routeLocator);
+																RouteLocator routeLocator, ObjectProvider<LoadBalancerStats> loadBalancerStats,
+																ObjectProvider<ActiveHealthChecker> healthChecker,
+																ObjectProvider<HeavyHitters> heavyHitters) {
+			GatewayControllerEndpoint endpoint = new GatewayControllerEndpoint(routeDefinitionLocator, globalFilters, GatewayFilters, routeDefinitionWriter, routeLocator);
+			endpoint.setLoadBalancerStats(loadBalancerStats.getIfAvailable());
+			endpoint.setHealthChecker(healthChecker.getIfAvailable());
+			endpoint.setHeavyHitters(heavyHitters.getIfAvailable());
+			return endpoint;
 		}
 	}
 
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.gateway.filter.ActiveHealthCheckFilter;
+import org.springframework.cloud.gateway.loadbalancer.ActiveHealthChecker;
+import org.springframework.cloud.gateway.loadbalancer.HealthProbe;
+import org.springframework.cloud.gateway.loadbalancer.NettyHealthProbe;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.DispatcherHandler;
+
+import reactor.core.publisher.Flux;
+import reactor.ipc.netty.http.client.HttpClient;
+
+/**
+ * 主动健康检查：在一个共享的线程上定期探测路由的目标地址和负载均衡的服务实例，
+ * 探测请求复用转发请求的 HttpClient 连接池。被探测为不可用的目标不再转发请求。
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.cloud.gateway.health-check.enabled")
+@ConditionalOnClass({HttpClient.class, DispatcherHandler.class})
+@AutoConfigureAfter(GatewayAutoConfiguration.class)
+@EnableConfigurationProperties
+public class GatewayHealthCheckAutoConfiguration {
+
+	@Bean
+	@ConfigurationProperties("spring.cloud.gateway.health-check")
+	public ActiveHealthChecker.Config healthCheckConfig() {
+		return new ActiveHealthChecker.Config();
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	public HealthProbe healthProbe(HttpClient httpClient, ActiveHealthChecker.Config config) {
+		return new NettyHealthProbe(httpClient, config.getPath());
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	public ActiveHealthChecker activeHealthChecker(HealthProbe probe, ActiveHealthChecker.Config config,
+			ObjectProvider<RouteLocator> routeLocator) {
+		// 静态路由的地址在第一个请求之前就开始探测
+		return new ActiveHealthChecker(probe, config, () -> {
+			RouteLocator routes = routeLocator.getIfAvailable();
+			return routes == null ? Flux.empty() : routes.getRoutes().map(Route::getUri);
+		});
+	}
+
+	// GlobalFilter beans
+	@Bean
+	public ActiveHealthCheckFilter activeHealthCheckFilter(ActiveHealthChecker healthChecker) {
+		return new ActiveHealthCheckFilter(healthChecker);
+	}
+}
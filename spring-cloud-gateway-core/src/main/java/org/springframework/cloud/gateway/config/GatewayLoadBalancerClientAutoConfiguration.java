@@ -20,8 +20,10 @@ package org.springframework.cloud.gateway.config;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
 import org.springframework.cloud.gateway.filter.LoadBalancerClientFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
 import org.springframework.cloud.netflix.ribbon.RibbonAutoConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -32,13 +34,14 @@ import org.springframework.web.reactive.DispatcherHandler;
  */
 @Configuration
 @ConditionalOnClass({LoadBalancerClient.class, RibbonAutoConfiguration.class, DispatcherHandler.class})
-@AutoConfigureAfter(RibbonAutoConfiguration.class)
+@AutoConfigureAfter({RibbonAutoConfiguration.class, GatewayReactiveLoadBalancerAutoConfiguration.class})
 public class GatewayLoadBalancerClientAutoConfiguration {
 
 	// GlobalFilter beans
 	// 根据lb:// 前缀过滤处理，使用serviceId 选择一个服务实例，从而实现负载均衡
 	@Bean
 	@ConditionalOnBean(LoadBalancerClient.class)
+	@ConditionalOnMissingBean(ReactiveLoadBalancerClientFilter.class)
 	public LoadBalancerClientFilter loadBalancerClientFilter(LoadBalancerClient client) {
 		return new LoadBalancerClientFilter(client);
 	}
@@ -20,6 +20,7 @@ package org.springframework.cloud.gateway.config;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.cloud.gateway.filter.FilterDefinition;
 import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.cloud.gateway.support.MediaTypeFlushPolicy;
 import org.springframework.http.MediaType;
 import org.springframework.validation.annotation.Validated;
 
@@ -53,6 +54,14 @@ public class GatewayProperties {
 	private List<MediaType> streamingMediaTypes = Arrays.asList(MediaType.TEXT_EVENT_STREAM,
 			MediaType.APPLICATION_STREAM_JSON);
 
+	/**
+	 * Flush policies of proxied request and response bodies by media type, the first
+	 * compatible entry wins. Streaming media types are flushed on each buffer, other
+	 * request bodies on a size threshold and other response bodies at their end.
+	 */
+	@Valid
+	private List<MediaTypeFlushPolicy> flushPolicies = new ArrayList<>();
+
 	public List<RouteDefinition> getRoutes() {
 		return routes;
 	}
@@ -77,12 +86,21 @@ public class GatewayProperties {
 		this.streamingMediaTypes = streamingMediaTypes;
 	}
 
+	public List<MediaTypeFlushPolicy> getFlushPolicies() {
+		return flushPolicies;
+	}
+
+	public void setFlushPolicies(List<MediaTypeFlushPolicy> flushPolicies) {
+		this.flushPolicies = flushPolicies;
+	}
+
 	@Override
 	public String toString() {
 		return "GatewayProperties{" +
 				"routes=" + routes +
 				", defaultFilters=" + defaultFilters +
 				", streamingMediaTypes=" + streamingMediaTypes +
+				", flushPolicies=" + flushPolicies +
 				'}';
 	}
 }
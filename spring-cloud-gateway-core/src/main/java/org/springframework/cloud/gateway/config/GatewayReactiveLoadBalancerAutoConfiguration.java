@@ -0,0 +1,182 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.config;
+
+import java.util.List;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.cloud.gateway.loadbalancer.ActiveHealthCheckStrategy;
+import org.springframework.cloud.gateway.loadbalancer.ActiveHealthChecker;
+import org.springframework.cloud.gateway.loadbalancer.ConsistentHashStrategy;
+import org.springframework.cloud.gateway.loadbalancer.DiscoveryClientReactiveLoadBalancer;
+import org.springframework.cloud.gateway.loadbalancer.LoadBalancerClientReactiveLoadBalancer;
+import org.springframework.cloud.gateway.loadbalancer.LoadBalancerMetrics;
+import org.springframework.cloud.gateway.loadbalancer.LoadBalancerStats;
+import org.springframework.cloud.gateway.loadbalancer.LoadBalancerStrategy;
+import org.springframework.cloud.gateway.loadbalancer.OutlierDetectionStrategy;
+import org.springframework.cloud.gateway.loadbalancer.OutlierDetector;
+import org.springframework.cloud.gateway.loadbalancer.PeakEwmaStrategy;
+import org.springframework.cloud.gateway.loadbalancer.PowerOfTwoChoicesStrategy;
+import org.springframework.cloud.gateway.loadbalancer.ReactiveLoadBalancer;
+import org.springframework.cloud.gateway.loadbalancer.ServiceInstanceCache;
+import org.springframework.cloud.gateway.loadbalancer.SlowStartStrategy;
+import org.springframework.cloud.gateway.loadbalancer.ZoneAwareStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+import org.springframework.web.reactive.DispatcherHandler;
+
+/**
+ * 非阻塞的 lb:// 负载均衡：从 DiscoveryClient 缓存服务实例，默认使用 power of two choices
+ * 选择未完成请求最少的实例，或按 Peak EWMA 延迟选择实例。DiscoveryClient 没有实例的服务回退到 Ribbon 的 LoadBalancerClient。
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.cloud.gateway.loadbalancer.enabled", matchIfMissing = true)
+@ConditionalOnClass({DiscoveryClient.class, DispatcherHandler.class})
+@AutoConfigureAfter(name = {
+		"org.springframework.cloud.client.discovery.composite.CompositeDiscoveryClientAutoConfiguration",
+		"org.springframework.cloud.client.discovery.simple.SimpleDiscoveryClientAutoConfiguration",
+		"org.springframework.cloud.netflix.ribbon.RibbonAutoConfiguration"})
+@EnableConfigurationProperties
+public class GatewayReactiveLoadBalancerAutoConfiguration {
+
+	@Bean
+	public LoadBalancerProperties loadBalancerProperties() {
+		return new LoadBalancerProperties();
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	public LoadBalancerStats loadBalancerStats(LoadBalancerProperties properties) {
+		return new LoadBalancerStats(properties.getEwmaDecay());
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	public LoadBalancerStrategy loadBalancerStrategy(LoadBalancerStats stats, LoadBalancerProperties properties) {
+		if (properties.getStrategy() == LoadBalancerProperties.Strategy.PEAK_EWMA) {
+			return new PeakEwmaStrategy(stats);
+		}
+		return new PowerOfTwoChoicesStrategy(stats);
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@ConditionalOnProperty(name = "spring.cloud.gateway.loadbalancer.outlier-detection.enabled", matchIfMissing = true)
+	public OutlierDetector outlierDetector(LoadBalancerProperties properties,
+			ObjectProvider<List<OutlierDetector.Listener>> listeners) {
+		OutlierDetector detector = new OutlierDetector(properties.getOutlierDetection());
+		listeners.ifAvailable(list -> list.forEach(detector::addListener));
+		return detector;
+	}
+
+	@Bean
+	@ConditionalOnBean(DiscoveryClient.class)
+	@ConditionalOnMissingBean
+	public ServiceInstanceCache serviceInstanceCache(DiscoveryClient discoveryClient,
+			LoadBalancerProperties properties, LoadBalancerStats stats, ObjectProvider<OutlierDetector> outlierDetector,
+			ObjectProvider<ActiveHealthChecker> healthChecker, ObjectProvider<LoadBalancerMetrics> metrics) {
+		// 后台定期全量刷新服务实例，注册中心不可用时继续使用旧数据
+		ServiceInstanceCache cache = new ServiceInstanceCache(discoveryClient, properties.getInstanceCacheTtl(),
+				properties.getInstanceRefreshInterval());
+		// 实例下线后清除其统计数据
+		cache.addListener(stats);
+		outlierDetector.ifAvailable(cache::addListener);
+		healthChecker.ifAvailable(cache::addListener);
+		metrics.ifAvailable(m -> m.monitor(cache));
+		return cache;
+	}
+
+	@Bean
+	@ConditionalOnBean(ServiceInstanceCache.class)
+	@ConditionalOnMissingBean
+	public ReactiveLoadBalancer reactiveLoadBalancer(ServiceInstanceCache instances,
+			LoadBalancerStrategy strategy, LoadBalancerStats stats, LoadBalancerProperties properties,
+			ObjectProvider<OutlierDetector> outlierDetector, ObjectProvider<ActiveHealthChecker> healthChecker,
+			ObjectProvider<List<SlowStartStrategy.Listener>> slowStartListeners,
+			ObjectProvider<LoadBalancerClient> loadBalancerClient) {
+		// 设置了 ConsistentHash 过滤器的路由按一致性哈希选择实例，其它路由使用 strategy
+		LoadBalancerStrategy chooser = new ConsistentHashStrategy(strategy, stats,
+				properties.getHashVirtualNodes(), properties.getHashLoadFactor());
+		// 先排除被探测为不可用及被剔除的实例
+		ActiveHealthChecker checker = healthChecker.getIfAvailable();
+		if (checker != null) {
+			chooser = new ActiveHealthCheckStrategy(chooser, checker);
+		}
+		OutlierDetector detector = outlierDetector.getIfAvailable();
+		if (detector != null) {
+			chooser = new OutlierDetectionStrategy(chooser, detector);
+		}
+		// 优先选择与网关同一可用区的实例，本区健康实例不足时按比例溢出到其它可用区
+		if (StringUtils.hasText(properties.getZone())) {
+			chooser = new ZoneAwareStrategy(chooser, properties.getZone(), properties.getZoneMetadataKey(),
+					properties.getZoneHealthyThreshold(),
+					instance -> (detector == null || !detector.isEjected(instance))
+							&& (checker == null || checker.isHealthy(instance)));
+		}
+		// 新加入或重新接纳的实例在预热窗口内逐渐增加流量，需看到服务的全部实例
+		if (!properties.getSlowStartWindow().isZero()) {
+			SlowStartStrategy slowStart = new SlowStartStrategy(chooser, properties.getSlowStartWindow(),
+					properties.getSlowStartMode(), properties.getSlowStartMinWeight());
+			slowStartListeners.ifAvailable(list -> list.forEach(slowStart::addListener));
+			if (detector != null) {
+				detector.addListener(slowStart);
+			}
+			chooser = slowStart;
+		}
+		LoadBalancerClient client = loadBalancerClient.getIfAvailable();
+		if (client == null || !properties.isRibbonFallback()) {
+			return new DiscoveryClientReactiveLoadBalancer(instances, chooser);
+		}
+		return new DiscoveryClientReactiveLoadBalancer(instances, chooser,
+				new LoadBalancerClientReactiveLoadBalancer(client));
+	}
+
+	// GlobalFilter beans
+	// 根据lb:// 前缀过滤处理，非阻塞地选择服务实例，替代 LoadBalancerClientFilter
+	@Bean
+	@ConditionalOnBean(ReactiveLoadBalancer.class)
+	public ReactiveLoadBalancerClientFilter reactiveLoadBalancerClientFilter(
+			ReactiveLoadBalancer loadBalancer, LoadBalancerStats stats, ObjectProvider<OutlierDetector> outlierDetector) {
+		return new ReactiveLoadBalancerClientFilter(loadBalancer, stats, outlierDetector.getIfAvailable());
+	}
+
+	// 将实例剔除、预热权重、实例数据陈旧时间等发布为 Micrometer 指标
+	@Configuration
+	@ConditionalOnClass(MeterRegistry.class)
+	protected static class LoadBalancerMetricsConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public LoadBalancerMetrics loadBalancerMetrics(ObjectProvider<MeterRegistry> registry) {
+			return new LoadBalancerMetrics(registry.getIfAvailable(() -> Metrics.globalRegistry));
+		}
+	}
+}
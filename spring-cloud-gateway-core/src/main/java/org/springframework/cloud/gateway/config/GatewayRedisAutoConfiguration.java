@@ -2,6 +2,7 @@ package org.springframework.cloud.gateway.config;
 
 import java.util.List;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.AutoConfigureBefore;
@@ -9,11 +10,16 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.data.redis.RedisReactiveAutoConfiguration;
+import org.springframework.cloud.gateway.filter.ratelimit.DenyCache;
+import org.springframework.cloud.gateway.filter.ratelimit.DenyCacheMetrics;
+import org.springframework.cloud.gateway.filter.ratelimit.RedisQuotaLimiter;
 import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
+import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiterBatcher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
@@ -22,9 +28,13 @@ import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.util.StringUtils;
 import org.springframework.validation.Validator;
 import org.springframework.web.reactive.DispatcherHandler;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+
 /**
  * 使用scripts/request_rate_limiter.lua 进行请求限流
  */
@@ -44,6 +54,61 @@ class GatewayRedisAutoConfiguration {
 		return redisScript;
 	}
 
+	// LeasingRateLimiter 批量租用令牌的脚本，与 request_rate_limiter.lua 共用令牌桶
+	@Bean
+	public RedisScript<List<Long>> redisRequestRateLeaseScript() {
+		return listScript("META-INF/scripts/request_rate_lease.lua");
+	}
+
+	// 第二版脚本，一个令牌桶对应一个 hash，毫秒精度，同时支持批量调用
+	@Bean
+	public RedisScript<List<Long>> redisRequestRateLimiterScriptV2() {
+		return listScript("META-INF/scripts/request_rate_limiter_v2.lua");
+	}
+
+	// 批量执行 request_rate_limiter.lua 的脚本，合并并发的限流请求
+	@Bean
+	public RedisScript<List<Long>> redisRequestRateLimiterBatchScript() {
+		return listScript("META-INF/scripts/request_rate_limiter_batch.lua");
+	}
+
+	// GCRA 算法的脚本，一个令牌桶只保存一个时间戳
+	@Bean
+	public RedisScript<List<Long>> redisRequestRateGcraScript() {
+		return listScript("META-INF/scripts/request_rate_gcra.lua");
+	}
+
+	// 滑动窗口计数算法的脚本
+	@Bean
+	public RedisScript<List<Long>> redisRequestRateSlidingWindowScript() {
+		return listScript("META-INF/scripts/request_rate_sliding_window.lua");
+	}
+
+	// RedisInFlightRateLimiter 租用、续约、释放并发许可的脚本
+	@Bean
+	public RedisScript<List<Long>> redisRequestInFlightScript() {
+		return listScript("META-INF/scripts/request_in_flight.lua");
+	}
+
+	// 一次调用校验多个维度配额的脚本
+	@Bean
+	public RedisScript<List<Long>> redisRequestQuotaScript() {
+		return listScript("META-INF/scripts/request_quota.lua");
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static RedisScript<List<Long>> listScript(String location) {
+		DefaultRedisScript redisScript = new DefaultRedisScript<>();
+		redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource(location)));
+		redisScript.setResultType(List.class);
+		return redisScript;
+	}
+
+	@Bean
+	public RedisRateLimiterProperties redisRateLimiterProperties() {
+		return new RedisRateLimiterProperties();
+	}
+
 	@Bean
 	//TODO: replace with ReactiveStringRedisTemplate in future
 	public ReactiveRedisTemplate<String, String> stringReactiveRedisTemplate(
@@ -64,7 +129,75 @@ class GatewayRedisAutoConfiguration {
 	@ConditionalOnMissingBean
 	public RedisRateLimiter redisRateLimiter(ReactiveRedisTemplate<String, String> redisTemplate,
 											 @Qualifier(RedisRateLimiter.REDIS_SCRIPT_NAME) RedisScript<List<Long>> redisScript,
-											 Validator validator) {
-		return new RedisRateLimiter(redisTemplate, redisScript, validator);
+											 @Qualifier(RedisRateLimiter.REDIS_SCRIPT_V2_NAME) RedisScript<List<Long>> redisScriptV2,
+											 @Qualifier(RedisRateLimiter.REDIS_GCRA_SCRIPT_NAME) RedisScript<List<Long>> gcraScript,
+											 @Qualifier(RedisRateLimiter.REDIS_SLIDING_WINDOW_SCRIPT_NAME) RedisScript<List<Long>> slidingWindowScript,
+											 Validator validator,
+											 @Qualifier(RedisRateLimiterBatcher.REDIS_SCRIPT_NAME) RedisScript<List<Long>> batchScript,
+											 RedisRateLimiterProperties properties,
+											 ObjectProvider<DenyCacheMetrics> denyCacheMetrics) {
+		boolean v2 = properties.getScriptVersion() == 2;
+		boolean cluster = isCluster(redisTemplate);
+		if (v2 && properties.isMigrateKeys() && cluster) {
+			throw new IllegalStateException("spring.cloud.gateway.redis-rate-limiter.migrate-keys "
+					+ "can not be used on a Redis Cluster, the version 1 keys of a bucket belong to other slots");
+		}
+		RedisRateLimiter rateLimiter = new RedisRateLimiter(redisTemplate, v2 ? redisScriptV2 : redisScript, validator);
+		rateLimiter.setScriptVersion(properties.getScriptVersion());
+		rateLimiter.setMigrateKeys(properties.isMigrateKeys());
+		rateLimiter.setGcraScript(gcraScript);
+		rateLimiter.setSlidingWindowScript(slidingWindowScript);
+		RedisRateLimiterProperties.Batch batch = properties.getBatch();
+		if (batch.isEnabled()) {
+			if (cluster) {
+				throw new IllegalStateException("spring.cloud.gateway.redis-rate-limiter.batch.enabled "
+						+ "can not be used on a Redis Cluster, the keys of a batch belong to different slots");
+			}
+			// the version 2 script takes several buckets itself
+			rateLimiter.setBatcher(new RedisRateLimiterBatcher(redisTemplate, v2 ? redisScriptV2 : batchScript,
+					batch.getMaxSize(), batch.getWindow()));
+		}
+		if (properties.getDenyCache().isEnabled()) {
+			DenyCache denyCache = new DenyCache(properties.getDenyCache().getMaxKeys());
+			rateLimiter.setDenyCache(denyCache);
+			DenyCacheMetrics metrics = denyCacheMetrics.getIfAvailable();
+			if (metrics != null) {
+				metrics.monitor("redisRateLimiter", denyCache);
+			}
+		}
+		return rateLimiter;
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	public RedisQuotaLimiter redisQuotaLimiter(ReactiveRedisTemplate<String, String> redisTemplate,
+											   @Qualifier(RedisQuotaLimiter.REDIS_SCRIPT_NAME) RedisScript<List<Long>> script,
+											   RedisRateLimiterProperties properties) {
+		if (isCluster(redisTemplate) && !StringUtils.hasText(properties.getQuotaHashTag())) {
+			throw new IllegalStateException("spring.cloud.gateway.redis-rate-limiter.quota-hash-tag "
+					+ "is required on a Redis Cluster, so that the buckets of a request belong to the same slot");
+		}
+		RedisQuotaLimiter quotaLimiter = new RedisQuotaLimiter(redisTemplate, script);
+		quotaLimiter.setHashTag(properties.getQuotaHashTag());
+		return quotaLimiter;
+	}
+
+	// Redis Cluster 上一次脚本调用的所有键必须属于同一个 slot ，否则返回 CROSSSLOT 错误，限流器放行请求
+	private static boolean isCluster(ReactiveRedisTemplate<?, ?> redisTemplate) {
+		ReactiveRedisConnectionFactory connectionFactory = redisTemplate.getConnectionFactory();
+		return connectionFactory instanceof LettuceConnectionFactory
+				&& ((LettuceConnectionFactory) connectionFactory).isClusterAware();
+	}
+
+	// 将本地直接拒绝的请求数、缓存的键数发布为 Micrometer 指标
+	@Configuration
+	@ConditionalOnClass(MeterRegistry.class)
+	protected static class DenyCacheMetricsConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public DenyCacheMetrics denyCacheMetrics(ObjectProvider<MeterRegistry> registry) {
+			return new DenyCacheMetrics(registry.getIfAvailable(() -> Metrics.globalRegistry));
+		}
 	}
 }
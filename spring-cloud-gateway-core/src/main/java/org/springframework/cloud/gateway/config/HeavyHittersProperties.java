@@ -0,0 +1,96 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.gateway.filter.ratelimit.HeavyHitters;
+
+/**
+ * Configuration properties for tracking the rate limiting keys sending the most requests.
+ */
+@ConfigurationProperties("spring.cloud.gateway.heavy-hitters")
+public class HeavyHittersProperties {
+
+	/** If the keys resolved by the RequestRateLimiter filters are tracked */
+	private boolean enabled = false;
+
+	/** Number of rows of the count-min sketch, each row lowering the odds of overestimating a key */
+	private int depth = HeavyHitters.DEFAULT_DEPTH;
+
+	/** Number of counters of each row of the count-min sketch, bounding the overestimate of a key */
+	private int width = HeavyHitters.DEFAULT_WIDTH;
+
+	/** Number of keys reported, those with the highest rates */
+	private int capacity = HeavyHitters.DEFAULT_CAPACITY;
+
+	/** Time after which the weight of a request is halved */
+	private Duration halfLife = HeavyHitters.DEFAULT_HALF_LIFE;
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public void setDepth(int depth) {
+		this.depth = depth;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public void setWidth(int width) {
+		this.width = width;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public void setCapacity(int capacity) {
+		this.capacity = capacity;
+	}
+
+	public Duration getHalfLife() {
+		return halfLife;
+	}
+
+	public void setHalfLife(Duration halfLife) {
+		this.halfLife = halfLife;
+	}
+
+	@Override
+	public String toString() {
+		return "HeavyHittersProperties{" +
+				"enabled=" + enabled +
+				", depth=" + depth +
+				", width=" + width +
+				", capacity=" + capacity +
+				", halfLife=" + halfLife +
+				'}';
+	}
+}
@@ -35,6 +35,12 @@ public class HttpClientProperties {
 	/** SSL configuration for Netty HttpClient */
 	private Ssl ssl = new Ssl();
 
+	/** Event loop configuration for Netty HttpClient */
+	private Loop loop = new Loop();
+
+	/** Socket (channel option) configuration for Netty HttpClient */
+	private Socket socket = new Socket();
+
 	public Pool getPool() {
 		return pool;
 	}
@@ -59,6 +65,22 @@ public class HttpClientProperties {
 		this.ssl = ssl;
 	}
 
+	public Loop getLoop() {
+		return loop;
+	}
+
+	public void setLoop(Loop loop) {
+		this.loop = loop;
+	}
+
+	public Socket getSocket() {
+		return socket;
+	}
+
+	public void setSocket(Socket socket) {
+		this.socket = socket;
+	}
+
 	public static class Pool {
 
 		public enum PoolType { ELASTIC, FIXED }
@@ -205,11 +227,151 @@ public class HttpClientProperties {
 		}
 	}
 
+	public static class Loop {
+		/** Use the native transport (epoll) when it is available, falling back to NIO otherwise. */
+		private boolean preferNative = true;
+
+		/** Number of worker threads of a dedicated HttpClient event loop group. When not set,
+		 * the global reactor-netty loops are used, which the client already shares with the server. */
+		private Integer threads;
+
+		/** Prefix for the thread names of the dedicated event loop group. */
+		private String threadPrefix = "gateway-http";
+
+		/** Only when threads is set, install the dedicated loops on the Netty server too, so
+		 * that an inbound request and its upstream connection are served by the same thread. */
+		private boolean sharedWithServer = false;
+
+		public boolean isPreferNative() {
+			return preferNative;
+		}
+
+		public void setPreferNative(boolean preferNative) {
+			this.preferNative = preferNative;
+		}
+
+		public Integer getThreads() {
+			return threads;
+		}
+
+		public void setThreads(Integer threads) {
+			this.threads = threads;
+		}
+
+		public String getThreadPrefix() {
+			return threadPrefix;
+		}
+
+		public void setThreadPrefix(String threadPrefix) {
+			this.threadPrefix = threadPrefix;
+		}
+
+		public boolean isSharedWithServer() {
+			return sharedWithServer;
+		}
+
+		public void setSharedWithServer(boolean sharedWithServer) {
+			this.sharedWithServer = sharedWithServer;
+		}
+
+		@Override
+		public String toString() {
+			return "Loop{" +
+					"preferNative=" + preferNative +
+					", threads=" + threads +
+					", threadPrefix='" + threadPrefix + '\'' +
+					", sharedWithServer=" + sharedWithServer +
+					'}';
+		}
+	}
+
+	public static class Socket {
+		/** Sets TCP_NODELAY on upstream connections, unset keeps the Netty default. */
+		private Boolean tcpNoDelay;
+
+		/** Sets SO_KEEPALIVE on upstream connections, unset keeps the Netty default. */
+		private Boolean keepAlive;
+
+		/** SO_SNDBUF in bytes, unset keeps the Netty default. */
+		private Integer sendBufferSize;
+
+		/** SO_RCVBUF in bytes, unset keeps the Netty default. */
+		private Integer receiveBufferSize;
+
+		/** Low write buffer water mark in bytes, only applied together with the high water mark. */
+		private Integer writeBufferLowWaterMark;
+
+		/** High write buffer water mark in bytes, only applied together with the low water mark. */
+		private Integer writeBufferHighWaterMark;
+
+		public Boolean getTcpNoDelay() {
+			return tcpNoDelay;
+		}
+
+		public void setTcpNoDelay(Boolean tcpNoDelay) {
+			this.tcpNoDelay = tcpNoDelay;
+		}
+
+		public Boolean getKeepAlive() {
+			return keepAlive;
+		}
+
+		public void setKeepAlive(Boolean keepAlive) {
+			this.keepAlive = keepAlive;
+		}
+
+		public Integer getSendBufferSize() {
+			return sendBufferSize;
+		}
+
+		public void setSendBufferSize(Integer sendBufferSize) {
+			this.sendBufferSize = sendBufferSize;
+		}
+
+		public Integer getReceiveBufferSize() {
+			return receiveBufferSize;
+		}
+
+		public void setReceiveBufferSize(Integer receiveBufferSize) {
+			this.receiveBufferSize = receiveBufferSize;
+		}
+
+		public Integer getWriteBufferLowWaterMark() {
+			return writeBufferLowWaterMark;
+		}
+
+		public void setWriteBufferLowWaterMark(Integer writeBufferLowWaterMark) {
+			this.writeBufferLowWaterMark = writeBufferLowWaterMark;
+		}
+
+		public Integer getWriteBufferHighWaterMark() {
+			return writeBufferHighWaterMark;
+		}
+
+		public void setWriteBufferHighWaterMark(Integer writeBufferHighWaterMark) {
+			this.writeBufferHighWaterMark = writeBufferHighWaterMark;
+		}
+
+		@Override
+		public String toString() {
+			return "Socket{" +
+					"tcpNoDelay=" + tcpNoDelay +
+					", keepAlive=" + keepAlive +
+					", sendBufferSize=" + sendBufferSize +
+					", receiveBufferSize=" + receiveBufferSize +
+					", writeBufferLowWaterMark=" + writeBufferLowWaterMark +
+					", writeBufferHighWaterMark=" + writeBufferHighWaterMark +
+					'}';
+		}
+	}
+
 	@Override
 	public String toString() {
 		return "HttpClientProperties{" +
 				"pool=" + pool +
 				", proxy=" + proxy +
+				", loop=" + loop +
+				", socket=" + socket +
 				'}';
 	}
 }
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.NestedConfigurationProperty;
+import org.springframework.cloud.gateway.loadbalancer.ConsistentHashStrategy;
+import org.springframework.cloud.gateway.loadbalancer.LoadBalancerStats;
+import org.springframework.cloud.gateway.loadbalancer.OutlierDetector;
+import org.springframework.cloud.gateway.loadbalancer.SlowStartStrategy;
+import org.springframework.cloud.gateway.loadbalancer.ZoneAwareStrategy;
+
+/**
+ * Configuration properties for the reactive load balancer used by lb:// routes.
+ */
+@ConfigurationProperties("spring.cloud.gateway.loadbalancer")
+public class LoadBalancerProperties {
+
+	/** If the reactive load balancer is used, if false lb:// routes use Ribbon's LoadBalancerClient */
+	private boolean enabled = true;
+
+	/** Time after which the instances of a service are reloaded from the DiscoveryClient */
+	private Duration instanceCacheTtl = Duration.ofSeconds(30);
+
+	/** Interval at which all the services and their instances are reloaded in the background, 0 to disable background reloads */
+	private Duration instanceRefreshInterval = Duration.ofSeconds(15);
+
+	/** If a service without instances in the DiscoveryClient falls back to Ribbon's LoadBalancerClient */
+	private boolean ribbonFallback = true;
+
+	/** Algorithm choosing among the instances of a service */
+	private Strategy strategy = Strategy.LEAST_OUTSTANDING;
+
+	/** Time after which a latency observation weighs 1/e in the peak EWMA latency of an instance */
+	private Duration ewmaDecay = LoadBalancerStats.DEFAULT_DECAY;
+
+	/** Number of points of each instance on the ring of the ConsistentHash filter */
+	private int hashVirtualNodes = ConsistentHashStrategy.DEFAULT_VIRTUAL_NODES;
+
+	/** Maximum ratio between the outstanding requests of an instance and the average for the ConsistentHash filter, 1.25 for instance, 0 to always use the instance owning the key */
+	private double hashLoadFactor = 0;
+
+	/** Time over which the traffic of an instance joining a service ramps up, 0 to disable slow start */
+	private Duration slowStartWindow = Duration.ofSeconds(30);
+
+	/** How the weight of an instance joining a service ramps up */
+	private SlowStartStrategy.Mode slowStartMode = SlowStartStrategy.Mode.LINEAR;
+
+	/** Weight of an instance when it joins a service */
+	private double slowStartMinWeight = 0.1;
+
+	/** Zone of the gateway, to prefer the instances of the same zone, not set to ignore zones */
+	private String zone;
+
+	/** Metadata key of the zone of an instance */
+	private String zoneMetadataKey = ZoneAwareStrategy.DEFAULT_METADATA_KEY;
+
+	/** Minimum share of healthy instances in the zone of the gateway to keep all the traffic in the zone */
+	private double zoneHealthyThreshold = 0.7;
+
+	/** Passive ejection of the instances failing the proxied requests */
+	@NestedConfigurationProperty
+	private final OutlierDetector.Config outlierDetection = new OutlierDetector.Config();
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public Duration getInstanceCacheTtl() {
+		return instanceCacheTtl;
+	}
+
+	public void setInstanceCacheTtl(Duration instanceCacheTtl) {
+		this.instanceCacheTtl = instanceCacheTtl;
+	}
+
+	public Duration getInstanceRefreshInterval() {
+		return instanceRefreshInterval;
+	}
+
+	public void setInstanceRefreshInterval(Duration instanceRefreshInterval) {
+		this.instanceRefreshInterval = instanceRefreshInterval;
+	}
+
+	public boolean isRibbonFallback() {
+		return ribbonFallback;
+	}
+
+	public void setRibbonFallback(boolean ribbonFallback) {
+		this.ribbonFallback = ribbonFallback;
+	}
+
+	public Strategy getStrategy() {
+		return strategy;
+	}
+
+	public void setStrategy(Strategy strategy) {
+		this.strategy = strategy;
+	}
+
+	public Duration getEwmaDecay() {
+		return ewmaDecay;
+	}
+
+	public void setEwmaDecay(Duration ewmaDecay) {
+		this.ewmaDecay = ewmaDecay;
+	}
+
+	public int getHashVirtualNodes() {
+		return hashVirtualNodes;
+	}
+
+	public void setHashVirtualNodes(int hashVirtualNodes) {
+		this.hashVirtualNodes = hashVirtualNodes;
+	}
+
+	public double getHashLoadFactor() {
+		return hashLoadFactor;
+	}
+
+	public void setHashLoadFactor(double hashLoadFactor) {
+		this.hashLoadFactor = hashLoadFactor;
+	}
+
+	public Duration getSlowStartWindow() {
+		return slowStartWindow;
+	}
+
+	public void setSlowStartWindow(Duration slowStartWindow) {
+		this.slowStartWindow = slowStartWindow;
+	}
+
+	public SlowStartStrategy.Mode getSlowStartMode() {
+		return slowStartMode;
+	}
+
+	public void setSlowStartMode(SlowStartStrategy.Mode slowStartMode) {
+		this.slowStartMode = slowStartMode;
+	}
+
+	public double getSlowStartMinWeight() {
+		return slowStartMinWeight;
+	}
+
+	public void setSlowStartMinWeight(double slowStartMinWeight) {
+		this.slowStartMinWeight = slowStartMinWeight;
+	}
+
+	public String getZone() {
+		return zone;
+	}
+
+	public void setZone(String zone) {
+		this.zone = zone;
+	}
+
+	public String getZoneMetadataKey() {
+		return zoneMetadataKey;
+	}
+
+	public void setZoneMetadataKey(String zoneMetadataKey) {
+		this.zoneMetadataKey = zoneMetadataKey;
+	}
+
+	public double getZoneHealthyThreshold() {
+		return zoneHealthyThreshold;
+	}
+
+	public void setZoneHealthyThreshold(double zoneHealthyThreshold) {
+		this.zoneHealthyThreshold = zoneHealthyThreshold;
+	}
+
+	public OutlierDetector.Config getOutlierDetection() {
+		return outlierDetection;
+	}
+
+	@Override
+	public String toString() {
+		return "LoadBalancerProperties{" +
+				"enabled=" + enabled +
+				", instanceCacheTtl=" + instanceCacheTtl +
+				", instanceRefreshInterval=" + instanceRefreshInterval +
+				", ribbonFallback=" + ribbonFallback +
+				", strategy=" + strategy +
+				", ewmaDecay=" + ewmaDecay +
+				", hashVirtualNodes=" + hashVirtualNodes +
+				", hashLoadFactor=" + hashLoadFactor +
+				", slowStartWindow=" + slowStartWindow +
+				", slowStartMode=" + slowStartMode +
+				", slowStartMinWeight=" + slowStartMinWeight +
+				", zone='" + zone + '\'' +
+				", zoneMetadataKey='" + zoneMetadataKey + '\'' +
+				", zoneHealthyThreshold=" + zoneHealthyThreshold +
+				", outlierDetection=" + outlierDetection +
+				'}';
+	}
+
+	public enum Strategy {
+		/** Power of two choices on the outstanding requests */
+		LEAST_OUTSTANDING,
+		/** Power of two choices on the peak EWMA latency times the outstanding requests */
+		PEAK_EWMA
+	}
+}
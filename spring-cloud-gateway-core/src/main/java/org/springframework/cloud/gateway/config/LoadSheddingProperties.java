@@ -0,0 +1,148 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.config;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.gateway.filter.shedding.LoadSheddingWebFilter.Priority;
+
+/**
+ * Configuration properties for shedding requests when the gateway itself is saturated.
+ */
+@ConfigurationProperties("spring.cloud.gateway.load-shedding")
+public class LoadSheddingProperties {
+
+	/** If requests are shed by priority when the gateway is saturated */
+	private boolean enabled = false;
+
+	/** Request header carrying the priority of a request, such as X-Request-Priority; only set it when a trusted edge proxy sets or strips the header, as any client could claim to be CRITICAL */
+	private String priorityHeader;
+
+	/** Priority of the requests without a priority header nor a matching path */
+	private Priority defaultPriority = Priority.NORMAL;
+
+	/** Path patterns by priority, such as /payments/** for CRITICAL */
+	private Map<Priority, List<String>> paths = new EnumMap<>(Priority.class);
+
+	/** Saturation from which the requests of a priority are shed, 1 meaning that a signal reached its maximum; CRITICAL requests are never shed by default */
+	private Map<Priority, Double> thresholds = new HashMap<>();
+
+	/** Lag of the Netty event loops at which the gateway is saturated, 0 to ignore the lag */
+	private Duration maxEventLoopLag = Duration.ofMillis(100);
+
+	/** Ratio of the maximum direct memory used by pooled buffers at which the gateway is saturated, 0 to ignore direct memory */
+	private double maxDirectMemoryRatio = 0.9;
+
+	/** Number of requests in flight at which the gateway is saturated, 0 not to count requests in flight */
+	private int maxInFlight = 0;
+
+	/** Interval at which the event loop lag and direct memory are probed */
+	private Duration probeInterval = Duration.ofMillis(100);
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public String getPriorityHeader() {
+		return priorityHeader;
+	}
+
+	public void setPriorityHeader(String priorityHeader) {
+		this.priorityHeader = priorityHeader;
+	}
+
+	public Priority getDefaultPriority() {
+		return defaultPriority;
+	}
+
+	public void setDefaultPriority(Priority defaultPriority) {
+		this.defaultPriority = defaultPriority;
+	}
+
+	public Map<Priority, List<String>> getPaths() {
+		return paths;
+	}
+
+	public void setPaths(Map<Priority, List<String>> paths) {
+		this.paths = paths;
+	}
+
+	public Map<Priority, Double> getThresholds() {
+		return thresholds;
+	}
+
+	public void setThresholds(Map<Priority, Double> thresholds) {
+		this.thresholds = thresholds;
+	}
+
+	public Duration getMaxEventLoopLag() {
+		return maxEventLoopLag;
+	}
+
+	public void setMaxEventLoopLag(Duration maxEventLoopLag) {
+		this.maxEventLoopLag = maxEventLoopLag;
+	}
+
+	public double getMaxDirectMemoryRatio() {
+		return maxDirectMemoryRatio;
+	}
+
+	public void setMaxDirectMemoryRatio(double maxDirectMemoryRatio) {
+		this.maxDirectMemoryRatio = maxDirectMemoryRatio;
+	}
+
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	public void setMaxInFlight(int maxInFlight) {
+		this.maxInFlight = maxInFlight;
+	}
+
+	public Duration getProbeInterval() {
+		return probeInterval;
+	}
+
+	public void setProbeInterval(Duration probeInterval) {
+		this.probeInterval = probeInterval;
+	}
+
+	@Override
+	public String toString() {
+		return "LoadSheddingProperties{" +
+				"enabled=" + enabled +
+				", priorityHeader='" + priorityHeader + '\'' +
+				", defaultPriority=" + defaultPriority +
+				", paths=" + paths +
+				", thresholds=" + thresholds +
+				", maxEventLoopLag=" + maxEventLoopLag +
+				", maxDirectMemoryRatio=" + maxDirectMemoryRatio +
+				", maxInFlight=" + maxInFlight +
+				", probeInterval=" + probeInterval +
+				'}';
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Configuration properties for the RedisRateLimiter.
+ */
+@ConfigurationProperties("spring.cloud.gateway.redis-rate-limiter")
+public class RedisRateLimiterProperties {
+
+	/** Version of the script and key layout of the buckets, 2 for a single hash per bucket with millisecond timestamps */
+	private int scriptVersion = 1;
+
+	/** If the version 2 script carries the buckets of the version 1 keys over, refused on a Redis Cluster */
+	private boolean migrateKeys = false;
+
+	/** Sending the concurrent calls to Redis in batches */
+	private Batch batch = new Batch();
+
+	/** Denying the requests of exhausted keys without calling Redis until their bucket refills */
+	private DenyCache denyCache = new DenyCache();
+
+	/** Hash tag of the keys of the RedisQuotaLimiter, required on a Redis Cluster so that the buckets of a request belong to the same slot */
+	private String quotaHashTag;
+
+	public int getScriptVersion() {
+		return scriptVersion;
+	}
+
+	public void setScriptVersion(int scriptVersion) {
+		this.scriptVersion = scriptVersion;
+	}
+
+	public boolean isMigrateKeys() {
+		return migrateKeys;
+	}
+
+	public void setMigrateKeys(boolean migrateKeys) {
+		this.migrateKeys = migrateKeys;
+	}
+
+	public Batch getBatch() {
+		return batch;
+	}
+
+	public void setBatch(Batch batch) {
+		this.batch = batch;
+	}
+
+	public DenyCache getDenyCache() {
+		return denyCache;
+	}
+
+	public void setDenyCache(DenyCache denyCache) {
+		this.denyCache = denyCache;
+	}
+
+	public String getQuotaHashTag() {
+		return quotaHashTag;
+	}
+
+	public void setQuotaHashTag(String quotaHashTag) {
+		this.quotaHashTag = quotaHashTag;
+	}
+
+	@Override
+	public String toString() {
+		return "RedisRateLimiterProperties{" +
+				"scriptVersion=" + scriptVersion +
+				", migrateKeys=" + migrateKeys +
+				", batch=" + batch +
+				", denyCache=" + denyCache +
+				", quotaHashTag='" + quotaHashTag + '\'' +
+				'}';
+	}
+
+	public static class Batch {
+
+		/** If concurrent calls are sent to Redis in batches, refused on a Redis Cluster */
+		private boolean enabled = false;
+
+		/** Maximum number of calls sent to Redis in a batch */
+		private int maxSize = 64;
+
+		/** Time a call waits for other calls to join its batch */
+		private Duration window = Duration.ofMillis(1);
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getMaxSize() {
+			return maxSize;
+		}
+
+		public void setMaxSize(int maxSize) {
+			this.maxSize = maxSize;
+		}
+
+		public Duration getWindow() {
+			return window;
+		}
+
+		public void setWindow(Duration window) {
+			this.window = window;
+		}
+
+		@Override
+		public String toString() {
+			return "Batch{" +
+					"enabled=" + enabled +
+					", maxSize=" + maxSize +
+					", window=" + window +
+					'}';
+		}
+	}
+
+	public static class DenyCache {
+
+		/** If the keys denied by Redis are denied locally until their bucket refills */
+		private boolean enabled = false;
+
+		/** Maximum number of denied keys held, denials of other keys are not cached while it is full */
+		private int maxKeys = 10_000;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getMaxKeys() {
+			return maxKeys;
+		}
+
+		public void setMaxKeys(int maxKeys) {
+			this.maxKeys = maxKeys;
+		}
+
+		@Override
+		public String toString() {
+			return "DenyCache{" +
+					"enabled=" + enabled +
+					", maxKeys=" + maxKeys +
+					'}';
+		}
+	}
+}
@@ -18,14 +18,23 @@
 package org.springframework.cloud.gateway.discovery;
 
 import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 import org.springframework.cloud.client.discovery.DiscoveryClient;
 import org.springframework.cloud.gateway.filter.FilterDefinition;
 import org.springframework.cloud.gateway.filter.factory.RewritePathGatewayFilterFactory;
 import org.springframework.cloud.gateway.handler.predicate.PathRoutePredicateFactory;
 import org.springframework.cloud.gateway.handler.predicate.PredicateDefinition;
+import org.springframework.cloud.gateway.loadbalancer.ServiceInstanceCache;
 import org.springframework.cloud.gateway.route.RouteDefinition;
 import org.springframework.cloud.gateway.route.RouteDefinitionLocator;
+import org.springframework.lang.Nullable;
 
 import static org.springframework.cloud.gateway.filter.factory.RewritePathGatewayFilterFactory.REGEXP_KEY;
 import static org.springframework.cloud.gateway.filter.factory.RewritePathGatewayFilterFactory.REPLACEMENT_KEY;
@@ -42,50 +51,93 @@ import reactor.core.publisher.Flux;
  */
 public class DiscoveryClientRouteDefinitionLocator implements RouteDefinitionLocator {
 
+	private static final Log logger = LogFactory.getLog(DiscoveryClientRouteDefinitionLocator.class);
+
 	private final DiscoveryClient discoveryClient;
+	private final ServiceInstanceCache instances;
 	private final String routeIdPrefix;
+	private volatile Map<String, RouteDefinition> routeDefinitions = Collections.emptyMap();
 
 	public DiscoveryClientRouteDefinitionLocator(DiscoveryClient discoveryClient) {
+		this(discoveryClient, null);
+	}
+
+	/**
+	 * @param instances the cache to read the services from, instead of calling the
+	 * blocking DiscoveryClient every time the routes are collected
+	 */
+	public DiscoveryClientRouteDefinitionLocator(DiscoveryClient discoveryClient, @Nullable ServiceInstanceCache instances) {
 		this.discoveryClient = discoveryClient;
+		this.instances = instances;
 		this.routeIdPrefix = this.discoveryClient.getClass().getSimpleName() + "_";
 	}
 
 	@Override
 	public Flux<RouteDefinition> getRouteDefinitions() {
-		return Flux.fromIterable(discoveryClient.getServices())
-				.map(serviceId -> {
-					// 设置ID， url
-					RouteDefinition routeDefinition = new RouteDefinition();
-					routeDefinition.setId(this.routeIdPrefix + serviceId);
-					// LocadBalancerClientFilter 根据lb:// 前缀过滤处理，负载均衡，选择最终调用服务地址
-					routeDefinition.setUri(URI.create("lb://" + serviceId));
-
-					// add a predicate that matches the url at /serviceId
-					/*PredicateDefinition barePredicate = new PredicateDefinition();
-					barePredicate.setName(normalizePredicateName(PathRoutePredicate.class));
-					barePredicate.addArg(PATTERN_KEY, "/" + serviceId);
-					routeDefinition.getPredicates().add(barePredicate);*/
-
-					// add a predicate that matches the url at /serviceId/**
-					PredicateDefinition subPredicate = new PredicateDefinition();
-					subPredicate.setName(normalizeRoutePredicateName(PathRoutePredicateFactory.class));
-					subPredicate.addArg(PATTERN_KEY, "/" + serviceId + "/**");
-					routeDefinition.getPredicates().add(subPredicate);
-
-					//TODO: support for other default predicates
-
-					// add a filter that removes /serviceId by default
-					FilterDefinition filter = new FilterDefinition();
-					filter.setName(normalizeFilterFactoryName(RewritePathGatewayFilterFactory.class));
-					String regex = "/" + serviceId + "/(?<remaining>.*)";
-					String replacement = "/${remaining}";
-					filter.addArg(REGEXP_KEY, regex);
-					filter.addArg(REPLACEMENT_KEY, replacement);
-					routeDefinition.getFilters().add(filter);
-
-					//TODO: support for default filters
-
-					return routeDefinition;
-				});
+		Flux<String> serviceIds = this.instances == null ? Flux.fromIterable(discoveryClient.getServices())
+				: this.instances.getServices().flatMapIterable(services -> services);
+		return serviceIds.collectList()
+				.map(this::update)
+				.flatMapIterable(Map::values);
+	}
+
+	/**
+	 * Diffs the services with the previous ones: the definitions of the services that
+	 * were already there are kept, only the new services get a definition.
+	 */
+	private Map<String, RouteDefinition> update(List<String> serviceIds) {
+		Map<String, RouteDefinition> previous = this.routeDefinitions;
+		Map<String, RouteDefinition> routeDefinitions = new LinkedHashMap<>();
+		int added = 0;
+		for (String serviceId : serviceIds) {
+			RouteDefinition routeDefinition = previous.get(serviceId);
+			if (routeDefinition == null) {
+				routeDefinition = buildRouteDefinition(serviceId);
+				added++;
+			}
+			routeDefinitions.put(serviceId, routeDefinition);
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Discovered services: " + added + " added, "
+					+ (previous.size() + added - routeDefinitions.size()) + " removed, "
+					+ routeDefinitions.size() + " total");
+		}
+		this.routeDefinitions = routeDefinitions;
+		return routeDefinitions;
+	}
+
+	private RouteDefinition buildRouteDefinition(String serviceId) {
+		// 设置ID， url
+		RouteDefinition routeDefinition = new RouteDefinition();
+		routeDefinition.setId(this.routeIdPrefix + serviceId);
+		// LocadBalancerClientFilter 根据lb:// 前缀过滤处理，负载均衡，选择最终调用服务地址
+		routeDefinition.setUri(URI.create("lb://" + serviceId));
+
+		// add a predicate that matches the url at /serviceId
+		/*PredicateDefinition barePredicate = new PredicateDefinition();
+		barePredicate.setName(normalizePredicateName(PathRoutePredicate.class));
+		barePredicate.addArg(PATTERN_KEY, "/" + serviceId);
+		routeDefinition.getPredicates().add(barePredicate);*/
+
+		// add a predicate that matches the url at /serviceId/**
+		PredicateDefinition subPredicate = new PredicateDefinition();
+		subPredicate.setName(normalizeRoutePredicateName(PathRoutePredicateFactory.class));
+		subPredicate.addArg(PATTERN_KEY, "/" + serviceId + "/**");
+		routeDefinition.getPredicates().add(subPredicate);
+
+		//TODO: support for other default predicates
+
+		// add a filter that removes /serviceId by default
+		FilterDefinition filter = new FilterDefinition();
+		filter.setName(normalizeFilterFactoryName(RewritePathGatewayFilterFactory.class));
+		String regex = "/" + serviceId + "/(?<remaining>.*)";
+		String replacement = "/${remaining}";
+		filter.addArg(REGEXP_KEY, regex);
+		filter.addArg(REPLACEMENT_KEY, replacement);
+		routeDefinition.getFilters().add(filter);
+
+		//TODO: support for default filters
+
+		return routeDefinition;
 	}
 }
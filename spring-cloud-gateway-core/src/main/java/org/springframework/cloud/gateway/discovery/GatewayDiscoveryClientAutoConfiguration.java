@@ -16,12 +16,14 @@
 
 package org.springframework.cloud.gateway.discovery;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.AutoConfigureBefore;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.cloud.client.discovery.DiscoveryClient;
 import org.springframework.cloud.gateway.config.GatewayAutoConfiguration;
+import org.springframework.cloud.gateway.loadbalancer.ServiceInstanceCache;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.reactive.DispatcherHandler;
@@ -38,13 +40,16 @@ public class GatewayDiscoveryClientAutoConfiguration {
 	/**
 	 * 通过调用DiscoveryClient获取注册中心的服务列表，生成对应的RouteDefinition数组
 	 * @param discoveryClient
+	 * @param instances
 	 * @return
 	 */
 	@Bean
 	@ConditionalOnBean(DiscoveryClient.class)
 	@ConditionalOnProperty(name = "spring.cloud.gateway.discovery.locator.enabled")
-	public DiscoveryClientRouteDefinitionLocator discoveryClientRouteDefinitionLocator(DiscoveryClient discoveryClient) {
-		return new DiscoveryClientRouteDefinitionLocator(discoveryClient);
+	public DiscoveryClientRouteDefinitionLocator discoveryClientRouteDefinitionLocator(DiscoveryClient discoveryClient,
+			ObjectProvider<ServiceInstanceCache> instances) {
+		// 有实例缓存时从缓存读取服务列表，避免每次收集路由都同步调用注册中心
+		return new DiscoveryClientRouteDefinitionLocator(discoveryClient, instances.getIfAvailable());
 	}
 
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter;
+
+import java.net.URI;
+
+import org.springframework.cloud.gateway.loadbalancer.ActiveHealthChecker;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ServerWebExchange;
+
+import reactor.core.publisher.Mono;
+
+import static org.springframework.cloud.gateway.filter.LoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.isAlreadyRouted;
+
+/**
+ * 在负载均衡选择实例之后执行，目标地址被 {@link ActiveHealthChecker} 探测为不可用时，
+ * 不转发请求，直接返回 503 状态码。
+ */
+public class ActiveHealthCheckFilter implements GlobalFilter, Ordered {
+
+	public static final int ACTIVE_HEALTH_CHECK_FILTER_ORDER = LOAD_BALANCER_CLIENT_FILTER_ORDER + 1;
+
+	private final ActiveHealthChecker healthChecker;
+
+	public ActiveHealthCheckFilter(ActiveHealthChecker healthChecker) {
+		this.healthChecker = healthChecker;
+	}
+
+	@Override
+	public int getOrder() {
+		return ACTIVE_HEALTH_CHECK_FILTER_ORDER;
+	}
+
+	@Override
+	public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+		URI requestUrl = exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR);
+		if (requestUrl == null || isAlreadyRouted(exchange) || this.healthChecker.isHealthy(requestUrl)) {
+			return chain.filter(exchange);
+		}
+		exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+		return exchange.getResponse().setComplete();
+	}
+}
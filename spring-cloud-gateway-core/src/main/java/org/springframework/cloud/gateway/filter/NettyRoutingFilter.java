@@ -17,11 +17,14 @@
 
 package org.springframework.cloud.gateway.filter;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.HttpMethod;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
 import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter.Type;
+import org.springframework.cloud.gateway.support.FlushPolicy;
+import org.springframework.cloud.gateway.support.FlushPolicyResolver;
 import org.springframework.core.Ordered;
 import org.springframework.core.io.buffer.NettyDataBuffer;
 import org.springframework.http.HttpHeaders;
@@ -29,12 +32,14 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.ipc.netty.NettyPipeline;
 import reactor.ipc.netty.http.client.HttpClient;
 import reactor.ipc.netty.http.client.HttpClientRequest;
 
 import java.net.URI;
+import java.util.Collections;
 import java.util.List;
 
 import static org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter.filterRequest;
@@ -51,11 +56,20 @@ public class NettyRoutingFilter implements GlobalFilter, Ordered {
 
 	private final HttpClient httpClient;
 	private final ObjectProvider<List<HttpHeadersFilter>> headersFilters;
+	private final FlushPolicyResolver flushPolicies;
 
 	public NettyRoutingFilter(HttpClient httpClient,
 			ObjectProvider<List<HttpHeadersFilter>> headersFilters) {
+		this(httpClient, headersFilters,
+				new FlushPolicyResolver(Collections.emptyList(), FlushPolicy.each()));
+	}
+
+	public NettyRoutingFilter(HttpClient httpClient,
+			ObjectProvider<List<HttpHeadersFilter>> headersFilters,
+			FlushPolicyResolver flushPolicies) {
 		this.httpClient = httpClient;
 		this.headersFilters = headersFilters;
+		this.flushPolicies = flushPolicies;
 	}
 
 	@Override
@@ -91,16 +105,25 @@ public class NettyRoutingFilter implements GlobalFilter, Ordered {
 		final DefaultHttpHeaders httpHeaders = new DefaultHttpHeaders();
 		filtered.forEach(httpHeaders::set);
 
-		// 根据 Transfer-Encoding 字段决定传输编码方式
-		String transferEncoding = request.getHeaders().getFirst(HttpHeaders.TRANSFER_ENCODING);
-		boolean chunkedTransfer = "chunked".equalsIgnoreCase(transferEncoding);
+		// 根据 Transfer-Encoding / Content-Length 字段决定传输编码方式
+		// 有 Content-Length 的请求体按固定长度转发，不重新分块
+		boolean chunkedTransfer = isChunked(request.getHeaders());
+		long contentLength = request.getHeaders().getContentLength();
+		if (chunkedTransfer) {
+			httpHeaders.remove(HttpHeaders.CONTENT_LENGTH);
+		}
+		else if (contentLength >= 0) {
+			httpHeaders.set(HttpHeaders.CONTENT_LENGTH, contentLength);
+		}
 
 		// 是否保留host 信息， 应该是有http 请求绑定域名
 		boolean preserveHost = exchange.getAttributeOrDefault(PRESERVE_HOST_HEADER_ATTRIBUTE, false);
 
+		// 根据 FlushPolicy 决定请求体的 flush 时机
+		FlushPolicy flushPolicy = this.flushPolicies.resolve(exchange, request.getHeaders().getContentType());
+
 		return this.httpClient.request(method, url, req -> {
-			final HttpClientRequest proxyRequest = req.options(NettyPipeline.SendOptions::flushOnEach)
-					.headers(httpHeaders)
+			final HttpClientRequest proxyRequest = req.headers(httpHeaders)
 					.chunkedTransfer(chunkedTransfer)
 					.failOnServerError(false)
 					.failOnClientError(false); // 是否请求失败抛出异常
@@ -111,9 +134,21 @@ public class NettyRoutingFilter implements GlobalFilter, Ordered {
 				proxyRequest.header(HttpHeaders.HOST, host);
 			}
 
-			return proxyRequest.sendHeaders() //I shouldn't need this
-					.send(request.getBody().map(dataBuffer ->
-							((NettyDataBuffer)dataBuffer).getNativeBuffer()));
+			Flux<ByteBuf> body = request.getBody().map(dataBuffer ->
+					((NettyDataBuffer)dataBuffer).getNativeBuffer());
+
+			switch (flushPolicy.getMode()) {
+			case EACH:
+				return proxyRequest.options(NettyPipeline.SendOptions::flushOnEach)
+						.sendHeaders() //I shouldn't need this
+						.send(body);
+			case END:
+				return proxyRequest.sendHeaders() //I shouldn't need this
+						.send(body);
+			default:
+				return proxyRequest.sendHeaders() //I shouldn't need this
+						.sendGroups(flushPolicy.group(body, ByteBuf::readableBytes));
+			}
 		}).doOnNext(res -> {
 			ServerHttpResponse response = exchange.getResponse();
 			// put headers and status so filters can modify the response
@@ -125,6 +160,7 @@ public class NettyRoutingFilter implements GlobalFilter, Ordered {
 					this.headersFilters.getIfAvailable(), headers, exchange, Type.RESPONSE);
 			
 			response.getHeaders().putAll(filteredResponseHeaders);
+			preserveFraming(headers, response.getHeaders());
 			response.setStatusCode(HttpStatus.valueOf(res.status().code()));
 
 			// 设置 Response 到 CLIENT_RESPONSE_ATTR
@@ -133,4 +169,24 @@ public class NettyRoutingFilter implements GlobalFilter, Ordered {
 			exchange.getAttributes().put(CLIENT_RESPONSE_ATTR, res);
 		}).then(chain.filter(exchange));
 	}
+
+	/**
+	 * Keeps the client response framed like the upstream response: a fixed-length
+	 * upstream body is written with its Content-Length, a chunked one stays chunked.
+	 */
+	private void preserveFraming(HttpHeaders upstream, HttpHeaders response) {
+		if (isChunked(upstream)) {
+			// Transfer-Encoding wins over Content-Length, see RFC 7230 section 3.3.3
+			response.remove(HttpHeaders.CONTENT_LENGTH);
+		}
+		else if (upstream.getContentLength() >= 0) {
+			response.remove(HttpHeaders.TRANSFER_ENCODING);
+			response.setContentLength(upstream.getContentLength());
+		}
+	}
+
+	private static boolean isChunked(HttpHeaders headers) {
+		String transferEncoding = headers.getFirst(HttpHeaders.TRANSFER_ENCODING);
+		return "chunked".equalsIgnoreCase(transferEncoding);
+	}
 }
@@ -19,12 +19,13 @@ package org.springframework.cloud.gateway.filter;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.cloud.gateway.support.FlushPolicy;
+import org.springframework.cloud.gateway.support.FlushPolicyResolver;
 import org.springframework.core.Ordered;
 import org.springframework.core.io.buffer.NettyDataBuffer;
 import org.springframework.core.io.buffer.NettyDataBufferFactory;
 import org.springframework.http.MediaType;
 import org.springframework.http.server.reactive.ServerHttpResponse;
-import org.springframework.lang.Nullable;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -44,10 +45,14 @@ public class NettyWriteResponseFilter implements GlobalFilter, Ordered {
 
 	public static final int WRITE_RESPONSE_FILTER_ORDER = -1;
 
-	private final List<MediaType> streamingMediaTypes;
+	private final FlushPolicyResolver flushPolicies;
 
 	public NettyWriteResponseFilter(List<MediaType> streamingMediaTypes) {
-		this.streamingMediaTypes = streamingMediaTypes;
+		this(new FlushPolicyResolver(streamingMediaTypes, FlushPolicy.end()));
+	}
+
+	public NettyWriteResponseFilter(FlushPolicyResolver flushPolicies) {
+		this.flushPolicies = flushPolicies;
 	}
 
 	@Override
@@ -77,16 +82,13 @@ public class NettyWriteResponseFilter implements GlobalFilter, Ordered {
 					.map(factory::wrap);
 
 			MediaType contentType = response.getHeaders().getContentType();
-			return (isStreamingMediaType(contentType) ?
-					response.writeAndFlushWith(body.map(Flux::just)) : response.writeWith(body));
+			FlushPolicy flushPolicy = this.flushPolicies.resolve(exchange, contentType);
+			if (flushPolicy.getMode() == FlushPolicy.Mode.END) {
+				return response.writeWith(body);
+			}
+			//TODO: port to WebClientWriteResponseFilter
+			return response.writeAndFlushWith(flushPolicy.group(body, NettyDataBuffer::readableByteCount));
 		}));
 	}
 
-	//TODO: use framework if possible
-	//TODO: port to WebClientWriteResponseFilter
-	private boolean isStreamingMediaType(@Nullable MediaType contentType) {
-		return (contentType != null && this.streamingMediaTypes.stream()
-						.anyMatch(contentType::isCompatibleWith));
-	}
-
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter;
+
+import java.net.URI;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.gateway.loadbalancer.LoadBalancerStats;
+import org.springframework.cloud.gateway.loadbalancer.LoadBalancerStats.InstanceStats;
+import org.springframework.cloud.gateway.loadbalancer.OutlierDetector;
+import org.springframework.cloud.gateway.loadbalancer.ReactiveLoadBalancer;
+import org.springframework.cloud.gateway.support.NotFoundException;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.Nullable;
+import org.springframework.web.server.ServerWebExchange;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import static org.springframework.cloud.gateway.filter.LoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ALREADY_ROUTED_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_SCHEME_PREFIX_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.addOriginalRequestUrl;
+
+/**
+ * 与 {@link LoadBalancerClientFilter} 相同，根据 lb:// 前缀过滤处理，
+ * 但通过非阻塞的 {@link ReactiveLoadBalancer} 选择服务实例，并记录每个实例未完成的请求数、响应延迟及请求结果。
+ */
+public class ReactiveLoadBalancerClientFilter implements GlobalFilter, Ordered {
+
+	private static final Log log = LogFactory.getLog(ReactiveLoadBalancerClientFilter.class);
+
+	private final ReactiveLoadBalancer loadBalancer;
+
+	private final LoadBalancerStats stats;
+
+	private final OutlierDetector outlierDetector;
+
+	public ReactiveLoadBalancerClientFilter(ReactiveLoadBalancer loadBalancer, LoadBalancerStats stats) {
+		this(loadBalancer, stats, null);
+	}
+
+	public ReactiveLoadBalancerClientFilter(ReactiveLoadBalancer loadBalancer, LoadBalancerStats stats,
+			@Nullable OutlierDetector outlierDetector) {
+		this.loadBalancer = loadBalancer;
+		this.stats = stats;
+		this.outlierDetector = outlierDetector;
+	}
+
+	@Override
+	public int getOrder() {
+		return LOAD_BALANCER_CLIENT_FILTER_ORDER;
+	}
+
+	@Override
+	public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+		URI url = exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR);
+		String schemePrefix = exchange.getAttribute(GATEWAY_SCHEME_PREFIX_ATTR);
+		if (url == null || (!"lb".equals(url.getScheme()) && !"lb".equals(schemePrefix))) {
+			return chain.filter(exchange);
+		}
+		//preserve the original url
+		addOriginalRequestUrl(exchange, url);
+
+		log.trace("ReactiveLoadBalancerClientFilter url before: " + url);
+
+		return this.loadBalancer.choose(url.getHost(), exchange)
+				.switchIfEmpty(Mono.defer(() -> Mono.error(
+						new NotFoundException("Unable to find instance for " + url.getHost()))))
+				.flatMap(instance -> {
+					// if the `lb:<scheme>` mechanism was used, use `<scheme>` as the default,
+					// if the loadbalancer doesn't provide one.
+					String overrideScheme = schemePrefix != null ? url.getScheme() : null;
+					URI requestUrl = reconstructURI(instance, overrideScheme, exchange.getRequest().getURI());
+
+					log.trace("ReactiveLoadBalancerClientFilter url chosen: " + requestUrl);
+					exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR, requestUrl);
+					// a re-subscription, by the Retry filter for instance, is a new attempt
+					// to the instance chosen again, which has to be routed again
+					exchange.getAttributes().remove(GATEWAY_ALREADY_ROUTED_ATTR);
+
+					InstanceStats instanceStats = this.stats.getStats(instance);
+					instanceStats.incrementOutstanding();
+					long start = System.nanoTime();
+					// NettyRoutingFilter completes once the response of the instance is received,
+					// a failure counts as well so that an instance timing out is avoided
+					return chain.filter(exchange)
+							.doFinally(signal -> {
+								if (signal != SignalType.CANCEL) {
+									instanceStats.recordLatency(System.nanoTime() - start);
+									recordOutcome(instance, exchange, signal);
+								}
+								instanceStats.decrementOutstanding();
+							});
+				});
+	}
+
+	private void recordOutcome(ServiceInstance instance, ServerWebExchange exchange, SignalType signal) {
+		if (this.outlierDetector == null) {
+			return;
+		}
+		// 连接失败、超时，或者实例返回 5xx 状态码
+		HttpStatus status = exchange.getResponse().getStatusCode();
+		if (signal == SignalType.ON_ERROR || (status != null && status.is5xxServerError())) {
+			this.outlierDetector.recordFailure(instance);
+		}
+		else {
+			this.outlierDetector.recordSuccess(instance);
+		}
+	}
+
+	static URI reconstructURI(ServiceInstance instance, String overrideScheme, URI original) {
+		String scheme = instance.getScheme();
+		if (scheme == null) {
+			scheme = overrideScheme != null ? overrideScheme : original.getScheme();
+		}
+		if (instance.isSecure()) {
+			if ("http".equals(scheme)) {
+				scheme = "https";
+			}
+			else if ("ws".equals(scheme)) {
+				scheme = "wss";
+			}
+		}
+
+		StringBuilder uri = new StringBuilder(scheme).append("://");
+		if (original.getRawUserInfo() != null) {
+			uri.append(original.getRawUserInfo()).append('@');
+		}
+		uri.append(instance.getHost());
+		if (instance.getPort() >= 0) {
+			uri.append(':').append(instance.getPort());
+		}
+		if (original.getRawPath() != null) {
+			uri.append(original.getRawPath());
+		}
+		if (original.getRawQuery() != null) {
+			uri.append('?').append(original.getRawQuery());
+		}
+		if (original.getRawFragment() != null) {
+			uri.append('#').append(original.getRawFragment());
+		}
+		return URI.create(uri.toString());
+	}
+}
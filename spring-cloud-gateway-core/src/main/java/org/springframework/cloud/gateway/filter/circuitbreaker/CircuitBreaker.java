@@ -0,0 +1,286 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.circuitbreaker;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+/**
+ * A circuit breaker without locks nor threads. In the closed state, the outcome of
+ * the calls is counted over a sliding time window split in buckets; when at least the
+ * minimum number of calls were made and the failure rate or the rate of slow calls
+ * reaches its threshold, the circuit opens and calls are rejected. After the open
+ * duration, a limited number of probe calls are permitted (half-open): if they fail
+ * or are slow at the same rates the circuit opens again, otherwise it closes.
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private static final int BUCKETS = 10;
+
+	private final String name;
+
+	private final float failureRateThreshold;
+
+	private final float slowCallRateThreshold;
+
+	private final long slowCallNanos;
+
+	private final long bucketNanos;
+
+	private final int minimumCalls;
+
+	private final long openNanos;
+
+	private final int halfOpenCalls;
+
+	private final LongSupplier nanoClock;
+
+	private final AtomicReference<Status> status;
+
+	public CircuitBreaker(String name, float failureRateThreshold, float slowCallRateThreshold,
+			Duration slowCallDuration, Duration window, int minimumCalls, Duration openDuration, int halfOpenCalls) {
+		this(name, failureRateThreshold, slowCallRateThreshold, slowCallDuration, window, minimumCalls,
+				openDuration, halfOpenCalls, System::nanoTime);
+	}
+
+	/**
+	 * @param failureRateThreshold percentage of failed calls opening the circuit
+	 * @param slowCallRateThreshold percentage of calls slower than the slow call
+	 * duration opening the circuit, 100 or more to ignore slow calls
+	 */
+	CircuitBreaker(String name, float failureRateThreshold, float slowCallRateThreshold, Duration slowCallDuration,
+			Duration window, int minimumCalls, Duration openDuration, int halfOpenCalls, LongSupplier nanoClock) {
+		if (failureRateThreshold <= 0 || failureRateThreshold > 100) {
+			throw new IllegalArgumentException("failureRateThreshold must be in (0, 100], was " + failureRateThreshold);
+		}
+		if (minimumCalls < 1 || halfOpenCalls < 1) {
+			throw new IllegalArgumentException("minimumCalls and halfOpenCalls must be positive");
+		}
+		this.name = name;
+		this.failureRateThreshold = failureRateThreshold;
+		this.slowCallRateThreshold = slowCallRateThreshold;
+		this.slowCallNanos = slowCallDuration.toNanos();
+		this.bucketNanos = Math.max(window.toNanos() / BUCKETS, 1);
+		this.minimumCalls = minimumCalls;
+		this.openNanos = openDuration.toNanos();
+		this.halfOpenCalls = halfOpenCalls;
+		this.nanoClock = nanoClock;
+		this.status = new AtomicReference<>(closed());
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public State getState() {
+		return this.status.get().state;
+	}
+
+	/**
+	 * @return a permit to make a call, to be released with {@link #onSuccess},
+	 * {@link #onFailure} or {@link #release}, or {@code null} if the call is rejected
+	 */
+	public Permit tryAcquire() {
+		while (true) {
+			Status current = this.status.get();
+			switch (current.state) {
+			case CLOSED:
+				return new Permit(current, this.nanoClock.getAsLong());
+			case OPEN:
+				if (this.nanoClock.getAsLong() - current.since < this.openNanos) {
+					return null;
+				}
+				this.status.compareAndSet(current, halfOpen());
+				break;
+			default:
+				if (current.permits.getAndDecrement() > 0) {
+					return new Permit(current, this.nanoClock.getAsLong());
+				}
+				current.permits.getAndIncrement();
+				return null;
+			}
+		}
+	}
+
+	public void onSuccess(Permit permit) {
+		record(permit, false);
+	}
+
+	public void onFailure(Permit permit) {
+		record(permit, true);
+	}
+
+	/**
+	 * Gives the permit back without counting the call, when it was cancelled.
+	 */
+	public void release(Permit permit) {
+		if (permit.status.state == State.HALF_OPEN && permit.status == this.status.get()) {
+			permit.status.permits.incrementAndGet();
+		}
+	}
+
+	private void record(Permit permit, boolean failure) {
+		Status status = permit.status;
+		if (status != this.status.get()) {
+			// the state changed meanwhile, the call says nothing about the new one
+			return;
+		}
+		long now = this.nanoClock.getAsLong();
+		boolean slow = now - permit.start >= this.slowCallNanos;
+		Bucket bucket = status.bucket(now, this.bucketNanos);
+		bucket.record(failure, slow);
+		if (status.state == State.HALF_OPEN) {
+			if (bucket.calls.get() < this.halfOpenCalls) {
+				return;
+			}
+			this.status.compareAndSet(status, isTripped(bucket.calls.get(), bucket.failures.get(), bucket.slow.get())
+					? open(now) : closed());
+			return;
+		}
+		int calls = 0;
+		int failures = 0;
+		int slowCalls = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			Bucket other = status.buckets.get(i);
+			if (other != null && now - other.start < BUCKETS * this.bucketNanos) {
+				calls += other.calls.get();
+				failures += other.failures.get();
+				slowCalls += other.slow.get();
+			}
+		}
+		if (calls >= this.minimumCalls && isTripped(calls, failures, slowCalls)) {
+			this.status.compareAndSet(status, open(now));
+		}
+	}
+
+	private boolean isTripped(int calls, int failures, int slowCalls) {
+		return failures * 100f >= this.failureRateThreshold * calls
+				|| (this.slowCallRateThreshold < 100 && slowCalls * 100f >= this.slowCallRateThreshold * calls);
+	}
+
+	private Status closed() {
+		return new Status(State.CLOSED, this.nanoClock.getAsLong(), BUCKETS, 0);
+	}
+
+	private Status open(long now) {
+		return new Status(State.OPEN, now, 0, 0);
+	}
+
+	private Status halfOpen() {
+		// a single bucket counts the probe calls, whenever they complete
+		return new Status(State.HALF_OPEN, this.nanoClock.getAsLong(), 1, this.halfOpenCalls);
+	}
+
+	@Override
+	public String toString() {
+		return "CircuitBreaker{" + "name='" + this.name + '\'' + ", state=" + getState() + '}';
+	}
+
+	/**
+	 * The right to make a call, bound to the state it was acquired in.
+	 */
+	public static final class Permit {
+
+		private final Status status;
+
+		private final long start;
+
+		Permit(Status status, long start) {
+			this.status = status;
+			this.start = start;
+		}
+	}
+
+	/**
+	 * A state and its counters, replaced as a whole on every transition.
+	 */
+	private static final class Status {
+
+		final State state;
+
+		final long since;
+
+		final AtomicReferenceArray<Bucket> buckets;
+
+		final AtomicInteger permits;
+
+		Status(State state, long since, int buckets, int permits) {
+			this.state = state;
+			this.since = since;
+			this.buckets = new AtomicReferenceArray<>(buckets);
+			this.permits = new AtomicInteger(permits);
+		}
+
+		Bucket bucket(long now, long bucketNanos) {
+			if (this.buckets.length() == 1) {
+				Bucket bucket = this.buckets.get(0);
+				if (bucket == null) {
+					this.buckets.compareAndSet(0, null, new Bucket(now));
+					bucket = this.buckets.get(0);
+				}
+				return bucket;
+			}
+			long epoch = Math.floorDiv(now - this.since, bucketNanos);
+			int index = (int) Math.floorMod(epoch, (long) this.buckets.length());
+			long start = this.since + epoch * bucketNanos;
+			while (true) {
+				Bucket bucket = this.buckets.get(index);
+				if (bucket != null && bucket.start == start) {
+					return bucket;
+				}
+				if (bucket != null && bucket.start - start > 0) {
+					// a late call of a bucket already recycled counts in the current one
+					return bucket;
+				}
+				this.buckets.compareAndSet(index, bucket, new Bucket(start));
+			}
+		}
+	}
+
+	private static final class Bucket {
+
+		final long start;
+
+		final AtomicInteger calls = new AtomicInteger();
+
+		final AtomicInteger failures = new AtomicInteger();
+
+		final AtomicInteger slow = new AtomicInteger();
+
+		Bucket(long start) {
+			this.start = start;
+		}
+
+		void record(boolean failure, boolean slow) {
+			if (failure) {
+				this.failures.incrementAndGet();
+			}
+			if (slow) {
+				this.slow.incrementAndGet();
+			}
+			this.calls.incrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.concurrency;
+
+/**
+ * A concurrency limit adjusted from the round trip times of the calls it lets through.
+ * Implementations must be safe to update from many threads without locking.
+ */
+public interface AdaptiveLimit {
+
+	/**
+	 * @return the number of calls currently allowed in flight
+	 */
+	int getLimit();
+
+	/**
+	 * Adjusts the limit after a call completed.
+	 * @param rttNanos the round trip time of the call
+	 * @param inFlight the number of calls in flight when the call started, itself included
+	 * @param dropped whether the call failed or was shed by the upstream
+	 */
+	void onSample(long rttNanos, int inFlight, boolean dropped);
+
+}
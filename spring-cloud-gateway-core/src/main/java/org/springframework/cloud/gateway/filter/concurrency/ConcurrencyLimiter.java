@@ -0,0 +1,259 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.concurrency;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Limits the calls in flight to an {@link AdaptiveLimit}. Calls over the limit wait in
+ * a bounded queue, for at most the maximum wait, or are rejected right away when the
+ * queue is full. Waiting calls are served in order and before new calls. Neither
+ * acquiring nor releasing a permit takes a lock.
+ */
+public class ConcurrencyLimiter {
+
+	private static final int PENDING = 0;
+
+	private static final int GRANTED = 1;
+
+	private static final int DONE = 2;
+
+	private final String name;
+
+	private final AdaptiveLimit limit;
+
+	private final int maxQueued;
+
+	private final long maxWaitNanos;
+
+	private final Scheduler scheduler;
+
+	private final LongSupplier nanoClock;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private final AtomicInteger queued = new AtomicInteger();
+
+	private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+
+	public ConcurrencyLimiter(String name, AdaptiveLimit limit, int maxQueued, Duration maxWait) {
+		this(name, limit, maxQueued, maxWait, Schedulers.parallel(), System::nanoTime);
+	}
+
+	ConcurrencyLimiter(String name, AdaptiveLimit limit, int maxQueued, Duration maxWait, Scheduler scheduler,
+			LongSupplier nanoClock) {
+		if (maxQueued < 0) {
+			throw new IllegalArgumentException("maxQueued must not be negative, was " + maxQueued);
+		}
+		this.name = name;
+		this.limit = limit;
+		this.maxQueued = maxQueued;
+		this.maxWaitNanos = maxWait.toNanos();
+		this.scheduler = scheduler;
+		this.nanoClock = nanoClock;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getLimit() {
+		return this.limit.getLimit();
+	}
+
+	public int getInFlight() {
+		return this.inFlight.get();
+	}
+
+	public int getQueued() {
+		return this.queued.get();
+	}
+
+	/**
+	 * @return a permit, or null when the limit is reached
+	 */
+	public Permit tryAcquire() {
+		for (;;) {
+			int current = this.inFlight.get();
+			if (current >= this.limit.getLimit()) {
+				return null;
+			}
+			if (this.inFlight.compareAndSet(current, current + 1)) {
+				return new Permit(this.nanoClock.getAsLong(), current + 1);
+			}
+		}
+	}
+
+	/**
+	 * @return a permit, possibly after waiting in the queue, or an empty Mono when the
+	 * call is rejected
+	 */
+	public Mono<Permit> acquire() {
+		if (this.queued.get() == 0) {
+			Permit permit = tryAcquire();
+			if (permit != null) {
+				return Mono.just(permit);
+			}
+		}
+		if (this.maxQueued == 0 || this.maxWaitNanos <= 0) {
+			return Mono.empty();
+		}
+		return Mono.create(sink -> {
+			if (!reserveQueueSlot()) {
+				sink.success();
+				return;
+			}
+			Waiter waiter = new Waiter(sink);
+			waiter.timeout = this.scheduler.schedule(waiter::expire, this.maxWaitNanos, TimeUnit.NANOSECONDS);
+			sink.onCancel(waiter::cancel);
+			this.waiters.offer(waiter);
+			// a permit may have been released before the waiter was queued
+			drain();
+		});
+	}
+
+	/**
+	 * Releases the permit of a call that completed normally.
+	 */
+	public void onSuccess(Permit permit) {
+		this.limit.onSample(this.nanoClock.getAsLong() - permit.start, permit.inFlight, false);
+		release(permit);
+	}
+
+	/**
+	 * Releases the permit of a call that failed or was shed by the upstream.
+	 */
+	public void onDropped(Permit permit) {
+		this.limit.onSample(this.nanoClock.getAsLong() - permit.start, permit.inFlight, true);
+		release(permit);
+	}
+
+	/**
+	 * Releases the permit of a call whose outcome is unknown, such as a cancelled call,
+	 * without adjusting the limit.
+	 */
+	public void release(Permit permit) {
+		this.inFlight.decrementAndGet();
+		drain();
+	}
+
+	private boolean reserveQueueSlot() {
+		for (;;) {
+			int current = this.queued.get();
+			if (current >= this.maxQueued) {
+				return false;
+			}
+			if (this.queued.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	private void drain() {
+		while (!this.waiters.isEmpty()) {
+			Permit permit = tryAcquire();
+			if (permit == null) {
+				return;
+			}
+			Waiter waiter = this.waiters.poll();
+			while (waiter != null && !waiter.grant(permit)) {
+				waiter = this.waiters.poll();
+			}
+			if (waiter == null) {
+				// the waiters left meanwhile, give the permit back
+				this.inFlight.decrementAndGet();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ConcurrencyLimiter{name='" + name + "', limit=" + getLimit() + ", inFlight=" + getInFlight()
+				+ ", queued=" + getQueued() + "}";
+	}
+
+	public static final class Permit {
+
+		private final long start;
+
+		private final int inFlight;
+
+		private Permit(long start, int inFlight) {
+			this.start = start;
+			this.inFlight = inFlight;
+		}
+	}
+
+	private final class Waiter {
+
+		private final MonoSink<Permit> sink;
+
+		private final AtomicInteger state = new AtomicInteger(PENDING);
+
+		private volatile Disposable timeout;
+
+		private volatile Permit permit;
+
+		private Waiter(MonoSink<Permit> sink) {
+			this.sink = sink;
+		}
+
+		private boolean grant(Permit permit) {
+			this.permit = permit;
+			if (!this.state.compareAndSet(PENDING, GRANTED)) {
+				return false;
+			}
+			queued.decrementAndGet();
+			this.timeout.dispose();
+			// the time spent in the queue is not part of the round trip time
+			this.sink.success(new Permit(nanoClock.getAsLong(), permit.inFlight));
+			return true;
+		}
+
+		private void expire() {
+			if (this.state.compareAndSet(PENDING, DONE)) {
+				queued.decrementAndGet();
+				waiters.remove(this);
+				this.sink.success();
+			}
+		}
+
+		private void cancel() {
+			if (this.state.compareAndSet(PENDING, DONE)) {
+				queued.decrementAndGet();
+				waiters.remove(this);
+				this.timeout.dispose();
+			}
+			else if (this.state.get() == GRANTED) {
+				// cancelled before the permit could be delivered
+				release(this.permit);
+			}
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.concurrency;
+
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Publishes the limit, the calls in flight and queued, and the rejected calls of the
+ * concurrency limiters to Micrometer.
+ */
+public class ConcurrencyLimiterMetrics {
+
+	public static final String LIMIT = "gateway.concurrency.limit";
+
+	public static final String IN_FLIGHT = "gateway.concurrency.inflight";
+
+	public static final String QUEUED = "gateway.concurrency.queued";
+
+	public static final String REJECTIONS = "gateway.concurrency.rejections";
+
+	private final MeterRegistry registry;
+
+	public ConcurrencyLimiterMetrics(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	/**
+	 * Publishes the gauges of the limiter with the given name. The limiters are looked up
+	 * by name so that the gauges follow a limiter replaced when its route is redefined.
+	 */
+	public void monitor(String name, Map<String, ConcurrencyLimiter> limiters) {
+		gauge(LIMIT, name, limiters, ConcurrencyLimiter::getLimit);
+		gauge(IN_FLIGHT, name, limiters, ConcurrencyLimiter::getInFlight);
+		gauge(QUEUED, name, limiters, ConcurrencyLimiter::getQueued);
+	}
+
+	public void rejected(ConcurrencyLimiter limiter) {
+		this.registry.counter(REJECTIONS, Tags.of("name", limiter.getName())).increment();
+	}
+
+	private void gauge(String meter, String name, Map<String, ConcurrencyLimiter> limiters,
+			ToIntFunction<ConcurrencyLimiter> value) {
+		this.registry.gauge(meter, Tags.of("name", name), limiters, map -> {
+			ConcurrencyLimiter limiter = map.get(name);
+			return limiter == null ? Double.NaN : value.applyAsInt(limiter);
+		});
+	}
+}
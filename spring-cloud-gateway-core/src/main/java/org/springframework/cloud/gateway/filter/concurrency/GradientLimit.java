@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.concurrency;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Follows the gradient between a long term average of the round trip time and the
+ * latest sample: while latencies stay within the tolerance of the average the limit
+ * grows by its square root, as they rise above it the limit shrinks proportionally
+ * (down to half per sample). Dropped calls halve the gradient. The long term average
+ * decays quickly once latencies fall back, so that a period of overload is not taken
+ * for the new normal.
+ */
+public class GradientLimit implements AdaptiveLimit {
+
+	private static final int LONG_WINDOW = 600;
+
+	private static final double SMOOTHING = 0.2;
+
+	private final int minLimit;
+
+	private final int maxLimit;
+
+	private final double tolerance;
+
+	private final AtomicReference<Estimate> estimate;
+
+	/**
+	 * @param tolerance how much the latency may exceed its long term average before the
+	 * limit shrinks, 1.5 tolerates 50% more
+	 */
+	public GradientLimit(int initialLimit, int minLimit, int maxLimit, double tolerance) {
+		if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+			throw new IllegalArgumentException("Limits must satisfy 1 <= min <= initial <= max, were "
+					+ minLimit + ", " + initialLimit + ", " + maxLimit);
+		}
+		if (tolerance < 1) {
+			throw new IllegalArgumentException("tolerance must be at least 1, was " + tolerance);
+		}
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.tolerance = tolerance;
+		this.estimate = new AtomicReference<>(new Estimate(initialLimit, 0, 0));
+	}
+
+	@Override
+	public int getLimit() {
+		return (int) this.estimate.get().limit;
+	}
+
+	@Override
+	public void onSample(long rttNanos, int inFlight, boolean dropped) {
+		if (rttNanos <= 0) {
+			return;
+		}
+		for (;;) {
+			Estimate current = this.estimate.get();
+			if (this.estimate.compareAndSet(current, next(current, rttNanos, inFlight, dropped))) {
+				return;
+			}
+		}
+	}
+
+	private Estimate next(Estimate current, long rtt, int inFlight, boolean dropped) {
+		int samples = Math.min(current.samples + 1, LONG_WINDOW);
+		double longRtt = current.samples == 0 ? rtt : current.longRtt + (rtt - current.longRtt) / samples;
+		if (longRtt / rtt > 2) {
+			// latencies recovered, forget the overload faster than the window would
+			longRtt *= 0.95;
+		}
+
+		double limit = current.limit;
+		if (!dropped && inFlight < limit / 2) {
+			// a limit that is not used says nothing about the capacity of the upstream
+			return new Estimate(limit, longRtt, samples);
+		}
+
+		double gradient = Math.max(0.5, Math.min(1.0, this.tolerance * longRtt / rtt));
+		if (dropped) {
+			gradient = 0.5;
+		}
+		double newLimit = limit * gradient + Math.sqrt(limit);
+		newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+		newLimit = Math.max(this.minLimit, Math.min(this.maxLimit, newLimit));
+		return new Estimate(newLimit, longRtt, samples);
+	}
+
+	@Override
+	public String toString() {
+		return "GradientLimit{limit=" + getLimit() + "}";
+	}
+
+	private static final class Estimate {
+
+		private final double limit;
+
+		private final double longRtt;
+
+		private final int samples;
+
+		private Estimate(double limit, double longRtt, int samples) {
+			this.limit = limit;
+			this.longRtt = longRtt;
+			this.samples = samples;
+		}
+	}
+}
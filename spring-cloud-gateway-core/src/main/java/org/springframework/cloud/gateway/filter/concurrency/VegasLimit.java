@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.concurrency;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Estimates, as TCP Vegas does, the number of calls queued at the upstream from the
+ * ratio between the lowest round trip time seen (the time without load) and the latest
+ * one. The limit grows while fewer than alpha calls queue and shrinks once more than
+ * beta do, both scaled with the logarithm of the limit. The lowest round trip time is
+ * probed again from time to time, so that a faster upstream does not stay stuck with
+ * the estimate of a slower one.
+ */
+public class VegasLimit implements AdaptiveLimit {
+
+	private static final int PROBE_MULTIPLIER = 30;
+
+	private final int minLimit;
+
+	private final int maxLimit;
+
+	private final AtomicReference<Estimate> estimate;
+
+	public VegasLimit(int initialLimit, int minLimit, int maxLimit) {
+		if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+			throw new IllegalArgumentException("Limits must satisfy 1 <= min <= initial <= max, were "
+					+ minLimit + ", " + initialLimit + ", " + maxLimit);
+		}
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.estimate = new AtomicReference<>(new Estimate(initialLimit, 0, nextProbe(initialLimit)));
+	}
+
+	@Override
+	public int getLimit() {
+		return (int) this.estimate.get().limit;
+	}
+
+	@Override
+	public void onSample(long rttNanos, int inFlight, boolean dropped) {
+		if (rttNanos <= 0) {
+			return;
+		}
+		for (;;) {
+			Estimate current = this.estimate.get();
+			if (this.estimate.compareAndSet(current, next(current, rttNanos, inFlight, dropped))) {
+				return;
+			}
+		}
+	}
+
+	private Estimate next(Estimate current, long rtt, int inFlight, boolean dropped) {
+		double limit = current.limit;
+		if (current.probeIn <= 0) {
+			// start over from the current latency
+			return new Estimate(limit, rtt, nextProbe(limit));
+		}
+		long rttNoLoad = current.rttNoLoad == 0 ? rtt : Math.min(current.rttNoLoad, rtt);
+		int probeIn = current.probeIn - 1;
+
+		double log = Math.max(1, Math.log10(limit));
+		double newLimit;
+		if (dropped) {
+			newLimit = limit - log;
+		}
+		else if (inFlight * 2 < limit) {
+			// a limit that is not used says nothing about the capacity of the upstream
+			return new Estimate(limit, rttNoLoad, probeIn);
+		}
+		else {
+			double queued = Math.ceil(limit * (1 - (double) rttNoLoad / rtt));
+			if (queued <= log) {
+				newLimit = limit + 6 * log;
+			}
+			else if (queued < 3 * log) {
+				newLimit = limit + log;
+			}
+			else if (queued > 6 * log) {
+				newLimit = limit - log;
+			}
+			else {
+				newLimit = limit;
+			}
+		}
+		newLimit = Math.max(this.minLimit, Math.min(this.maxLimit, newLimit));
+		return new Estimate(newLimit, rttNoLoad, probeIn);
+	}
+
+	private static int nextProbe(double limit) {
+		// jittered so that the gateways in front of an upstream do not probe at once
+		return (int) (PROBE_MULTIPLIER * limit * ThreadLocalRandom.current().nextDouble(0.5, 1));
+	}
+
+	@Override
+	public String toString() {
+		return "VegasLimit{limit=" + getLimit() + "}";
+	}
+
+	private static final class Estimate {
+
+		private final double limit;
+
+		private final long rttNoLoad;
+
+		private final int probeIn;
+
+		private Estimate(double limit, long rttNoLoad, int probeIn) {
+			this.limit = limit;
+			this.rttNoLoad = rttNoLoad;
+			this.probeIn = probeIn;
+		}
+	}
+}
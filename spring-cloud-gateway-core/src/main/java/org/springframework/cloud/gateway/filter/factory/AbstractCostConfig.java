@@ -0,0 +1,81 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.factory;
+
+import org.springframework.cloud.gateway.filter.ratelimit.CostResolver;
+import org.springframework.cloud.gateway.filter.ratelimit.ExpressionCostResolver;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * The number of tokens a request takes, shared by the configurations of the rate
+ * limiting filters.
+ * 限流过滤器配置中请求消耗的令牌数
+ */
+public abstract class AbstractCostConfig<C extends AbstractCostConfig<C>> {
+	// 每个请求消耗的令牌数
+	private int cost = 1;
+	// 按请求解析消耗的令牌数，优先于 cost
+	private CostResolver costResolver;
+	// 计算消耗令牌数的 SpEL 表达式，根对象为 ServerWebExchange ，未配置 costResolver 时生效
+	private String costExpression;
+
+	public int getCost() {
+		return cost;
+	}
+
+	public C setCost(int cost) {
+		this.cost = cost;
+		return self();
+	}
+
+	public CostResolver getCostResolver() {
+		return costResolver;
+	}
+
+	public C setCostResolver(CostResolver costResolver) {
+		this.costResolver = costResolver;
+		return self();
+	}
+
+	public String getCostExpression() {
+		return costExpression;
+	}
+
+	public C setCostExpression(String costExpression) {
+		this.costExpression = costExpression;
+		return self();
+	}
+
+	/**
+	 * @return the resolver of the tokens a request takes, at least one
+	 */
+	CostResolver resolveCost() {
+		int cost = this.cost;
+		CostResolver resolver = (this.costResolver != null) ? this.costResolver
+				: (this.costExpression != null) ? new ExpressionCostResolver(this.costExpression)
+				: exchange -> Mono.just(cost);
+		// 请求至少消耗一个令牌
+		return exchange -> resolver.resolve(exchange).defaultIfEmpty(1).map(tokens -> Math.max(1, tokens));
+	}
+
+	@SuppressWarnings("unchecked")
+	private C self() {
+		return (C) this;
+	}
+}
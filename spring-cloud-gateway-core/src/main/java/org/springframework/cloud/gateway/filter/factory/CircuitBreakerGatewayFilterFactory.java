@@ -0,0 +1,322 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.factory;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.circuitbreaker.CircuitBreaker;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.DispatcherHandler;
+import org.springframework.web.server.ServerWebExchange;
+
+import reactor.core.publisher.Mono;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.fallbackExchange;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.setResponseStatus;
+
+/**
+ * 基于 Reactor 实现的 Route 级别熔断，不依赖 Hystrix 与 RxJava，也不创建线程。
+ * 按滑动时间窗口统计失败率与慢调用比例，超过阈值后熔断，等待一段时间后放行少量探测请求（半开）。
+ * 熔断或出错时转发到 fallbackUri，超时且没有 fallbackUri 时返回 504，熔断且没有 fallbackUri 时返回 503。
+ * spring:
+ *   cloud:
+ *     gateway:
+ *       routes:
+ *       - id: default_path_to_httpbin
+ *         uri: http://127.0.0.1:8081
+ *         predicates:
+ *         - Path=/**
+ *         filters:
+ *         - name: CircuitBreaker
+ *           args:
+ *             name: httpbin
+ *             timeout: 5s
+ *             fallbackUri: forward:/fallback
+ */
+public class CircuitBreakerGatewayFilterFactory extends AbstractGatewayFilterFactory<CircuitBreakerGatewayFilterFactory.Config> {
+
+	public static final String FALLBACK_URI = "fallbackUri";
+
+	private final DispatcherHandler dispatcherHandler;
+
+	private final ConcurrentMap<String, Registration> circuitBreakers = new ConcurrentHashMap<>();
+
+	public CircuitBreakerGatewayFilterFactory(DispatcherHandler dispatcherHandler) {
+		super(Config.class);
+		this.dispatcherHandler = dispatcherHandler;
+	}
+
+	@Override
+	public List<String> shortcutFieldOrder() {
+		return Arrays.asList(NAME_KEY);
+	}
+
+	/**
+	 * @return the circuit breakers by name
+	 */
+	public Map<String, CircuitBreaker> getCircuitBreakers() {
+		Map<String, CircuitBreaker> circuitBreakers = new TreeMap<>();
+		this.circuitBreakers.forEach((name, registration) -> circuitBreakers.put(name, registration.circuitBreaker));
+		return Collections.unmodifiableMap(circuitBreakers);
+	}
+
+	@Override
+	public GatewayFilter apply(Config config) {
+		List<Object> settings = settings(config);
+		if (config.name != null) {
+			// 路由刷新时，配置未变的熔断器保留其状态
+			getCircuitBreaker(config.name, config, settings);
+		}
+		return (exchange, chain) -> {
+			CircuitBreaker circuitBreaker = getCircuitBreaker(config, exchange, settings);
+			CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+			if (permit == null) {
+				if (config.fallbackUri != null) {
+					return fallback(config.fallbackUri, exchange);
+				}
+				setResponseStatus(exchange, HttpStatus.SERVICE_UNAVAILABLE);
+				return exchange.getResponse().setComplete();
+			}
+
+			Mono<Void> call = chain.filter(exchange);
+			if (config.timeout != null) {
+				call = call.timeout(config.timeout);
+			}
+			// 在 onErrorResume 写出 504 或 fallback 响应之前记录调用结果
+			return call.doOnSuccess(aVoid -> {
+						if (isFailureStatus(config, exchange)) {
+							circuitBreaker.onFailure(permit);
+						}
+						else {
+							circuitBreaker.onSuccess(permit);
+						}
+					})
+					.doOnError(throwable -> circuitBreaker.onFailure(permit))
+					.doOnCancel(() -> circuitBreaker.release(permit))
+					.onErrorResume(throwable -> {
+						if (config.fallbackUri != null) {
+							return fallback(config.fallbackUri, exchange);
+						}
+						if (throwable instanceof TimeoutException) {
+							setResponseStatus(exchange, HttpStatus.GATEWAY_TIMEOUT);
+							return exchange.getResponse().setComplete();
+						}
+						return Mono.error(throwable);
+					});
+		};
+	}
+
+	// 与 Hystrix 相同，默认只有异常与超时计为失败，后端返回的状态码不计
+	private static boolean isFailureStatus(Config config, ServerWebExchange exchange) {
+		HttpStatus status = exchange.getResponse().getStatusCode();
+		return status != null && config.failureStatusSeries.contains(status.series());
+	}
+
+	private CircuitBreaker getCircuitBreaker(Config config, ServerWebExchange exchange, List<Object> settings) {
+		String name = config.name;
+		if (name == null) {
+			// 未配置名称时每个路由一个熔断器
+			Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+			name = route == null ? getClass().getSimpleName() : route.getId();
+		}
+		return getCircuitBreaker(name, config, settings);
+	}
+
+	/**
+	 * Returns the circuit breaker of the given name, replaced only when its route was
+	 * redefined with other settings.
+	 */
+	private CircuitBreaker getCircuitBreaker(String name, Config config, List<Object> settings) {
+		Registration registration = this.circuitBreakers.get(name);
+		if (registration == null || !registration.settings.equals(settings)) {
+			registration = this.circuitBreakers.compute(name, (key, existing) ->
+					existing != null && existing.settings.equals(settings) ? existing
+							: new Registration(settings, newCircuitBreaker(key, config)));
+		}
+		return registration.circuitBreaker;
+	}
+
+	private static List<Object> settings(Config config) {
+		return Arrays.asList(config.failureRateThreshold, config.slowCallRateThreshold,
+				config.slowCallDuration, config.slidingWindow, config.minimumNumberOfCalls,
+				config.waitDurationInOpenState, config.permittedCallsInHalfOpenState);
+	}
+
+	private CircuitBreaker newCircuitBreaker(String name, Config config) {
+		return new CircuitBreaker(name, config.failureRateThreshold, config.slowCallRateThreshold,
+				config.slowCallDuration, config.slidingWindow, config.minimumNumberOfCalls,
+				config.waitDurationInOpenState, config.permittedCallsInHalfOpenState);
+	}
+
+	private Mono<Void> fallback(URI fallbackUri, ServerWebExchange exchange) {
+		return this.dispatcherHandler.handle(fallbackExchange(exchange, fallbackUri));
+	}
+
+	private static class Registration {
+		// 创建熔断器时的配置
+		private final List<Object> settings;
+		private final CircuitBreaker circuitBreaker;
+
+		Registration(List<Object> settings, CircuitBreaker circuitBreaker) {
+			this.settings = settings;
+			this.circuitBreaker = circuitBreaker;
+		}
+	}
+
+	public static class Config {
+		// 熔断器名称，默认为路由 ID
+		private String name;
+		private URI fallbackUri;
+		// 请求超时时间，超时计为失败，为空时不限制
+		private Duration timeout;
+		// 打开熔断的失败率，百分比
+		private float failureRateThreshold = 50;
+		// 打开熔断的慢调用比例，百分比，100 表示不按慢调用熔断
+		private float slowCallRateThreshold = 100;
+		private Duration slowCallDuration = Duration.ofSeconds(60);
+		// 统计失败率的滑动时间窗口
+		private Duration slidingWindow = Duration.ofSeconds(10);
+		// 窗口内至少有这么多请求才计算失败率
+		private int minimumNumberOfCalls = 20;
+		private Duration waitDurationInOpenState = Duration.ofSeconds(5);
+		private int permittedCallsInHalfOpenState = 10;
+		// 计为失败的响应状态码系列，例如 SERVER_ERROR ，默认为空
+		private List<HttpStatus.Series> failureStatusSeries = new ArrayList<>();
+
+		public String getName() {
+			return name;
+		}
+
+		public Config setName(String name) {
+			this.name = name;
+			return this;
+		}
+
+		public URI getFallbackUri() {
+			return fallbackUri;
+		}
+
+		public Config setFallbackUri(String fallbackUri) {
+			if (fallbackUri != null) {
+				setFallbackUri(URI.create(fallbackUri));
+			}
+			return this;
+		}
+
+		public void setFallbackUri(URI fallbackUri) {
+			if (fallbackUri != null && !"forward".equals(fallbackUri.getScheme())) {
+				throw new IllegalArgumentException("CircuitBreaker Filter currently only supports 'forward' URIs, found " + fallbackUri);
+			}
+			this.fallbackUri = fallbackUri;
+		}
+
+		public Duration getTimeout() {
+			return timeout;
+		}
+
+		public Config setTimeout(Duration timeout) {
+			this.timeout = timeout;
+			return this;
+		}
+
+		public float getFailureRateThreshold() {
+			return failureRateThreshold;
+		}
+
+		public Config setFailureRateThreshold(float failureRateThreshold) {
+			this.failureRateThreshold = failureRateThreshold;
+			return this;
+		}
+
+		public float getSlowCallRateThreshold() {
+			return slowCallRateThreshold;
+		}
+
+		public Config setSlowCallRateThreshold(float slowCallRateThreshold) {
+			this.slowCallRateThreshold = slowCallRateThreshold;
+			return this;
+		}
+
+		public Duration getSlowCallDuration() {
+			return slowCallDuration;
+		}
+
+		public Config setSlowCallDuration(Duration slowCallDuration) {
+			this.slowCallDuration = slowCallDuration;
+			return this;
+		}
+
+		public Duration getSlidingWindow() {
+			return slidingWindow;
+		}
+
+		public Config setSlidingWindow(Duration slidingWindow) {
+			this.slidingWindow = slidingWindow;
+			return this;
+		}
+
+		public int getMinimumNumberOfCalls() {
+			return minimumNumberOfCalls;
+		}
+
+		public Config setMinimumNumberOfCalls(int minimumNumberOfCalls) {
+			this.minimumNumberOfCalls = minimumNumberOfCalls;
+			return this;
+		}
+
+		public Duration getWaitDurationInOpenState() {
+			return waitDurationInOpenState;
+		}
+
+		public Config setWaitDurationInOpenState(Duration waitDurationInOpenState) {
+			this.waitDurationInOpenState = waitDurationInOpenState;
+			return this;
+		}
+
+		public int getPermittedCallsInHalfOpenState() {
+			return permittedCallsInHalfOpenState;
+		}
+
+		public Config setPermittedCallsInHalfOpenState(int permittedCallsInHalfOpenState) {
+			this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+			return this;
+		}
+
+		public List<HttpStatus.Series> getFailureStatusSeries() {
+			return failureStatusSeries;
+		}
+
+		public Config setFailureStatusSeries(List<HttpStatus.Series> failureStatusSeries) {
+			this.failureStatusSeries = failureStatusSeries;
+			return this;
+		}
+	}
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.factory;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.concurrency.AdaptiveLimit;
+import org.springframework.cloud.gateway.filter.concurrency.ConcurrencyLimiter;
+import org.springframework.cloud.gateway.filter.concurrency.ConcurrencyLimiterMetrics;
+import org.springframework.cloud.gateway.filter.concurrency.GradientLimit;
+import org.springframework.cloud.gateway.filter.concurrency.VegasLimit;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.Nullable;
+import org.springframework.web.server.ServerWebExchange;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.setResponseStatus;
+
+/**
+ * 按路由（或按名称共享）限制同时处理中的请求数，上限根据请求耗时自适应调整（Gradient 或 Vegas 算法）。
+ * 超过上限的请求在有界队列中短暂等待，队列已满或等待超时则直接返回 503。
+ * 后端返回 503、429 或出错时视为丢弃，上限随之下降。
+ * spring:
+ *   cloud:
+ *     gateway:
+ *       routes:
+ *       - id: default_path_to_httpbin
+ *         uri: http://127.0.0.1:8081
+ *         predicates:
+ *         - Path=/**
+ *         filters:
+ *         - name: ConcurrencyLimiter
+ *           args:
+ *             algorithm: VEGAS
+ *             maxQueued: 50
+ *             maxWait: 100ms
+ */
+public class ConcurrencyLimiterGatewayFilterFactory
+		extends AbstractGatewayFilterFactory<ConcurrencyLimiterGatewayFilterFactory.Config> {
+
+	public enum Algorithm {
+		GRADIENT, VEGAS
+	}
+
+	private final ConcurrentMap<String, ConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+	// 创建各限制时的配置，仅在 limiters 的 compute 中修改
+	private final ConcurrentMap<String, List<Object>> settings = new ConcurrentHashMap<>();
+
+	private final ConcurrencyLimiterMetrics metrics;
+
+	public ConcurrencyLimiterGatewayFilterFactory() {
+		this(null);
+	}
+
+	public ConcurrencyLimiterGatewayFilterFactory(@Nullable ConcurrencyLimiterMetrics metrics) {
+		super(Config.class);
+		this.metrics = metrics;
+	}
+
+	@Override
+	public List<String> shortcutFieldOrder() {
+		return Arrays.asList(NAME_KEY);
+	}
+
+	/**
+	 * @return the limiter with the given name, or null
+	 */
+	public ConcurrencyLimiter getLimiter(String name) {
+		return this.limiters.get(name);
+	}
+
+	@Override
+	public GatewayFilter apply(Config config) {
+		List<Object> settings = settings(config);
+		if (config.name != null) {
+			// 路由刷新时，配置未变的限制保留其上限及处理中的请求
+			getLimiter(config.name, config, settings);
+		}
+		return (exchange, chain) -> {
+			ConcurrencyLimiter limiter = getLimiter(config, exchange, settings);
+			// map rather than flatMap: the empty Mono of a completed call is not a rejection
+			return limiter.acquire()
+					.map(permit -> chain.filter(exchange).doFinally(signal -> {
+						if (signal == SignalType.ON_COMPLETE && !isShed(exchange)) {
+							limiter.onSuccess(permit);
+						}
+						else if (signal == SignalType.ON_COMPLETE || signal == SignalType.ON_ERROR) {
+							limiter.onDropped(permit);
+						}
+						else {
+							limiter.release(permit);
+						}
+					}))
+					.switchIfEmpty(Mono.fromSupplier(() -> {
+						if (this.metrics != null) {
+							this.metrics.rejected(limiter);
+						}
+						setResponseStatus(exchange, HttpStatus.SERVICE_UNAVAILABLE);
+						return exchange.getResponse().setComplete();
+					}))
+					.flatMap(call -> call);
+		};
+	}
+
+	private static boolean isShed(ServerWebExchange exchange) {
+		HttpStatus status = exchange.getResponse().getStatusCode();
+		return status == HttpStatus.SERVICE_UNAVAILABLE || status == HttpStatus.TOO_MANY_REQUESTS;
+	}
+
+	private ConcurrencyLimiter getLimiter(Config config, ServerWebExchange exchange, List<Object> settings) {
+		String name = config.name;
+		if (name == null) {
+			// 未配置名称时每个路由一个限制
+			Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+			name = route == null ? getClass().getSimpleName() : route.getId();
+		}
+		return getLimiter(name, config, settings);
+	}
+
+	/**
+	 * Returns the limiter of the given name, replaced only when its route was redefined
+	 * with other settings. Requests in flight release their permits into the limiter they
+	 * acquired them from, so replacing it lets the new limit be exceeded until they
+	 * complete.
+	 */
+	private ConcurrencyLimiter getLimiter(String name, Config config, List<Object> settings) {
+		ConcurrencyLimiter limiter = this.limiters.get(name);
+		if (limiter == null || !settings.equals(this.settings.get(name))) {
+			limiter = this.limiters.compute(name, (key, existing) -> {
+				if (existing != null && settings.equals(this.settings.get(key))) {
+					return existing;
+				}
+				this.settings.put(key, settings);
+				return newLimiter(key, config);
+			});
+		}
+		return limiter;
+	}
+
+	private static List<Object> settings(Config config) {
+		return Arrays.asList(config.algorithm, config.initialLimit, config.minLimit, config.maxLimit,
+				config.rttTolerance, config.maxQueued, config.maxWait);
+	}
+
+	private ConcurrencyLimiter newLimiter(String name, Config config) {
+		if (this.metrics != null) {
+			this.metrics.monitor(name, this.limiters);
+		}
+		AdaptiveLimit limit = config.algorithm == Algorithm.VEGAS
+				? new VegasLimit(config.initialLimit, config.minLimit, config.maxLimit)
+				: new GradientLimit(config.initialLimit, config.minLimit, config.maxLimit, config.rttTolerance);
+		return new ConcurrencyLimiter(name, limit, config.maxQueued, config.maxWait);
+	}
+
+	public static class Config {
+		// 限制名称，默认为路由 ID，同名的路由共享同一个限制
+		private String name;
+		private Algorithm algorithm = Algorithm.GRADIENT;
+		private int initialLimit = 20;
+		private int minLimit = 1;
+		private int maxLimit = 1000;
+		// Gradient 算法允许耗时超过长期平均值的倍数
+		private double rttTolerance = 1.5;
+		// 等待队列长度，0 表示超过上限直接拒绝
+		private int maxQueued = 0;
+		private Duration maxWait = Duration.ofMillis(100);
+
+		public String getName() {
+			return name;
+		}
+
+		public Config setName(String name) {
+			this.name = name;
+			return this;
+		}
+
+		public Algorithm getAlgorithm() {
+			return algorithm;
+		}
+
+		public Config setAlgorithm(Algorithm algorithm) {
+			this.algorithm = algorithm;
+			return this;
+		}
+
+		public int getInitialLimit() {
+			return initialLimit;
+		}
+
+		public Config setInitialLimit(int initialLimit) {
+			this.initialLimit = initialLimit;
+			return this;
+		}
+
+		public int getMinLimit() {
+			return minLimit;
+		}
+
+		public Config setMinLimit(int minLimit) {
+			this.minLimit = minLimit;
+			return this;
+		}
+
+		public int getMaxLimit() {
+			return maxLimit;
+		}
+
+		public Config setMaxLimit(int maxLimit) {
+			this.maxLimit = maxLimit;
+			return this;
+		}
+
+		public double getRttTolerance() {
+			return rttTolerance;
+		}
+
+		public Config setRttTolerance(double rttTolerance) {
+			this.rttTolerance = rttTolerance;
+			return this;
+		}
+
+		public int getMaxQueued() {
+			return maxQueued;
+		}
+
+		public Config setMaxQueued(int maxQueued) {
+			this.maxQueued = maxQueued;
+			return this;
+		}
+
+		public Duration getMaxWait() {
+			return maxWait;
+		}
+
+		public Config setMaxWait(Duration maxWait) {
+			this.maxWait = maxWait;
+			return this;
+		}
+	}
+}
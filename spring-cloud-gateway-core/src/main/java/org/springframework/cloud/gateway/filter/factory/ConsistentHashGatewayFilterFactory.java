@@ -0,0 +1,129 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.factory;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.pattern.PathPattern.PathMatchInfo;
+
+import reactor.core.publisher.Mono;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.HASH_KEY_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.URI_TEMPLATE_VARIABLES_ATTRIBUTE;
+
+/**
+ * 为 lb:// 路由设置一致性哈希的键，相同键的请求转发到同一个服务实例。
+ * 键可以来自请求头、Cookie、Path 路径变量或 KeyResolver Bean，请求没有该键时按默认的负载均衡策略选择实例。
+ * spring:
+ *   cloud:
+ *     gateway:
+ *       routes:
+ *       - id: cache_route
+ *         uri: lb://cache-service
+ *         predicates:
+ *         - Path=/users/{user}/**
+ *         filters:
+ *         - ConsistentHash=PATH_VARIABLE, user
+ */
+public class ConsistentHashGatewayFilterFactory extends AbstractGatewayFilterFactory<ConsistentHashGatewayFilterFactory.Config> {
+
+	public static final String SOURCE_KEY = "source";
+	public static final String NAME_KEY = "name";
+
+	public ConsistentHashGatewayFilterFactory() {
+		super(Config.class);
+	}
+
+	@Override
+	public List<String> shortcutFieldOrder() {
+		return Arrays.asList(SOURCE_KEY, NAME_KEY);
+	}
+
+	@Override
+	public GatewayFilter apply(Config config) {
+		return (exchange, chain) -> resolveKey(config, exchange)
+				.doOnNext(key -> exchange.getAttributes().put(HASH_KEY_ATTR, key))
+				.then(Mono.defer(() -> chain.filter(exchange)));
+	}
+
+	private Mono<String> resolveKey(Config config, ServerWebExchange exchange) {
+		// 配置了 KeyResolver 时优先使用
+		if (config.keyResolver != null) {
+			return config.keyResolver.resolve(exchange);
+		}
+		ServerHttpRequest request = exchange.getRequest();
+		switch (config.source) {
+			case HEADER:
+				return Mono.justOrEmpty(request.getHeaders().getFirst(config.name));
+			case COOKIE:
+				HttpCookie cookie = request.getCookies().getFirst(config.name);
+				return Mono.justOrEmpty(cookie == null ? null : cookie.getValue());
+			case PATH_VARIABLE:
+				PathMatchInfo variables = exchange.getAttribute(URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+				return Mono.justOrEmpty(variables == null ? null : variables.getUriVariables().get(config.name));
+			default:
+				return Mono.empty();
+		}
+	}
+
+	public enum Source {
+		HEADER, COOKIE, PATH_VARIABLE
+	}
+
+	public static class Config {
+		// 键的来源
+		private Source source = Source.HEADER;
+		// 请求头、Cookie 或路径变量的名字
+		private String name;
+		// 解析键的 KeyResolver，例如 #{@userKeyResolver}
+		private KeyResolver keyResolver;
+
+		public Source getSource() {
+			return source;
+		}
+
+		public Config setSource(Source source) {
+			this.source = source;
+			return this;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Config setName(String name) {
+			this.name = name;
+			return this;
+		}
+
+		public KeyResolver getKeyResolver() {
+			return keyResolver;
+		}
+
+		public Config setKeyResolver(KeyResolver keyResolver) {
+			this.keyResolver = keyResolver;
+			return this;
+		}
+	}
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.factory;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.support.FlushPolicy;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.FLUSH_POLICY_ATTR;
+
+/**
+ * Overrides the media type based flush policy of the proxied request and response
+ * bodies for a route.
+ * spring:
+ *   cloud:
+ *     gateway:
+ *       routes:
+ *       - id: upload_route
+ *         uri: http://example.org
+ *         filters:
+ *         - FlushPolicy=SIZE, 131072
+ */
+public class FlushPolicyGatewayFilterFactory extends AbstractGatewayFilterFactory<FlushPolicy> {
+
+	public static final String MODE_KEY = "mode";
+	public static final String SIZE_THRESHOLD_KEY = "sizeThreshold";
+
+	public FlushPolicyGatewayFilterFactory() {
+		super(FlushPolicy.class);
+	}
+
+	@Override
+	public List<String> shortcutFieldOrder() {
+		return Arrays.asList(MODE_KEY, SIZE_THRESHOLD_KEY);
+	}
+
+	@Override
+	public GatewayFilter apply(FlushPolicy config) {
+		return (exchange, chain) -> {
+			exchange.getAttributes().put(FLUSH_POLICY_ATTR, config);
+			return chain.filter(exchange);
+		};
+	}
+}
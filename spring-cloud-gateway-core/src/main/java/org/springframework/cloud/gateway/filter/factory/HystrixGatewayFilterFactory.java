@@ -25,10 +25,8 @@ import com.netflix.hystrix.exception.HystrixRuntimeException;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.web.reactive.DispatcherHandler;
 import org.springframework.web.server.ServerWebExchange;
-import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Mono;
 import rx.Observable;
 import rx.RxReactiveStreams;
@@ -130,20 +128,7 @@ public class HystrixGatewayFilterFactory extends AbstractGatewayFilterFactory<Hy
 				return super.resumeWithFallback();
 			}
 
-			//TODO: copied from RouteToRequestUrlFilter
-			URI uri = exchange.getRequest().getURI();
-			//TODO: assume always?
-			boolean encoded = containsEncodedParts(uri);
-			URI requestUrl = UriComponentsBuilder.fromUri(uri)
-					.host(null)
-					.port(null)
-					.uri(this.fallbackUri)
-					.build(encoded)
-					.toUri();
-			exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR, requestUrl);
-
-			ServerHttpRequest request = this.exchange.getRequest().mutate().uri(requestUrl).build();
-			ServerWebExchange mutated = exchange.mutate().request(request).build();
+			ServerWebExchange mutated = fallbackExchange(this.exchange, this.fallbackUri);
 			return RxReactiveStreams.toObservable(HystrixGatewayFilterFactory.this.dispatcherHandler.handle(mutated));
 		}
 	}
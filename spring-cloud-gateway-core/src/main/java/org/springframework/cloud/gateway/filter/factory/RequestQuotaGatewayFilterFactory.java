@@ -0,0 +1,211 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.factory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.ratelimit.CostResolver;
+import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
+import org.springframework.cloud.gateway.filter.ratelimit.QuotaLimiter;
+import org.springframework.cloud.gateway.filter.ratelimit.QuotaLimiter.Quota;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.Assert;
+import org.springframework.validation.annotation.Validated;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * RequestQuotaGatewayFilter 同时按多个维度（例如 用户 / API Key / 租户）限流，每个维度由各自的 KeyResolver 解析限流键，
+ * 所有维度的令牌桶在一次 QuotaLimiter 调用中校验，全部通过才消耗令牌。
+ * spring:
+ *   cloud:
+ *     gateway:
+ *       routes:
+ *     - id: quota_route
+ *       uri: http://127.0.0.1:8081
+ *       predicates:
+ *       - Path=/**
+ *       filters:
+ *       - name: RequestQuota
+ *         args:
+ *           dimensions[0].name: user
+ *           dimensions[0].key-resolver: "#{@userKeyResolver}"
+ *           dimensions[0].replenish-rate: 10
+ *           dimensions[0].burst-capacity: 20
+ *           dimensions[1].name: tenant
+ *           dimensions[1].key-resolver: "#{@tenantKeyResolver}"
+ *           dimensions[1].replenish-rate: 1000
+ *           dimensions[1].burst-capacity: 2000
+ *
+ * 未解析出限流键的维度不参与校验，所有维度都没有限流键时请求直接通过。
+ */
+public class RequestQuotaGatewayFilterFactory extends AbstractGatewayFilterFactory<RequestQuotaGatewayFilterFactory.Config> {
+
+	private final QuotaLimiter defaultQuotaLimiter;
+
+	public RequestQuotaGatewayFilterFactory(QuotaLimiter defaultQuotaLimiter) {
+		super(Config.class);
+		// 存在 Redis 时默认 RedisQuotaLimiter ，否则 LocalQuotaLimiter
+		this.defaultQuotaLimiter = defaultQuotaLimiter;
+	}
+
+	public QuotaLimiter getDefaultQuotaLimiter() {
+		return defaultQuotaLimiter;
+	}
+
+	@Override
+	public GatewayFilter apply(Config config) {
+		QuotaLimiter limiter = (config.quotaLimiter == null) ? defaultQuotaLimiter : config.quotaLimiter;
+		CostResolver costResolver = config.resolveCost();
+		List<Dimension> dimensions = new ArrayList<>(config.dimensions);
+		// Java DSL 配置的维度不经过绑定校验，缺少速率时每个请求都会失败
+		dimensions.forEach(Dimension::validate);
+
+		return (exchange, chain) -> {
+			Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+			// 按维度的顺序解析限流键，未解析出限流键的维度跳过
+			return Flux.fromIterable(dimensions)
+				.concatMap(dimension -> dimension.keyResolver.resolve(exchange)
+						.map(key -> new Quota(dimension.name, key, dimension.replenishRate, dimension.burstCapacity)))
+				.collectList()
+				.flatMap(quotas -> {
+					if (quotas.isEmpty()) {
+						return chain.filter(exchange);
+					}
+					return costResolver.resolve(exchange)
+							.flatMap(cost -> limiter.isAllowed(route.getId(), quotas, cost))
+							.flatMap(response -> {
+								if (response.isAllowed()) {
+									return chain.filter(exchange);
+								}
+								exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+								return exchange.getResponse().setComplete();
+							});
+				});
+		};
+	}
+
+	public static class Config extends AbstractCostConfig<Config> {
+		// 限流维度，按顺序校验
+		@Valid
+		private List<Dimension> dimensions = new ArrayList<>();
+		// 配额限流器，为空时使用默认的
+		private QuotaLimiter quotaLimiter;
+
+		public List<Dimension> getDimensions() {
+			return dimensions;
+		}
+
+		public Config setDimensions(List<Dimension> dimensions) {
+			this.dimensions = dimensions;
+			return this;
+		}
+
+		public Config addDimension(String name, KeyResolver keyResolver, int replenishRate, int burstCapacity) {
+			this.dimensions.add(new Dimension().setName(name).setKeyResolver(keyResolver)
+					.setReplenishRate(replenishRate).setBurstCapacity(burstCapacity));
+			return this;
+		}
+
+		public QuotaLimiter getQuotaLimiter() {
+			return quotaLimiter;
+		}
+
+		public Config setQuotaLimiter(QuotaLimiter quotaLimiter) {
+			this.quotaLimiter = quotaLimiter;
+			return this;
+		}
+	}
+
+	@Validated
+	public static class Dimension {
+		// 维度名，与限流键一起确定令牌桶
+		@NotNull
+		private String name;
+		// 该维度的限流键解析器
+		@NotNull
+		private KeyResolver keyResolver;
+		// 令牌桶填充平均速率，单位：秒。
+		@Min(1)
+		private int replenishRate;
+		// 令牌桶上限 。
+		@Min(0)
+		private int burstCapacity;
+
+		public void validate() {
+			Assert.notNull(this.name, "name may not be null");
+			Assert.notNull(this.keyResolver, "keyResolver of " + this.name + " may not be null");
+			Assert.isTrue(this.replenishRate >= 1, "replenishRate of " + this.name + " must be at least 1");
+			Assert.isTrue(this.burstCapacity >= 0, "burstCapacity of " + this.name + " may not be negative");
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Dimension setName(String name) {
+			this.name = name;
+			return this;
+		}
+
+		public KeyResolver getKeyResolver() {
+			return keyResolver;
+		}
+
+		public Dimension setKeyResolver(KeyResolver keyResolver) {
+			this.keyResolver = keyResolver;
+			return this;
+		}
+
+		public int getReplenishRate() {
+			return replenishRate;
+		}
+
+		public Dimension setReplenishRate(int replenishRate) {
+			this.replenishRate = replenishRate;
+			return this;
+		}
+
+		public int getBurstCapacity() {
+			return burstCapacity;
+		}
+
+		public Dimension setBurstCapacity(int burstCapacity) {
+			this.burstCapacity = burstCapacity;
+			return this;
+		}
+
+		@Override
+		public String toString() {
+			return "Dimension{" +
+					"name='" + name + '\'' +
+					", keyResolver=" + keyResolver +
+					", replenishRate=" + replenishRate +
+					", burstCapacity=" + burstCapacity +
+					'}';
+		}
+	}
+}
@@ -18,12 +18,16 @@
 package org.springframework.cloud.gateway.filter.factory;
 
 import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.ratelimit.CostResolver;
+import org.springframework.cloud.gateway.filter.ratelimit.HeavyHitters;
 import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
 import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
 import org.springframework.cloud.gateway.route.Route;
 import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
 import org.springframework.http.HttpStatus;
 
+import reactor.core.publisher.Mono;
+
 /**
  * RequestRateLimiterGatewayFilter 使用 Redis + Lua 实现分布式限流。而限流的粒度，例如 URL / 用户 / IP  KeyResolver 实现类决定
  * spring:
@@ -38,6 +42,14 @@ import org.springframework.http.HttpStatus;
  *       filters:
  *       - RequestRateLimiter=10, 20, #{@principalNameKeyResolver}
  *
+ * 请求消耗的令牌数默认为 1 ，可通过 cost 、 costResolver 或 costExpression 按请求计算：
+ *       filters:
+ *       - name: RequestRateLimiter
+ *         args:
+ *           redis-rate-limiter.replenishRate: 100
+ *           redis-rate-limiter.burstCapacity: 200
+ *           cost-expression: "request.method.name() == 'GET' ? 1 : 10"
+ *
  *
  * User Request Rate Limiter filter. See https://stripe.com/blog/rate-limiters and
  */
@@ -48,6 +60,8 @@ public class RequestRateLimiterGatewayFilterFactory extends AbstractGatewayFilte
 	private final RateLimiter defaultRateLimiter;
 	// 限流键解析器 Bean 对象名字，根据 #{@beanName} ，使用 SpEL 表达式，从 Spring 容器中获取 Bean 对象，
 	private final KeyResolver defaultKeyResolver;
+	// 统计请求最多的限流键，可为空
+	private HeavyHitters heavyHitters;
 
 	public RequestRateLimiterGatewayFilterFactory(RateLimiter defaultRateLimiter,
 												  KeyResolver defaultKeyResolver) {
@@ -66,23 +80,46 @@ public class RequestRateLimiterGatewayFilterFactory extends AbstractGatewayFilte
 		return defaultRateLimiter;
 	}
 
+	public HeavyHitters getHeavyHitters() {
+		return heavyHitters;
+	}
+
+	public void setHeavyHitters(HeavyHitters heavyHitters) {
+		this.heavyHitters = heavyHitters;
+	}
+
 	@SuppressWarnings("unchecked")
 	@Override
 	public GatewayFilter apply(Config config) {
 		KeyResolver resolver = (config.keyResolver == null) ? defaultKeyResolver : config.keyResolver;
 		RateLimiter<Object> limiter = (config.rateLimiter == null) ? defaultRateLimiter : config.rateLimiter;
+		CostResolver costResolver = config.resolveCost();
+
+		HeavyHitters heavyHitters = this.heavyHitters;
 
 		return (exchange, chain) -> {
 			Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
 			// 调用 KeyResolver#resolve(ServerWebExchange) 方法，获得请求的限流键。
-			return resolver.resolve(exchange).flatMap(key ->
+			Mono<String> keys = resolver.resolve(exchange);
+			if (heavyHitters != null) {
+				// 无论是否被限流，都计入限流键的请求数
+				keys = keys.doOnNext(key -> heavyHitters.record(route.getId(), key));
+			}
+			return keys.flatMap(key ->
 					// 这里未处理限流键为空的情况. 所以，当限流键为空时，过滤器链不会继续向下执行，
 					// 也就是说，不会请求后端 Http / Websocket 服务，并且最终返回客户端 200 状态码，内容为空。
-					limiter.isAllowed(route.getId(), key).flatMap(response -> {
+					costResolver.resolve(exchange).flatMap(cost ->
+							cost == 1 ? limiter.isAllowed(route.getId(), key)
+									: limiter.isAllowed(route.getId(), key, cost)).flatMap(response -> {
 						// TODO: set some headers for rate, tokens left
 
 						// 允许访问
 						if (response.isAllowed()) {
+							if (response instanceof RateLimiter.Permit) {
+								// 并发限流器的许可在请求完成、出错或取消时释放
+								return chain.filter(exchange)
+										.doFinally(signal -> ((RateLimiter.Permit) response).release());
+							}
 							return chain.filter(exchange);
 						}
 
@@ -93,13 +130,12 @@ public class RequestRateLimiterGatewayFilterFactory extends AbstractGatewayFilte
 		};
 	}
 
-	public static class Config {
+	public static class Config extends AbstractCostConfig<Config> {
 		// 令牌桶上限 。
 		private KeyResolver keyResolver;
 		// 令牌桶填充平均速率，单位：秒。
 		private RateLimiter rateLimiter;
 
-
 		public KeyResolver getKeyResolver() {
 			return keyResolver;
 		}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Takes a token for each started {@code bytesPerToken} bytes of the request body, and a
+ * single token for requests without a body or a Content-Length header.
+ * 按请求体大小消耗令牌
+ */
+public class ContentLengthCostResolver implements CostResolver {
+
+	public static final int DEFAULT_BYTES_PER_TOKEN = 1024;
+
+	private final long bytesPerToken;
+
+	public ContentLengthCostResolver() {
+		this(DEFAULT_BYTES_PER_TOKEN);
+	}
+
+	public ContentLengthCostResolver(long bytesPerToken) {
+		if (bytesPerToken < 1) {
+			throw new IllegalArgumentException("bytesPerToken must be greater than 0, was " + bytesPerToken);
+		}
+		this.bytesPerToken = bytesPerToken;
+	}
+
+	@Override
+	public Mono<Integer> resolve(ServerWebExchange exchange) {
+		long contentLength = exchange.getRequest().getHeaders().getContentLength();
+		if (contentLength <= 0) {
+			return Mono.just(1);
+		}
+		long tokens = (contentLength + this.bytesPerToken - 1) / this.bytesPerToken;
+		return Mono.just((int) Math.min(Integer.MAX_VALUE, tokens));
+	}
+}
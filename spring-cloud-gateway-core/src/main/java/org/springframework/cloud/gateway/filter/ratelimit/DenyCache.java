@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers the keys denied by a rate limiter until the earliest time their bucket may
+ * hold a token again, so that their requests are denied without calling Redis. Holds at
+ * most {@code maxKeys} keys. While it is full, a new denial sweeps the next few keys for
+ * an expired one, and is not cached when none is.
+ * 本地缓存已耗尽令牌的限流键，令牌桶补充令牌之前直接拒绝，不再请求 Redis
+ */
+public class DenyCache {
+
+	public static final int DEFAULT_MAX_KEYS = 10_000;
+
+	private final int maxKeys;
+
+	private final LongSupplier clock;
+
+	// 路由与令牌桶编号 -> 拒绝截止时间，单位：毫秒
+	private final ConcurrentMap<String, Long> deniedUntil = new ConcurrentHashMap<>();
+
+	private final KeySweeper<Long> sweeper = new KeySweeper<>(this.deniedUntil);
+
+	private final AtomicLong shortCircuited = new AtomicLong();
+
+	public DenyCache() {
+		this(DEFAULT_MAX_KEYS);
+	}
+
+	public DenyCache(int maxKeys) {
+		this(maxKeys, System::currentTimeMillis);
+	}
+
+	DenyCache(int maxKeys, LongSupplier clock) {
+		this.maxKeys = maxKeys;
+		this.clock = clock;
+	}
+
+	/**
+	 * @return true if the key of the route was denied and its bucket did not refill yet
+	 */
+	public boolean isDenied(String routeId, String id) {
+		String key = key(routeId, id);
+		Long until = this.deniedUntil.get(key);
+		if (until == null) {
+			return false;
+		}
+		if (this.clock.getAsLong() >= until) {
+			this.deniedUntil.remove(key, until);
+			return false;
+		}
+		this.shortCircuited.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * @param untilMillis the epoch time in milliseconds before which the bucket of the key
+	 * cannot hold a token
+	 */
+	public void deny(String routeId, String id, long untilMillis) {
+		long now = this.clock.getAsLong();
+		if (untilMillis <= now) {
+			return;
+		}
+		if (this.deniedUntil.size() >= this.maxKeys
+				&& !this.sweeper.sweep(until -> now >= until, null)) {
+			return;
+		}
+		this.deniedUntil.merge(key(routeId, id), untilMillis, Math::max);
+	}
+
+	public int size() {
+		return this.deniedUntil.size();
+	}
+
+	/**
+	 * @return the number of requests denied from the cache
+	 */
+	public long getShortCircuited() {
+		return this.shortCircuited.get();
+	}
+
+	private static String key(String routeId, String id) {
+		return routeId + '\u0000' + id;
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Publishes the requests denied from a {@link DenyCache} and the number of keys it holds
+ * to Micrometer.
+ */
+public class DenyCacheMetrics {
+
+	public static final String SHORT_CIRCUITED = "gateway.ratelimit.denied.local";
+
+	public static final String SIZE = "gateway.ratelimit.deny.cache.size";
+
+	private final MeterRegistry registry;
+
+	public DenyCacheMetrics(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	public void monitor(String name, DenyCache cache) {
+		FunctionCounter.builder(SHORT_CIRCUITED, cache, DenyCache::getShortCircuited)
+				.tag("name", name)
+				.register(this.registry);
+		Gauge.builder(SIZE, cache, DenyCache::size)
+				.tag("name", name)
+				.register(this.registry);
+	}
+}
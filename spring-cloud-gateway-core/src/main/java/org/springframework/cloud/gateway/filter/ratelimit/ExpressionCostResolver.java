@@ -0,0 +1,203 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import org.springframework.expression.AccessException;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.TypedValue;
+import org.springframework.expression.spel.SpelEvaluationException;
+import org.springframework.expression.spel.SpelMessage;
+import org.springframework.expression.spel.SpelNode;
+import org.springframework.expression.spel.ast.Assign;
+import org.springframework.expression.spel.standard.SpelExpression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.ReflectiveMethodResolver;
+import org.springframework.expression.spel.support.ReflectivePropertyAccessor;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.RequestPath;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Evaluates a SpEL expression against each {@link ServerWebExchange}, such as
+ * {@code request.method.name() == 'GET' ? 1 : 5}. The expression is parsed once, a null
+ * result takes a single token. Expressions come from route definitions, which may be
+ * posted to the actuator endpoint, so they may only read the request: its headers,
+ * method, URI, path and query parameters, and the strings and numbers read from them.
+ * Any other method or property, assignments, types, constructors and beans are rejected.
+ * 使用 SpEL 表达式计算请求消耗的令牌数
+ */
+public class ExpressionCostResolver implements CostResolver {
+
+	private static final SpelExpressionParser PARSER = new SpelExpressionParser();
+
+	private static final Set<String> NUMBER_METHODS = set("intValue", "longValue", "doubleValue", "floatValue",
+			"shortValue", "byteValue", "compareTo", "equals", "hashCode", "toString");
+
+	private static final Set<String> MULTI_VALUE_MAP_METHODS = set("get", "getFirst", "containsKey",
+			"containsValue", "isEmpty", "size");
+
+	/**
+	 * The only methods an expression may call, by the type that declares them. A method of
+	 * an object is allowed when one of the types it implements declares it and allows its name.
+	 */
+	// 允许调用的方法（白名单），按声明它们的类型分组
+	private static final Map<Class<?>, Predicate<String>> ALLOWED = new LinkedHashMap<>();
+
+	static {
+		ALLOWED.put(ServerWebExchange.class, set("getRequest")::contains);
+		ALLOWED.put(ServerHttpRequest.class, set("getPath", "getQueryParams", "getCookies", "getMethod",
+				"getMethodValue", "getURI", "getHeaders")::contains);
+		ALLOWED.put(HttpHeaders.class, name -> name.startsWith("get") || MULTI_VALUE_MAP_METHODS.contains(name));
+		ALLOWED.put(MultiValueMap.class, MULTI_VALUE_MAP_METHODS::contains);
+		ALLOWED.put(HttpMethod.class, set("name", "matches", "equals", "toString")::contains);
+		ALLOWED.put(URI.class, name -> name.startsWith("get") || name.startsWith("is") || name.equals("toString"));
+		ALLOWED.put(RequestPath.class, set("value", "elements", "contextPath", "pathWithinApplication",
+				"subPath", "toString")::contains);
+		ALLOWED.put(PathContainer.class, set("value", "elements", "subPath", "toString")::contains);
+		ALLOWED.put(String.class, set("length", "isEmpty", "charAt", "equals", "equalsIgnoreCase", "contains",
+				"startsWith", "endsWith", "indexOf", "lastIndexOf", "substring", "toLowerCase", "toUpperCase",
+				"trim", "matches", "compareTo", "hashCode", "toString")::contains);
+		for (Class<?> number : asList(Integer.class, Long.class, Double.class, Float.class, Short.class,
+				Byte.class)) {
+			ALLOWED.put(number, NUMBER_METHODS::contains);
+		}
+	}
+
+	private static final Map<Class<?>, Method[]> ALLOWED_METHODS = new ConcurrentHashMap<>();
+
+	private final Expression expression;
+
+	// 只读的表达式上下文，创建一次，根对象为每个请求的 ServerWebExchange
+	private final EvaluationContext context = readOnlyContext();
+
+	public ExpressionCostResolver(String expression) {
+		this.expression = PARSER.parseExpression(expression);
+		rejectAssignments(((SpelExpression) this.expression).getAST(), expression);
+	}
+
+	@Override
+	public Mono<Integer> resolve(ServerWebExchange exchange) {
+		return Mono.justOrEmpty(this.expression.getValue(this.context, exchange, Integer.class));
+	}
+
+	private static void rejectAssignments(SpelNode node, String expression) {
+		if (node instanceof Assign) {
+			throw new IllegalArgumentException("Cost expressions may not assign values: " + expression);
+		}
+		for (int i = 0; i < node.getChildCount(); i++) {
+			rejectAssignments(node.getChild(i), expression);
+		}
+	}
+
+	private static EvaluationContext readOnlyContext() {
+		StandardEvaluationContext context = new StandardEvaluationContext();
+		context.setTypeLocator(typeName -> {
+			throw new SpelEvaluationException(SpelMessage.TYPE_NOT_FOUND, typeName);
+		});
+		context.setConstructorResolvers(Collections.emptyList());
+		context.setMethodResolvers(Collections.singletonList(new AllowedMethodResolver()));
+		context.setPropertyAccessors(Collections.singletonList(new AllowedPropertyAccessor()));
+		return context;
+	}
+
+	/**
+	 * Resolves only the allowed methods of the request view.
+	 */
+	private static class AllowedMethodResolver extends ReflectiveMethodResolver {
+
+		@Override
+		protected Method[] getMethods(Class<?> type) {
+			return allowedMethods(type);
+		}
+	}
+
+	/**
+	 * Reads the properties whose getter is an allowed method, and writes none.
+	 */
+	private static class AllowedPropertyAccessor extends ReflectivePropertyAccessor {
+
+		@Override
+		public boolean canRead(EvaluationContext context, Object target, String name) throws AccessException {
+			return target != null && hasAllowedGetter(target.getClass(), name)
+					&& super.canRead(context, target, name);
+		}
+
+		@Override
+		public TypedValue read(EvaluationContext context, Object target, String name) throws AccessException {
+			// 缓存的访问器会跳过 canRead，这里再检查一次
+			if (target == null || !hasAllowedGetter(target.getClass(), name)) {
+				throw new AccessException("Property '" + name + "' is not readable by cost expressions");
+			}
+			return super.read(context, target, name);
+		}
+
+		@Override
+		public boolean canWrite(EvaluationContext context, Object target, String name) {
+			return false;
+		}
+	}
+
+	private static boolean hasAllowedGetter(Class<?> type, String name) {
+		String property = StringUtils.capitalize(name);
+		return Arrays.stream(allowedMethods(type)).anyMatch(method -> method.getParameterCount() == 0
+				&& (method.getName().equals("get" + property) || method.getName().equals("is" + property)));
+	}
+
+	private static Method[] allowedMethods(Class<?> type) {
+		return ALLOWED_METHODS.computeIfAbsent(type, t -> Arrays.stream(t.getMethods())
+				.filter(method -> isAllowed(t, method))
+				.toArray(Method[]::new));
+	}
+
+	private static boolean isAllowed(Class<?> type, Method method) {
+		if (Modifier.isStatic(method.getModifiers())) {
+			return false;
+		}
+		return ALLOWED.entrySet().stream()
+				.anyMatch(view -> view.getKey().isAssignableFrom(type)
+						&& view.getValue().test(method.getName())
+						&& ClassUtils.hasMethod(view.getKey(), method.getName(), method.getParameterTypes()));
+	}
+
+	private static Set<String> set(String... names) {
+		return Collections.unmodifiableSet(new HashSet<>(asList(names)));
+	}
+}
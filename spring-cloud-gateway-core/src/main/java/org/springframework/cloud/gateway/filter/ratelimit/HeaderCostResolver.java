@@ -0,0 +1,49 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reads the cost of a request from a header, set by a trusted client or an edge proxy.
+ * Requests without the header, or with an invalid value, take a single token.
+ * 从请求头读取消耗的令牌数
+ */
+public class HeaderCostResolver implements CostResolver {
+
+	private final String headerName;
+
+	public HeaderCostResolver(String headerName) {
+		this.headerName = headerName;
+	}
+
+	@Override
+	public Mono<Integer> resolve(ServerWebExchange exchange) {
+		String value = exchange.getRequest().getHeaders().getFirst(this.headerName);
+		if (value == null) {
+			return Mono.empty();
+		}
+		try {
+			return Mono.just(Integer.parseInt(value.trim()));
+		}
+		catch (NumberFormatException e) {
+			return Mono.empty();
+		}
+	}
+}
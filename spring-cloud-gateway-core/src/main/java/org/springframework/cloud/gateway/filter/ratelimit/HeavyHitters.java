@@ -0,0 +1,309 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks the rate limiting keys sending the most requests, in a fixed amount of memory.
+ * The requests of each key are counted in a count-min sketch of {@code depth} rows of
+ * {@code width} counters, which may overestimate a key but never underestimates it.
+ * The {@code capacity} keys with the highest counts are kept in a min-heap, so a key
+ * only enters it by outcounting the smallest one. Counts decay exponentially with the
+ * given half-life, so that the rates of past bursts fade away. Decay is applied forward:
+ * later requests weigh more, which keeps the order of the heap without touching every
+ * counter on each tick.
+ *
+ * <p>Each row hashes the route and key with its own seed, so that keys colliding in one
+ * row seldom collide in the others. The keys are spread over stripes, each with its own
+ * lock, share of the counters and heap; the top keys are merged from the stripes.
+ * 使用 Count-Min Sketch 与 Top-K 小顶堆统计请求最多的限流键
+ */
+public class HeavyHitters {
+
+	public static final int DEFAULT_DEPTH = 4;
+
+	public static final int DEFAULT_WIDTH = 2048;
+
+	public static final int DEFAULT_CAPACITY = 20;
+
+	public static final Duration DEFAULT_HALF_LIFE = Duration.ofMinutes(1);
+
+	// 权重增长到 e^30 时，整体缩小计数，避免 double 溢出
+	private static final double MAX_EXPONENT = 30;
+
+	private static final int STRIPES = 16;
+
+	private final int capacity;
+
+	// 衰减的时间常数，单位：纳秒。稳定速率 r 的计数收敛到 r * tau
+	private final double tauNanos;
+
+	private final LongSupplier nanoClock;
+
+	// 每一行哈希函数的种子
+	private final long[] seeds;
+
+	private final Stripe[] stripes;
+
+	// 每个分片每一行的计数器数
+	private final int stripeWidth;
+
+	public HeavyHitters() {
+		this(DEFAULT_DEPTH, DEFAULT_WIDTH, DEFAULT_CAPACITY, DEFAULT_HALF_LIFE);
+	}
+
+	public HeavyHitters(int depth, int width, int capacity, Duration halfLife) {
+		this(depth, width, capacity, halfLife, System::nanoTime);
+	}
+
+	HeavyHitters(int depth, int width, int capacity, Duration halfLife, LongSupplier nanoClock) {
+		if (depth < 1 || width < 1 || capacity < 1) {
+			throw new IllegalArgumentException("depth, width and capacity must be positive");
+		}
+		this.capacity = capacity;
+		this.tauNanos = halfLife.toNanos() / Math.log(2);
+		this.nanoClock = nanoClock;
+		this.seeds = new long[depth];
+		for (int row = 0; row < depth; row++) {
+			this.seeds[row] = mix(0xcbf29ce484222325L + row * 0x9e3779b97f4a7c15L);
+		}
+		this.stripes = new Stripe[Math.min(STRIPES, width)];
+		this.stripeWidth = width / this.stripes.length;
+		long now = nanoClock.getAsLong();
+		for (int i = 0; i < this.stripes.length; i++) {
+			this.stripes[i] = new Stripe(depth, this.stripeWidth, now);
+		}
+	}
+
+	/**
+	 * Counts a request of the given key.
+	 */
+	public void record(String routeId, String key) {
+		int[] indexes = new int[this.seeds.length];
+		long first = 0;
+		for (int row = 0; row < this.seeds.length; row++) {
+			long hash = hash(this.seeds[row], routeId, key);
+			if (row == 0) {
+				first = hash;
+			}
+			indexes[row] = (int) ((hash & Long.MAX_VALUE) % this.stripeWidth);
+		}
+		Stripe stripe = this.stripes[(int) ((first >>> 32) % this.stripes.length)];
+		stripe.record(new Entry(routeId, key), indexes, this.nanoClock.getAsLong());
+	}
+
+	/**
+	 * @return the keys sending the most requests, with their estimated rates, highest first
+	 */
+	public List<HeavyHitter> getTop() {
+		long now = this.nanoClock.getAsLong();
+		List<HeavyHitter> top = new ArrayList<>();
+		for (Stripe stripe : this.stripes) {
+			stripe.collect(now, top);
+		}
+		top.sort(Comparator.comparingDouble(HeavyHitter::getRate).reversed());
+		return top.size() > this.capacity ? new ArrayList<>(top.subList(0, this.capacity)) : top;
+	}
+
+	/**
+	 * @return a 64-bit hash of the route and key, FNV-1a over their chars from the
+	 * given seed, then the MurmurHash3 finalizer
+	 */
+	static long hash(long seed, String routeId, String key) {
+		long hash = seed;
+		for (int i = 0; i < routeId.length(); i++) {
+			hash = (hash ^ routeId.charAt(i)) * 0x100000001b3L;
+		}
+		// outside of the chars, so that the route and key cannot be shifted into each other
+		hash = (hash ^ 0x10000) * 0x100000001b3L;
+		for (int i = 0; i < key.length(); i++) {
+			hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+		}
+		return mix(hash);
+	}
+
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	/**
+	 * The counters and top keys of a share of the keys, guarded by itself.
+	 */
+	private final class Stripe {
+
+		private final double[][] counters;
+
+		private final Map<Entry, Entry> entries = new HashMap<>();
+
+		private final PriorityQueue<Entry> heap = new PriorityQueue<>(Comparator.comparingDouble(entry -> entry.count));
+
+		// 计数权重的起点，权重为 e^((now - landmark) / tau)
+		private long landmark;
+
+		private Stripe(int depth, int width, long now) {
+			this.counters = new double[depth][width];
+			this.landmark = now;
+		}
+
+		private synchronized void record(Entry probe, int[] indexes, long now) {
+			double weight = weight(now);
+			// conservative update: only raise the counters below the new estimate
+			double estimate = Double.MAX_VALUE;
+			for (int row = 0; row < this.counters.length; row++) {
+				estimate = Math.min(estimate, this.counters[row][indexes[row]]);
+			}
+			estimate += weight;
+			for (int row = 0; row < this.counters.length; row++) {
+				this.counters[row][indexes[row]] = Math.max(this.counters[row][indexes[row]], estimate);
+			}
+			offer(probe, estimate);
+		}
+
+		private synchronized void collect(long now, List<HeavyHitter> top) {
+			// 计数除以权重得到衰减后的计数，再除以 tau 得到速率
+			double scale = weight(now) * tauNanos / TimeUnit.SECONDS.toNanos(1);
+			for (Entry entry : this.heap) {
+				top.add(new HeavyHitter(entry.routeId, entry.key, entry.count / scale));
+			}
+		}
+
+		private void offer(Entry probe, double estimate) {
+			Entry entry = this.entries.get(probe);
+			if (entry != null) {
+				this.heap.remove(entry);
+			}
+			else if (this.heap.size() < capacity) {
+				entry = probe;
+				this.entries.put(entry, entry);
+			}
+			else if (this.heap.peek().count < estimate) {
+				this.entries.remove(this.heap.poll());
+				entry = probe;
+				this.entries.put(entry, entry);
+			}
+			else {
+				return;
+			}
+			entry.count = estimate;
+			this.heap.add(entry);
+		}
+
+		private double weight(long now) {
+			double exponent = (now - this.landmark) / tauNanos;
+			if (exponent > MAX_EXPONENT) {
+				// 同比例缩小所有计数，堆的顺序不变
+				double factor = Math.exp(-exponent);
+				for (double[] row : this.counters) {
+					for (int i = 0; i < row.length; i++) {
+						row[i] *= factor;
+					}
+				}
+				for (Entry entry : this.heap) {
+					entry.count *= factor;
+				}
+				this.landmark = now;
+				exponent = 0;
+			}
+			return Math.exp(exponent);
+		}
+	}
+
+	private static class Entry {
+		// 路由编号
+		private final String routeId;
+		// 限流键
+		private final String key;
+		// 带权重的估计计数
+		private double count;
+
+		Entry(String routeId, String key) {
+			this.routeId = routeId;
+			this.key = key;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Entry)) {
+				return false;
+			}
+			Entry entry = (Entry) o;
+			return this.routeId.equals(entry.routeId) && this.key.equals(entry.key);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * this.routeId.hashCode() + this.key.hashCode();
+		}
+	}
+
+	/**
+	 * A key among the heaviest hitters.
+	 */
+	public static class HeavyHitter {
+		// 路由编号
+		private final String routeId;
+		// 限流键
+		private final String key;
+		// 估计的每秒请求数，可能偏高
+		private final double rate;
+
+		public HeavyHitter(String routeId, String key, double rate) {
+			this.routeId = routeId;
+			this.key = key;
+			this.rate = rate;
+		}
+
+		public String getRouteId() {
+			return routeId;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public double getRate() {
+			return rate;
+		}
+
+		@Override
+		public String toString() {
+			return "HeavyHitter{" +
+					"routeId='" + routeId + '\'' +
+					", key='" + key + '\'' +
+					", rate=" + rate +
+					'}';
+		}
+	}
+}
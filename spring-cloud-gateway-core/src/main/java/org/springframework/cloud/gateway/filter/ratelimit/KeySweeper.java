@@ -0,0 +1,106 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Evicts the entries of a bounded map a few at a time. Each sweep resumes where the
+ * previous one stopped, so bounding the map costs a constant amount of work per new
+ * key instead of a scan of the whole map, and every entry is examined in turn. A sweep
+ * that finds another one running returns false at once, without removing anything, so
+ * callers keeping the map bounded should only add an entry when their sweep removed one.
+ * 分批淘汰限流键，每次只检查少量条目
+ */
+final class KeySweeper<V> {
+
+	// 每次淘汰检查的条目数
+	static final int DEFAULT_SAMPLES = 8;
+
+	private final ConcurrentMap<String, V> map;
+
+	private final int samples;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	// guarded by lock, weakly consistent so it survives concurrent updates
+	private Iterator<Map.Entry<String, V>> cursor;
+
+	KeySweeper(ConcurrentMap<String, V> map) {
+		this(map, DEFAULT_SAMPLES);
+	}
+
+	KeySweeper(ConcurrentMap<String, V> map, int samples) {
+		this.map = map;
+		this.samples = samples;
+	}
+
+	/**
+	 * Examines the next entries and removes those expired. When none is, removes the
+	 * examined entry with the highest rank, unless {@code rank} is null.
+	 * @return true if an entry was removed
+	 */
+	boolean sweep(Predicate<V> expired, ToLongFunction<V> rank) {
+		if (!this.lock.tryLock()) {
+			return false;
+		}
+		try {
+			boolean removed = false;
+			Map.Entry<String, V> highest = null;
+			long highestRank = Long.MIN_VALUE;
+			boolean restarted = false;
+			for (int i = 0; i < this.samples; i++) {
+				if (this.cursor == null || !this.cursor.hasNext()) {
+					if (restarted) {
+						// fewer entries than samples
+						break;
+					}
+					this.cursor = this.map.entrySet().iterator();
+					restarted = true;
+					if (!this.cursor.hasNext()) {
+						break;
+					}
+				}
+				Map.Entry<String, V> entry = this.cursor.next();
+				V value = entry.getValue();
+				if (expired.test(value)) {
+					removed |= this.map.remove(entry.getKey(), value);
+				}
+				else if (rank != null) {
+					long entryRank = rank.applyAsLong(value);
+					if (highest == null || entryRank > highestRank) {
+						highest = entry;
+						highestRank = entryRank;
+					}
+				}
+			}
+			if (!removed && highest != null) {
+				removed = this.map.remove(highest.getKey(), highest.getValue());
+			}
+			return removed;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+}
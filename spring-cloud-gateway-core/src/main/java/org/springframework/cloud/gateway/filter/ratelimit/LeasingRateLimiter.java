@@ -0,0 +1,434 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.validation.Validator;
+import org.springframework.validation.annotation.Validated;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+/**
+ * A token bucket rate limiter that leases blocks of tokens of the Redis bucket of
+ * {@link RedisRateLimiter} and serves requests from the lease in memory. A lease is
+ * renewed in the background when it runs low, sized after the rate at which this
+ * gateway consumed the previous ones; requests arriving while it is empty wait for the
+ * same renewal, which leases the tokens of all of them. A request is only denied when
+ * Redis granted fewer tokens than requested. Tokens not used before the lease expires
+ * are given back with the next renewal.
+ *
+ * <p>A lease never holds more than {@code maxError} of the burst capacity, which bounds
+ * both the tokens this gateway may keep from the others and the requests it may still
+ * allow, during {@code leaseDuration}, after the bucket emptied. The bound is per
+ * gateway instance: with {@code n} instances leasing from the same bucket, the limit may
+ * be exceeded by up to {@code n * maxError * burstCapacity} requests.
+ * 从 Redis 令牌桶批量租用令牌，在本地内存中消费，减少 Redis 调用
+ */
+public class LeasingRateLimiter extends AbstractRateLimiter<LeasingRateLimiter.Config> implements ApplicationContextAware {
+
+	public static final String CONFIGURATION_PROPERTY_NAME = "leasing-rate-limiter";
+	public static final String REDIS_SCRIPT_NAME = "redisRequestRateLeaseScript";
+
+	public static final int DEFAULT_MAX_KEYS = 100_000;
+
+	private Log log = LogFactory.getLog(getClass());
+
+	private ReactiveRedisTemplate<String, String> redisTemplate;
+	private RedisScript<List<Long>> script;
+	private AtomicBoolean initialized = new AtomicBoolean(false);
+	private Config defaultConfig;
+
+	private final LongSupplier nanoClock;
+
+	private final ConcurrentMap<String, Leases> routes = new ConcurrentHashMap<>();
+
+	private int maxKeys = DEFAULT_MAX_KEYS;
+
+	public LeasingRateLimiter(ReactiveRedisTemplate<String, String> redisTemplate,
+							RedisScript<List<Long>> script, Validator validator) {
+		this(redisTemplate, script, validator, System::nanoTime);
+	}
+
+	LeasingRateLimiter(ReactiveRedisTemplate<String, String> redisTemplate,
+			RedisScript<List<Long>> script, Validator validator, LongSupplier nanoClock) {
+		super(Config.class, CONFIGURATION_PROPERTY_NAME, validator);
+		this.redisTemplate = redisTemplate;
+		this.script = script;
+		this.nanoClock = nanoClock;
+		initialized.compareAndSet(false, true);
+	}
+
+	public LeasingRateLimiter(int defaultReplenishRate, int defaultBurstCapacity) {
+		super(Config.class, CONFIGURATION_PROPERTY_NAME, null);
+		this.nanoClock = System::nanoTime;
+		this.defaultConfig = new Config()
+				.setReplenishRate(defaultReplenishRate)
+				.setBurstCapacity(defaultBurstCapacity);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void setApplicationContext(ApplicationContext context) throws BeansException {
+		if (initialized.compareAndSet(false, true)) {
+			this.redisTemplate = context.getBean("stringReactiveRedisTemplate", ReactiveRedisTemplate.class);
+			this.script = context.getBean(REDIS_SCRIPT_NAME, RedisScript.class);
+			if (context.getBeanNamesForType(Validator.class).length > 0) {
+				this.setValidator(context.getBean(Validator.class));
+			}
+		}
+	}
+
+	/**
+	 * @param maxKeys the number of keys with a lease kept per route, the requests of
+	 * other keys call Redis every time
+	 */
+	public void setMaxKeys(int maxKeys) {
+		this.maxKeys = maxKeys;
+	}
+
+	/* for testing */ Config getDefaultConfig() {
+		return defaultConfig;
+	}
+
+	@Override
+	public Mono<Response> isAllowed(String routeId, String id) {
+		return isAllowed(routeId, id, 1);
+	}
+
+	@Override
+	public Mono<Response> isAllowed(String routeId, String id, int tokens) {
+		if (!this.initialized.get()) {
+			throw new IllegalStateException("LeasingRateLimiter is not initialized");
+		}
+
+		Config routeConfig = getConfig().get(routeId);
+		if (routeConfig == null) {
+			if (defaultConfig == null) {
+				throw new IllegalArgumentException("No Configuration found for route " + routeId);
+			}
+			routeConfig = defaultConfig;
+		}
+
+		Lease lease = lease(routeId, id, routeConfig);
+		if (lease.tryTake(tokens, this.nanoClock.getAsLong())) {
+			if (lease.isLow()) {
+				// renew before the lease runs out, the request does not wait for it
+				renew(lease, id, routeConfig).subscribe();
+			}
+			return Mono.just(new Response(true, lease.remaining()));
+		}
+		// 等待中的请求所需的令牌，续租时一并租用
+		lease.waiting.addAndGet(tokens);
+		return awaitRenewal(lease, id, routeConfig, tokens)
+				.doFinally(signal -> lease.waiting.addAndGet(-tokens));
+	}
+
+	private Mono<Response> awaitRenewal(Lease lease, String id, Config config, int tokens) {
+		return renew(lease, id, config).flatMap(outcome -> {
+			if (lease.tryTake(tokens, this.nanoClock.getAsLong())) {
+				return Mono.just(new Response(true, lease.remaining()));
+			}
+			switch (outcome) {
+			case FAILED:
+				// allowed when Redis failed, we don't want a hard dependency on Redis
+				return Mono.just(new Response(true, -1));
+			case REFUSED:
+				return Mono.just(new Response(false, 0));
+			default:
+				// the renewal was taken by the other requests waiting for it, renew again
+				return awaitRenewal(lease, id, config, tokens);
+			}
+		});
+	}
+
+	private Lease lease(String routeId, String id, Config config) {
+		Leases leases = this.routes.get(routeId);
+		if (leases == null || leases.config != config) {
+			// the route was (re)configured, its leases start over
+			leases = this.routes.compute(routeId, (key, existing) -> existing != null && existing.config == config
+					? existing : new Leases(config));
+		}
+		Lease lease = leases.leases.get(id);
+		if (lease != null) {
+			return lease;
+		}
+		long now = this.nanoClock.getAsLong();
+		if (leases.leases.size() >= this.maxKeys) {
+			// only expired leases are dropped, the tokens of the others would be lost
+			leases.sweeper.sweep(existing -> existing.isExpired(now), null);
+			if (leases.leases.size() >= this.maxKeys) {
+				// too many keys, this one is not cached and leases a token per request
+				return new Lease(config, false, now);
+			}
+		}
+		return leases.leases.computeIfAbsent(id, key -> new Lease(config, true, now));
+	}
+
+	/**
+	 * Renews the lease, or joins the pending renewal. The tokens of the requests waiting
+	 * for the renewal are leased even if they exceed the maximum size of a lease.
+	 * @return a Mono of the outcome of the renewal
+	 */
+	private Mono<Outcome> renew(Lease lease, String id, Config config) {
+		MonoProcessor<Outcome> renewal = MonoProcessor.create();
+		if (!lease.renewal.compareAndSet(null, renewal)) {
+			MonoProcessor<Outcome> pending = lease.renewal.get();
+			return pending != null ? pending : renew(lease, id, config);
+		}
+
+		long now = this.nanoClock.getAsLong();
+		long returned = lease.expired(now);
+		int requested = Math.max(lease.nextSize(now), lease.waiting.get());
+
+		// the keys of RedisRateLimiter, both limiters share the buckets
+		String prefix = "request_rate_limiter." + id;
+		List<String> keys = Arrays.asList(prefix + ".tokens", prefix + ".timestamp");
+		long millis = System.currentTimeMillis();
+		List<String> scriptArgs = Arrays.asList(config.getReplenishRate() + "", config.getBurstCapacity() + "",
+				BigDecimal.valueOf(millis, 3).toPlainString(), requested + "", returned + "");
+
+		Mono.defer(() -> this.redisTemplate.execute(this.script, keys, scriptArgs)
+				.reduce(new ArrayList<Long>(), (longs, l) -> {
+					longs.addAll(l);
+					return longs;
+				}))
+				.map(results -> {
+					lease.granted(results.get(0), results.get(1), this.nanoClock.getAsLong());
+					if (log.isDebugEnabled()) {
+						log.debug("Leased " + results.get(0) + " of " + requested + " tokens for " + id
+								+ ", " + results.get(1) + " left");
+					}
+					return results.get(0) >= requested ? Outcome.GRANTED : Outcome.REFUSED;
+				})
+				.onErrorResume(throwable -> {
+					log.error("Error leasing tokens from redis", throwable);
+					return Mono.just(Outcome.FAILED);
+				})
+				// cleared before the waiters are signalled, those renewing again start a new renewal
+				.doOnNext(outcome -> lease.renewal.compareAndSet(renewal, null))
+				.subscribe(renewal);
+		return renewal;
+	}
+
+	private enum Outcome {
+		// Redis granted all the tokens requested
+		GRANTED,
+		// Redis granted fewer tokens than requested, the bucket is empty
+		REFUSED,
+		// Redis could not be reached
+		FAILED
+	}
+
+	private static final class Leases {
+
+		private final Config config;
+
+		private final ConcurrentMap<String, Lease> leases = new ConcurrentHashMap<>();
+
+		private final KeySweeper<Lease> sweeper = new KeySweeper<>(this.leases);
+
+		private Leases(Config config) {
+			this.config = config;
+		}
+	}
+
+	private static final class Lease {
+
+		private final long durationNanos;
+
+		private final int maxSize;
+
+		private final boolean adaptive;
+
+		private final AtomicLong tokens = new AtomicLong();
+
+		private final AtomicLong consumed = new AtomicLong();
+
+		private final AtomicInteger waiting = new AtomicInteger();
+
+		private final AtomicReference<MonoProcessor<Outcome>> renewal = new AtomicReference<>();
+
+		private volatile long expiresAt;
+
+		private volatile long renewedAt;
+
+		private volatile int size = 1;
+
+		// 本节点对该键的请求速率，每秒
+		private volatile double rate;
+
+		private volatile long bucketTokens;
+
+		private Lease(Config config, boolean adaptive, long now) {
+			this.durationNanos = config.getLeaseDuration().toNanos();
+			this.maxSize = Math.max(1, (int) (config.getMaxError() * config.getBurstCapacity()));
+			this.adaptive = adaptive;
+			this.expiresAt = now;
+		}
+
+		private boolean tryTake(int count, long now) {
+			if (isExpired(now)) {
+				return false;
+			}
+			for (;;) {
+				long current = this.tokens.get();
+				if (current < count) {
+					return false;
+				}
+				if (this.tokens.compareAndSet(current, current - count)) {
+					this.consumed.addAndGet(count);
+					return true;
+				}
+			}
+		}
+
+		private boolean isExpired(long now) {
+			return now - this.expiresAt >= 0;
+		}
+
+		private boolean isLow() {
+			return this.tokens.get() <= this.size / 4;
+		}
+
+		private long remaining() {
+			return Math.max(0, this.tokens.get()) + this.bucketTokens;
+		}
+
+		/**
+		 * @return the tokens of an expired lease, given back to the bucket
+		 */
+		private long expired(long now) {
+			return isExpired(now) ? Math.max(0, this.tokens.getAndSet(0)) : 0;
+		}
+
+		/**
+		 * @return the tokens to lease so that the lease lasts its duration at the rate the
+		 * previous leases were consumed
+		 */
+		private int nextSize(long now) {
+			if (!this.adaptive) {
+				return 1;
+			}
+			long elapsed = now - this.renewedAt;
+			long consumed = this.consumed.getAndSet(0);
+			if (this.renewedAt != 0 && elapsed > 0) {
+				double observed = consumed * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+				this.rate = this.rate == 0 ? observed : (this.rate + observed) / 2;
+			}
+			this.renewedAt = now;
+			double size = Math.ceil(this.rate * this.durationNanos / TimeUnit.SECONDS.toNanos(1));
+			this.size = (int) Math.max(1, Math.min(this.maxSize, size));
+			return this.size;
+		}
+
+		private void granted(long granted, long bucketTokens, long now) {
+			this.tokens.addAndGet(granted);
+			this.bucketTokens = bucketTokens;
+			this.expiresAt = now + this.durationNanos;
+		}
+	}
+
+	@Validated
+	public static class Config {
+		@Min(1)
+		private int replenishRate;
+
+		@Min(0)
+		private int burstCapacity = 0;
+
+		// 单个节点一次最多租用的令牌占 burstCapacity 的比例，即允许的误差
+		@DecimalMin("0")
+		@DecimalMax("1")
+		private double maxError = 0.1;
+
+		// 租约有效期，过期未使用的令牌归还给 Redis
+		private Duration leaseDuration = Duration.ofMillis(500);
+
+		public int getReplenishRate() {
+			return replenishRate;
+		}
+
+		public Config setReplenishRate(int replenishRate) {
+			this.replenishRate = replenishRate;
+			return this;
+		}
+
+		public int getBurstCapacity() {
+			return burstCapacity;
+		}
+
+		public Config setBurstCapacity(int burstCapacity) {
+			this.burstCapacity = burstCapacity;
+			return this;
+		}
+
+		public double getMaxError() {
+			return maxError;
+		}
+
+		public Config setMaxError(double maxError) {
+			this.maxError = maxError;
+			return this;
+		}
+
+		public Duration getLeaseDuration() {
+			return leaseDuration;
+		}
+
+		public Config setLeaseDuration(Duration leaseDuration) {
+			this.leaseDuration = leaseDuration;
+			return this;
+		}
+
+		@Override
+		public String toString() {
+			return "Config{" +
+					"replenishRate=" + replenishRate +
+					", burstCapacity=" + burstCapacity +
+					", maxError=" + maxError +
+					", leaseDuration=" + leaseDuration +
+					'}';
+		}
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.validation.constraints.Min;
+
+import org.springframework.beans.BeansException;
+import org.springframework.cloud.gateway.event.FilterArgsEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.validation.Validator;
+import org.springframework.validation.annotation.Validated;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Limits the requests of each key in flight at once, so that a client cannot hold more
+ * than {@code maxInFlight} slow or long polling requests, whatever their rate. The
+ * requests are counted in memory, by each gateway instance. An allowed request gets a
+ * {@link Permit}, released when it completes. Requests costing more than one token take
+ * as many permits.
+ *
+ * <p>The counts of each route are spread over stripes, and a count is only kept while
+ * its key has requests in flight.
+ * 使用本地内存限制每个限流键同时处理中的请求数
+ */
+public class LocalInFlightRateLimiter extends AbstractRateLimiter<LocalInFlightRateLimiter.Config> implements ApplicationContextAware {
+
+	public static final String CONFIGURATION_PROPERTY_NAME = "local-in-flight-rate-limiter";
+
+	private static final int STRIPES = 16;
+
+	private final ConcurrentMap<String, Counts> routes = new ConcurrentHashMap<>();
+
+	private Config defaultConfig;
+
+	public LocalInFlightRateLimiter(Validator validator) {
+		super(Config.class, CONFIGURATION_PROPERTY_NAME, validator);
+	}
+
+	public LocalInFlightRateLimiter(int defaultMaxInFlight) {
+		this((Validator) null);
+		this.defaultConfig = validate(new Config().setMaxInFlight(defaultMaxInFlight));
+	}
+
+	@Override
+	public void setApplicationContext(ApplicationContext context) throws BeansException {
+		if (getValidator() == null && context.getBeanNamesForType(Validator.class).length > 0) {
+			this.setValidator(context.getBean(Validator.class));
+		}
+	}
+
+	@Override
+	public void onApplicationEvent(FilterArgsEvent event) {
+		super.onApplicationEvent(event);
+		Config routeConfig = getConfig().get(event.getRouteId());
+		if (routeConfig != null && routeConfig.getMaxInFlight() < 1) {
+			// bound without a validator, a route without maxInFlight would deny every request
+			getConfig().remove(event.getRouteId(), routeConfig);
+			validate(routeConfig);
+		}
+	}
+
+	/* for testing */ Config getDefaultConfig() {
+		return defaultConfig;
+	}
+
+	@Override
+	public Mono<Response> isAllowed(String routeId, String id) {
+		return Mono.just(tryAcquire(routeId, id, 1));
+	}
+
+	@Override
+	public Mono<Response> isAllowed(String routeId, String id, int tokens) {
+		return Mono.just(tryAcquire(routeId, id, tokens));
+	}
+
+	/**
+	 * Takes the given number of permits of the given key, none if fewer are left.
+	 * @return a {@link Permit} when allowed
+	 */
+	public Response tryAcquire(String routeId, String id, int permits) {
+		Config routeConfig = getConfig().get(routeId);
+		if (routeConfig == null) {
+			if (this.defaultConfig == null) {
+				throw new IllegalArgumentException("No Configuration found for route " + routeId);
+			}
+			routeConfig = this.defaultConfig;
+		}
+		int maxInFlight = routeConfig.getMaxInFlight();
+
+		ConcurrentMap<String, Integer> stripe = this.routes.computeIfAbsent(routeId, key -> new Counts()).stripe(id);
+		int[] inFlight = new int[1];
+		boolean[] acquired = new boolean[1];
+		stripe.compute(id, (key, count) -> {
+			int current = count == null ? 0 : count;
+			acquired[0] = current + permits <= maxInFlight;
+			inFlight[0] = acquired[0] ? current + permits : current;
+			return inFlight[0] == 0 ? null : inFlight[0];
+		});
+		if (!acquired[0]) {
+			return new Response(false, Math.max(0, maxInFlight - inFlight[0]));
+		}
+		return new Permit(maxInFlight - inFlight[0], () -> stripe.computeIfPresent(id,
+				(key, count) -> count > permits ? count - permits : null));
+	}
+
+	/**
+	 * @return the permits of the given key currently held
+	 */
+	public int getInFlight(String routeId, String id) {
+		Counts counts = this.routes.get(routeId);
+		Integer count = counts == null ? null : counts.stripe(id).get(id);
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * @return the number of keys of the given route with requests in flight
+	 */
+	public int getKeyCount(String routeId) {
+		Counts counts = this.routes.get(routeId);
+		return counts == null ? 0 : counts.size();
+	}
+
+	private static final class Counts {
+
+		private final List<ConcurrentMap<String, Integer>> stripes = new ArrayList<>(STRIPES);
+
+		private Counts() {
+			for (int i = 0; i < STRIPES; i++) {
+				this.stripes.add(new ConcurrentHashMap<>());
+			}
+		}
+
+		private ConcurrentMap<String, Integer> stripe(String id) {
+			int hash = id.hashCode();
+			return this.stripes.get((hash ^ (hash >>> 16)) & (STRIPES - 1));
+		}
+
+		private int size() {
+			int size = 0;
+			for (ConcurrentMap<String, Integer> stripe : this.stripes) {
+				size += stripe.size();
+			}
+			return size;
+		}
+	}
+
+	private static Config validate(Config config) {
+		if (config.getMaxInFlight() < 1) {
+			throw new IllegalArgumentException("maxInFlight must be at least 1, was " + config.getMaxInFlight());
+		}
+		return config;
+	}
+
+	@Validated
+	public static class Config {
+		// 每个限流键同时处理中的请求数上限
+		@Min(1)
+		private int maxInFlight;
+
+		public int getMaxInFlight() {
+			return maxInFlight;
+		}
+
+		public Config setMaxInFlight(int maxInFlight) {
+			this.maxInFlight = maxInFlight;
+			return this;
+		}
+
+		@Override
+		public String toString() {
+			return "Config{" +
+					"maxInFlight=" + maxInFlight +
+					'}';
+		}
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * A {@link QuotaLimiter} keeping its buckets in memory, for a single gateway instance or
+ * when each instance may allow its share of the rates. The buckets of a request are
+ * locked in the order of their names, so that they are all updated at once without
+ * deadlocks. At most {@code maxKeys} buckets are kept: a new key sweeps the next few
+ * buckets, dropping those that refilled completely first, and is only kept when its
+ * sweep removed a bucket. Otherwise its request is served from a full bucket that is not
+ * kept.
+ * 使用本地内存实现多维度配额
+ */
+public class LocalQuotaLimiter implements QuotaLimiter {
+
+	public static final int DEFAULT_MAX_KEYS = 100_000;
+
+	private final int maxKeys;
+
+	private final LongSupplier nanoClock;
+
+	private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+	private final KeySweeper<Bucket> sweeper = new KeySweeper<>(this.buckets);
+
+	public LocalQuotaLimiter() {
+		this(DEFAULT_MAX_KEYS);
+	}
+
+	public LocalQuotaLimiter(int maxKeys) {
+		this(maxKeys, System::nanoTime);
+	}
+
+	LocalQuotaLimiter(int maxKeys, LongSupplier nanoClock) {
+		this.maxKeys = maxKeys;
+		this.nanoClock = nanoClock;
+	}
+
+	@Override
+	public Mono<Response> isAllowed(String routeId, List<Quota> quotas, int tokens) {
+		return Mono.just(tryAcquire(routeId, quotas, tokens));
+	}
+
+	/**
+	 * Takes the given number of tokens from the buckets of all the quotas, or from none.
+	 */
+	public Response tryAcquire(String routeId, List<Quota> quotas, int tokens) {
+		long now = this.nanoClock.getAsLong();
+		Bucket[] buckets = new Bucket[quotas.size()];
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = bucket(routeId, quotas.get(i), now);
+		}
+		Bucket[] ordered = buckets.clone();
+		Arrays.sort(ordered, Comparator.comparing(bucket -> bucket.id));
+
+		for (Bucket bucket : ordered) {
+			bucket.lock.lock();
+		}
+		try {
+			String deniedBy = null;
+			long[] available = new long[buckets.length];
+			for (int i = 0; i < buckets.length; i++) {
+				Bucket bucket = buckets[i];
+				bucket.configure(quotas.get(i));
+				available[i] = bucket.available(now);
+				if (deniedBy == null && available[i] < tokens * bucket.intervalNanos) {
+					deniedBy = quotas.get(i).getName();
+				}
+			}
+			List<Long> remaining = new ArrayList<>(buckets.length);
+			for (int i = 0; i < buckets.length; i++) {
+				Bucket bucket = buckets[i];
+				long left = deniedBy == null ? available[i] - tokens * bucket.intervalNanos : available[i];
+				bucket.emptyAt = now - left;
+				remaining.add(left / bucket.intervalNanos);
+			}
+			return new Response(deniedBy == null, deniedBy, remaining);
+		}
+		finally {
+			for (Bucket bucket : ordered) {
+				bucket.lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of buckets currently kept
+	 */
+	public int getKeyCount() {
+		return this.buckets.size();
+	}
+
+	private Bucket bucket(String routeId, Quota quota, long now) {
+		String id = routeId + '\u0000' + quota.getName() + '\u0000' + quota.getKey();
+		Bucket bucket = this.buckets.get(id);
+		if (bucket != null) {
+			return bucket;
+		}
+		if (this.buckets.size() >= this.maxKeys
+				&& !this.sweeper.sweep(full -> full.isFull(now), fullest -> now - fullest.emptyAt)) {
+			// 另一个请求正在淘汰，不保存这个桶，按满桶处理
+			return new Bucket(id, quota, now);
+		}
+		return this.buckets.computeIfAbsent(id, key -> new Bucket(key, quota, now));
+	}
+
+	private static final class Bucket {
+
+		private final String id;
+
+		private final ReentrantLock lock = new ReentrantLock();
+
+		// 产生一个令牌的时间
+		private volatile long intervalNanos;
+
+		// 令牌桶从空到满的时间
+		private volatile long capacityNanos;
+
+		// 令牌桶为空的时间，guarded by lock
+		private volatile long emptyAt;
+
+		private Bucket(String id, Quota quota, long now) {
+			this.id = id;
+			configure(quota);
+			// a new bucket is full
+			this.emptyAt = now - this.capacityNanos;
+		}
+
+		private void configure(Quota quota) {
+			this.intervalNanos = Math.max(1, TimeUnit.SECONDS.toNanos(1) / quota.getReplenishRate());
+			this.capacityNanos = quota.getBurstCapacity() * this.intervalNanos;
+		}
+
+		private long available(long now) {
+			return Math.min(now - this.emptyAt, this.capacityNanos);
+		}
+
+		private boolean isFull(long now) {
+			return now - this.emptyAt >= this.capacityNanos;
+		}
+	}
+}
@@ -0,0 +1,455 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.validation.Validator;
+import org.springframework.validation.annotation.Validated;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * A token bucket rate limiter keeping its buckets in memory, for a single gateway
+ * instance or when each instance may allow its share of the rate. Each bucket is a
+ * single {@link AtomicLong} holding the time at which it was last empty; taking a token
+ * is one compare-and-set, without locks nor allocation.
+ *
+ * <p>The buckets of each route are spread over stripes bounded to a share of the
+ * maximum number of keys. When a stripe is full, a new key sweeps the next few buckets
+ * of the stripe: those that refilled completely are dropped, which changes nothing as a
+ * missing bucket starts full. Only when none of them is full is the one closest to full
+ * evicted, granting its key a full bucket early. A new key is only kept when its sweep
+ * removed a bucket; while another sweep of the stripe runs, its request is served from a
+ * full bucket that is not kept, as if it had just been evicted.
+ *
+ * <p>With {@link Algorithm#GCRA}, the buckets are the same: the time a bucket was last
+ * empty is the theoretical arrival time of GCRA less the time the bucket takes to fill.
+ * With {@link Algorithm#SLIDING_WINDOW}, each key holds the times of its last
+ * {@code burstCapacity} requests allowed instead, which takes memory in proportion to the
+ * burst capacity. Their keys are then bounded so that a route keeps at most
+ * {@value #MAX_WINDOW_SLOTS} request times, fewer keys than {@code maxKeys} when the
+ * burst capacity is large. As each stripe keeps at least one key, the burst capacity of
+ * a sliding window may not exceed a sixteenth of {@value #MAX_WINDOW_SLOTS}.
+ * 使用本地内存的令牌桶实现限流，不依赖 Redis，各网关实例分别限流
+ */
+public class LocalRateLimiter extends AbstractRateLimiter<LocalRateLimiter.Config> implements ApplicationContextAware {
+
+	public static final String CONFIGURATION_PROPERTY_NAME = "local-rate-limiter";
+
+	public static final int DEFAULT_MAX_KEYS = 100_000;
+
+	/**
+	 * The maximum number of request times kept for a route by {@link Algorithm#SLIDING_WINDOW}.
+	 */
+	public static final int MAX_WINDOW_SLOTS = 4_000_000;
+
+	private static final int STRIPES = 16;
+
+	private final int maxKeys;
+
+	private final LongSupplier nanoClock;
+
+	private final ConcurrentMap<String, Buckets<?>> routes = new ConcurrentHashMap<>();
+
+	private Config defaultConfig;
+
+	public LocalRateLimiter(Validator validator) {
+		this(validator, DEFAULT_MAX_KEYS);
+	}
+
+	public LocalRateLimiter(Validator validator, int maxKeys) {
+		this(validator, maxKeys, System::nanoTime);
+	}
+
+	public LocalRateLimiter(int defaultReplenishRate, int defaultBurstCapacity) {
+		this(null, DEFAULT_MAX_KEYS);
+		this.defaultConfig = validate(new Config()
+				.setReplenishRate(defaultReplenishRate)
+				.setBurstCapacity(defaultBurstCapacity));
+	}
+
+	LocalRateLimiter(Validator validator, int maxKeys, LongSupplier nanoClock) {
+		super(Config.class, CONFIGURATION_PROPERTY_NAME, validator);
+		if (maxKeys < STRIPES) {
+			throw new IllegalArgumentException("maxKeys must be at least " + STRIPES + ", was " + maxKeys);
+		}
+		this.maxKeys = maxKeys;
+		this.nanoClock = nanoClock;
+	}
+
+	@Override
+	public void setApplicationContext(ApplicationContext context) throws BeansException {
+		if (getValidator() == null && context.getBeanNamesForType(Validator.class).length > 0) {
+			this.setValidator(context.getBean(Validator.class));
+		}
+	}
+
+	/* for testing */ Config getDefaultConfig() {
+		return defaultConfig;
+	}
+
+	@Override
+	public Mono<Response> isAllowed(String routeId, String id) {
+		return Mono.just(tryAcquire(routeId, id, 1));
+	}
+
+	@Override
+	public Mono<Response> isAllowed(String routeId, String id, int tokens) {
+		return Mono.just(tryAcquire(routeId, id, tokens));
+	}
+
+	/**
+	 * Takes a token from the bucket of the given key.
+	 */
+	public Response tryAcquire(String routeId, String id) {
+		return tryAcquire(routeId, id, 1);
+	}
+
+	/**
+	 * Takes the given number of tokens from the bucket of the given key, none if it
+	 * holds fewer.
+	 */
+	public Response tryAcquire(String routeId, String id, int tokens) {
+		Config routeConfig = getConfig().get(routeId);
+		if (routeConfig == null) {
+			if (this.defaultConfig == null) {
+				throw new IllegalArgumentException("No Configuration found for route " + routeId);
+			}
+			routeConfig = this.defaultConfig;
+		}
+
+		Buckets<?> buckets = this.routes.get(routeId);
+		if (buckets == null || buckets.config != routeConfig) {
+			// the route was (re)configured, its buckets start over
+			Config config = routeConfig;
+			buckets = this.routes.compute(routeId, (key, existing) -> existing != null && existing.config == config
+					? existing : Buckets.of(config, this.maxKeys));
+		}
+		return buckets.tryAcquire(id, tokens, this.nanoClock.getAsLong());
+	}
+
+	/**
+	 * @return the number of buckets currently kept for the given route
+	 */
+	public int getKeyCount(String routeId) {
+		Buckets<?> buckets = this.routes.get(routeId);
+		return buckets == null ? 0 : buckets.size();
+	}
+
+	private abstract static class Buckets<B> {
+
+		private final Config config;
+
+		private final int maxKeysPerStripe;
+
+		private final List<Stripe<B>> stripes = new ArrayList<>(STRIPES);
+
+		private Buckets(Config config, int maxKeys) {
+			this.config = config;
+			this.maxKeysPerStripe = maxKeys / STRIPES;
+			for (int i = 0; i < STRIPES; i++) {
+				this.stripes.add(new Stripe<>());
+			}
+		}
+
+		private static Buckets<?> of(Config config, int maxKeys) {
+			// configurations bound without a validator, or set directly, are checked here once
+			validate(config);
+			// GCRA 的理论到达时间即令牌桶为空的时间加上令牌桶从空到满的时间，两者的实现相同
+			return config.getAlgorithm() == Algorithm.SLIDING_WINDOW ? new SlidingWindows(config, maxKeys)
+					: new TokenBuckets(config, maxKeys);
+		}
+
+		private Response tryAcquire(String id, int tokens, long now) {
+			Stripe<B> stripe = stripe(id);
+			B bucket = stripe.buckets.get(id);
+			if (bucket == null) {
+				if (stripe.buckets.size() >= this.maxKeysPerStripe
+						&& !stripe.sweeper.sweep(full -> isFull(full, now), fullest -> fill(fullest, now))) {
+					// 另一个请求正在淘汰，不保存这个键的桶，按满桶处理，与被淘汰的键相同
+					return tryAcquire(newBucket(now), tokens, now);
+				}
+				bucket = stripe.buckets.computeIfAbsent(id, key -> newBucket(now));
+			}
+			return tryAcquire(bucket, tokens, now);
+		}
+
+		protected abstract B newBucket(long now);
+
+		protected abstract Response tryAcquire(B bucket, int tokens, long now);
+
+		/**
+		 * @return the time since the bucket was last empty, at most the time it takes to
+		 * fill up
+		 */
+		protected abstract long fill(B bucket, long now);
+
+		protected abstract boolean isFull(B bucket, long now);
+
+		private Stripe<B> stripe(String id) {
+			int hash = id.hashCode();
+			return this.stripes.get((hash ^ (hash >>> 16)) & (STRIPES - 1));
+		}
+
+		private int size() {
+			int size = 0;
+			for (Stripe<B> stripe : this.stripes) {
+				size += stripe.buckets.size();
+			}
+			return size;
+		}
+	}
+
+	private static final class Stripe<B> {
+
+		private final ConcurrentMap<String, B> buckets = new ConcurrentHashMap<>();
+
+		private final KeySweeper<B> sweeper = new KeySweeper<>(this.buckets);
+	}
+
+	private static final class TokenBuckets extends Buckets<AtomicLong> {
+
+		// 产生一个令牌的时间
+		private final long intervalNanos;
+
+		// 令牌桶从空到满的时间
+		private final long capacityNanos;
+
+		private TokenBuckets(Config config, int maxKeys) {
+			super(config, maxKeys);
+			this.intervalNanos = Math.max(1, TimeUnit.SECONDS.toNanos(1) / config.getReplenishRate());
+			this.capacityNanos = config.getBurstCapacity() * this.intervalNanos;
+		}
+
+		@Override
+		protected AtomicLong newBucket(long now) {
+			// a new bucket is full
+			return new AtomicLong(now - this.capacityNanos);
+		}
+
+		@Override
+		protected Response tryAcquire(AtomicLong bucket, int tokens, long now) {
+			long cost = tokens * this.intervalNanos;
+			for (;;) {
+				long emptyAt = bucket.get();
+				long available = Math.min(now - emptyAt, this.capacityNanos);
+				if (available < cost) {
+					return new Response(false, available / this.intervalNanos);
+				}
+				long left = available - cost;
+				if (bucket.compareAndSet(emptyAt, now - left)) {
+					return new Response(true, left / this.intervalNanos);
+				}
+			}
+		}
+
+		@Override
+		protected long fill(AtomicLong bucket, long now) {
+			return Math.min(now - bucket.get(), this.capacityNanos);
+		}
+
+		@Override
+		protected boolean isFull(AtomicLong bucket, long now) {
+			return now - bucket.get() >= this.capacityNanos;
+		}
+	}
+
+	private static final class SlidingWindows extends Buckets<SlidingWindow> {
+
+		// 窗口长度，窗口内的请求数上限为 burstCapacity
+		private final long windowNanos;
+
+		private final int limit;
+
+		private SlidingWindows(Config config, int maxKeys) {
+			// 每个键保存 burstCapacity 个请求时间，按请求时间的总数限制键数
+			super(config, Math.max(STRIPES, Math.min(maxKeys, MAX_WINDOW_SLOTS / Math.max(1, config.getBurstCapacity()))));
+			this.limit = config.getBurstCapacity();
+			this.windowNanos = Math.max(1, TimeUnit.SECONDS.toNanos(1) * this.limit / config.getReplenishRate());
+		}
+
+		@Override
+		protected SlidingWindow newBucket(long now) {
+			// a new window holds no request
+			return new SlidingWindow(this.limit, now - this.windowNanos);
+		}
+
+		@Override
+		protected Response tryAcquire(SlidingWindow window, int tokens, long now) {
+			long expiredAt = now - this.windowNanos;
+			synchronized (window) {
+				if (!window.tryAdd(tokens, now, expiredAt)) {
+					return new Response(false, window.expired(expiredAt));
+				}
+				return new Response(true, window.expired(expiredAt));
+			}
+		}
+
+		@Override
+		protected long fill(SlidingWindow window, long now) {
+			synchronized (window) {
+				return this.limit == 0 ? 0 : window.expired(now - this.windowNanos) * this.windowNanos / this.limit;
+			}
+		}
+
+		@Override
+		protected boolean isFull(SlidingWindow window, long now) {
+			synchronized (window) {
+				return window.expired(now - this.windowNanos) == this.limit;
+			}
+		}
+	}
+
+	/**
+	 * The times of the last {@code burstCapacity} requests allowed, in a ring from the
+	 * oldest to the newest.
+	 */
+	private static final class SlidingWindow {
+
+		// guarded by this
+		private final long[] times;
+
+		// 最早的请求时间的位置
+		private int head;
+
+		private SlidingWindow(int limit, long expired) {
+			this.times = new long[limit];
+			Arrays.fill(this.times, expired);
+		}
+
+		/**
+		 * Adds the given number of requests when at least as many of the last requests
+		 * allowed have left the window.
+		 */
+		private boolean tryAdd(int count, long now, long expiredAt) {
+			int limit = this.times.length;
+			if (count > limit || this.times[(this.head + count - 1) % limit] - expiredAt > 0) {
+				return false;
+			}
+			for (int i = 0; i < count; i++) {
+				this.times[this.head] = now;
+				this.head = (this.head + 1) % limit;
+			}
+			return true;
+		}
+
+		/**
+		 * @return the number of requests that left the window, the requests that may
+		 * still be allowed
+		 */
+		private int expired(long expiredAt) {
+			int limit = this.times.length;
+			int low = 0;
+			int high = limit;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (this.times[(this.head + middle) % limit] - expiredAt <= 0) {
+					low = middle + 1;
+				}
+				else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+	}
+
+	/**
+	 * Checks the constraints of the configuration, which are not enforced when it is
+	 * bound without a {@link Validator}.
+	 */
+	private static Config validate(Config config) {
+		if (config.getReplenishRate() < 1) {
+			throw new IllegalArgumentException("replenishRate must be at least 1, was " + config.getReplenishRate());
+		}
+		if (config.getBurstCapacity() < 0) {
+			throw new IllegalArgumentException("burstCapacity must be at least 0, was " + config.getBurstCapacity());
+		}
+		if (config.getAlgorithm() == null) {
+			throw new IllegalArgumentException("algorithm must not be null");
+		}
+		// each stripe keeps at least one window, which must fit in its share of the slots
+		if (config.getAlgorithm() == Algorithm.SLIDING_WINDOW && config.getBurstCapacity() > MAX_WINDOW_SLOTS / STRIPES) {
+			throw new IllegalArgumentException("burstCapacity of a sliding window must be at most "
+					+ MAX_WINDOW_SLOTS / STRIPES + ", was " + config.getBurstCapacity());
+		}
+		return config;
+	}
+
+	@Validated
+	public static class Config {
+		@Min(1)
+		private int replenishRate;
+
+		@Min(0)
+		private int burstCapacity = 0;
+
+		@NotNull
+		private Algorithm algorithm = Algorithm.TOKEN_BUCKET;
+
+		public int getReplenishRate() {
+			return replenishRate;
+		}
+
+		public Config setReplenishRate(int replenishRate) {
+			this.replenishRate = replenishRate;
+			return this;
+		}
+
+		public int getBurstCapacity() {
+			return burstCapacity;
+		}
+
+		public Config setBurstCapacity(int burstCapacity) {
+			this.burstCapacity = burstCapacity;
+			return this;
+		}
+
+		public Algorithm getAlgorithm() {
+			return algorithm;
+		}
+
+		public Config setAlgorithm(Algorithm algorithm) {
+			this.algorithm = algorithm;
+			return this;
+		}
+
+		@Override
+		public String toString() {
+			return "Config{" +
+					"replenishRate=" + replenishRate +
+					", burstCapacity=" + burstCapacity +
+					", algorithm=" + algorithm +
+					'}';
+		}
+	}
+}
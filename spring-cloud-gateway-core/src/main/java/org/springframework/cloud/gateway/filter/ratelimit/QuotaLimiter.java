@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import java.util.List;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Evaluates several rate limits of a request at once, such as per user, per API key and
+ * per tenant. The tokens are taken from the buckets of all the quotas, or from none of
+ * them when one does not hold enough, so that a request denied by a quota does not use
+ * up the others. Buckets are identified by the route, and the name and the key of their
+ * quota, so that routes with quotas of the same name do not share their buckets.
+ * 一次调用同时校验多个维度的配额，全部通过才消耗令牌
+ */
+public interface QuotaLimiter {
+
+	Mono<Response> isAllowed(String routeId, List<Quota> quotas, int tokens);
+
+	class Quota {
+		private final String name;
+		private final String key;
+		private final int replenishRate;
+		private final int burstCapacity;
+
+		public Quota(String name, String key, int replenishRate, int burstCapacity) {
+			this.name = name;
+			this.key = key;
+			this.replenishRate = replenishRate;
+			this.burstCapacity = burstCapacity;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public int getReplenishRate() {
+			return replenishRate;
+		}
+
+		public int getBurstCapacity() {
+			return burstCapacity;
+		}
+
+		@Override
+		public String toString() {
+			return "Quota{" +
+					"name='" + name + '\'' +
+					", key='" + key + '\'' +
+					", replenishRate=" + replenishRate +
+					", burstCapacity=" + burstCapacity +
+					'}';
+		}
+	}
+
+	class Response {
+		private final boolean allowed;
+		private final String deniedBy;
+		private final List<Long> tokensRemaining;
+
+		/**
+		 * @param deniedBy the name of the first quota that denied the request, null if it
+		 * was allowed
+		 * @param tokensRemaining the tokens left in the bucket of each quota, in the order
+		 * of the quotas, -1 when unknown
+		 */
+		public Response(boolean allowed, String deniedBy, List<Long> tokensRemaining) {
+			this.allowed = allowed;
+			this.deniedBy = deniedBy;
+			this.tokensRemaining = tokensRemaining;
+		}
+
+		public boolean isAllowed() {
+			return allowed;
+		}
+
+		public String getDeniedBy() {
+			return deniedBy;
+		}
+
+		public List<Long> getTokensRemaining() {
+			return tokensRemaining;
+		}
+
+		@Override
+		public String toString() {
+			return "Response{" +
+					"allowed=" + allowed +
+					", deniedBy='" + deniedBy + '\'' +
+					", tokensRemaining=" + tokensRemaining +
+					'}';
+		}
+	}
+}
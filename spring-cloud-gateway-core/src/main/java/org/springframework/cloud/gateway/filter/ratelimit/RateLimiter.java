@@ -1,5 +1,7 @@
 package org.springframework.cloud.gateway.filter.ratelimit;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.springframework.cloud.gateway.support.StatefulConfigurable;
 
 import reactor.core.publisher.Mono;
@@ -11,6 +13,41 @@ public interface RateLimiter<C> extends StatefulConfigurable<C> {
 
 	Mono<Response> isAllowed(String routeId, String id);
 
+	/**
+	 * Takes the given number of tokens, for requests costing more than others. Rate
+	 * limiters that do not support costs take a single token.
+	 */
+	default Mono<Response> isAllowed(String routeId, String id, int tokens) {
+		return isAllowed(routeId, id);
+	}
+
+	/**
+	 * The algorithms a route may be limited with, given the same replenish rate and burst
+	 * capacity.
+	 * 限流算法，按路由配置
+	 */
+	enum Algorithm {
+		/**
+		 * A bucket refilled with {@code replenishRate} tokens per second, holding at most
+		 * {@code burstCapacity} tokens.
+		 */
+		TOKEN_BUCKET,
+		/**
+		 * The generic cell rate algorithm, which paces requests like the token bucket,
+		 * but keeps a single timestamp per key, the theoretical arrival time of the next
+		 * request.
+		 */
+		GCRA,
+		/**
+		 * Keeps the times of the requests allowed, so that no more than
+		 * {@code burstCapacity} requests are allowed in any window of
+		 * {@code burstCapacity / replenishRate} seconds, without the bursts allowed
+		 * around the start of fixed windows. Takes memory in proportion to the burst
+		 * capacity.
+		 */
+		SLIDING_WINDOW
+	}
+
 	class Response {
 		private final boolean allowed;
 		private final long tokensRemaining;
@@ -37,4 +74,30 @@ public interface RateLimiter<C> extends StatefulConfigurable<C> {
 			return sb.toString();
 		}
 	}
+
+	/**
+	 * An allowed response holding permits until the request completes, returned by the
+	 * limiters of the requests in flight. The permits are released once, when the
+	 * request completes, fails or is cancelled.
+	 * 并发限流器的许可，请求结束时释放
+	 */
+	class Permit extends Response {
+		private final AtomicBoolean released = new AtomicBoolean();
+		private final Runnable release;
+
+		public Permit(long tokensRemaining, Runnable release) {
+			super(true, tokensRemaining);
+			this.release = release;
+		}
+
+		public void release() {
+			if (released.compareAndSet(false, true)) {
+				release.run();
+			}
+		}
+
+		public boolean isReleased() {
+			return released.get();
+		}
+	}
 }
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.validation.constraints.Min;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.validation.Validator;
+import org.springframework.validation.annotation.Validated;
+
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Limits the requests of each key in flight at once across the gateway instances, with
+ * permits leased in Redis by the {@code request_in_flight.lua} script. The lease of a
+ * permit is renewed while its request is in flight, a third of the lease duration
+ * before it expires, so that the permits of a gateway that stopped without releasing
+ * them expire with their lease.
+ * 使用 Redis 租约限制每个限流键同时处理中的请求数，网关实例崩溃时许可随租约过期
+ */
+public class RedisInFlightRateLimiter extends AbstractRateLimiter<RedisInFlightRateLimiter.Config> implements ApplicationContextAware {
+
+	public static final String CONFIGURATION_PROPERTY_NAME = "redis-in-flight-rate-limiter";
+	public static final String REDIS_SCRIPT_NAME = "redisRequestInFlightScript";
+
+	public static final Duration DEFAULT_LEASE_DURATION = Duration.ofSeconds(30);
+
+	private Log log = LogFactory.getLog(getClass());
+
+	private ReactiveRedisTemplate<String, String> redisTemplate;
+	private RedisScript<List<Long>> script;
+	private AtomicBoolean initialized = new AtomicBoolean(false);
+	private Config defaultConfig;
+
+	private final Scheduler scheduler;
+
+	private Duration leaseDuration = DEFAULT_LEASE_DURATION;
+
+	public RedisInFlightRateLimiter(ReactiveRedisTemplate<String, String> redisTemplate,
+									RedisScript<List<Long>> script, Validator validator) {
+		this(redisTemplate, script, validator, Schedulers.parallel());
+	}
+
+	RedisInFlightRateLimiter(ReactiveRedisTemplate<String, String> redisTemplate,
+			RedisScript<List<Long>> script, Validator validator, Scheduler scheduler) {
+		super(Config.class, CONFIGURATION_PROPERTY_NAME, validator);
+		this.redisTemplate = redisTemplate;
+		this.script = script;
+		this.scheduler = scheduler;
+		initialized.compareAndSet(false, true);
+	}
+
+	public RedisInFlightRateLimiter(int defaultMaxInFlight) {
+		super(Config.class, CONFIGURATION_PROPERTY_NAME, null);
+		this.scheduler = Schedulers.parallel();
+		this.defaultConfig = new Config().setMaxInFlight(defaultMaxInFlight);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void setApplicationContext(ApplicationContext context) throws BeansException {
+		if (initialized.compareAndSet(false, true)) {
+			this.redisTemplate = context.getBean("stringReactiveRedisTemplate", ReactiveRedisTemplate.class);
+			this.script = context.getBean(REDIS_SCRIPT_NAME, RedisScript.class);
+			if (context.getBeanNamesForType(Validator.class).length > 0) {
+				this.setValidator(context.getBean(Validator.class));
+			}
+		}
+	}
+
+	/**
+	 * @param leaseDuration the time the permits of a gateway that stopped are held for
+	 */
+	public void setLeaseDuration(Duration leaseDuration) {
+		this.leaseDuration = leaseDuration;
+	}
+
+	/* for testing */ Config getDefaultConfig() {
+		return defaultConfig;
+	}
+
+	@Override
+	public Mono<Response> isAllowed(String routeId, String id) {
+		return isAllowed(routeId, id, 1);
+	}
+
+	@Override
+	public Mono<Response> isAllowed(String routeId, String id, int tokens) {
+		if (!this.initialized.get()) {
+			throw new IllegalStateException("RedisInFlightRateLimiter is not initialized");
+		}
+
+		Config routeConfig = getConfig().get(routeId);
+		if (routeConfig == null) {
+			if (defaultConfig == null) {
+				throw new IllegalArgumentException("No Configuration found for route " + routeId);
+			}
+			routeConfig = defaultConfig;
+		}
+		int maxInFlight = routeConfig.getMaxInFlight();
+
+		// hash tag {id}，兼容 Redis Cluster
+		List<String> keys = Collections.singletonList("request_in_flight.{" + id + "}");
+		Lease lease = new Lease(keys, maxInFlight, UUID.randomUUID().toString(), tokens);
+		AtomicBoolean delivered = new AtomicBoolean();
+		return execute("acquire", keys, maxInFlight, lease.permitId, tokens)
+				.map(results -> {
+					if (results.get(0) != 1L) {
+						return new Response(false, results.get(1));
+					}
+					lease.renew();
+					return (Response) new Permit(results.get(1), lease::release);
+				})
+				// allowed when Redis failed, we don't want a hard dependency on Redis
+				.onErrorResume(throwable -> {
+					log.error("Error determining if user allowed from redis", throwable);
+					return Mono.just(new Response(true, -1));
+				})
+				.doOnNext(response -> delivered.set(true))
+				// 调用方拿到许可前取消（例如客户端断开），许可可能已在 Redis 中租用，由限流器自己释放
+				.doOnCancel(() -> {
+					if (!delivered.get()) {
+						lease.release();
+					}
+				});
+	}
+
+	private Mono<List<Long>> execute(String operation, List<String> keys, int maxInFlight, String permitId,
+			int permits) {
+		List<String> scriptArgs = Arrays.asList(operation, maxInFlight + "", System.currentTimeMillis() + "",
+				this.leaseDuration.toMillis() + "", permitId, permits + "");
+		return Mono.defer(() -> this.redisTemplate.execute(this.script, keys, scriptArgs).next());
+	}
+
+	/**
+	 * The permits of a request leased in Redis, renewed until they are released or a
+	 * renewal fails.
+	 */
+	private class Lease {
+
+		private final List<String> keys;
+		private final int maxInFlight;
+		private final String permitId;
+		private final int permits;
+
+		private final AtomicBoolean released = new AtomicBoolean();
+		private final Disposable.Swap renewals = Disposables.swap();
+
+		Lease(List<String> keys, int maxInFlight, String permitId, int permits) {
+			this.keys = keys;
+			this.maxInFlight = maxInFlight;
+			this.permitId = permitId;
+			this.permits = permits;
+		}
+
+		void renew() {
+			// 在租约过期前续约；租约已过期（脚本返回 0）或 Redis 出错时停止续约，许可随租约过期
+			long period = Math.max(1, leaseDuration.toMillis() * 2 / 3);
+			// 已释放时 update 立即取消新的续约
+			this.renewals.update(Flux.interval(Duration.ofMillis(period), scheduler)
+					.concatMap(tick -> execute("renew", this.keys, this.maxInFlight, this.permitId, this.permits))
+					.takeWhile(results -> results.get(0) == 1L)
+					.subscribe(null, throwable -> log.error("Error renewing permits in redis", throwable)));
+		}
+
+		void release() {
+			if (this.released.compareAndSet(false, true)) {
+				this.renewals.dispose();
+				execute("release", this.keys, this.maxInFlight, this.permitId, this.permits)
+						.subscribe(null, throwable -> log.error("Error releasing permits in redis", throwable));
+			}
+		}
+	}
+
+	@Validated
+	public static class Config {
+		// 每个限流键同时处理中的请求数上限
+		@Min(1)
+		private int maxInFlight;
+
+		public int getMaxInFlight() {
+			return maxInFlight;
+		}
+
+		public Config setMaxInFlight(int maxInFlight) {
+			this.maxInFlight = maxInFlight;
+			return this;
+		}
+
+		@Override
+		public String toString() {
+			return "Config{" +
+					"maxInFlight=" + maxInFlight +
+					'}';
+		}
+	}
+}
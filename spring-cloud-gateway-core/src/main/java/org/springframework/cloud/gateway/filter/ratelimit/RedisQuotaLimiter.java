@@ -0,0 +1,122 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.util.StringUtils;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * A {@link QuotaLimiter} evaluating all the quotas of a request with a single call of
+ * the {@code request_quota.lua} script. Each bucket is a hash holding its tokens and the
+ * time of its last refill, as in version 2 of {@link RedisRateLimiter}.
+ *
+ * <p>The keys of a script call must belong to the same slot of a Redis Cluster. Set a
+ * hash tag to place all the buckets in one slot, at the cost of keeping them on a single
+ * node.
+ * 使用一次 Lua 脚本调用校验多个维度的配额
+ */
+public class RedisQuotaLimiter implements QuotaLimiter {
+
+	public static final String REDIS_SCRIPT_NAME = "redisRequestQuotaScript";
+
+	private Log log = LogFactory.getLog(getClass());
+
+	private final ReactiveRedisTemplate<String, String> redisTemplate;
+
+	private final RedisScript<List<Long>> script;
+
+	// Redis Cluster 下所有键使用的 hash tag，为空时不使用
+	private String hashTag;
+
+	public RedisQuotaLimiter(ReactiveRedisTemplate<String, String> redisTemplate,
+							 RedisScript<List<Long>> script) {
+		this.redisTemplate = redisTemplate;
+		this.script = script;
+	}
+
+	/**
+	 * @param hashTag the hash tag of all the keys, so that they belong to the same slot
+	 * of a Redis Cluster
+	 */
+	public void setHashTag(String hashTag) {
+		this.hashTag = hashTag;
+	}
+
+	@Override
+	public Mono<Response> isAllowed(String routeId, List<Quota> quotas, int tokens) {
+		try {
+			List<String> keys = new ArrayList<>(quotas.size());
+			List<String> scriptArgs = new ArrayList<>(quotas.size() * 2 + 2);
+			scriptArgs.add(tokens + "");
+			scriptArgs.add(System.currentTimeMillis() + "");
+			for (Quota quota : quotas) {
+				keys.add(getKey(routeId, quota));
+				scriptArgs.add(quota.getReplenishRate() + "");
+				scriptArgs.add(quota.getBurstCapacity() + "");
+			}
+
+			// allowed, denied_index, tokens_left... = redis.eval(SCRIPT, keys, args)
+			Flux<List<Long>> flux = this.redisTemplate.execute(this.script, keys, scriptArgs);
+			return flux.onErrorResume(throwable -> {
+				log.error("Error determining if quotas allowed from redis", throwable);
+				return Flux.just(failOpen(quotas));
+			}).reduce(new ArrayList<Long>(), (longs, l) -> {
+				longs.addAll(l);
+				return longs;
+			}).map(results -> {
+				boolean allowed = results.get(0) == 1L;
+				int denied = results.get(1).intValue();
+				Response response = new Response(allowed, denied > 0 ? quotas.get(denied - 1).getName() : null,
+						results.subList(2, results.size()));
+				if (log.isDebugEnabled()) {
+					log.debug("response: " + response);
+				}
+				return response;
+			});
+		}
+		catch (Exception e) {
+			// we don't want a hard dependency on Redis to allow traffic
+			log.error("Error determining if quotas allowed from redis", e);
+		}
+		return Mono.just(new Response(true, null, failOpen(quotas).subList(2, quotas.size() + 2)));
+	}
+
+	/* for testing */ String getKey(String routeId, Quota quota) {
+		String key = "request_quota." + routeId + "." + quota.getName() + "." + quota.getKey();
+		return StringUtils.hasText(this.hashTag) ? "{" + this.hashTag + "}." + key : key;
+	}
+
+	private static List<Long> failOpen(List<Quota> quotas) {
+		List<Long> results = new ArrayList<>(quotas.size() + 2);
+		results.add(1L);
+		results.add(0L);
+		results.addAll(Collections.nCopies(quotas.size(), -1L));
+		return results;
+	}
+}
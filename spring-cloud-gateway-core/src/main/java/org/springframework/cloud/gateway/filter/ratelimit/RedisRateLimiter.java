@@ -1,12 +1,14 @@
 package org.springframework.cloud.gateway.filter.ratelimit;
 
-import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -15,6 +17,7 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.util.Assert;
 import org.springframework.validation.Validator;
 import org.springframework.validation.annotation.Validated;
 
@@ -35,13 +38,22 @@ public class RedisRateLimiter extends AbstractRateLimiter<RedisRateLimiter.Confi
 
 	public static final String CONFIGURATION_PROPERTY_NAME = "redis-rate-limiter";
 	public static final String REDIS_SCRIPT_NAME = "redisRequestRateLimiterScript";
+	public static final String REDIS_SCRIPT_V2_NAME = "redisRequestRateLimiterScriptV2";
+	public static final String REDIS_GCRA_SCRIPT_NAME = "redisRequestRateGcraScript";
+	public static final String REDIS_SLIDING_WINDOW_SCRIPT_NAME = "redisRequestRateSlidingWindowScript";
 
 	private Log log = LogFactory.getLog(getClass());
 
 	private ReactiveRedisTemplate<String, String> redisTemplate;
 	private RedisScript<List<Long>> script;
+	private RedisScript<List<Long>> gcraScript;
+	private RedisScript<List<Long>> slidingWindowScript;
 	private AtomicBoolean initialized = new AtomicBoolean(false);
 	private Config defaultConfig;
+	private RedisRateLimiterBatcher batcher;
+	private int scriptVersion = 1;
+	private boolean migrateKeys;
+	private DenyCache denyCache;
 
 	public RedisRateLimiter(ReactiveRedisTemplate<String, String> redisTemplate,
 							RedisScript<List<Long>> script, Validator validator) {
@@ -63,26 +75,94 @@ public class RedisRateLimiter extends AbstractRateLimiter<RedisRateLimiter.Confi
 	public void setApplicationContext(ApplicationContext context) throws BeansException {
 		if (initialized.compareAndSet(false, true)) {
 			this.redisTemplate = context.getBean("stringReactiveRedisTemplate", ReactiveRedisTemplate.class);
-			this.script = context.getBean(REDIS_SCRIPT_NAME, RedisScript.class);
+			this.script = context.getBean(this.scriptVersion == 2 ? REDIS_SCRIPT_V2_NAME : REDIS_SCRIPT_NAME,
+					RedisScript.class);
+			if (context.containsBean(REDIS_GCRA_SCRIPT_NAME)) {
+				this.gcraScript = context.getBean(REDIS_GCRA_SCRIPT_NAME, RedisScript.class);
+			}
+			if (context.containsBean(REDIS_SLIDING_WINDOW_SCRIPT_NAME)) {
+				this.slidingWindowScript = context.getBean(REDIS_SLIDING_WINDOW_SCRIPT_NAME, RedisScript.class);
+			}
 			if (context.getBeanNamesForType(Validator.class).length > 0) {
 				this.setValidator(context.getBean(Validator.class));
 			}
 		}
 	}
 
+	/**
+	 * @param gcraScript the script of the routes limited with {@link Algorithm#GCRA}
+	 */
+	public void setGcraScript(RedisScript<List<Long>> gcraScript) {
+		this.gcraScript = gcraScript;
+	}
+
+	/**
+	 * @param slidingWindowScript the script of the routes limited with
+	 * {@link Algorithm#SLIDING_WINDOW}
+	 */
+	public void setSlidingWindowScript(RedisScript<List<Long>> slidingWindowScript) {
+		this.slidingWindowScript = slidingWindowScript;
+	}
+
+	/**
+	 * @param batcher sends the concurrent calls to Redis in batches, null to call Redis
+	 * for every request
+	 */
+	public void setBatcher(RedisRateLimiterBatcher batcher) {
+		this.batcher = batcher;
+	}
+
+	/**
+	 * @param scriptVersion 1 for two keys per bucket with timestamps in seconds, 2 for a
+	 * single hash per bucket, with timestamps in milliseconds, under a hash tag of the id.
+	 * The script given to the constructor, or to the batcher, must be the one of this
+	 * version.
+	 */
+	public void setScriptVersion(int scriptVersion) {
+		Assert.isTrue(scriptVersion == 1 || scriptVersion == 2, "scriptVersion must be 1 or 2");
+		this.scriptVersion = scriptVersion;
+	}
+
+	/**
+	 * @param migrateKeys if the version 2 script carries over the buckets found under the
+	 * keys of version 1, which belong to other cluster slots than the hash of the bucket
+	 */
+	public void setMigrateKeys(boolean migrateKeys) {
+		this.migrateKeys = migrateKeys;
+	}
+
+	/**
+	 * @param denyCache denies the requests of the keys denied by Redis without calling
+	 * Redis again before their bucket refills, null to always call Redis
+	 */
+	public void setDenyCache(DenyCache denyCache) {
+		this.denyCache = denyCache;
+	}
+
+	public DenyCache getDenyCache() {
+		return denyCache;
+	}
+
 	/* for testing */ Config getDefaultConfig() {
 		return defaultConfig;
 	}
 
+	@Override
+	public Mono<Response> isAllowed(String routeId, String id) {
+		return isAllowed(routeId, id, 1);
+	}
+
 	/**
-	 * This uses a basic token bucket algorithm and relies on the fact that Redis scripts
-	 * execute atomically. No other operations can run between fetching the count and
-	 * writing the new count.
+	 * This uses a basic token bucket algorithm, unless the route is configured with
+	 * another {@link Algorithm}, and relies on the fact that Redis scripts execute
+	 * atomically. No other operations can run between fetching the count and writing the
+	 * new count.
 	 * 方法参数 id，令牌桶编号。一个令牌桶编号对应令牌桶。在本文场景中为请求限流键。
+	 * 方法参数 tokens，请求消耗的令牌数。
 	 */
 	@Override
 	@SuppressWarnings("unchecked")
-	public Mono<Response> isAllowed(String routeId, String id) {
+	public Mono<Response> isAllowed(String routeId, String id, int tokens) {
 		if (!this.initialized.get()) {
 			throw new IllegalStateException("RedisRateLimiter is not initialized");
 		}
@@ -102,25 +182,58 @@ public class RedisRateLimiter extends AbstractRateLimiter<RedisRateLimiter.Confi
 		// How much bursting do you want to allow?
 		int burstCapacity = routeConfig.getBurstCapacity();
 
+		Algorithm algorithm = routeConfig.getAlgorithm();
+		RedisScript<List<Long>> script = algorithm == Algorithm.GCRA ? this.gcraScript
+				: algorithm == Algorithm.SLIDING_WINDOW ? this.slidingWindowScript : this.script;
+		if (script == null) {
+			throw new IllegalStateException("No script found for algorithm " + algorithm);
+		}
+
+		// 令牌桶补充令牌之前，直接拒绝已耗尽令牌的键，不再请求 Redis
+		if (this.denyCache != null && this.denyCache.isDenied(routeId, id)) {
+			return Mono.just(new Response(false, 0));
+		}
+
+		long now = System.currentTimeMillis();
 		try {
-			// Make a unique key per user.
-			String prefix = "request_rate_limiter." + id;
-
-			// You need two Redis keys for Token Bucket.
-			// prefix + ".tokens" 令牌桶剩余令牌数。
-			// prefix + ".timestamp" 令牌桶最后填充令牌时间，单位：秒
-			List<String> keys = Arrays.asList(prefix + ".tokens", prefix + ".timestamp");
-
-			// The arguments to the LUA script. time() returns unixtime in seconds.
-			// 获得 Lua 脚本参数
-			// 因为 Redis 的限制（ Lua中有写操作不能使用带随机性质的读操作，如TIME ）
-			// 不能在 Redis Lua中 使用 TIME 获取时间戳，因此只好从应用获取然后传入，
-			// 在某些极端情况下（机器时钟不准的情况下），限流会存在一些小问题。
-			// 第四个参数 ：消耗令牌数量，默认 1 。
-			List<String> scriptArgs = Arrays.asList(replenishRate + "", burstCapacity + "",
-					Instant.now().getEpochSecond() + "", "1");
+			List<String> keys;
+			List<String> scriptArgs;
+			if (algorithm != Algorithm.TOKEN_BUCKET) {
+				// GCRA 一个键保存下一个请求的理论到达时间，滑动窗口一个 sorted set 保存窗口内已允许的请求的时间，参数与第二版脚本相同
+				String prefix = algorithm == Algorithm.GCRA ? "request_rate_gcra." : "request_rate_sliding_window.";
+				keys = Collections.singletonList(prefix + "{" + id + "}");
+				scriptArgs = Arrays.asList(replenishRate + "", burstCapacity + "", now + "", tokens + "");
+			}
+			else if (this.scriptVersion == 2) {
+				// 一个令牌桶对应一个 hash，hash tag {id} 使同一令牌桶编号的键位于集群的同一个 slot，时间戳单位：毫秒
+				String key = "request_rate_limiter.{" + id + "}";
+				keys = this.migrateKeys ? Arrays.asList(key, "request_rate_limiter." + id + ".tokens",
+						"request_rate_limiter." + id + ".timestamp") : Collections.singletonList(key);
+				scriptArgs = Arrays.asList(replenishRate + "", burstCapacity + "", now + "", tokens + "");
+			}
+			else {
+				// Make a unique key per user.
+				String prefix = "request_rate_limiter." + id;
+
+				// You need two Redis keys for Token Bucket.
+				// prefix + ".tokens" 令牌桶剩余令牌数。
+				// prefix + ".timestamp" 令牌桶最后填充令牌时间，单位：秒
+				keys = Arrays.asList(prefix + ".tokens", prefix + ".timestamp");
+
+				// The arguments to the LUA script. time() returns unixtime in seconds.
+				// 获得 Lua 脚本参数
+				// 因为 Redis 的限制（ Lua中有写操作不能使用带随机性质的读操作，如TIME ）
+				// 不能在 Redis Lua中 使用 TIME 获取时间戳，因此只好从应用获取然后传入，
+				// 在某些极端情况下（机器时钟不准的情况下），限流会存在一些小问题。
+				// 第四个参数 ：消耗令牌数量，默认 1 ，由 CostResolver 决定。
+				scriptArgs = Arrays.asList(replenishRate + "", burstCapacity + "",
+						TimeUnit.MILLISECONDS.toSeconds(now) + "", tokens + "");
+			}
 			// allowed, tokens_left = redis.eval(SCRIPT, keys, args)
-			Flux<List<Long>> flux = this.redisTemplate.execute(this.script, keys, scriptArgs);
+			// 开启批量时，与并发请求合并为一次 Lua 脚本调用
+			Flux<List<Long>> flux = this.batcher != null && algorithm == Algorithm.TOKEN_BUCKET
+					? this.batcher.execute(keys, scriptArgs).flux()
+					: this.redisTemplate.execute(script, keys, scriptArgs);
 					// .log("redisratelimiter", Level.FINER);
 			// 返回结果为 [是否获取令牌成功, 剩余令牌数] ，其中，1 代表获取令牌成功，0 代表令牌获取失败。
 			// 第 25 行 ：当 Redis Lua 脚本过程中发生异常，忽略异常，返回 Flux.just(Arrays.asList(1L, -1L)) ，
@@ -136,6 +249,17 @@ public class RedisRateLimiter extends AbstractRateLimiter<RedisRateLimiter.Confi
 
 						Response response = new Response(allowed, tokensLeft);
 
+						if (!allowed && tokensLeft == 0 && this.denyCache != null) {
+							// 第二版、GCRA 与滑动窗口脚本返回允许请求所需的毫秒数，第一版脚本的时间戳单位为秒，下一秒才会补充令牌
+							if (results.size() <= 2) {
+								this.denyCache.deny(routeId, id, (TimeUnit.MILLISECONDS.toSeconds(now) + 1) * 1000);
+							}
+							else if (tokens == 1) {
+								// the time returned is the one of all the tokens requested
+								this.denyCache.deny(routeId, id, now + results.get(2));
+							}
+						}
+
 						if (log.isDebugEnabled()) {
 							log.debug("response: " + response);
 						}
@@ -161,6 +285,9 @@ public class RedisRateLimiter extends AbstractRateLimiter<RedisRateLimiter.Confi
 		@Min(0)
 		private int burstCapacity = 0;
 
+		@NotNull
+		private Algorithm algorithm = Algorithm.TOKEN_BUCKET;
+
 		public int getReplenishRate() {
 			return replenishRate;
 		}
@@ -179,11 +306,21 @@ public class RedisRateLimiter extends AbstractRateLimiter<RedisRateLimiter.Confi
 			return this;
 		}
 
+		public Algorithm getAlgorithm() {
+			return algorithm;
+		}
+
+		public Config setAlgorithm(Algorithm algorithm) {
+			this.algorithm = algorithm;
+			return this;
+		}
+
 		@Override
 		public String toString() {
 			return "Config{" +
 					"replenishRate=" + replenishRate +
 					", burstCapacity=" + burstCapacity +
+					", algorithm=" + algorithm +
 					'}';
 		}
 	}
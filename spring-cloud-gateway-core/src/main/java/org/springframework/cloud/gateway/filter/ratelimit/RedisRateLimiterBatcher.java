@@ -0,0 +1,165 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.util.Assert;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Collects the concurrent calls of {@link RedisRateLimiter} and sends them to Redis as
+ * a single invocation of {@code request_rate_limiter_batch.lua}, or of
+ * {@code request_rate_limiter_v2.lua} which takes several buckets as well, once
+ * {@code maxSize} calls are waiting or {@code window} elapsed since the first one. The
+ * buckets are updated in the order of the calls, with the same token bucket as a single
+ * call.
+ *
+ * <p>All the keys of a batch are passed to one script, so batching requires a Redis
+ * server that is not a cluster, where the keys of the ids would belong to different
+ * slots.
+ * 合并并发的限流请求，一次 Lua 脚本调用处理一批令牌桶
+ */
+public class RedisRateLimiterBatcher {
+
+	public static final String REDIS_SCRIPT_NAME = "redisRequestRateLimiterBatchScript";
+
+	private final ReactiveRedisTemplate<String, String> redisTemplate;
+
+	private final RedisScript<List<Long>> script;
+
+	private final int maxSize;
+
+	private final long windowNanos;
+
+	private final Scheduler scheduler;
+
+	private final Queue<Call> calls = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger queued = new AtomicInteger();
+
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+
+	public RedisRateLimiterBatcher(ReactiveRedisTemplate<String, String> redisTemplate,
+			RedisScript<List<Long>> script, int maxSize, Duration window) {
+		this(redisTemplate, script, maxSize, window, Schedulers.parallel());
+	}
+
+	RedisRateLimiterBatcher(ReactiveRedisTemplate<String, String> redisTemplate,
+			RedisScript<List<Long>> script, int maxSize, Duration window, Scheduler scheduler) {
+		Assert.isTrue(maxSize > 0, "maxSize must be greater than 0");
+		this.redisTemplate = redisTemplate;
+		this.script = script;
+		this.maxSize = maxSize;
+		this.windowNanos = window.toNanos();
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * @return a Mono of the result of {@code request_rate_limiter.lua} for the keys and
+	 * arguments of a single bucket, the call is queued on subscription
+	 */
+	public Mono<List<Long>> execute(List<String> keys, List<String> args) {
+		return Mono.defer(() -> {
+			Call call = new Call(keys, args);
+			this.calls.offer(call);
+			if (this.queued.incrementAndGet() >= this.maxSize) {
+				flush(this.maxSize);
+			}
+			else if (this.scheduled.compareAndSet(false, true)) {
+				this.scheduler.schedule(this::flushAll, this.windowNanos, TimeUnit.NANOSECONDS);
+			}
+			return call.result;
+		});
+	}
+
+	private void flushAll() {
+		// calls queued from now on schedule the next flush
+		this.scheduled.set(false);
+		int flushed;
+		do {
+			flushed = flush(this.maxSize);
+		}
+		while (flushed == this.maxSize);
+	}
+
+	private int flush(int max) {
+		List<Call> batch = new ArrayList<>();
+		Call call;
+		while (batch.size() < max && (call = this.calls.poll()) != null) {
+			this.queued.decrementAndGet();
+			batch.add(call);
+		}
+		if (batch.isEmpty()) {
+			return 0;
+		}
+
+		List<String> keys = new ArrayList<>(batch.size() * 2);
+		List<String> args = new ArrayList<>(batch.size() * 4);
+		for (Call each : batch) {
+			keys.addAll(each.keys);
+			args.addAll(each.args);
+		}
+		Mono.defer(() -> this.redisTemplate.execute(this.script, keys, args)
+				.reduce(new ArrayList<Long>(), (longs, l) -> {
+					longs.addAll(l);
+					return longs;
+				}))
+				.subscribe(results -> {
+					// the same number of results for each call, 2 or 3 depending on the script
+					int stride = results.size() / batch.size();
+					if (stride == 0 || results.size() % batch.size() != 0) {
+						IllegalStateException e = new IllegalStateException("Expected the results of "
+								+ batch.size() + " calls, got " + results.size());
+						batch.forEach(each -> each.result.onError(e));
+						return;
+					}
+					for (int i = 0; i < batch.size(); i++) {
+						batch.get(i).result.onNext(results.subList(i * stride, i * stride + stride));
+					}
+				}, throwable -> batch.forEach(each -> each.result.onError(throwable)));
+		return batch.size();
+	}
+
+	private static final class Call {
+
+		private final List<String> keys;
+
+		private final List<String> args;
+
+		private final MonoProcessor<List<Long>> result = MonoProcessor.create();
+
+		private Call(List<String> keys, List<String> args) {
+			this.keys = keys;
+			this.args = args;
+		}
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.shedding;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Sheds requests of the lowest priorities first when the gateway itself is saturated.
+ * Runs before any route is looked up, so that a shed request costs a header lookup, a
+ * few path matches and a volatile read. The priority of a request is taken from the
+ * priority header, then from the configured paths, then from the default priority.
+ * Each priority is shed once the saturation reaches its threshold; the saturation is
+ * the one of the {@link SaturationMonitor}, or the ratio of requests in flight to the
+ * maximum when it is larger.
+ */
+public class LoadSheddingWebFilter implements WebFilter, Ordered {
+
+	public static final int LOAD_SHEDDING_FILTER_ORDER = Ordered.HIGHEST_PRECEDENCE + 100;
+
+	public enum Priority {
+		CRITICAL, HIGH, NORMAL, LOW
+	}
+
+	private static final Priority[] PRIORITIES = Priority.values();
+
+	private final SaturationMonitor monitor;
+
+	private int order = LOAD_SHEDDING_FILTER_ORDER;
+
+	private String priorityHeader;
+
+	private Priority defaultPriority = Priority.NORMAL;
+
+	private List<PriorityPath> priorityPaths = Collections.emptyList();
+
+	// 按优先级序号索引的丢弃阈值
+	private final double[] thresholds = new double[PRIORITIES.length];
+
+	private int maxInFlight;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private final AtomicLongArray shed = new AtomicLongArray(PRIORITIES.length);
+
+	public LoadSheddingWebFilter(SaturationMonitor monitor) {
+		this.monitor = monitor;
+		this.thresholds[Priority.CRITICAL.ordinal()] = Double.POSITIVE_INFINITY;
+		this.thresholds[Priority.HIGH.ordinal()] = 1.0;
+		this.thresholds[Priority.NORMAL.ordinal()] = 0.8;
+		this.thresholds[Priority.LOW.ordinal()] = 0.6;
+	}
+
+	@Override
+	public int getOrder() {
+		return order;
+	}
+
+	public void setOrder(int order) {
+		this.order = order;
+	}
+
+	public void setPriorityHeader(String priorityHeader) {
+		this.priorityHeader = priorityHeader;
+	}
+
+	public void setDefaultPriority(Priority defaultPriority) {
+		this.defaultPriority = defaultPriority;
+	}
+
+	/**
+	 * @param paths path patterns by priority, the patterns of higher priorities are
+	 * matched first
+	 */
+	public void setPriorityPaths(Map<Priority, List<String>> paths) {
+		PathPatternParser parser = new PathPatternParser();
+		List<PriorityPath> priorityPaths = new ArrayList<>();
+		new EnumMap<>(paths).forEach((priority, patterns) -> patterns.forEach(pattern ->
+				priorityPaths.add(new PriorityPath(parser.parse(pattern), priority))));
+		this.priorityPaths = priorityPaths;
+	}
+
+	/**
+	 * @param thresholds the saturation from which requests are shed, by priority
+	 */
+	public void setThresholds(Map<Priority, Double> thresholds) {
+		thresholds.forEach((priority, threshold) -> this.thresholds[priority.ordinal()] = threshold);
+	}
+
+	/**
+	 * @param maxInFlight the number of requests in flight at which the gateway is
+	 * saturated, 0 not to count requests in flight
+	 */
+	public void setMaxInFlight(int maxInFlight) {
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * @return the number of requests shed with the given priority
+	 */
+	public long getShed(Priority priority) {
+		return this.shed.get(priority.ordinal());
+	}
+
+	@Override
+	public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+		Priority priority = priorityOf(exchange.getRequest());
+		double saturation = this.monitor.getSaturation();
+		if (this.maxInFlight > 0) {
+			saturation = Math.max(saturation, (double) this.inFlight.get() / this.maxInFlight);
+		}
+		if (saturation >= this.thresholds[priority.ordinal()]) {
+			this.shed.incrementAndGet(priority.ordinal());
+			ServerHttpResponse response = exchange.getResponse();
+			response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+			response.getHeaders().set("Retry-After", "1");
+			return response.setComplete();
+		}
+		if (this.maxInFlight <= 0) {
+			return chain.filter(exchange);
+		}
+		return Mono.defer(() -> {
+			this.inFlight.incrementAndGet();
+			return chain.filter(exchange).doFinally(signal -> this.inFlight.decrementAndGet());
+		});
+	}
+
+	Priority priorityOf(ServerHttpRequest request) {
+		if (this.priorityHeader != null) {
+			String value = request.getHeaders().getFirst(this.priorityHeader);
+			if (value != null) {
+				for (Priority priority : PRIORITIES) {
+					if (priority.name().equalsIgnoreCase(value.trim())) {
+						return priority;
+					}
+				}
+			}
+		}
+		if (!this.priorityPaths.isEmpty()) {
+			PathContainer path = request.getPath().pathWithinApplication();
+			for (PriorityPath priorityPath : this.priorityPaths) {
+				if (priorityPath.pattern.matches(path)) {
+					return priorityPath.priority;
+				}
+			}
+		}
+		return this.defaultPriority;
+	}
+
+	private static final class PriorityPath {
+
+		private final PathPattern pattern;
+
+		private final Priority priority;
+
+		private PriorityPath(PathPattern pattern, Priority priority) {
+			this.pattern = pattern;
+			this.priority = priority;
+		}
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.shedding;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufAllocatorMetricProvider;
+import io.netty.util.internal.PlatformDependent;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.context.SmartLifecycle;
+import org.springframework.lang.Nullable;
+
+import reactor.core.Disposable;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Measures how saturated the gateway itself is, as a ratio where 1 means that a signal
+ * reached its configured maximum. The signals are the lag of the Netty event loops,
+ * measured by timing a task submitted to each loop, and the direct memory used by the
+ * pooled allocator. They are sampled in the background so that reading the saturation
+ * costs a volatile read. The saturation rises at once but halves at most per probe, so
+ * that shedding does not flap.
+ */
+public class SaturationMonitor implements SmartLifecycle {
+
+	private static final Log log = LogFactory.getLog(SaturationMonitor.class);
+
+	private final List<Executor> loops;
+
+	private final long maxLagNanos;
+
+	private final double maxDirectMemoryRatio;
+
+	private final Duration interval;
+
+	private final LongSupplier nanoClock;
+
+	private final DoubleSupplier directMemoryRatio;
+
+	// 每个 event loop 尚未执行的探测任务的提交时间，0 表示没有
+	private final AtomicLongArray pendingSince;
+
+	private final AtomicLongArray lastLag;
+
+	private volatile double saturation;
+
+	private volatile Scheduler scheduler;
+
+	private volatile Disposable task;
+
+	public SaturationMonitor(@Nullable Iterable<? extends Executor> loops, Duration maxEventLoopLag,
+			double maxDirectMemoryRatio, Duration interval) {
+		this(loops, maxEventLoopLag, maxDirectMemoryRatio, interval, System::nanoTime,
+				SaturationMonitor::pooledDirectMemoryRatio);
+	}
+
+	SaturationMonitor(@Nullable Iterable<? extends Executor> loops, Duration maxEventLoopLag,
+			double maxDirectMemoryRatio, Duration interval, LongSupplier nanoClock,
+			DoubleSupplier directMemoryRatio) {
+		this.loops = new ArrayList<>();
+		if (loops != null) {
+			loops.forEach(this.loops::add);
+		}
+		this.maxLagNanos = maxEventLoopLag.toNanos();
+		this.maxDirectMemoryRatio = maxDirectMemoryRatio;
+		this.interval = interval;
+		this.nanoClock = nanoClock;
+		this.directMemoryRatio = directMemoryRatio;
+		this.pendingSince = new AtomicLongArray(this.loops.size());
+		this.lastLag = new AtomicLongArray(this.loops.size());
+	}
+
+	/**
+	 * @return the saturation of the most saturated signal, 1 when it reached its maximum
+	 */
+	public double getSaturation() {
+		return this.saturation;
+	}
+
+	/**
+	 * @return the largest lag of the event loops at the last probe
+	 */
+	public Duration getEventLoopLag() {
+		long lag = 0;
+		for (int i = 0; i < this.loops.size(); i++) {
+			lag = Math.max(lag, lagOf(i, this.nanoClock.getAsLong()));
+		}
+		return Duration.ofNanos(lag);
+	}
+
+	void probe() {
+		long now = this.nanoClock.getAsLong();
+		long lag = 0;
+		for (int i = 0; i < this.loops.size(); i++) {
+			lag = Math.max(lag, lagOf(i, now));
+			if (this.pendingSince.get(i) == 0) {
+				submit(i, now);
+			}
+		}
+
+		double current = 0;
+		if (this.maxLagNanos > 0) {
+			current = (double) lag / this.maxLagNanos;
+		}
+		if (this.maxDirectMemoryRatio > 0) {
+			current = Math.max(current, this.directMemoryRatio.getAsDouble() / this.maxDirectMemoryRatio);
+		}
+		double previous = this.saturation;
+		this.saturation = current >= previous ? current : Math.max(current, previous / 2);
+	}
+
+	private long lagOf(int loop, long now) {
+		long since = this.pendingSince.get(loop);
+		// a loop that did not run the last probe yet lags at least since then
+		return since != 0 ? Math.max(now - since, this.lastLag.get(loop)) : this.lastLag.get(loop);
+	}
+
+	private void submit(int loop, long now) {
+		this.pendingSince.set(loop, now);
+		try {
+			this.loops.get(loop).execute(() -> {
+				this.lastLag.set(loop, this.nanoClock.getAsLong() - now);
+				this.pendingSince.set(loop, 0);
+			});
+		}
+		catch (RejectedExecutionException e) {
+			// the loop is shutting down
+			this.pendingSince.set(loop, 0);
+		}
+	}
+
+	private static double pooledDirectMemoryRatio() {
+		long max = PlatformDependent.maxDirectMemory();
+		if (max <= 0 || !(ByteBufAllocator.DEFAULT instanceof ByteBufAllocatorMetricProvider)) {
+			return 0;
+		}
+		return (double) ((ByteBufAllocatorMetricProvider) ByteBufAllocator.DEFAULT).metric().usedDirectMemory() / max;
+	}
+
+	@Override
+	public void start() {
+		if (this.task != null) {
+			return;
+		}
+		this.scheduler = Schedulers.newSingle("gateway-saturation-monitor", true);
+		this.task = this.scheduler.schedulePeriodically(() -> {
+			try {
+				probe();
+			}
+			catch (Exception e) {
+				log.warn("Unable to probe the saturation of the gateway", e);
+			}
+		}, 0, this.interval.toNanos(), TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void stop() {
+		Disposable task = this.task;
+		if (task != null) {
+			task.dispose();
+			this.scheduler.dispose();
+			this.task = null;
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.task != null;
+	}
+
+	@Override
+	public boolean isAutoStartup() {
+		return true;
+	}
+
+	@Override
+	public void stop(Runnable callback) {
+		stop();
+		callback.run();
+	}
+
+	@Override
+	public int getPhase() {
+		return 0;
+	}
+}
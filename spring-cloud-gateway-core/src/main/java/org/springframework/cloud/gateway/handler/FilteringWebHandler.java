@@ -97,18 +97,24 @@ public class FilteringWebHandler implements WebHandler {
 
 	private static class DefaultGatewayFilterChain implements GatewayFilterChain {
 
-		private int index;
+		private final int index;
 		private final List<GatewayFilter> filters;
 
 		public DefaultGatewayFilterChain(List<GatewayFilter> filters) {
+			this(filters, 0);
+		}
+
+		// 不可变，过滤器可以多次调用 chain.filter，例如在选择服务实例后被重新订阅时
+		private DefaultGatewayFilterChain(List<GatewayFilter> filters, int index) {
 			this.filters = filters;
+			this.index = index;
 		}
 
 		@Override
 		public Mono<Void> filter(ServerWebExchange exchange) {
 			if (this.index < filters.size()) {
-				GatewayFilter filter = filters.get(this.index++);
-				return filter.filter(exchange, this);
+				GatewayFilter filter = filters.get(this.index);
+				return filter.filter(exchange, new DefaultGatewayFilterChain(this.filters, this.index + 1));
 			}
 			else {
 				return Mono.empty(); // complete
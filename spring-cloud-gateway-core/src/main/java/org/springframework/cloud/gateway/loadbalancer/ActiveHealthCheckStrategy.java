@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import java.util.List;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.web.server.ServerWebExchange;
+
+/**
+ * Hands the instances not known to be down by the {@link ActiveHealthChecker} to the
+ * delegate strategy. Looking the instances up registers them to be probed.
+ */
+public class ActiveHealthCheckStrategy implements LoadBalancerStrategy {
+
+	private final LoadBalancerStrategy delegate;
+
+	private final ActiveHealthChecker healthChecker;
+
+	public ActiveHealthCheckStrategy(LoadBalancerStrategy delegate, ActiveHealthChecker healthChecker) {
+		this.delegate = delegate;
+		this.healthChecker = healthChecker;
+	}
+
+	@Override
+	public ServiceInstance choose(String serviceId, List<ServiceInstance> instances, ServerWebExchange exchange) {
+		return this.delegate.choose(serviceId, this.healthChecker.filter(instances), exchange);
+	}
+
+}
@@ -0,0 +1,438 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.lang.Nullable;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Probes the targets requests are proxied to in the background. Targets are registered
+ * when they are looked up, as load balancer instances or as the url of a route, and are
+ * forgotten when they are not looked up for a while. All the targets are probed every
+ * interval from a single thread, with a bounded number of probes in flight.
+ *
+ * <p>A target is {@link Status#DOWN} after a number of consecutive failed probes and
+ * {@link Status#UP} again after a number of consecutive successful ones. Targets not
+ * probed yet are {@link Status#UNKNOWN} and considered healthy.
+ *
+ * <p>The target of each load balancer instance is kept until the
+ * {@link ServiceInstanceCache} reloads its service without it.
+ */
+public class ActiveHealthChecker implements SmartLifecycle, ServiceInstanceCache.Listener {
+
+	private static final Log log = LogFactory.getLog(ActiveHealthChecker.class);
+
+	public enum Status {
+		UNKNOWN, UP, DOWN
+	}
+
+	private final HealthProbe probe;
+
+	private final Config config;
+
+	private final Supplier<Flux<URI>> seeds;
+
+	private final LongSupplier nanoClock;
+
+	// 以 scheme://host:port 为键，查找时不必解析 URI
+	private final ConcurrentMap<String, TargetHealth> targets = new ConcurrentHashMap<>();
+
+	// 每个实例对应的目标，避免每次请求都由实例构造 URI
+	private final ConcurrentMap<ServiceInstance, TargetHealth> instances = new ConcurrentHashMap<>();
+
+	private final PeriodicTask task;
+
+	public ActiveHealthChecker(HealthProbe probe, Config config) {
+		this(probe, config, Flux::empty);
+	}
+
+	/**
+	 * @param seeds targets to probe before they are looked up, the urls of static
+	 * routes for instance
+	 */
+	public ActiveHealthChecker(HealthProbe probe, Config config, Supplier<Flux<URI>> seeds) {
+		this(probe, config, seeds, System::nanoTime);
+	}
+
+	ActiveHealthChecker(HealthProbe probe, Config config, Supplier<Flux<URI>> seeds, LongSupplier nanoClock) {
+		this.probe = probe;
+		this.config = config;
+		this.seeds = seeds;
+		this.nanoClock = nanoClock;
+		this.task = new PeriodicTask("gateway-health-check", config.interval, this::check, log,
+				"Health check round failed");
+	}
+
+	/**
+	 * @return false if the scheme, host and port of the url are known to be down
+	 */
+	public boolean isHealthy(URI url) {
+		String target = target(url);
+		if (target == null) {
+			return true;
+		}
+		return isHealthy(this.targets.computeIfAbsent(target, TargetHealth::new));
+	}
+
+	public boolean isHealthy(ServiceInstance instance) {
+		TargetHealth health = this.instances.get(instance);
+		if (health == null || health.expired) {
+			String target = target(instance.getUri());
+			if (target == null) {
+				return true;
+			}
+			health = this.targets.computeIfAbsent(target, TargetHealth::new);
+			this.instances.put(instance, health);
+		}
+		return isHealthy(health);
+	}
+
+	@Override
+	public void instancesChanged(String serviceId, List<ServiceInstance> instances) {
+		// a reloaded service returns new instances, the previous ones are not looked up anymore
+		Set<ServiceInstance> current = new HashSet<>(instances);
+		this.instances.keySet().removeIf(instance -> serviceId.equals(instance.getServiceId())
+				&& !current.contains(instance));
+	}
+
+	/* for testing */ int getInstanceCount() {
+		return this.instances.size();
+	}
+
+	private boolean isHealthy(TargetHealth health) {
+		health.lastUsed = this.nanoClock.getAsLong();
+		return health.status != Status.DOWN;
+	}
+
+	/**
+	 * @return the instances not known to be down, or all of them if they all are
+	 */
+	public List<ServiceInstance> filter(List<ServiceInstance> instances) {
+		List<ServiceInstance> healthy = null;
+		for (int i = 0; i < instances.size(); i++) {
+			ServiceInstance instance = instances.get(i);
+			if (!isHealthy(instance)) {
+				if (healthy == null) {
+					healthy = new ArrayList<>(instances.subList(0, i));
+				}
+			}
+			else if (healthy != null) {
+				healthy.add(instance);
+			}
+		}
+		if (healthy == null) {
+			return instances;
+		}
+		return healthy.isEmpty() ? instances : healthy;
+	}
+
+	/**
+	 * @return the health of each target
+	 */
+	public Map<String, TargetHealth> getTargets() {
+		return new TreeMap<>(this.targets);
+	}
+
+	/**
+	 * Probes all the targets once.
+	 */
+	public Mono<Void> check() {
+		long now = this.nanoClock.getAsLong();
+		long expireAfter = this.config.expireAfter.toNanos();
+		return this.seeds.get()
+				.doOnNext(url -> {
+					String target = target(url);
+					if (target != null) {
+						this.targets.computeIfAbsent(target, TargetHealth::new).lastUsed = now;
+					}
+				})
+				.thenMany(Flux.defer(() -> {
+					this.targets.values().removeIf(health -> {
+						health.expired = now - health.lastUsed > expireAfter;
+						return health.expired;
+					});
+					this.instances.values().removeIf(health -> health.expired);
+					return Flux.fromIterable(new ArrayList<>(this.targets.values()));
+				}))
+				.flatMap(this::probe, this.config.maxConcurrentProbes)
+				.then();
+	}
+
+	private Mono<Void> probe(TargetHealth health) {
+		return this.probe.probe(health.target)
+				.timeout(this.config.timeout)
+				.defaultIfEmpty(false)
+				.map(healthy -> healthy ? Optional.<String>empty() : Optional.of("Unhealthy response"))
+				.onErrorResume(t -> Mono.just(Optional.of(String.valueOf(t))))
+				.doOnNext(error -> health.record(error.orElse(null), this.config))
+				.then();
+	}
+
+	@Override
+	public void start() {
+		this.task.start();
+	}
+
+	@Override
+	public void stop() {
+		this.task.stop();
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.task.isRunning();
+	}
+
+	@Override
+	public boolean isAutoStartup() {
+		return true;
+	}
+
+	@Override
+	public void stop(Runnable callback) {
+		stop();
+		callback.run();
+	}
+
+	@Override
+	public int getPhase() {
+		return 0;
+	}
+
+	/**
+	 * @return the scheme, host and port of the url, or null if it is not probed
+	 */
+	@Nullable
+	static String target(URI url) {
+		String scheme = url.getScheme();
+		if ("ws".equals(scheme)) {
+			scheme = "http";
+		}
+		else if ("wss".equals(scheme)) {
+			scheme = "https";
+		}
+		if (!"http".equals(scheme) && !"https".equals(scheme) || url.getHost() == null) {
+			return null;
+		}
+		int port = url.getPort();
+		if (port < 0) {
+			port = "https".equals(scheme) ? 443 : 80;
+		}
+		return scheme + "://" + url.getHost() + ":" + port;
+	}
+
+	public static class TargetHealth {
+
+		private final URI target;
+
+		private volatile Status status = Status.UNKNOWN;
+
+		private volatile long lastUsed;
+
+		private volatile boolean expired;
+
+		private int consecutiveSuccesses;
+
+		private int consecutiveFailures;
+
+		private volatile Instant lastChecked;
+
+		private volatile String lastError;
+
+		TargetHealth(String target) {
+			this.target = URI.create(target);
+		}
+
+		public Status getStatus() {
+			return status;
+		}
+
+		public Instant getLastChecked() {
+			return lastChecked;
+		}
+
+		public String getLastError() {
+			return lastError;
+		}
+
+		public synchronized int getConsecutiveSuccesses() {
+			return consecutiveSuccesses;
+		}
+
+		public synchronized int getConsecutiveFailures() {
+			return consecutiveFailures;
+		}
+
+		synchronized void record(@Nullable String error, Config config) {
+			this.lastChecked = Instant.now();
+			this.lastError = error;
+			Status previous = this.status;
+			if (error == null) {
+				this.consecutiveFailures = 0;
+				if (++this.consecutiveSuccesses >= config.healthyThreshold) {
+					this.status = Status.UP;
+				}
+			}
+			else {
+				this.consecutiveSuccesses = 0;
+				if (++this.consecutiveFailures >= config.unhealthyThreshold) {
+					this.status = Status.DOWN;
+				}
+			}
+			if (previous != this.status && log.isInfoEnabled()) {
+				log.info("Target " + this.target + " is " + this.status
+						+ (error != null ? ": " + error : ""));
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "TargetHealth{" +
+					"target=" + target +
+					", status=" + status +
+					", lastError=" + lastError +
+					'}';
+		}
+	}
+
+	public static class Config {
+
+		/** If the targets of the proxied requests are probed in the background */
+		private boolean enabled = false;
+
+		/** Path of the GET request probing a target, a 2xx status is healthy */
+		private String path = "/actuator/health";
+
+		/** Time between two probes of a target */
+		private Duration interval = Duration.ofSeconds(10);
+
+		/** Time after which a probe fails */
+		private Duration timeout = Duration.ofSeconds(2);
+
+		/** Number of consecutive successful probes after which a target is up */
+		private int healthyThreshold = 2;
+
+		/** Number of consecutive failed probes after which a target is down */
+		private int unhealthyThreshold = 3;
+
+		/** Maximum number of probes in flight */
+		private int maxConcurrentProbes = 16;
+
+		/** Time after which a target not used anymore is no longer probed */
+		private Duration expireAfter = Duration.ofMinutes(10);
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public void setPath(String path) {
+			this.path = path;
+		}
+
+		public Duration getInterval() {
+			return interval;
+		}
+
+		public void setInterval(Duration interval) {
+			this.interval = interval;
+		}
+
+		public Duration getTimeout() {
+			return timeout;
+		}
+
+		public void setTimeout(Duration timeout) {
+			this.timeout = timeout;
+		}
+
+		public int getHealthyThreshold() {
+			return healthyThreshold;
+		}
+
+		public void setHealthyThreshold(int healthyThreshold) {
+			this.healthyThreshold = healthyThreshold;
+		}
+
+		public int getUnhealthyThreshold() {
+			return unhealthyThreshold;
+		}
+
+		public void setUnhealthyThreshold(int unhealthyThreshold) {
+			this.unhealthyThreshold = unhealthyThreshold;
+		}
+
+		public int getMaxConcurrentProbes() {
+			return maxConcurrentProbes;
+		}
+
+		public void setMaxConcurrentProbes(int maxConcurrentProbes) {
+			this.maxConcurrentProbes = maxConcurrentProbes;
+		}
+
+		public Duration getExpireAfter() {
+			return expireAfter;
+		}
+
+		public void setExpireAfter(Duration expireAfter) {
+			this.expireAfter = expireAfter;
+		}
+
+		@Override
+		public String toString() {
+			return "Config{" +
+					"enabled=" + enabled +
+					", path='" + path + '\'' +
+					", interval=" + interval +
+					", timeout=" + timeout +
+					", healthyThreshold=" + healthyThreshold +
+					", unhealthyThreshold=" + unhealthyThreshold +
+					", maxConcurrentProbes=" + maxConcurrentProbes +
+					", expireAfter=" + expireAfter +
+					'}';
+		}
+	}
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.web.server.ServerWebExchange;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.HASH_KEY_ATTR;
+
+/**
+ * Sends the requests with the same hash key, put in the
+ * {@link org.springframework.cloud.gateway.support.ServerWebExchangeUtils#HASH_KEY_ATTR}
+ * exchange attribute, to the same instance, using a hash ring with virtual nodes.
+ * Instances are placed on the ring by host and port, so when an instance joins or
+ * leaves only the keys it owns move. The ring is kept when the strategy is given a
+ * sub-list of the instances, the keys of the missing instances going to the next
+ * instance on the ring. Requests without a hash key are chosen by the delegate strategy.
+ *
+ * <p>With a load factor, an instance is skipped, in ring order, while its outstanding
+ * requests exceed the load factor times the average, so that hot keys cannot overload
+ * a single instance (consistent hashing with bounded loads).
+ */
+public class ConsistentHashStrategy implements LoadBalancerStrategy {
+
+	public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+	/** Sub-lists of the instances whose positions are kept by a ring. */
+	private static final int MAX_SUB_LISTS = 64;
+
+	private final LoadBalancerStrategy delegate;
+
+	private final LoadBalancerStats stats;
+
+	private final int virtualNodes;
+
+	private final double loadFactor;
+
+	private final ConcurrentMap<String, Ring> rings = new ConcurrentHashMap<>();
+
+	public ConsistentHashStrategy(LoadBalancerStrategy delegate, LoadBalancerStats stats) {
+		this(delegate, stats, DEFAULT_VIRTUAL_NODES, 0);
+	}
+
+	/**
+	 * @param loadFactor maximum ratio between the outstanding requests of an instance
+	 * and the average, 0 to disable bounded loads
+	 */
+	public ConsistentHashStrategy(LoadBalancerStrategy delegate, LoadBalancerStats stats,
+			int virtualNodes, double loadFactor) {
+		if (virtualNodes < 1) {
+			throw new IllegalArgumentException("virtualNodes must be positive, was " + virtualNodes);
+		}
+		if (loadFactor != 0 && loadFactor < 1) {
+			throw new IllegalArgumentException("loadFactor must be 0 or at least 1, was " + loadFactor);
+		}
+		this.delegate = delegate;
+		this.stats = stats;
+		this.virtualNodes = virtualNodes;
+		this.loadFactor = loadFactor;
+	}
+
+	@Override
+	public ServiceInstance choose(String serviceId, List<ServiceInstance> instances, ServerWebExchange exchange) {
+		String key = exchange.getAttribute(HASH_KEY_ATTR);
+		if (key == null) {
+			return this.delegate.choose(serviceId, instances, exchange);
+		}
+		if (instances.size() == 1) {
+			return instances.get(0);
+		}
+
+		Ring ring = this.rings.get(serviceId);
+		int[] positions = ring == null ? null : ring.positionsOf(instances);
+		if (positions == null) {
+			ring = new Ring(ring, instances, this.virtualNodes);
+			this.rings.put(serviceId, ring);
+			positions = ring.positionsOf(instances);
+		}
+
+		int start = ring.indexOf(hash(key));
+		int[] outstanding = null;
+		double capacity = 0;
+		if (this.loadFactor != 0) {
+			outstanding = new int[instances.size()];
+			long total = 0;
+			for (int i = 0; i < outstanding.length; i++) {
+				outstanding[i] = this.stats.getStats(instances.get(i)).getOutstanding();
+				total += outstanding[i];
+			}
+			// counting the request being chosen, at least one instance is below the capacity
+			capacity = Math.ceil(this.loadFactor * (total + 1) / instances.size());
+		}
+		int first = -1;
+		for (int i = 0; i < ring.points.length; i++) {
+			int position = positions[ring.owners[(start + i) % ring.points.length]];
+			if (position < 0) {
+				// on the ring, but filtered out of this list: its keys go to the next owner
+				continue;
+			}
+			if (outstanding == null || outstanding[position] < capacity) {
+				return instances.get(position);
+			}
+			if (first < 0) {
+				first = position;
+			}
+		}
+		return instances.get(first);
+	}
+
+	static long hash(String value) {
+		// FNV-1a, then the MurmurHash3 finalizer to spread similar keys over the ring
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			h ^= value.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private static final class Ring {
+
+		final List<ServiceInstance> instances;
+
+		final List<String> keys;
+
+		/** Index of each key on the ring, the keys of the instances first. */
+		final Map<String, Integer> indexes;
+
+		/** Sorted positions of the virtual nodes. */
+		final long[] points;
+
+		/** Index in {@link #indexes} of the owner of each point. */
+		final int[] owners;
+
+		/** Positions of the owners in {@link #instances}, which the ring was built for. */
+		private final int[] identity;
+
+		/** Position of each instance in {@link #instances}, by identity. */
+		private final Map<ServiceInstance, Integer> byIdentity = new IdentityHashMap<>();
+
+		/** Positions of the owners in the sub-lists seen, by the instances they keep. */
+		private final ConcurrentMap<BitSet, int[]> subLists = new ConcurrentHashMap<>();
+
+		/**
+		 * Builds a ring for the instances, keeping the instances of the previous ring that
+		 * may still come back in a sub-list (for example the instances of another zone, or
+		 * ejected instances), unless they outnumber the instances.
+		 */
+		Ring(Ring previous, List<ServiceInstance> instances, int virtualNodes) {
+			this.instances = instances;
+			this.keys = keys(instances);
+			this.indexes = new HashMap<>();
+			for (String key : this.keys) {
+				this.indexes.putIfAbsent(key, this.indexes.size());
+			}
+			int size = this.indexes.size();
+			if (previous != null) {
+				for (String key : previous.indexes.keySet()) {
+					this.indexes.putIfAbsent(key, this.indexes.size());
+				}
+				if (this.indexes.size() > 2 * size) {
+					// too many instances are gone, forget them
+					this.indexes.keySet().removeIf(key -> this.indexes.get(key) >= size);
+				}
+			}
+			String[] all = new String[this.indexes.size()];
+			this.indexes.forEach((key, index) -> all[index] = key);
+			long[][] nodes = new long[all.length * virtualNodes][];
+			for (int i = 0; i < all.length; i++) {
+				for (int v = 0; v < virtualNodes; v++) {
+					nodes[i * virtualNodes + v] = new long[] {hash(all[i] + "#" + v), i};
+				}
+			}
+			Arrays.sort(nodes, (a, b) -> Long.compare(a[0], b[0]));
+			this.points = new long[nodes.length];
+			this.owners = new int[nodes.length];
+			for (int i = 0; i < nodes.length; i++) {
+				this.points[i] = nodes[i][0];
+				this.owners[i] = (int) nodes[i][1];
+			}
+			this.identity = positions(instances, this.keys);
+			for (int i = 0; i < instances.size(); i++) {
+				this.byIdentity.putIfAbsent(instances.get(i), i);
+			}
+		}
+
+		/**
+		 * @return the position in the list of the instance owning each ring key, -1 for
+		 * the keys missing from the list, or {@code null} if the list has instances which
+		 * are not on the ring
+		 */
+		int[] positionsOf(List<ServiceInstance> instances) {
+			// the instance cache returns the same list until it is reloaded
+			if (this.instances == instances) {
+				return this.identity;
+			}
+			// the strategies in front filter that list per request, keeping its instances in
+			// order, so the positions only depend on which instances are kept
+			BitSet kept = new BitSet(this.instances.size());
+			int last = -1;
+			for (ServiceInstance instance : instances) {
+				Integer position = this.byIdentity.get(instance);
+				if (position == null || position <= last) {
+					return positions(instances, keys(instances));
+				}
+				kept.set(position);
+				last = position;
+			}
+			int[] positions = this.subLists.get(kept);
+			if (positions == null) {
+				positions = positions(instances, keys(instances));
+				if (this.subLists.size() >= MAX_SUB_LISTS) {
+					this.subLists.clear();
+				}
+				this.subLists.put(kept, positions);
+			}
+			return positions;
+		}
+
+		private int[] positions(List<ServiceInstance> instances, List<String> keys) {
+			int[] positions = new int[this.indexes.size()];
+			Arrays.fill(positions, -1);
+			for (int i = 0; i < keys.size(); i++) {
+				Integer index = this.indexes.get(keys.get(i));
+				if (index == null) {
+					return null;
+				}
+				if (positions[index] < 0) {
+					positions[index] = i;
+				}
+			}
+			return positions;
+		}
+
+		/**
+		 * @return the index of the first point at or after the hash, wrapping around
+		 */
+		int indexOf(long hash) {
+			int index = Arrays.binarySearch(this.points, hash);
+			if (index < 0) {
+				index = -index - 1;
+			}
+			return index == this.points.length ? 0 : index;
+		}
+
+		private static List<String> keys(List<ServiceInstance> instances) {
+			List<String> keys = new ArrayList<>(instances.size());
+			for (ServiceInstance instance : instances) {
+				keys.add(LoadBalancerStats.key(instance));
+			}
+			return keys;
+		}
+	}
+}
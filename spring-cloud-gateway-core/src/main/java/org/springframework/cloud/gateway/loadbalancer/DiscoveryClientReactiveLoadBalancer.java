@@ -0,0 +1,63 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.lang.Nullable;
+import org.springframework.web.server.ServerWebExchange;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link ReactiveLoadBalancer} choosing from the instances of a
+ * {@link ServiceInstanceCache} with a {@link LoadBalancerStrategy}. Services the
+ * cache has no instances for are handed to the fallback, if any.
+ */
+public class DiscoveryClientReactiveLoadBalancer implements ReactiveLoadBalancer {
+
+	private final ServiceInstanceCache instances;
+
+	private final LoadBalancerStrategy strategy;
+
+	private final ReactiveLoadBalancer fallback;
+
+	public DiscoveryClientReactiveLoadBalancer(ServiceInstanceCache instances,
+			LoadBalancerStrategy strategy) {
+		this(instances, strategy, null);
+	}
+
+	public DiscoveryClientReactiveLoadBalancer(ServiceInstanceCache instances,
+			LoadBalancerStrategy strategy, @Nullable ReactiveLoadBalancer fallback) {
+		this.instances = instances;
+		this.strategy = strategy;
+		this.fallback = fallback;
+	}
+
+	@Override
+	public Mono<ServiceInstance> choose(String serviceId, ServerWebExchange exchange) {
+		Mono<ServiceInstance> chosen = this.instances.getInstances(serviceId)
+				.filter(instances -> !instances.isEmpty())
+				.flatMap(instances -> Mono.justOrEmpty(
+						this.strategy.choose(serviceId, instances, exchange)));
+		if (this.fallback == null) {
+			return chosen;
+		}
+		return chosen.switchIfEmpty(Mono.defer(() -> this.fallback.choose(serviceId, exchange)));
+	}
+
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import java.net.URI;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Checks if a target, e.g. {@code http://host:8080}, is able to serve requests.
+ */
+@FunctionalInterface
+public interface HealthProbe {
+
+	/**
+	 * @return true if the target is healthy, false or an error otherwise
+	 */
+	Mono<Boolean> probe(URI target);
+
+}
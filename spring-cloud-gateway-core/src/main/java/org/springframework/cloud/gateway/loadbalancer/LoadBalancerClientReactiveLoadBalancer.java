@@ -0,0 +1,46 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
+import org.springframework.web.server.ServerWebExchange;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * {@link ReactiveLoadBalancer} delegating to a {@link LoadBalancerClient}, such as
+ * Ribbon's. The client may block, so it is called on the elastic scheduler.
+ */
+public class LoadBalancerClientReactiveLoadBalancer implements ReactiveLoadBalancer {
+
+	private final LoadBalancerClient loadBalancer;
+
+	public LoadBalancerClientReactiveLoadBalancer(LoadBalancerClient loadBalancer) {
+		this.loadBalancer = loadBalancer;
+	}
+
+	@Override
+	public Mono<ServiceInstance> choose(String serviceId, ServerWebExchange exchange) {
+		// LoadBalancerClient.choose may block, it runs off the event loop
+		return Mono.fromCallable(() -> this.loadBalancer.choose(serviceId))
+				.subscribeOn(Schedulers.elastic());
+	}
+
+}
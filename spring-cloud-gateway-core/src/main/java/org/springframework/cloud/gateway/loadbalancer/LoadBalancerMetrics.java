@@ -0,0 +1,132 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+/**
+ * Publishes the state of the load balancer to Micrometer. The weight of an instance
+ * that left its service is no longer published: Micrometer 1.0 cannot remove a meter,
+ * so its gauge reports NaN until the instance comes back.
+ */
+public class LoadBalancerMetrics implements OutlierDetector.Listener, SlowStartStrategy.Listener,
+		ServiceInstanceCache.Listener {
+
+	public static final String EJECTIONS = "gateway.loadbalancer.ejections";
+
+	public static final String READMISSIONS = "gateway.loadbalancer.readmissions";
+
+	public static final String EJECTED = "gateway.loadbalancer.ejected";
+
+	public static final String WEIGHT = "gateway.loadbalancer.weight";
+
+	public static final String STALENESS = "gateway.loadbalancer.instances.staleness";
+
+	private final MeterRegistry registry;
+
+	private final ConcurrentMap<String, AtomicInteger> ejected = new ConcurrentHashMap<>();
+
+	// 按服务、实例保存权重指标的值，指标无法移除，实例重新加入时继续使用
+	private final ConcurrentMap<String, ConcurrentMap<String, Weight>> weights = new ConcurrentHashMap<>();
+
+	public LoadBalancerMetrics(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	@Override
+	public void ejected(ServiceInstance instance, OutlierDetector.Reason reason) {
+		this.registry.counter(EJECTIONS, tags(instance).and("reason", reason.name())).increment();
+		ejected(instance.getServiceId()).incrementAndGet();
+	}
+
+	@Override
+	public void readmitted(ServiceInstance instance) {
+		this.registry.counter(READMISSIONS, tags(instance)).increment();
+		ejected(instance.getServiceId()).decrementAndGet();
+	}
+
+	@Override
+	public void removed(ServiceInstance instance) {
+		ejected(instance.getServiceId()).decrementAndGet();
+	}
+
+	@Override
+	public void warming(ServiceInstance instance, SlowStartStrategy strategy) {
+		Weight weight = this.weights.computeIfAbsent(instance.getServiceId(), id -> new ConcurrentHashMap<>())
+				.computeIfAbsent(LoadBalancerStats.key(instance), key -> new Weight());
+		weight.instance = instance;
+		weight.strategy = strategy;
+		this.registry.gauge(WEIGHT, tags(instance), weight, Weight::value);
+	}
+
+	@Override
+	public void instancesChanged(String serviceId, List<ServiceInstance> instances) {
+		ConcurrentMap<String, Weight> weights = this.weights.get(serviceId);
+		if (weights == null) {
+			return;
+		}
+		Set<String> keys = instances.stream().map(LoadBalancerStats::key).collect(Collectors.toSet());
+		weights.forEach((key, weight) -> {
+			if (!keys.contains(key)) {
+				weight.strategy = null;
+				weight.instance = null;
+			}
+		});
+	}
+
+	/**
+	 * Publishes the age, in seconds, of the oldest instances served by the cache, and
+	 * stops publishing the weights of the instances it no longer returns.
+	 */
+	public void monitor(ServiceInstanceCache cache) {
+		this.registry.gauge(STALENESS, Tags.empty(), cache, c -> c.getStaleness().toMillis() / 1000.0);
+		cache.addListener(this);
+	}
+
+	private AtomicInteger ejected(String serviceId) {
+		return this.ejected.computeIfAbsent(serviceId, id ->
+				this.registry.gauge(EJECTED, Tags.of("serviceId", id), new AtomicInteger()));
+	}
+
+	private static Tags tags(ServiceInstance instance) {
+		return Tags.of("serviceId", instance.getServiceId(), "instance", LoadBalancerStats.key(instance));
+	}
+
+	private static final class Weight {
+
+		volatile SlowStartStrategy strategy;
+
+		volatile ServiceInstance instance;
+
+		double value() {
+			SlowStartStrategy strategy = this.strategy;
+			ServiceInstance instance = this.instance;
+			return strategy == null || instance == null ? Double.NaN : strategy.getWeight(instance);
+		}
+	}
+}
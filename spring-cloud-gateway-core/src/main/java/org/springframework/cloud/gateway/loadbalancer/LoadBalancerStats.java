@@ -0,0 +1,182 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+/**
+ * Per instance statistics of the requests proxied by the gateway. The statistics of
+ * instances no longer returned by the {@link ServiceInstanceCache} are dropped.
+ */
+public class LoadBalancerStats implements ServiceInstanceCache.Listener {
+
+	public static final Duration DEFAULT_DECAY = Duration.ofSeconds(10);
+
+	private final ConcurrentMap<String, ConcurrentMap<String, InstanceStats>> stats = new ConcurrentHashMap<>();
+
+	private final long decayNanos;
+
+	public LoadBalancerStats() {
+		this(DEFAULT_DECAY);
+	}
+
+	/**
+	 * @param decay the time after which a latency observation weighs 1/e in the EWMA
+	 */
+	public LoadBalancerStats(Duration decay) {
+		this.decayNanos = decay.toNanos();
+	}
+
+	public InstanceStats getStats(ServiceInstance instance) {
+		return this.stats.computeIfAbsent(instance.getServiceId(), serviceId -> new ConcurrentHashMap<>())
+				.computeIfAbsent(key(instance), key -> new InstanceStats(this.decayNanos));
+	}
+
+	@Override
+	public void instancesChanged(String serviceId, List<ServiceInstance> instances) {
+		Set<String> keys = instances.stream().map(LoadBalancerStats::key).collect(Collectors.toSet());
+		this.stats.computeIfPresent(serviceId, (id, stats) -> {
+			stats.keySet().retainAll(keys);
+			return stats.isEmpty() ? null : stats;
+		});
+	}
+
+	/**
+	 * @return the statistics of every instance by host and port, by service id
+	 */
+	public Map<String, Map<String, InstanceStats>> getStats() {
+		Map<String, Map<String, InstanceStats>> snapshot = new TreeMap<>();
+		this.stats.forEach((serviceId, instances) ->
+				snapshot.put(serviceId, Collections.unmodifiableMap(new TreeMap<>(instances))));
+		return snapshot;
+	}
+
+	static String key(ServiceInstance instance) {
+		return instance.getHost() + ":" + instance.getPort();
+	}
+
+	public static class InstanceStats {
+
+		/** Cost of an instance with requests in flight but no latency observed yet. */
+		static final double PENALTY = Long.MAX_VALUE >> 16;
+
+		private final AtomicInteger outstanding = new AtomicInteger();
+
+		private final AtomicReference<Ewma> ewma = new AtomicReference<>(new Ewma(0, System.nanoTime()));
+
+		private final double decayNanos;
+
+		InstanceStats(long decayNanos) {
+			this.decayNanos = decayNanos;
+		}
+
+		/**
+		 * @return the number of requests sent to the instance that did not complete yet
+		 */
+		public int getOutstanding() {
+			return this.outstanding.get();
+		}
+
+		public void incrementOutstanding() {
+			this.outstanding.incrementAndGet();
+		}
+
+		public void decrementOutstanding() {
+			this.outstanding.decrementAndGet();
+		}
+
+		/**
+		 * Adds a latency observation. A latency above the current average replaces it,
+		 * so that a slow instance is avoided at once and only recovers with time.
+		 */
+		public void recordLatency(long nanos) {
+			long now = System.nanoTime();
+			Ewma previous;
+			Ewma next;
+			do {
+				previous = this.ewma.get();
+				next = previous.observe(nanos, now, this.decayNanos);
+			} while (!this.ewma.compareAndSet(previous, next));
+		}
+
+		/**
+		 * @return the peak EWMA latency in milliseconds
+		 */
+		public double getPeakEwmaMillis() {
+			return peakEwma() / TimeUnit.MILLISECONDS.toNanos(1);
+		}
+
+		/**
+		 * @return the peak EWMA latency weighted by the requests in flight, lower is better
+		 */
+		public double getPeakEwmaCost() {
+			double latency = peakEwma();
+			int outstanding = getOutstanding();
+			if (latency == 0 && outstanding != 0) {
+				return PENALTY + outstanding;
+			}
+			return latency * (outstanding + 1);
+		}
+
+		private double peakEwma() {
+			// an idle instance decays as if it answered instantly
+			return this.ewma.get().observe(0, System.nanoTime(), this.decayNanos).value;
+		}
+
+		@Override
+		public String toString() {
+			return "InstanceStats{" +
+					"outstanding=" + outstanding +
+					", peakEwmaMillis=" + getPeakEwmaMillis() +
+					'}';
+		}
+	}
+
+	private static final class Ewma {
+
+		final double value;
+
+		final long stamp;
+
+		Ewma(double value, long stamp) {
+			this.value = value;
+			this.stamp = stamp;
+		}
+
+		Ewma observe(long nanos, long now, double decayNanos) {
+			if (nanos > this.value) {
+				return new Ewma(nanos, now);
+			}
+			double weight = Math.exp(-Math.max(now - this.stamp, 0) / decayNanos);
+			return new Ewma(this.value * weight + nanos * (1 - weight), now);
+		}
+	}
+}
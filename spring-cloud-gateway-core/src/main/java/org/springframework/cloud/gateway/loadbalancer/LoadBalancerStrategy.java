@@ -0,0 +1,41 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import java.util.List;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.lang.Nullable;
+import org.springframework.web.server.ServerWebExchange;
+
+/**
+ * Picks one of the known instances of a service. Called on the event loop for every
+ * lb:// request, so implementations must not block.
+ */
+public interface LoadBalancerStrategy {
+
+	/**
+	 * @param serviceId the service id
+	 * @param instances the instances to choose from, never empty
+	 * @param exchange the current exchange
+	 * @return the chosen instance, or null if none should be used
+	 */
+	@Nullable
+	ServiceInstance choose(String serviceId, List<ServiceInstance> instances, ServerWebExchange exchange);
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import java.net.URI;
+
+import reactor.core.publisher.Mono;
+import reactor.ipc.netty.http.client.HttpClient;
+
+/**
+ * Probes a target with a GET request to a path, through the {@link HttpClient} used to
+ * proxy requests, so that probes share its connection pools. Any 2xx status is healthy.
+ */
+public class NettyHealthProbe implements HealthProbe {
+
+	private final HttpClient httpClient;
+
+	private final String path;
+
+	public NettyHealthProbe(HttpClient httpClient, String path) {
+		this.httpClient = httpClient;
+		this.path = path.startsWith("/") ? path : "/" + path;
+	}
+
+	@Override
+	public Mono<Boolean> probe(URI target) {
+		return this.httpClient.get(target + this.path, request -> request
+				.failOnClientError(false)
+				.failOnServerError(false)
+				.sendHeaders())
+				// the body is drained so that the connection goes back to the pool
+				.flatMap(response -> response.receive().then()
+						.thenReturn(response.status().code() / 100 == 2));
+	}
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import java.util.List;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.web.server.ServerWebExchange;
+
+/**
+ * Hands the instances not ejected by the {@link OutlierDetector} to the delegate
+ * strategy.
+ */
+public class OutlierDetectionStrategy implements LoadBalancerStrategy {
+
+	private final LoadBalancerStrategy delegate;
+
+	private final OutlierDetector outlierDetector;
+
+	public OutlierDetectionStrategy(LoadBalancerStrategy delegate, OutlierDetector outlierDetector) {
+		this.delegate = delegate;
+		this.outlierDetector = outlierDetector;
+	}
+
+	@Override
+	public ServiceInstance choose(String serviceId, List<ServiceInstance> instances, ServerWebExchange exchange) {
+		return this.delegate.choose(serviceId, this.outlierDetector.filter(serviceId, instances), exchange);
+	}
+
+}
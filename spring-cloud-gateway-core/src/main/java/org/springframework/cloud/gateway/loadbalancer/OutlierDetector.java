@@ -0,0 +1,417 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.cloud.client.ServiceInstance;
+
+/**
+ * Passive health tracking of the instances of each service, fed with the outcome of
+ * the proxied requests. An instance is ejected, i.e. not chosen anymore, after a
+ * number of consecutive failures or when its success rate over an interval drops
+ * below a threshold. It is re-admitted after the ejection time, which grows with
+ * each ejection. At most {@link Config#getMaxEjectionPercent()} of the instances of a
+ * service are ejected at the same time. The state of the instances that left the
+ * service is dropped when the {@link ServiceInstanceCache} reloads it.
+ */
+public class OutlierDetector implements ServiceInstanceCache.Listener {
+
+	private static final Log log = LogFactory.getLog(OutlierDetector.class);
+
+	public enum Reason {
+		CONSECUTIVE_FAILURES, SUCCESS_RATE
+	}
+
+	/**
+	 * Notified when instances are ejected and re-admitted, to publish metrics for instance.
+	 */
+	public interface Listener {
+
+		void ejected(ServiceInstance instance, Reason reason);
+
+		void readmitted(ServiceInstance instance);
+
+		/**
+		 * Called when an ejected instance left the service before it was re-admitted.
+		 */
+		default void removed(ServiceInstance instance) {
+		}
+	}
+
+	private final Config config;
+
+	private final LongSupplier nanoClock;
+
+	private final ConcurrentMap<String, ServiceState> services = new ConcurrentHashMap<>();
+
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+	public OutlierDetector(Config config) {
+		this(config, System::nanoTime);
+	}
+
+	OutlierDetector(Config config, LongSupplier nanoClock) {
+		this.config = config;
+		this.nanoClock = nanoClock;
+	}
+
+	public void addListener(Listener listener) {
+		this.listeners.add(listener);
+	}
+
+	public void recordSuccess(ServiceInstance instance) {
+		InstanceState state = getState(instance);
+		state.consecutiveFailures.set(0);
+		state.window(this.nanoClock.getAsLong()).successes.incrementAndGet();
+	}
+
+	public void recordFailure(ServiceInstance instance) {
+		InstanceState state = getState(instance);
+		long now = this.nanoClock.getAsLong();
+		Window window = state.window(now);
+		int failures = window.failures.incrementAndGet();
+		if (state.consecutiveFailures.incrementAndGet() >= this.config.consecutiveFailures) {
+			eject(instance, state, now, Reason.CONSECUTIVE_FAILURES);
+			return;
+		}
+		int requests = failures + window.successes.get();
+		if (requests >= this.config.successRateMinimumRequests
+				&& (requests - failures) < this.config.successRateThreshold * requests) {
+			eject(instance, state, now, Reason.SUCCESS_RATE);
+		}
+	}
+
+	@Override
+	public void instancesChanged(String serviceId, List<ServiceInstance> instances) {
+		ServiceState service = this.services.get(serviceId);
+		if (service == null) {
+			return;
+		}
+		Set<String> keys = instances.stream().map(LoadBalancerStats::key).collect(Collectors.toSet());
+		service.instances.forEach((key, state) -> {
+			if (keys.contains(key) || !service.instances.remove(key, state)) {
+				return;
+			}
+			// an instance gone while ejected no longer counts against the maximum ejection percent
+			ServiceInstance ejected = state.ejectedInstance;
+			if (state.ejectedUntil.getAndSet(0) != 0) {
+				service.ejected.decrementAndGet();
+				for (Listener listener : this.listeners) {
+					listener.removed(ejected);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return the instances that are not ejected, or all of them if they all are
+	 */
+	public List<ServiceInstance> filter(String serviceId, List<ServiceInstance> instances) {
+		ServiceState service = this.services.computeIfAbsent(serviceId, id -> new ServiceState());
+		long now = this.nanoClock.getAsLong();
+		if (service.seen != instances || now - service.seenAt > this.config.interval.toNanos() / 2) {
+			// the list may be a sub-list of the service (the instances of a zone), so the
+			// maximum ejection percent counts all the instances seen recently
+			for (ServiceInstance instance : instances) {
+				getState(instance).lastSeen = now;
+			}
+			service.seen = instances;
+			service.seenAt = now;
+		}
+		if (service.ejected.get() == 0) {
+			return instances;
+		}
+		List<ServiceInstance> available = new ArrayList<>(instances.size());
+		for (ServiceInstance instance : instances) {
+			InstanceState state = service.instances.get(LoadBalancerStats.key(instance));
+			if (state == null || !isEjected(instance, state, now)) {
+				available.add(instance);
+			}
+		}
+		return available.isEmpty() ? instances : available;
+	}
+
+	public boolean isEjected(ServiceInstance instance) {
+		return isEjected(instance, getState(instance), this.nanoClock.getAsLong());
+	}
+
+	/**
+	 * @return the ejected instances by host and port, by service id
+	 */
+	public Map<String, List<String>> getEjected() {
+		long now = this.nanoClock.getAsLong();
+		Map<String, List<String>> ejected = new TreeMap<>();
+		this.services.forEach((serviceId, service) -> service.instances.forEach((key, state) -> {
+			long until = state.ejectedUntil.get();
+			if (until != 0 && until - now > 0) {
+				ejected.computeIfAbsent(serviceId, id -> new ArrayList<>()).add(key);
+			}
+		}));
+		return ejected;
+	}
+
+	public int getEjectedCount(String serviceId) {
+		ServiceState service = this.services.get(serviceId);
+		return service == null ? 0 : service.ejected.get();
+	}
+
+	private void eject(ServiceInstance instance, InstanceState state, long now, Reason reason) {
+		ServiceState service = this.services.computeIfAbsent(instance.getServiceId(), id -> new ServiceState());
+		if (state.ejectedUntil.get() != 0) {
+			// already ejected, the failures of requests in flight do not extend the ejection
+			return;
+		}
+		int ejected = service.ejected.get();
+		long instanceCount = service.instances.values().stream()
+				.filter(other -> now - other.lastSeen <= 2 * this.config.interval.toNanos()).count();
+		if (ejected * 100 >= this.config.maxEjectionPercent * Math.max(instanceCount, 1)) {
+			return;
+		}
+		long multiplier = Math.max(state.ejections.incrementAndGet(), 1);
+		long ejectionNanos = Math.min(this.config.baseEjectionTime.toNanos() * multiplier,
+				this.config.maxEjectionTime.toNanos());
+		state.ejectedInstance = instance;
+		if (!state.ejectedUntil.compareAndSet(0, Math.max(now + ejectionNanos, 1))) {
+			return;
+		}
+		service.ejected.incrementAndGet();
+		if (log.isWarnEnabled()) {
+			log.warn("Ejecting " + LoadBalancerStats.key(instance) + " of " + instance.getServiceId()
+					+ " for " + Duration.ofNanos(ejectionNanos) + ": " + reason);
+		}
+		for (Listener listener : this.listeners) {
+			listener.ejected(instance, reason);
+		}
+	}
+
+	private boolean isEjected(ServiceInstance instance, InstanceState state, long now) {
+		long until = state.ejectedUntil.get();
+		if (until == 0) {
+			return false;
+		}
+		if (until - now > 0) {
+			return true;
+		}
+		if (state.ejectedUntil.compareAndSet(until, 0)) {
+			state.consecutiveFailures.set(0);
+			state.window.set(new Window(now));
+			this.services.get(instance.getServiceId()).ejected.decrementAndGet();
+			if (log.isInfoEnabled()) {
+				log.info("Re-admitting " + LoadBalancerStats.key(instance) + " of " + instance.getServiceId());
+			}
+			for (Listener listener : this.listeners) {
+				listener.readmitted(instance);
+			}
+		}
+		return false;
+	}
+
+	private InstanceState getState(ServiceInstance instance) {
+		return this.services.computeIfAbsent(instance.getServiceId(), id -> new ServiceState()).instances
+				.computeIfAbsent(LoadBalancerStats.key(instance), key -> new InstanceState(this.config.interval.toNanos(),
+						this.nanoClock.getAsLong()));
+	}
+
+	private static class ServiceState {
+
+		final ConcurrentMap<String, InstanceState> instances = new ConcurrentHashMap<>();
+
+		final AtomicInteger ejected = new AtomicInteger();
+
+		/** The last list of instances marked as seen. */
+		volatile List<ServiceInstance> seen;
+
+		volatile long seenAt;
+	}
+
+	private static class InstanceState {
+
+		final long intervalNanos;
+
+		final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+		/** Number of ejections, decremented for every interval without ejection. */
+		final AtomicInteger ejections = new AtomicInteger();
+
+		/** End of the ejection, 0 if the instance is not ejected. */
+		final AtomicLong ejectedUntil = new AtomicLong();
+
+		final AtomicReference<Window> window;
+
+		/** Last time the instance was in the list of the service. */
+		volatile long lastSeen;
+
+		/** The instance when it was last ejected, for the listeners if it leaves the service. */
+		volatile ServiceInstance ejectedInstance;
+
+		InstanceState(long intervalNanos, long now) {
+			this.intervalNanos = intervalNanos;
+			this.lastSeen = now;
+			this.window = new AtomicReference<>(new Window(now));
+		}
+
+		Window window(long now) {
+			Window current = this.window.get();
+			if (now - current.start < this.intervalNanos) {
+				return current;
+			}
+			Window next = new Window(now);
+			if (this.window.compareAndSet(current, next)) {
+				if (this.ejectedUntil.get() == 0) {
+					this.ejections.updateAndGet(ejections -> Math.max(ejections - 1, 0));
+				}
+				return next;
+			}
+			return this.window.get();
+		}
+	}
+
+	private static class Window {
+
+		final long start;
+
+		final AtomicInteger successes = new AtomicInteger();
+
+		final AtomicInteger failures = new AtomicInteger();
+
+		Window(long start) {
+			this.start = start;
+		}
+	}
+
+	public static class Config {
+
+		/** If instances are ejected based on the outcome of the proxied requests */
+		private boolean enabled = true;
+
+		/** Number of consecutive failures after which an instance is ejected */
+		private int consecutiveFailures = 5;
+
+		/** Minimum ratio of successful requests of an instance within an interval */
+		private double successRateThreshold = 0.5;
+
+		/** Minimum number of requests within an interval for the success rate to be evaluated */
+		private int successRateMinimumRequests = 20;
+
+		/** Interval of the success rate */
+		private Duration interval = Duration.ofSeconds(10);
+
+		/** Ejection time of an instance, multiplied by the number of recent ejections */
+		private Duration baseEjectionTime = Duration.ofSeconds(30);
+
+		/** Maximum ejection time of an instance */
+		private Duration maxEjectionTime = Duration.ofMinutes(5);
+
+		/** Maximum percentage of the instances of a service ejected at the same time */
+		private int maxEjectionPercent = 50;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getConsecutiveFailures() {
+			return consecutiveFailures;
+		}
+
+		public void setConsecutiveFailures(int consecutiveFailures) {
+			this.consecutiveFailures = consecutiveFailures;
+		}
+
+		public double getSuccessRateThreshold() {
+			return successRateThreshold;
+		}
+
+		public void setSuccessRateThreshold(double successRateThreshold) {
+			this.successRateThreshold = successRateThreshold;
+		}
+
+		public int getSuccessRateMinimumRequests() {
+			return successRateMinimumRequests;
+		}
+
+		public void setSuccessRateMinimumRequests(int successRateMinimumRequests) {
+			this.successRateMinimumRequests = successRateMinimumRequests;
+		}
+
+		public Duration getInterval() {
+			return interval;
+		}
+
+		public void setInterval(Duration interval) {
+			this.interval = interval;
+		}
+
+		public Duration getBaseEjectionTime() {
+			return baseEjectionTime;
+		}
+
+		public void setBaseEjectionTime(Duration baseEjectionTime) {
+			this.baseEjectionTime = baseEjectionTime;
+		}
+
+		public Duration getMaxEjectionTime() {
+			return maxEjectionTime;
+		}
+
+		public void setMaxEjectionTime(Duration maxEjectionTime) {
+			this.maxEjectionTime = maxEjectionTime;
+		}
+
+		public int getMaxEjectionPercent() {
+			return maxEjectionPercent;
+		}
+
+		public void setMaxEjectionPercent(int maxEjectionPercent) {
+			this.maxEjectionPercent = maxEjectionPercent;
+		}
+
+		@Override
+		public String toString() {
+			return "Config{" +
+					"enabled=" + enabled +
+					", consecutiveFailures=" + consecutiveFailures +
+					", successRateThreshold=" + successRateThreshold +
+					", successRateMinimumRequests=" + successRateMinimumRequests +
+					", interval=" + interval +
+					", baseEjectionTime=" + baseEjectionTime +
+					", maxEjectionTime=" + maxEjectionTime +
+					", maxEjectionPercent=" + maxEjectionPercent +
+					'}';
+		}
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+/**
+ * Power of two choices weighted by latency: of the two instances picked at random, uses
+ * the one with the lowest peak EWMA latency times its outstanding requests plus one.
+ * Slow instances, during a GC pause for example, are avoided as soon as one slow
+ * response is observed and get traffic back as their latency decays.
+ * @see LoadBalancerStats.InstanceStats#getPeakEwmaCost()
+ */
+public class PeakEwmaStrategy extends PowerOfTwoChoicesStrategy {
+
+	public PeakEwmaStrategy(LoadBalancerStats stats) {
+		super(stats);
+	}
+
+	@Override
+	protected double cost(ServiceInstance instance) {
+		return getStats().getStats(instance).getPeakEwmaCost();
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+import org.apache.commons.logging.Log;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Runs a task in the background, at once and then every interval, on a daemon thread
+ * of its own. A run slower than the interval skips the next one, a run that fails is
+ * logged and does not stop the following ones. Backs the lifecycle of the load balancer
+ * components working in the background.
+ * 后台定时任务，由 SmartLifecycle 的 start 与 stop 启动和停止
+ */
+final class PeriodicTask {
+
+	private final String threadName;
+
+	private final Duration interval;
+
+	private final Supplier<Mono<Void>> task;
+
+	private final Log log;
+
+	private final String failureMessage;
+
+	private Scheduler scheduler;
+
+	private volatile Disposable runs;
+
+	/**
+	 * @param threadName the name of the thread running the task
+	 * @param failureMessage the warning logged, with the cause, when a run fails
+	 */
+	PeriodicTask(String threadName, Duration interval, Supplier<Mono<Void>> task, Log log, String failureMessage) {
+		this.threadName = threadName;
+		this.interval = interval;
+		this.task = task;
+		this.log = log;
+		this.failureMessage = failureMessage;
+	}
+
+	synchronized void start() {
+		if (this.runs != null) {
+			return;
+		}
+		this.scheduler = Schedulers.newSingle(this.threadName, true);
+		this.runs = Flux.interval(Duration.ZERO, this.interval, this.scheduler)
+				// a run slower than the interval skips the next one
+				.onBackpressureDrop()
+				.concatMap(tick -> this.task.get().onErrorResume(t -> {
+					this.log.warn(this.failureMessage, t);
+					return Mono.empty();
+				}), 1)
+				.subscribe();
+	}
+
+	synchronized void stop() {
+		Disposable runs = this.runs;
+		if (runs != null) {
+			runs.dispose();
+			this.scheduler.dispose();
+			this.runs = null;
+		}
+	}
+
+	boolean isRunning() {
+		return this.runs != null;
+	}
+}
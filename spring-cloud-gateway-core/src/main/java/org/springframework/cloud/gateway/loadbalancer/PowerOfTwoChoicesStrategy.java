@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.web.server.ServerWebExchange;
+
+/**
+ * Power of two choices: picks two distinct instances at random and uses the one with
+ * the least outstanding requests.
+ */
+public class PowerOfTwoChoicesStrategy implements LoadBalancerStrategy {
+
+	private final LoadBalancerStats stats;
+
+	public PowerOfTwoChoicesStrategy(LoadBalancerStats stats) {
+		this.stats = stats;
+	}
+
+	protected LoadBalancerStats getStats() {
+		return this.stats;
+	}
+
+	@Override
+	public ServiceInstance choose(String serviceId, List<ServiceInstance> instances, ServerWebExchange exchange) {
+		int size = instances.size();
+		if (size == 1) {
+			return instances.get(0);
+		}
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int first = random.nextInt(size);
+		int second = random.nextInt(size - 1);
+		if (second >= first) {
+			second++;
+		}
+
+		ServiceInstance a = instances.get(first);
+		ServiceInstance b = instances.get(second);
+		return cost(a) <= cost(b) ? a : b;
+	}
+
+	protected double cost(ServiceInstance instance) {
+		return this.stats.getStats(instance).getOutstanding();
+	}
+
+}
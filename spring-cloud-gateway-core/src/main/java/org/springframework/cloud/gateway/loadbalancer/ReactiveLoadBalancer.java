@@ -0,0 +1,37 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.web.server.ServerWebExchange;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking choice of a {@link ServiceInstance} for an lb:// request.
+ */
+public interface ReactiveLoadBalancer {
+
+	/**
+	 * @param serviceId the service id, the host of the lb:// url
+	 * @param exchange the current exchange
+	 * @return the chosen instance, or empty if the service has no instance
+	 */
+	Mono<ServiceInstance> choose(String serviceId, ServerWebExchange exchange);
+
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.cloud.client.discovery.event.HeartbeatMonitor;
+import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.SmartLifecycle;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Caches the services and instances {@link DiscoveryClient} returns. Lookups read an
+ * immutable snapshot without locking, which is replaced as a whole when the instances
+ * are reloaded: in the background every refresh interval, when the DiscoveryClient
+ * publishes a new {@link HeartbeatEvent}, or, without background reloads, when a
+ * lookup finds a list older than the ttl. A reload failing, while the discovery server is down for instance, keeps the
+ * instances previously loaded; {@link #getStaleness()} tells how old they are. Once a
+ * reload finds other services, a {@link RefreshRoutesEvent} is published, so that the
+ * routes of the discovered services are rebuilt from the new services. The
+ * {@link Listener}s are told when the instances of a service change, so that the state
+ * kept for instances that are gone can be dropped.
+ */
+public class ServiceInstanceCache implements SmartLifecycle, ApplicationListener<HeartbeatEvent>,
+		ApplicationEventPublisherAware {
+
+	private static final Log log = LogFactory.getLog(ServiceInstanceCache.class);
+
+	/**
+	 * Notified when the instances of a service cached before change.
+	 */
+	public interface Listener {
+
+		/**
+		 * @param instances the new instances of the service, empty when the service is gone
+		 */
+		void instancesChanged(String serviceId, List<ServiceInstance> instances);
+	}
+
+	private final DiscoveryClient discoveryClient;
+
+	private final Duration ttl;
+
+	private final Duration refreshInterval;
+
+	private final LongSupplier nanoClock;
+
+	private final HeartbeatMonitor monitor = new HeartbeatMonitor();
+
+	private final AtomicBoolean refreshing = new AtomicBoolean();
+
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+	/** Replaced, never modified, so that lookups need no lock. */
+	private volatile Snapshot snapshot;
+
+	private ApplicationEventPublisher publisher;
+
+	private final PeriodicTask task;
+
+	public ServiceInstanceCache(DiscoveryClient discoveryClient, Duration ttl) {
+		this(discoveryClient, ttl, Duration.ZERO);
+	}
+
+	/**
+	 * @param refreshInterval interval of the background reloads, 0 to only reload on
+	 * lookups and heartbeats
+	 */
+	public ServiceInstanceCache(DiscoveryClient discoveryClient, Duration ttl, Duration refreshInterval) {
+		this(discoveryClient, ttl, refreshInterval, System::nanoTime);
+	}
+
+	ServiceInstanceCache(DiscoveryClient discoveryClient, Duration ttl, Duration refreshInterval,
+			LongSupplier nanoClock) {
+		this.discoveryClient = discoveryClient;
+		this.ttl = ttl;
+		this.refreshInterval = refreshInterval;
+		this.nanoClock = nanoClock;
+		this.snapshot = new Snapshot(null, Collections.emptyMap(), nanoClock.getAsLong());
+		this.task = new PeriodicTask("gateway-discovery-refresh", refreshInterval, this::refresh, log,
+				"Unable to refresh instances, keeping cached instances");
+	}
+
+	@Override
+	public void setApplicationEventPublisher(ApplicationEventPublisher publisher) {
+		this.publisher = publisher;
+	}
+
+	public void addListener(Listener listener) {
+		this.listeners.add(listener);
+	}
+
+	public Mono<List<ServiceInstance>> getInstances(String serviceId) {
+		Entry entry = this.snapshot.entries.get(serviceId);
+		if (entry == null) {
+			return load(serviceId);
+		}
+		// with background reloads, lookups do not add to the load of a failing discovery server
+		if (!isRunning() && entry.isExpired(this.ttl, this.nanoClock.getAsLong())
+				&& entry.refreshing.compareAndSet(false, true)) {
+			load(serviceId).subscribe(null, t -> {
+				entry.refreshing.set(false);
+				log.warn("Unable to refresh instances of " + serviceId + ", keeping cached instances", t);
+			});
+		}
+		return Mono.just(entry.instances);
+	}
+
+	/**
+	 * @return the ids of the services, as of the last reload
+	 */
+	public Mono<List<String>> getServices() {
+		List<String> services = this.snapshot.services;
+		if (services != null) {
+			return Mono.just(services);
+		}
+		// on the calling thread, like the DiscoveryClient route locator did: the routes are
+		// collected while the context starts, which events published elsewhere would wait for
+		return Mono.fromCallable(this.discoveryClient::getServices);
+	}
+
+	/**
+	 * @return the age of the oldest data served, the time since the last successful
+	 * reload of the services or of the instances of a service
+	 */
+	public Duration getStaleness() {
+		Snapshot snapshot = this.snapshot;
+		long now = this.nanoClock.getAsLong();
+		// without background reloads, only the instances loaded by lookups count
+		long loadedAt = snapshot.services != null || isRunning() ? snapshot.loadedAt : now;
+		for (Entry entry : snapshot.entries.values()) {
+			if (entry.loadedAt - loadedAt < 0) {
+				loadedAt = entry.loadedAt;
+			}
+		}
+		return Duration.ofNanos(Math.max(now - loadedAt, 0));
+	}
+
+	public void evict(String serviceId) {
+		update(entries -> entries.remove(serviceId));
+	}
+
+	/**
+	 * Reloads the services and their instances, unless a reload is running. The
+	 * instances of the services which fail to load are kept.
+	 */
+	public Mono<Void> refresh() {
+		return Mono.defer(() -> {
+			if (!this.refreshing.compareAndSet(false, true)) {
+				return Mono.empty();
+			}
+			// DiscoveryClient is blocking
+			return Mono.fromRunnable(this::reloadAndRelease)
+					.subscribeOn(Schedulers.elastic())
+					.doOnCancel(() -> this.refreshing.set(false))
+					.then();
+		});
+	}
+
+	@Override
+	public void onApplicationEvent(HeartbeatEvent event) {
+		if (this.monitor.update(event.getValue())) {
+			refresh().subscribe(null, t -> log.warn("Unable to refresh instances, keeping cached instances", t));
+		}
+	}
+
+	@Override
+	public void start() {
+		if (!this.refreshInterval.isZero()) {
+			this.task.start();
+		}
+	}
+
+	@Override
+	public void stop() {
+		this.task.stop();
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.task.isRunning();
+	}
+
+	@Override
+	public boolean isAutoStartup() {
+		return true;
+	}
+
+	@Override
+	public void stop(Runnable callback) {
+		stop();
+		callback.run();
+	}
+
+	@Override
+	public int getPhase() {
+		return 0;
+	}
+
+	private void reloadAndRelease() {
+		try {
+			reload();
+		}
+		finally {
+			// before the completion is signalled, so that a refresh can follow it
+			this.refreshing.set(false);
+		}
+	}
+
+	private void reload() {
+		List<String> services = new ArrayList<>(this.discoveryClient.getServices());
+		long now = this.nanoClock.getAsLong();
+		List<String> previousServices = this.snapshot.services;
+		Map<String, Entry> previous = this.snapshot.entries;
+		Set<String> serviceIds = new LinkedHashSet<>(services);
+		// services only known from lookups are reloaded too
+		serviceIds.addAll(previous.keySet());
+		Map<String, Entry> entries = new HashMap<>();
+		for (String serviceId : serviceIds) {
+			Entry entry = previous.get(serviceId);
+			try {
+				List<ServiceInstance> instances = this.discoveryClient.getInstances(serviceId);
+				if (!services.contains(serviceId) && instances.isEmpty()) {
+					continue;
+				}
+				entry = entry(entry, instances, now);
+			}
+			catch (RuntimeException e) {
+				log.warn("Unable to refresh instances of " + serviceId + ", keeping cached instances", e);
+			}
+			if (entry != null) {
+				entries.put(serviceId, entry);
+			}
+		}
+		synchronized (this) {
+			// keep the services loaded by lookups meanwhile
+			this.snapshot.entries.forEach((serviceId, entry) -> {
+				if (!serviceIds.contains(serviceId)) {
+					entries.put(serviceId, entry);
+				}
+			});
+			this.snapshot = new Snapshot(Collections.unmodifiableList(services), entries, now);
+		}
+		previous.forEach((serviceId, entry) -> changed(serviceId, entry, entries.get(serviceId)));
+		// 服务列表变化后刷新路由，此时路由读取的是新的服务列表
+		if (this.publisher != null && (previousServices == null
+				|| !new HashSet<>(previousServices).equals(new HashSet<>(services)))) {
+			this.publisher.publishEvent(new RefreshRoutesEvent(this));
+		}
+	}
+
+	private Mono<List<ServiceInstance>> load(String serviceId) {
+		// DiscoveryClient is blocking
+		return Mono.fromCallable(() -> this.discoveryClient.getInstances(serviceId))
+				.subscribeOn(Schedulers.elastic())
+				.map(instances -> {
+					long now = this.nanoClock.getAsLong();
+					Entry[] loaded = new Entry[2];
+					update(entries -> {
+						loaded[0] = entries.get(serviceId);
+						loaded[1] = entries.compute(serviceId, (id, previous) -> entry(previous, instances, now));
+					});
+					changed(serviceId, loaded[0], loaded[1]);
+					return loaded[1].instances;
+				});
+	}
+
+	private void changed(String serviceId, Entry previous, Entry current) {
+		if (previous == null || current != null && previous.instances == current.instances) {
+			return;
+		}
+		List<ServiceInstance> instances = current == null ? Collections.emptyList() : current.instances;
+		for (Listener listener : this.listeners) {
+			listener.instancesChanged(serviceId, instances);
+		}
+	}
+
+	private synchronized void update(Consumer<Map<String, Entry>> change) {
+		Snapshot snapshot = this.snapshot;
+		Map<String, Entry> entries = new HashMap<>(snapshot.entries);
+		change.accept(entries);
+		this.snapshot = new Snapshot(snapshot.services, entries, snapshot.loadedAt);
+	}
+
+	/**
+	 * @return a new entry, with the list of the previous entry if the instances did not
+	 * change, so that the strategies caching data by list keep it
+	 */
+	private static Entry entry(Entry previous, List<ServiceInstance> instances, long now) {
+		if (previous != null && same(previous.instances, instances)) {
+			return new Entry(previous.instances, now);
+		}
+		return new Entry(Collections.unmodifiableList(new ArrayList<>(instances)), now);
+	}
+
+	private static boolean same(List<ServiceInstance> cached, List<ServiceInstance> instances) {
+		if (cached.size() != instances.size()) {
+			return false;
+		}
+		for (int i = 0; i < cached.size(); i++) {
+			ServiceInstance a = cached.get(i);
+			ServiceInstance b = instances.get(i);
+			if (!LoadBalancerStats.key(a).equals(LoadBalancerStats.key(b)) || a.isSecure() != b.isSecure()
+					|| !Objects.equals(a.getMetadata(), b.getMetadata())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static final class Snapshot {
+
+		/** The ids of the services, null until they are loaded. */
+		final List<String> services;
+
+		final Map<String, Entry> entries;
+
+		final long loadedAt;
+
+		Snapshot(List<String> services, Map<String, Entry> entries, long loadedAt) {
+			this.services = services;
+			this.entries = Collections.unmodifiableMap(entries);
+			this.loadedAt = loadedAt;
+		}
+	}
+
+	private static final class Entry {
+
+		final List<ServiceInstance> instances;
+
+		final long loadedAt;
+
+		final AtomicBoolean refreshing = new AtomicBoolean();
+
+		Entry(List<ServiceInstance> instances, long loadedAt) {
+			this.instances = instances;
+			this.loadedAt = loadedAt;
+		}
+
+		boolean isExpired(Duration ttl, long now) {
+			return now - this.loadedAt > ttl.toNanos();
+		}
+	}
+}
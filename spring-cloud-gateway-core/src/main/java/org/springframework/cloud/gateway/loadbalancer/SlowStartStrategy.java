@@ -0,0 +1,209 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.web.server.ServerWebExchange;
+
+/**
+ * Ramps up the traffic of the instances that joined a service, so that new JVMs warm
+ * up before they receive their full share. The instances of a service when it is
+ * first load balanced are considered warm; an instance appearing afterwards, coming
+ * back after leaving the service, or re-admitted by an {@link OutlierDetector} this
+ * strategy listens to, has a weight growing from the minimum weight to 1 over the
+ * window. An instance chosen by the delegate strategy is kept with a
+ * probability equal to its weight, otherwise the delegate chooses again.
+ */
+public class SlowStartStrategy implements LoadBalancerStrategy, OutlierDetector.Listener {
+
+	public enum Mode {
+		/** The weight grows by the same amount every instant */
+		LINEAR,
+		/** The weight grows by the same ratio every instant, staying low longer */
+		EXPONENTIAL
+	}
+
+	/**
+	 * Notified when a warming up instance is discovered, to publish its weight for instance.
+	 */
+	public interface Listener {
+
+		void warming(ServiceInstance instance, SlowStartStrategy strategy);
+	}
+
+	private static final long WARM = Long.MIN_VALUE;
+
+	private final LoadBalancerStrategy delegate;
+
+	private final long windowNanos;
+
+	private final Mode mode;
+
+	private final double minWeight;
+
+	private final LongSupplier nanoClock;
+
+	private final ConcurrentMap<String, Discovered> services = new ConcurrentHashMap<>();
+
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+	public SlowStartStrategy(LoadBalancerStrategy delegate, Duration window, Mode mode, double minWeight) {
+		this(delegate, window, mode, minWeight, System::nanoTime);
+	}
+
+	SlowStartStrategy(LoadBalancerStrategy delegate, Duration window, Mode mode, double minWeight,
+			LongSupplier nanoClock) {
+		if (minWeight <= 0 || minWeight > 1) {
+			throw new IllegalArgumentException("minWeight must be in (0, 1], was " + minWeight);
+		}
+		this.delegate = delegate;
+		this.windowNanos = window.toNanos();
+		this.mode = mode;
+		this.minWeight = minWeight;
+		this.nanoClock = nanoClock;
+	}
+
+	public void addListener(Listener listener) {
+		this.listeners.add(listener);
+	}
+
+	@Override
+	public ServiceInstance choose(String serviceId, List<ServiceInstance> instances, ServerWebExchange exchange) {
+		Discovered discovered = discover(serviceId, instances);
+		ServiceInstance chosen = this.delegate.choose(serviceId, instances, exchange);
+		if (chosen == null) {
+			return null;
+		}
+		double weight = weight(discovered.since.get(LoadBalancerStats.key(chosen)));
+		if (weight >= 1 || ThreadLocalRandom.current().nextDouble() < weight) {
+			return chosen;
+		}
+		return this.delegate.choose(serviceId, instances, exchange);
+	}
+
+	@Override
+	public void ejected(ServiceInstance instance, OutlierDetector.Reason reason) {
+	}
+
+	@Override
+	public void readmitted(ServiceInstance instance) {
+		String key = LoadBalancerStats.key(instance);
+		long now = this.nanoClock.getAsLong();
+		Discovered discovered = this.services.computeIfPresent(instance.getServiceId(), (serviceId, previous) -> {
+			if (!previous.since.containsKey(key)) {
+				return previous;
+			}
+			Map<String, Long> since = new HashMap<>(previous.since);
+			since.put(key, now);
+			return new Discovered(previous.instances, since);
+		});
+		if (discovered != null && discovered.since.containsKey(key)) {
+			for (Listener listener : this.listeners) {
+				listener.warming(instance, this);
+			}
+		}
+	}
+
+	/**
+	 * @return the current weight of the instance, NaN if it is not known
+	 */
+	public double getWeight(ServiceInstance instance) {
+		Discovered discovered = this.services.get(instance.getServiceId());
+		Long since = discovered == null ? null : discovered.since.get(LoadBalancerStats.key(instance));
+		return since == null ? Double.NaN : weight(since);
+	}
+
+	private Discovered discover(String serviceId, List<ServiceInstance> instances) {
+		Discovered previous = this.services.get(serviceId);
+		// the instance cache returns the same list until it is reloaded
+		if (previous != null && (previous.instances == instances || same(previous.instances, instances))) {
+			return previous;
+		}
+		long now = this.nanoClock.getAsLong();
+		Map<String, Long> since = new HashMap<>();
+		boolean changed = previous == null || previous.since.size() != instances.size();
+		for (ServiceInstance instance : instances) {
+			String key = LoadBalancerStats.key(instance);
+			Long known = previous == null ? Long.valueOf(WARM) : previous.since.get(key);
+			if (known == null) {
+				known = now;
+				changed = true;
+				for (Listener listener : this.listeners) {
+					listener.warming(instance, this);
+				}
+			}
+			since.put(key, known);
+		}
+		Discovered discovered = changed ? new Discovered(instances, since) : new Discovered(instances, previous.since);
+		this.services.put(serviceId, discovered);
+		return discovered;
+	}
+
+	/**
+	 * @return whether the lists hold the same instances, for a copy of the cached list
+	 */
+	private static boolean same(List<ServiceInstance> previous, List<ServiceInstance> instances) {
+		if (previous.size() != instances.size()) {
+			return false;
+		}
+		for (int i = 0; i < instances.size(); i++) {
+			if (previous.get(i) != instances.get(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private double weight(Long since) {
+		if (since == null || since == WARM) {
+			return 1;
+		}
+		double ramp = (double) (this.nanoClock.getAsLong() - since) / this.windowNanos;
+		if (ramp >= 1) {
+			return 1;
+		}
+		ramp = Math.max(ramp, 0);
+		if (this.mode == Mode.EXPONENTIAL) {
+			return Math.pow(this.minWeight, 1 - ramp);
+		}
+		return this.minWeight + (1 - this.minWeight) * ramp;
+	}
+
+	private static final class Discovered {
+
+		final List<ServiceInstance> instances;
+
+		/** Time each instance was discovered at, by host and port. */
+		final Map<String, Long> since;
+
+		Discovered(List<ServiceInstance> instances, Map<String, Long> since) {
+			this.instances = instances;
+			this.since = since;
+		}
+	}
+}
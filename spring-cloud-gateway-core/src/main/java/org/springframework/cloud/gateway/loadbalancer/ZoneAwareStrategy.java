@@ -0,0 +1,117 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.web.server.ServerWebExchange;
+
+/**
+ * Keeps the traffic in the zone of the gateway, read from the metadata of the
+ * instances. While the share of healthy instances in the local zone is at least the
+ * threshold, the delegate only chooses among local instances. Below it, the traffic
+ * spills over to the other zones in proportion: with half the required healthy local
+ * instances, half the requests go to other zones. Services without local instances are
+ * not affected.
+ */
+public class ZoneAwareStrategy implements LoadBalancerStrategy {
+
+	public static final String DEFAULT_METADATA_KEY = "zone";
+
+	private final LoadBalancerStrategy delegate;
+
+	private final String zone;
+
+	private final String metadataKey;
+
+	private final double healthyThreshold;
+
+	private final Predicate<ServiceInstance> healthy;
+
+	private final ConcurrentMap<String, Zones> zones = new ConcurrentHashMap<>();
+
+	/**
+	 * @param healthyThreshold minimum share of healthy local instances to keep all
+	 * the traffic local
+	 * @param healthy if an instance is healthy
+	 */
+	public ZoneAwareStrategy(LoadBalancerStrategy delegate, String zone, String metadataKey,
+			double healthyThreshold, Predicate<ServiceInstance> healthy) {
+		if (healthyThreshold <= 0 || healthyThreshold > 1) {
+			throw new IllegalArgumentException("healthyThreshold must be in (0, 1], was " + healthyThreshold);
+		}
+		this.delegate = delegate;
+		this.zone = zone;
+		this.metadataKey = metadataKey;
+		this.healthyThreshold = healthyThreshold;
+		this.healthy = healthy;
+	}
+
+	@Override
+	public ServiceInstance choose(String serviceId, List<ServiceInstance> instances, ServerWebExchange exchange) {
+		Zones zones = this.zones.get(serviceId);
+		// the instance cache returns the same list until it is reloaded, the sub-lists
+		// are kept so that the strategies below see the same lists too
+		if (zones == null || zones.instances != instances) {
+			zones = new Zones(instances);
+			this.zones.put(serviceId, zones);
+		}
+		if (zones.local.isEmpty() || zones.remote.isEmpty()) {
+			return this.delegate.choose(serviceId, instances, exchange);
+		}
+
+		int healthyLocal = 0;
+		for (ServiceInstance instance : zones.local) {
+			if (this.healthy.test(instance)) {
+				healthyLocal++;
+			}
+		}
+		double localFraction = healthyLocal / (this.healthyThreshold * zones.local.size());
+		if (localFraction >= 1 || ThreadLocalRandom.current().nextDouble() < localFraction) {
+			return this.delegate.choose(serviceId, zones.local, exchange);
+		}
+		return this.delegate.choose(serviceId, zones.remote, exchange);
+	}
+
+	private boolean isLocal(ServiceInstance instance) {
+		String zone = instance.getMetadata() == null ? null : instance.getMetadata().get(this.metadataKey);
+		return this.zone.equalsIgnoreCase(zone);
+	}
+
+	private final class Zones {
+
+		final List<ServiceInstance> instances;
+
+		final List<ServiceInstance> local = new ArrayList<>();
+
+		final List<ServiceInstance> remote = new ArrayList<>();
+
+		Zones(List<ServiceInstance> instances) {
+			this.instances = instances;
+			for (ServiceInstance instance : instances) {
+				(isLocal(instance) ? this.local : this.remote).add(instance);
+			}
+		}
+	}
+}
@@ -22,6 +22,9 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -71,6 +74,9 @@ public class RouteDefinitionRouteLocator implements RouteLocator, BeanFactoryAwa
 	private final SpelExpressionParser parser = new SpelExpressionParser();
 	private BeanFactory beanFactory;
 	private ApplicationEventPublisher publisher;
+	private final Map<String, ConvertedRoute> convertedRoutes = new ConcurrentHashMap<>();
+	// 每次获取路由递增，只有最新一次获取完成时才移除已删除路由的缓存
+	private final AtomicLong refreshes = new AtomicLong();
 
 	public RouteDefinitionRouteLocator(RouteDefinitionLocator routeDefinitionLocator,
 									   List<RoutePredicateFactory> predicates,
@@ -116,9 +122,20 @@ public class RouteDefinitionRouteLocator implements RouteLocator, BeanFactoryAwa
 
 	@Override
 	public Flux<Route> getRoutes() {
-		return this.routeDefinitionLocator.getRouteDefinitions()
-				// RouteDefinition 转 Route
-				.map(this::convertToRoute)
+		return Flux.defer(() -> {
+			Set<String> ids = ConcurrentHashMap.newKeySet();
+			long refresh = this.refreshes.incrementAndGet();
+			return this.routeDefinitionLocator.getRouteDefinitions()
+					.doOnNext(routeDefinition -> ids.add(routeDefinition.getId()))
+					// RouteDefinition 转 Route，未变化的 RouteDefinition 复用已转换的 Route
+					.map(this::getOrConvertToRoute)
+					// 移除已删除路由的缓存，之后开始的获取可能看到了新增的路由，由它移除
+					.doOnComplete(() -> {
+						if (this.refreshes.get() == refresh) {
+							this.convertedRoutes.keySet().retainAll(ids);
+						}
+					});
+		})
 				//TODO: error handling
 				.map(route -> {
 					if (logger.isDebugEnabled()) {
@@ -134,6 +151,54 @@ public class RouteDefinitionRouteLocator implements RouteLocator, BeanFactoryAwa
 			}*/
 	}
 
+	private Route getOrConvertToRoute(RouteDefinition routeDefinition) {
+		// RouteDefinition is mutable, a copy of its content is compared, with the default filters
+		List<FilterDefinition> defaultFilters = this.gatewayProperties.getDefaultFilters();
+		ConvertedRoute converted = this.convertedRoutes.get(routeDefinition.getId());
+		if (converted != null && sameDefinition(converted.definition, routeDefinition)
+				&& converted.defaultFilters.equals(defaultFilters)) {
+			return converted.route;
+		}
+		Route route = convertToRoute(routeDefinition);
+		this.convertedRoutes.put(routeDefinition.getId(),
+				new ConvertedRoute(copy(routeDefinition), copy(defaultFilters), route));
+		return route;
+	}
+
+	// RouteDefinition#equals ignores the filters, they are compared here
+	private static boolean sameDefinition(RouteDefinition converted, RouteDefinition routeDefinition) {
+		return converted.equals(routeDefinition)
+				&& converted.getFilters().equals(routeDefinition.getFilters());
+	}
+
+	private static RouteDefinition copy(RouteDefinition routeDefinition) {
+		RouteDefinition copy = new RouteDefinition();
+		copy.setId(routeDefinition.getId());
+		copy.setUri(routeDefinition.getUri());
+		copy.setOrder(routeDefinition.getOrder());
+		copy.setPredicates(routeDefinition.getPredicates().stream()
+				.map(predicate -> {
+					PredicateDefinition predicateCopy = new PredicateDefinition();
+					predicateCopy.setName(predicate.getName());
+					predicateCopy.setArgs(new LinkedHashMap<>(predicate.getArgs()));
+					return predicateCopy;
+				})
+				.collect(Collectors.toList()));
+		copy.setFilters(copy(routeDefinition.getFilters()));
+		return copy;
+	}
+
+	private static List<FilterDefinition> copy(List<FilterDefinition> filters) {
+		return filters.stream()
+				.map(filter -> {
+					FilterDefinition filterCopy = new FilterDefinition();
+					filterCopy.setName(filter.getName());
+					filterCopy.setArgs(new LinkedHashMap<>(filter.getArgs()));
+					return filterCopy;
+				})
+				.collect(Collectors.toList());
+	}
+
 	private Route convertToRoute(RouteDefinition routeDefinition) {
 		// 合并 Predicate， 将RouteDefinition.predicates数组合并一个java.util.funcion.Predicate
 		Predicate<ServerWebExchange> predicate = combinePredicates(routeDefinition);
@@ -290,4 +355,19 @@ public class RouteDefinitionRouteLocator implements RouteLocator, BeanFactoryAwa
 			return factory.apply(config);
 		}
 	}
+
+	private static class ConvertedRoute {
+
+		final RouteDefinition definition;
+
+		final List<FilterDefinition> defaultFilters;
+
+		final Route route;
+
+		ConvertedRoute(RouteDefinition definition, List<FilterDefinition> defaultFilters, Route route) {
+			this.definition = definition;
+			this.defaultFilters = defaultFilters;
+			this.route = route;
+		}
+	}
 }
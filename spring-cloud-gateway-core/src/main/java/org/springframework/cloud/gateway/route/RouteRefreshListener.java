@@ -34,12 +34,18 @@ public class RouteRefreshListener
 
 	private HeartbeatMonitor monitor = new HeartbeatMonitor();
 	private final ApplicationEventPublisher publisher;
+	// 为 false 时忽略 HeartbeatEvent ，由 ServiceInstanceCache 重新加载服务后刷新路由
+	private boolean refreshOnHeartbeat = true;
 
 	public RouteRefreshListener(ApplicationEventPublisher publisher) {
 		Assert.notNull(publisher, "publisher may not be null");
 		this.publisher = publisher;
 	}
 
+	public void setRefreshOnHeartbeat(boolean refreshOnHeartbeat) {
+		this.refreshOnHeartbeat = refreshOnHeartbeat;
+	}
+
 	@Override
 	public void onApplicationEvent(ApplicationEvent event) {
 		if (event instanceof InstanceRegisteredEvent) {
@@ -49,7 +55,7 @@ public class RouteRefreshListener
 			ParentHeartbeatEvent e = (ParentHeartbeatEvent) event;
 			resetIfNeeded(e.getValue());
 		}
-		else if (event instanceof HeartbeatEvent) {
+		else if (event instanceof HeartbeatEvent && this.refreshOnHeartbeat) {
 			HeartbeatEvent e = (HeartbeatEvent) event;
 			resetIfNeeded(e.getValue());
 		}
@@ -28,12 +28,17 @@ import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
 import org.springframework.cloud.gateway.filter.factory.AddRequestHeaderGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.AddRequestParameterGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.AddResponseHeaderGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.factory.CircuitBreakerGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.factory.ConcurrencyLimiterGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.factory.ConsistentHashGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.factory.FlushPolicyGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.HystrixGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.PrefixPathGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.PreserveHostHeaderGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.RedirectToGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.RemoveRequestHeaderGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.RemoveResponseHeaderGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.factory.RequestQuotaGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.RequestRateLimiterGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.RetryGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.RewritePathGatewayFilterFactory;
@@ -46,6 +51,7 @@ import org.springframework.cloud.gateway.filter.factory.SetStatusGatewayFilterFa
 import org.springframework.cloud.gateway.filter.factory.StripPrefixGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
 import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.FlushPolicy;
 import org.springframework.core.Ordered;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
@@ -105,6 +111,22 @@ public class GatewayFilterSpec extends UriSpec {
 				.apply(c -> c.setName(headerName).setValue(headerValue)));
 	}
 
+	public GatewayFilterSpec circuitBreaker(Consumer<CircuitBreakerGatewayFilterFactory.Config> configConsumer) {
+		return filter(getBean(CircuitBreakerGatewayFilterFactory.class).apply(configConsumer));
+	}
+
+	public GatewayFilterSpec concurrencyLimiter(Consumer<ConcurrencyLimiterGatewayFilterFactory.Config> configConsumer) {
+		return filter(getBean(ConcurrencyLimiterGatewayFilterFactory.class).apply(configConsumer));
+	}
+
+	public GatewayFilterSpec consistentHash(Consumer<ConsistentHashGatewayFilterFactory.Config> configConsumer) {
+		return filter(getBean(ConsistentHashGatewayFilterFactory.class).apply(configConsumer));
+	}
+
+	public GatewayFilterSpec flushPolicy(Consumer<FlushPolicy> configConsumer) {
+		return filter(getBean(FlushPolicyGatewayFilterFactory.class).apply(configConsumer));
+	}
+
 	public GatewayFilterSpec hystrix(Consumer<HystrixGatewayFilterFactory.Config> configConsumer) {
 		return filter(getBean(HystrixGatewayFilterFactory.class)
 				.apply(configConsumer));
@@ -149,6 +171,10 @@ public class GatewayFilterSpec extends UriSpec {
 				.apply(c -> c.setName(headerName)));
 	}
 
+	public GatewayFilterSpec requestQuota(Consumer<RequestQuotaGatewayFilterFactory.Config> configConsumer) {
+		return filter(getBean(RequestQuotaGatewayFilterFactory.class).apply(configConsumer));
+	}
+
 	public GatewayFilterSpec requestRateLimiter(Consumer<RequestRateLimiterGatewayFilterFactory.Config> configConsumer) {
 		return filter(getBean(RequestRateLimiterGatewayFilterFactory.class).apply(configConsumer));
 	}
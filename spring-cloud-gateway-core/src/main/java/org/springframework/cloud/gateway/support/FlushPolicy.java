@@ -0,0 +1,149 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.support;
+
+import java.time.Duration;
+import java.util.function.ToIntFunction;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Decides how often a proxied body is flushed to the socket. The body is split into
+ * groups and every group is flushed once it completes.
+ */
+public class FlushPolicy {
+
+	public enum Mode {
+		/** Flush every buffer, lowest latency but one write syscall per buffer. */
+		EACH,
+		/** Flush once the unflushed bytes reach the size threshold, and at the end of the body. */
+		SIZE,
+		/** Flush once no buffer arrived for the idle timeout, and at the end of the body. */
+		IDLE,
+		/** Flush at the end of the body only. */
+		END
+	}
+
+	public static final int DEFAULT_SIZE_THRESHOLD = 64 * 1024;
+
+	public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMillis(5);
+
+	@NotNull
+	private Mode mode = Mode.END;
+
+	/** Only for mode SIZE, number of bytes written before a flush. */
+	@Min(1)
+	private int sizeThreshold = DEFAULT_SIZE_THRESHOLD;
+
+	/** Only for mode IDLE, time without new data before a flush. */
+	@NotNull
+	private Duration idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+	public FlushPolicy() {
+	}
+
+	public FlushPolicy(Mode mode) {
+		this.mode = mode;
+	}
+
+	public static FlushPolicy each() {
+		return new FlushPolicy(Mode.EACH);
+	}
+
+	public static FlushPolicy end() {
+		return new FlushPolicy(Mode.END);
+	}
+
+	public static FlushPolicy size(int sizeThreshold) {
+		return new FlushPolicy(Mode.SIZE).setSizeThreshold(sizeThreshold);
+	}
+
+	public static FlushPolicy idle(Duration idleTimeout) {
+		return new FlushPolicy(Mode.IDLE).setIdleTimeout(idleTimeout);
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public FlushPolicy setMode(Mode mode) {
+		this.mode = mode;
+		return this;
+	}
+
+	public int getSizeThreshold() {
+		return sizeThreshold;
+	}
+
+	public FlushPolicy setSizeThreshold(int sizeThreshold) {
+		this.sizeThreshold = sizeThreshold;
+		return this;
+	}
+
+	public Duration getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	public FlushPolicy setIdleTimeout(Duration idleTimeout) {
+		this.idleTimeout = idleTimeout;
+		return this;
+	}
+
+	/**
+	 * Splits the body into groups, each of which should be flushed when it completes.
+	 * @param body the body to write
+	 * @param sizeOf the size in bytes of a body element
+	 */
+	public <T> Flux<Flux<T>> group(Flux<T> body, ToIntFunction<? super T> sizeOf) {
+		switch (this.mode) {
+		case EACH:
+			return body.map(Flux::just);
+		case SIZE:
+			return Flux.defer(() -> {
+				// windowUntil invokes the predicate serially, per subscription
+				int[] pending = new int[1];
+				return body.windowUntil(item -> {
+					pending[0] += sizeOf.applyAsInt(item);
+					if (pending[0] >= this.sizeThreshold) {
+						pending[0] = 0;
+						return true;
+					}
+					return false;
+				});
+			});
+		case IDLE:
+			return body.publish(shared -> shared.window(
+					shared.sampleTimeout(item -> Mono.delay(this.idleTimeout))));
+		default:
+			return Flux.just(body);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "FlushPolicy{" +
+				"mode=" + mode +
+				", sizeThreshold=" + sizeThreshold +
+				", idleTimeout=" + idleTimeout +
+				'}';
+	}
+}
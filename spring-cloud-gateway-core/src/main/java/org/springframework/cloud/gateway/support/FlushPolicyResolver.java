@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.support;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.http.MediaType;
+import org.springframework.lang.Nullable;
+import org.springframework.web.server.ServerWebExchange;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.FLUSH_POLICY_ATTR;
+
+/**
+ * Picks the {@link FlushPolicy} for a proxied body. A policy set on the route wins,
+ * then the first configured policy compatible with the content type, then
+ * {@link FlushPolicy.Mode#EACH} for streaming media types, then the default.
+ */
+public class FlushPolicyResolver {
+
+	private final List<MediaTypeFlushPolicy> policies;
+	private final List<MediaType> streamingMediaTypes;
+	private final FlushPolicy defaultPolicy;
+
+	public FlushPolicyResolver(List<MediaType> streamingMediaTypes, FlushPolicy defaultPolicy) {
+		this(Collections.emptyList(), streamingMediaTypes, defaultPolicy);
+	}
+
+	public FlushPolicyResolver(List<MediaTypeFlushPolicy> policies, List<MediaType> streamingMediaTypes,
+							   FlushPolicy defaultPolicy) {
+		this.policies = policies;
+		this.streamingMediaTypes = streamingMediaTypes;
+		this.defaultPolicy = defaultPolicy;
+	}
+
+	public FlushPolicy resolve(ServerWebExchange exchange, @Nullable MediaType contentType) {
+		FlushPolicy routePolicy = exchange.getAttribute(FLUSH_POLICY_ATTR);
+		if (routePolicy != null) {
+			return routePolicy;
+		}
+		for (MediaTypeFlushPolicy policy : this.policies) {
+			if (policy.matches(contentType)) {
+				return policy;
+			}
+		}
+		if (isStreamingMediaType(contentType)) {
+			return FlushPolicy.each();
+		}
+		return this.defaultPolicy;
+	}
+
+	//TODO: use framework if possible
+	public boolean isStreamingMediaType(@Nullable MediaType contentType) {
+		return (contentType != null && this.streamingMediaTypes.stream()
+				.anyMatch(contentType::isCompatibleWith));
+	}
+}
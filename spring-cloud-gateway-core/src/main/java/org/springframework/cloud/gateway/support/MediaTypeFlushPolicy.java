@@ -0,0 +1,70 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.support;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.validation.constraints.NotNull;
+
+import org.springframework.http.MediaType;
+
+/**
+ * A {@link FlushPolicy} used for the bodies of the given media types, an entry of
+ * {@code spring.cloud.gateway.flush-policies}.
+ */
+public class MediaTypeFlushPolicy extends FlushPolicy {
+
+	/** Media types this policy is used for. */
+	@NotNull
+	private List<MediaType> mediaTypes = new ArrayList<>();
+
+	public MediaTypeFlushPolicy() {
+	}
+
+	public MediaTypeFlushPolicy(FlushPolicy policy, List<MediaType> mediaTypes) {
+		super(policy.getMode());
+		setSizeThreshold(policy.getSizeThreshold());
+		setIdleTimeout(policy.getIdleTimeout());
+		this.mediaTypes = mediaTypes;
+	}
+
+	public List<MediaType> getMediaTypes() {
+		return mediaTypes;
+	}
+
+	public MediaTypeFlushPolicy setMediaTypes(List<MediaType> mediaTypes) {
+		this.mediaTypes = mediaTypes;
+		return this;
+	}
+
+	public boolean matches(MediaType contentType) {
+		return contentType != null && this.mediaTypes.stream()
+				.anyMatch(contentType::isCompatibleWith);
+	}
+
+	@Override
+	public String toString() {
+		return "MediaTypeFlushPolicy{" +
+				"mode=" + getMode() +
+				", sizeThreshold=" + getSizeThreshold() +
+				", idleTimeout=" + getIdleTimeout() +
+				", mediaTypes=" + mediaTypes +
+				'}';
+	}
+}
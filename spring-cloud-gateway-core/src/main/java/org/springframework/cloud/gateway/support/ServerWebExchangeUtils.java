@@ -20,7 +20,9 @@ package org.springframework.cloud.gateway.support;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import java.net.URI;
 import java.util.LinkedHashSet;
@@ -43,6 +45,8 @@ public class ServerWebExchangeUtils {
 	public static final String GATEWAY_SCHEME_PREFIX_ATTR = qualify("gatewaySchemePrefix");
 	public static final String GATEWAY_PREDICATE_ROUTE_ATTR = qualify("gatewayPredicateRouteAttr");
 	public static final String WEIGHT_ATTR = qualify("routeWeight");
+	public static final String FLUSH_POLICY_ATTR = qualify("flushPolicy");
+	public static final String HASH_KEY_ATTR = qualify("hashKey");
 
 	/**
 	 * Used when a routing filter has been successfully call. Allows users to write custom
@@ -76,6 +80,26 @@ public class ServerWebExchangeUtils {
 		return encoded;
 	}
 
+	/**
+	 * Points the request of the exchange to a {@code forward:} fallback URI, keeping the
+	 * path and query of the original request.
+	 * @return the exchange to hand to the {@code DispatcherHandler}
+	 */
+	public static ServerWebExchange fallbackExchange(ServerWebExchange exchange, URI fallbackUri) {
+		URI uri = exchange.getRequest().getURI();
+		boolean encoded = containsEncodedParts(uri);
+		URI requestUrl = UriComponentsBuilder.fromUri(uri)
+				.host(null)
+				.port(null)
+				.uri(fallbackUri)
+				.build(encoded)
+				.toUri();
+		exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR, requestUrl);
+
+		ServerHttpRequest request = exchange.getRequest().mutate().uri(requestUrl).build();
+		return exchange.mutate().request(request).build();
+	}
+
 	public static HttpStatus parse(String statusString) {
 		HttpStatus httpStatus;
 
@@ -0,0 +1,43 @@
+-- Permits of the requests of a key in flight: a sorted set holding each permit
+-- leased, scored with the time its lease expires in milliseconds. The permits
+-- of a gateway that stopped without releasing them expire with their lease.
+-- ARGV holds the operation (acquire, renew or release), the maximum number of
+-- permits, now, the lease in milliseconds, the id of the permits and their
+-- number.
+-- Returns if the operation succeeded and the permits left.
+local key = KEYS[1]
+
+local operation = ARGV[1]
+local max = tonumber(ARGV[2])
+local now = tonumber(ARGV[3])
+local lease = tonumber(ARGV[4])
+local id = ARGV[5]
+local count = tonumber(ARGV[6])
+
+redis.call("zremrangebyscore", key, "-inf", now)
+
+local succeeded = 1
+if operation == "release" then
+  for i = 1, count do
+    redis.call("zrem", key, id .. ":" .. i)
+  end
+elseif operation == "renew" then
+  -- a lease that expired is not renewed, its permits may have been taken
+  if redis.call("zscore", key, id .. ":1") then
+    for i = 1, count do
+      redis.call("zadd", key, "xx", now + lease, id .. ":" .. i)
+    end
+    redis.call("pexpire", key, lease)
+  else
+    succeeded = 0
+  end
+elseif redis.call("zcard", key) + count <= max then
+  for i = 1, count do
+    redis.call("zadd", key, now + lease, id .. ":" .. i)
+  end
+  redis.call("pexpire", key, lease)
+else
+  succeeded = 0
+end
+
+return { succeeded, math.max(0, max - redis.call("zcard", key)) }
@@ -0,0 +1,58 @@
+-- Takes the requested tokens from several buckets at once, or from none of them
+-- when one does not hold enough. KEYS holds the hash of each bucket, ARGV the
+-- requested tokens and now in milliseconds, followed by the rate and capacity
+-- of each bucket.
+-- Returns if the request was allowed, the index of the first bucket that
+-- denied it (0 when allowed) and the tokens left in each bucket.
+local requested = tonumber(ARGV[1])
+local now = tonumber(ARGV[2])
+
+local filled = {}
+local denied = 0
+
+for i = 1, #KEYS do
+  local rate = tonumber(ARGV[i * 2 + 1])
+  local capacity = tonumber(ARGV[i * 2 + 2])
+
+  local bucket = redis.call("hmget", KEYS[i], "tokens", "timestamp")
+  local last_tokens = tonumber(bucket[1])
+  local last_refreshed = tonumber(bucket[2])
+  if last_tokens == nil then
+    last_tokens = capacity
+  end
+  if last_refreshed == nil then
+    last_refreshed = 0
+  end
+
+  local delta = math.max(0, now-last_refreshed)
+  filled[i] = math.min(capacity, last_tokens+(delta*rate/1000))
+  if denied == 0 and filled[i] < requested then
+    denied = i
+  end
+end
+
+local results = {}
+if denied == 0 then
+  results[1] = 1
+else
+  results[1] = 0
+end
+results[2] = denied
+
+for i = 1, #KEYS do
+  local rate = tonumber(ARGV[i * 2 + 1])
+  local capacity = tonumber(ARGV[i * 2 + 2])
+  local ttl = math.max(1, math.ceil(capacity/rate*2000))
+
+  local new_tokens = filled[i]
+  if denied == 0 then
+    new_tokens = new_tokens - requested
+  end
+
+  redis.call("hmset", KEYS[i], "tokens", new_tokens, "timestamp", now)
+  redis.call("pexpire", KEYS[i], ttl)
+
+  results[i + 2] = math.floor(new_tokens)
+end
+
+return results
@@ -0,0 +1,38 @@
+-- The generic cell rate algorithm: a single key per bucket holding the
+-- theoretical arrival time of the next request, in milliseconds.
+-- ARGV holds the rate, capacity, now and requested of the bucket, as for
+-- request_rate_limiter_v2.lua.
+-- Returns if the request was allowed, the tokens left and the milliseconds
+-- until the requested tokens are available.
+local key = KEYS[1]
+
+local rate = tonumber(ARGV[1])
+local capacity = tonumber(ARGV[2])
+local now = tonumber(ARGV[3])
+local requested = tonumber(ARGV[4])
+
+-- the time a token takes to refill
+local interval = 1000/rate
+local burst = capacity*interval
+
+local tat = tonumber(redis.call("get", key))
+if tat == nil or tat < now then
+  tat = now
+end
+
+local new_tat = tat + requested*interval
+local allowed = new_tat - now <= burst
+local allowed_num = 0
+local tokens
+local retry_after = 0
+if allowed then
+  allowed_num = 1
+  -- formatted, a Lua number would be sent with 14 significant digits only
+  redis.call("set", key, string.format("%.3f", new_tat), "px", math.max(1, math.ceil(new_tat - now)))
+  tokens = (burst - (new_tat - now))/interval
+else
+  tokens = (burst - (tat - now))/interval
+  retry_after = math.ceil(new_tat - now - burst)
+end
+
+return { allowed_num, math.floor(tokens + 0.000001), retry_after }
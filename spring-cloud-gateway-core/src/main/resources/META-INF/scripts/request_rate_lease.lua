@@ -0,0 +1,34 @@
+-- Leases up to `requested` tokens of the bucket of request_rate_limiter.lua at once,
+-- after giving back the `returned` tokens of an expired lease.
+local tokens_key = KEYS[1]
+local timestamp_key = KEYS[2]
+
+local rate = tonumber(ARGV[1])
+local capacity = tonumber(ARGV[2])
+local now = tonumber(ARGV[3])
+local requested = tonumber(ARGV[4])
+local returned = tonumber(ARGV[5])
+
+local fill_time = capacity/rate
+local ttl = math.max(1, math.floor(fill_time*2))
+
+local last_tokens = tonumber(redis.call("get", tokens_key))
+if last_tokens == nil then
+  last_tokens = capacity
+end
+
+local last_refreshed = tonumber(redis.call("get", timestamp_key))
+if last_refreshed == nil then
+  last_refreshed = 0
+end
+
+local delta = math.max(0, now-last_refreshed)
+local filled_tokens = math.min(capacity, last_tokens+(delta*rate)+returned)
+-- a lease may be smaller than requested, but never contains part of a token
+local granted = math.max(0, math.min(requested, math.floor(filled_tokens)))
+local new_tokens = filled_tokens - granted
+
+redis.call("setex", tokens_key, ttl, new_tokens)
+redis.call("setex", timestamp_key, ttl, now)
+
+return { granted, math.floor(new_tokens) }
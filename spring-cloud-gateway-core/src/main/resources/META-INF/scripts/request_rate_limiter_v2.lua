@@ -0,0 +1,69 @@
+-- Version 2 of request_rate_limiter.lua: a single hash per bucket holding the
+-- tokens and the time of the last refill in milliseconds.
+-- Several buckets can be given in a single call. KEYS holds the hash of each
+-- bucket, followed by its version 1 tokens and timestamp keys when these are
+-- migrated, ARGV the rate, capacity, now and requested of each bucket.
+-- Returns, for each bucket, if the request was allowed, the tokens left and the
+-- milliseconds until the requested tokens are available.
+local calls = #ARGV / 4
+local stride = #KEYS / calls
+local results = {}
+
+for i = 1, calls do
+  local key = KEYS[(i - 1) * stride + 1]
+
+  local rate = tonumber(ARGV[i * 4 - 3])
+  local capacity = tonumber(ARGV[i * 4 - 2])
+  local now = tonumber(ARGV[i * 4 - 1])
+  local requested = tonumber(ARGV[i * 4])
+
+  local fill_time = capacity/rate*1000
+  local ttl = math.max(1, math.ceil(fill_time*2))
+
+  local bucket = redis.call("hmget", key, "tokens", "timestamp")
+  local last_tokens = tonumber(bucket[1])
+  local last_refreshed = tonumber(bucket[2])
+
+  if last_tokens == nil and stride == 3 then
+    -- carry the version 1 bucket over, its timestamp is in seconds
+    local tokens_key = KEYS[(i - 1) * stride + 2]
+    local timestamp_key = KEYS[(i - 1) * stride + 3]
+    last_tokens = tonumber(redis.call("get", tokens_key))
+    local legacy_refreshed = tonumber(redis.call("get", timestamp_key))
+    if legacy_refreshed ~= nil then
+      last_refreshed = legacy_refreshed*1000
+    end
+    redis.call("del", tokens_key, timestamp_key)
+  end
+
+  if last_tokens == nil then
+    last_tokens = capacity
+  end
+  if last_refreshed == nil then
+    last_refreshed = 0
+  end
+
+  local delta = math.max(0, now-last_refreshed)
+  local filled_tokens = math.min(capacity, last_tokens+(delta*rate/1000))
+  local allowed = filled_tokens >= requested
+  local new_tokens = filled_tokens
+  local allowed_num = 0
+  if allowed then
+    new_tokens = filled_tokens - requested
+    allowed_num = 1
+  end
+
+  redis.call("hmset", key, "tokens", new_tokens, "timestamp", now)
+  redis.call("pexpire", key, ttl)
+
+  local retry_after = 0
+  if not allowed then
+    retry_after = math.ceil((requested-new_tokens)/rate*1000)
+  end
+
+  results[i * 3 - 2] = allowed_num
+  results[i * 3 - 1] = math.floor(new_tokens)
+  results[i * 3] = retry_after
+end
+
+return results
@@ -0,0 +1,39 @@
+-- A sliding window log: a sorted set per bucket holding the times of the
+-- requests allowed in the last window, so that no more than capacity requests
+-- are allowed in any window of capacity/rate seconds.
+-- ARGV holds the rate, capacity, now and requested of the bucket, as for
+-- request_rate_limiter_v2.lua.
+-- Returns if the request was allowed, the requests left and the milliseconds
+-- until the requested ones are allowed.
+local key = KEYS[1]
+
+local rate = tonumber(ARGV[1])
+local capacity = tonumber(ARGV[2])
+local now = tonumber(ARGV[3])
+local requested = tonumber(ARGV[4])
+
+local window = math.max(1, math.floor(capacity/rate*1000))
+
+redis.call("zremrangebyscore", key, "-inf", now - window)
+local count = redis.call("zcard", key)
+
+local allowed_num = 0
+local left = capacity - count
+local retry_after = 0
+if count + requested <= capacity then
+  allowed_num = 1
+  left = left - requested
+  for i = 1, requested do
+    -- the count only grows for a given time, which keeps the members unique
+    redis.call("zadd", key, now, now .. ":" .. (count + i))
+  end
+  redis.call("pexpire", key, window)
+elseif requested > capacity then
+  retry_after = -1
+else
+  -- wait for the oldest requests to leave the window
+  local oldest = redis.call("zrange", key, count + requested - capacity - 1, count + requested - capacity - 1, "withscores")
+  retry_after = tonumber(oldest[2]) + window - now
+end
+
+return { allowed_num, math.max(0, left), retry_after }
@@ -17,6 +17,11 @@
 
 package org.springframework.cloud.gateway.config;
 
+import java.util.Map;
+import java.util.function.Consumer;
+
+import io.netty.channel.ChannelOption;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.handler.ssl.SslContext;
 import org.junit.Test;
 import reactor.ipc.netty.http.client.HttpClient;
@@ -24,8 +29,10 @@ import reactor.ipc.netty.http.client.HttpClient;
 import org.springframework.boot.autoconfigure.AutoConfigurations;
 import org.springframework.boot.autoconfigure.web.reactive.WebFluxAutoConfiguration;
 import org.springframework.boot.test.context.runner.ReactiveWebApplicationContextRunner;
+import reactor.ipc.netty.http.HttpResources;
 import reactor.ipc.netty.http.client.HttpClientOptions;
 import reactor.ipc.netty.options.ClientProxyOptions;
+import reactor.ipc.netty.resources.LoopResources;
 import reactor.ipc.netty.resources.PoolResources;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -81,4 +88,49 @@ public class GatewayAutoConfigurationTests {
 					//TODO: howto test SslContext
 				});
 	}
+
+	@Test
+	public void nettyHttpClientTransportConfigured() {
+		new ReactiveWebApplicationContextRunner()
+				.withConfiguration(AutoConfigurations.of(WebFluxAutoConfiguration.class,
+						GatewayAutoConfiguration.class))
+				.withPropertyValues("spring.cloud.gateway.httpclient.loop.threads=2",
+						"spring.cloud.gateway.httpclient.loop.prefer-native=false",
+						"spring.cloud.gateway.httpclient.socket.tcp-no-delay=true",
+						"spring.cloud.gateway.httpclient.socket.keep-alive=true",
+						"spring.cloud.gateway.httpclient.socket.write-buffer-low-water-mark=16384",
+						"spring.cloud.gateway.httpclient.socket.write-buffer-high-water-mark=65536")
+				.run(context -> {
+					assertThat(context).hasSingleBean(LoopResources.class);
+					HttpClientOptions options = context.getBean(HttpClient.class).options();
+
+					assertThat(options.getLoopResources()).isSameAs(context.getBean(LoopResources.class));
+					assertThat(options.preferNative()).isFalse();
+
+					// a fresh builder, as the options of the client bean have been materialized already
+					HttpClientOptions.Builder builder = HttpClientOptions.builder();
+					context.getBean("nettyClientOptions", Consumer.class).accept(builder);
+					Map<ChannelOption<?>, Object> channelOptions = builder.build().get().config().options();
+					assertThat(channelOptions).containsEntry(ChannelOption.TCP_NODELAY, true)
+							.containsEntry(ChannelOption.SO_KEEPALIVE, true)
+							.containsKey(ChannelOption.WRITE_BUFFER_WATER_MARK);
+					WriteBufferWaterMark waterMark = (WriteBufferWaterMark) channelOptions
+							.get(ChannelOption.WRITE_BUFFER_WATER_MARK);
+					assertThat(waterMark.low()).isEqualTo(16384);
+					assertThat(waterMark.high()).isEqualTo(65536);
+				});
+	}
+
+	@Test
+	public void nettyHttpClientUsesGlobalLoopsByDefault() {
+		new ReactiveWebApplicationContextRunner()
+				.withConfiguration(AutoConfigurations.of(WebFluxAutoConfiguration.class,
+						GatewayAutoConfiguration.class))
+				.run(context -> {
+					assertThat(context).doesNotHaveBean(LoopResources.class);
+					HttpClientOptions options = context.getBean(HttpClient.class).options();
+					assertThat(options.getLoopResources()).isSameAs(HttpResources.get());
+					assertThat(options.preferNative()).isTrue();
+				});
+	}
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.config;
+
+import org.junit.Test;
+
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ReactiveWebApplicationContextRunner;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
+import org.springframework.cloud.gateway.filter.LoadBalancerClientFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.cloud.gateway.loadbalancer.DiscoveryClientReactiveLoadBalancer;
+import org.springframework.cloud.gateway.loadbalancer.LoadBalancerMetrics;
+import org.springframework.cloud.gateway.loadbalancer.OutlierDetector;
+import org.springframework.cloud.gateway.loadbalancer.PeakEwmaStrategy;
+import org.springframework.cloud.gateway.loadbalancer.PowerOfTwoChoicesStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class GatewayReactiveLoadBalancerAutoConfigurationTests {
+
+	private final ReactiveWebApplicationContextRunner contextRunner = new ReactiveWebApplicationContextRunner()
+			.withConfiguration(AutoConfigurations.of(GatewayReactiveLoadBalancerAutoConfiguration.class,
+					GatewayLoadBalancerClientAutoConfiguration.class))
+			.withUserConfiguration(TestConfig.class);
+
+	@Test
+	public void reactiveLoadBalancerReplacesRibbonFilter() {
+		contextRunner.run(context -> {
+			assertThat(context).hasSingleBean(ReactiveLoadBalancerClientFilter.class)
+					.doesNotHaveBean(LoadBalancerClientFilter.class)
+					.getBean(LoadBalancerProperties.class).isNotNull();
+			assertThat(context).getBean("reactiveLoadBalancer")
+					.isInstanceOf(DiscoveryClientReactiveLoadBalancer.class);
+			assertThat(context).getBean("loadBalancerStrategy")
+					.isInstanceOf(PowerOfTwoChoicesStrategy.class);
+		});
+	}
+
+	@Test
+	public void outlierDetection() {
+		contextRunner.run(context -> assertThat(context).hasSingleBean(OutlierDetector.class)
+				.hasSingleBean(LoadBalancerMetrics.class));
+		contextRunner.withPropertyValues("spring.cloud.gateway.loadbalancer.outlier-detection.enabled=false")
+				.run(context -> assertThat(context).doesNotHaveBean(OutlierDetector.class));
+	}
+
+	@Test
+	public void peakEwmaStrategy() {
+		contextRunner.withPropertyValues("spring.cloud.gateway.loadbalancer.strategy=peak_ewma")
+				.run(context -> assertThat(context).getBean("loadBalancerStrategy")
+						.isInstanceOf(PeakEwmaStrategy.class));
+	}
+
+	@Test
+	public void ribbonFilterWhenReactiveLoadBalancerDisabled() {
+		contextRunner.withPropertyValues("spring.cloud.gateway.loadbalancer.enabled=false")
+				.run(context -> assertThat(context).hasSingleBean(LoadBalancerClientFilter.class)
+						.doesNotHaveBean(ReactiveLoadBalancerClientFilter.class));
+	}
+
+	@Configuration
+	protected static class TestConfig {
+
+		@Bean
+		public DiscoveryClient discoveryClient() {
+			return mock(DiscoveryClient.class);
+		}
+
+		@Bean
+		public LoadBalancerClient loadBalancerClient() {
+			return mock(LoadBalancerClient.class);
+		}
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.discovery;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DiscoveryClientRouteDefinitionLocatorTests {
+
+	@Test
+	public void onlyAddedServicesGetNewDefinitions() {
+		DiscoveryClient discoveryClient = mock(DiscoveryClient.class);
+		when(discoveryClient.getServices()).thenReturn(Arrays.asList("service1", "service2"),
+				Arrays.asList("service2", "service3"));
+		DiscoveryClientRouteDefinitionLocator locator = new DiscoveryClientRouteDefinitionLocator(discoveryClient);
+		String prefix = discoveryClient.getClass().getSimpleName() + "_";
+
+		Map<String, RouteDefinition> before = locator.getRouteDefinitions().collectMap(RouteDefinition::getId).block();
+		Map<String, RouteDefinition> after = locator.getRouteDefinitions().collectMap(RouteDefinition::getId).block();
+
+		assertThat(after).containsOnlyKeys(prefix + "service2", prefix + "service3");
+		assertThat(after.get(prefix + "service2")).isSameAs(before.get(prefix + "service2"));
+		assertThat(after.get(prefix + "service3").getUri().toString()).isEqualTo("lb://service3");
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.support.FlushPolicy;
+import org.springframework.cloud.gateway.support.FlushPolicyResolver;
+import org.springframework.cloud.gateway.support.MediaTypeFlushPolicy;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.server.reactive.AbstractServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.adapter.DefaultServerWebExchange;
+import org.springframework.web.server.i18n.AcceptHeaderLocaleContextResolver;
+import org.springframework.web.server.session.DefaultWebSessionManager;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.ipc.netty.ByteBufFlux;
+import reactor.ipc.netty.http.client.HttpClientResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.CLIENT_RESPONSE_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.FLUSH_POLICY_ATTR;
+
+public class NettyWriteResponseFilterTests {
+
+	private final List<MediaType> streamingMediaTypes = Collections.singletonList(MediaType.TEXT_EVENT_STREAM);
+
+	private final NettyWriteResponseFilter filter = new NettyWriteResponseFilter(new FlushPolicyResolver(
+			Collections.singletonList(new MediaTypeFlushPolicy(FlushPolicy.size(4),
+					Collections.singletonList(MediaType.APPLICATION_OCTET_STREAM))),
+			streamingMediaTypes, FlushPolicy.end()));
+
+	@Test
+	public void bodyIsFlushedAtItsEndByDefault() {
+		assertThat(write(MediaType.APPLICATION_JSON, null)).containsExactly("abcdef");
+	}
+
+	@Test
+	public void streamingBodyIsFlushedOnEachBuffer() {
+		assertThat(write(MediaType.TEXT_EVENT_STREAM, null)).containsExactly("ab", "cd", "ef");
+	}
+
+	@Test
+	public void configuredPolicyFlushesOnSize() {
+		assertThat(write(MediaType.APPLICATION_OCTET_STREAM, null)).containsExactly("abcd", "ef");
+	}
+
+	@Test
+	public void routePolicyWins() {
+		assertThat(write(MediaType.TEXT_EVENT_STREAM, FlushPolicy.end())).containsExactly("abcdef");
+	}
+
+	/**
+	 * @return the bytes written between flushes
+	 */
+	private List<String> write(MediaType contentType, FlushPolicy routePolicy) {
+		RecordingResponse response = new RecordingResponse();
+		response.getHeaders().setContentType(contentType);
+		ServerWebExchange exchange = new DefaultServerWebExchange(MockServerHttpRequest.get("/").build(),
+				response, new DefaultWebSessionManager(), ServerCodecConfigurer.create(),
+				new AcceptHeaderLocaleContextResolver());
+		HttpClientResponse clientResponse = mock(HttpClientResponse.class);
+		when(clientResponse.receive()).thenReturn(ByteBufFlux.fromInbound(Flux.just("ab", "cd", "ef")
+				.map(chunk -> Unpooled.copiedBuffer(chunk, StandardCharsets.UTF_8))));
+		exchange.getAttributes().put(CLIENT_RESPONSE_ATTR, clientResponse);
+		if (routePolicy != null) {
+			exchange.getAttributes().put(FLUSH_POLICY_ATTR, routePolicy);
+		}
+
+		filter.filter(exchange, e -> Mono.empty()).block();
+
+		return response.flushed;
+	}
+
+	private static class RecordingResponse extends AbstractServerHttpResponse {
+
+		private final List<String> flushed = new ArrayList<>();
+
+		RecordingResponse() {
+			super(new NettyDataBufferFactory(UnpooledByteBufAllocator.DEFAULT));
+		}
+
+		@Override
+		public <T> T getNativeResponse() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		protected Mono<Void> writeWithInternal(Publisher<? extends DataBuffer> body) {
+			return writeAndFlushWithInternal(Mono.just(body));
+		}
+
+		@Override
+		protected Mono<Void> writeAndFlushWithInternal(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+			return Flux.from(body)
+					.concatMap(group -> Flux.from(group)
+							.map(this::read)
+							.reduce(String::concat))
+					.doOnNext(this.flushed::add)
+					.then();
+		}
+
+		private String read(DataBuffer buffer) {
+			ByteBuf byteBuf = NettyDataBufferFactory.toByteBuf(buffer);
+			String chunk = byteBuf.toString(StandardCharsets.UTF_8);
+			DataBufferUtils.release(buffer);
+			return chunk;
+		}
+
+		@Override
+		protected void applyStatusCode() {
+		}
+
+		@Override
+		protected void applyHeaders() {
+		}
+
+		@Override
+		protected void applyCookies() {
+		}
+	}
+}
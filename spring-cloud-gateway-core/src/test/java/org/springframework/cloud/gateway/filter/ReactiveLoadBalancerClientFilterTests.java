@@ -0,0 +1,140 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.LinkedHashSet;
+
+import org.junit.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.gateway.loadbalancer.LoadBalancerStats;
+import org.springframework.cloud.gateway.loadbalancer.OutlierDetector;
+import org.springframework.cloud.gateway.support.NotFoundException;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ORIGINAL_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_SCHEME_PREFIX_ATTR;
+
+public class ReactiveLoadBalancerClientFilterTests {
+
+	private final ServiceInstance instance = new DefaultServiceInstance("service1", "service1-host1", 8081, false);
+
+	private final LoadBalancerStats stats = new LoadBalancerStats();
+
+	@Test
+	public void shouldNotFilterWhenSchemeIsNotLb() {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("http://localhost/get").build());
+		URI url = URI.create("http://service1");
+		exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR, url);
+
+		ReactiveLoadBalancerClientFilter filter = new ReactiveLoadBalancerClientFilter(
+				(serviceId, e) -> Mono.error(new AssertionError("should not choose")), stats);
+		StepVerifier.create(filter.filter(exchange, e -> Mono.empty())).verifyComplete();
+
+		assertThat((URI) exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR)).isEqualTo(url);
+	}
+
+	@Test
+	public void shouldReconstructUrlAndTrackOutstandingRequests() {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.method(HttpMethod.GET, URI.create("http://localhost/get?a=b&c=d[]")).build());
+		URI url = URI.create("lb://service1?a=b&c=d[]");
+		exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR, url);
+
+		ReactiveLoadBalancerClientFilter filter = new ReactiveLoadBalancerClientFilter(
+				(serviceId, e) -> Mono.just(instance), stats);
+		StepVerifier.create(filter.filter(exchange, e -> {
+			assertThat(stats.getStats(instance).getOutstanding()).isEqualTo(1);
+			return Mono.empty();
+		})).verifyComplete();
+
+		URI requestUrl = exchange.getRequiredAttribute(GATEWAY_REQUEST_URL_ATTR);
+		assertThat(requestUrl).hasScheme("http").hasHost("service1-host1").hasPort(8081)
+				.hasPath("/get");
+		assertThat(requestUrl.getRawQuery()).isEqualTo("a=b&c=d[]");
+		assertThat((LinkedHashSet<URI>) exchange.getAttribute(GATEWAY_ORIGINAL_REQUEST_URL_ATTR)).contains(url);
+		assertThat(stats.getStats(instance).getOutstanding()).isEqualTo(0);
+	}
+
+	@Test
+	public void shouldRecordLatencyOfInstance() {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("http://localhost/get").build());
+		exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR, URI.create("lb://service1"));
+
+		ReactiveLoadBalancerClientFilter filter = new ReactiveLoadBalancerClientFilter(
+				(serviceId, e) -> Mono.just(instance), stats);
+		StepVerifier.create(filter.filter(exchange, e -> Mono.delay(Duration.ofMillis(50)).then()))
+				.verifyComplete();
+
+		assertThat(stats.getStats(instance).getPeakEwmaMillis()).isGreaterThanOrEqualTo(40);
+	}
+
+	@Test
+	public void shouldRecordServerErrorsAsFailures() {
+		OutlierDetector detector = new OutlierDetector(new OutlierDetector.Config());
+		ReactiveLoadBalancerClientFilter filter = new ReactiveLoadBalancerClientFilter(
+				(serviceId, e) -> Mono.just(instance), stats, detector);
+
+		for (int i = 0; i < 5; i++) {
+			MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("http://localhost/get").build());
+			exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR, URI.create("lb://service1"));
+			StepVerifier.create(filter.filter(exchange, e -> {
+				e.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+				return Mono.empty();
+			})).verifyComplete();
+		}
+
+		assertThat(detector.isEjected(instance)).isTrue();
+	}
+
+	@Test
+	public void shouldUseSchemePrefixAndSecureInstance() {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("ws://localhost/get").build());
+		exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR, URI.create("ws://service1"));
+		exchange.getAttributes().put(GATEWAY_SCHEME_PREFIX_ATTR, "lb");
+		ServiceInstance secure = new DefaultServiceInstance("service1", "service1-host1", 8443, true);
+
+		ReactiveLoadBalancerClientFilter filter = new ReactiveLoadBalancerClientFilter(
+				(serviceId, e) -> Mono.just(secure), stats);
+		StepVerifier.create(filter.filter(exchange, e -> Mono.empty())).verifyComplete();
+
+		URI requestUrl = exchange.getRequiredAttribute(GATEWAY_REQUEST_URL_ATTR);
+		assertThat(requestUrl).hasScheme("wss").hasHost("service1-host1").hasPort(8443);
+	}
+
+	@Test
+	public void shouldErrorWhenNoServiceInstanceIsFound() {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("http://localhost/get").build());
+		exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR, URI.create("lb://service1"));
+
+		ReactiveLoadBalancerClientFilter filter = new ReactiveLoadBalancerClientFilter(
+				(serviceId, e) -> Mono.empty(), stats);
+		StepVerifier.create(filter.filter(exchange, e -> Mono.empty()))
+				.expectError(NotFoundException.class)
+				.verify();
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.circuitbreaker;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.springframework.cloud.gateway.filter.circuitbreaker.CircuitBreaker.Permit;
+import org.springframework.cloud.gateway.filter.circuitbreaker.CircuitBreaker.State;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CircuitBreakerTests {
+
+	private final AtomicLong clock = new AtomicLong();
+
+	private final CircuitBreaker circuitBreaker = new CircuitBreaker("test", 50, 100, Duration.ofSeconds(1),
+			Duration.ofSeconds(10), 4, Duration.ofSeconds(5), 2, clock::get);
+
+	@Test
+	public void staysClosedBelowMinimumCalls() {
+		fail(3);
+
+		assertThat(circuitBreaker.getState()).isEqualTo(State.CLOSED);
+	}
+
+	@Test
+	public void opensAtFailureRate() {
+		succeed(2);
+		fail(1);
+		assertThat(circuitBreaker.getState()).isEqualTo(State.CLOSED);
+
+		fail(1);
+
+		assertThat(circuitBreaker.getState()).isEqualTo(State.OPEN);
+		assertThat(circuitBreaker.tryAcquire()).isNull();
+	}
+
+	@Test
+	public void oldCallsLeaveTheWindow() {
+		fail(3);
+		clock.addAndGet(Duration.ofSeconds(11).toNanos());
+
+		succeed(1);
+		fail(1);
+
+		assertThat(circuitBreaker.getState()).isEqualTo(State.CLOSED);
+	}
+
+	@Test
+	public void opensAtSlowCallRate() {
+		CircuitBreaker slowCalls = new CircuitBreaker("slow", 50, 50, Duration.ofSeconds(1),
+				Duration.ofSeconds(10), 2, Duration.ofSeconds(5), 2, clock::get);
+		Permit fast = slowCalls.tryAcquire();
+		slowCalls.onSuccess(fast);
+		Permit slow = slowCalls.tryAcquire();
+		clock.addAndGet(Duration.ofSeconds(2).toNanos());
+
+		slowCalls.onSuccess(slow);
+
+		assertThat(slowCalls.getState()).isEqualTo(State.OPEN);
+	}
+
+	@Test
+	public void halfOpenClosesAfterSuccessfulProbes() {
+		fail(4);
+		clock.addAndGet(Duration.ofSeconds(5).toNanos());
+
+		Permit probe1 = circuitBreaker.tryAcquire();
+		Permit probe2 = circuitBreaker.tryAcquire();
+		assertThat(circuitBreaker.getState()).isEqualTo(State.HALF_OPEN);
+		// only the permitted number of probes
+		assertThat(circuitBreaker.tryAcquire()).isNull();
+		circuitBreaker.onSuccess(probe1);
+		circuitBreaker.onSuccess(probe2);
+
+		assertThat(circuitBreaker.getState()).isEqualTo(State.CLOSED);
+	}
+
+	@Test
+	public void halfOpenOpensAgainAfterFailedProbes() {
+		fail(4);
+		clock.addAndGet(Duration.ofSeconds(5).toNanos());
+
+		Permit probe1 = circuitBreaker.tryAcquire();
+		Permit probe2 = circuitBreaker.tryAcquire();
+		circuitBreaker.onSuccess(probe1);
+		circuitBreaker.onFailure(probe2);
+
+		assertThat(circuitBreaker.getState()).isEqualTo(State.OPEN);
+	}
+
+	@Test
+	public void cancelledProbeReleasesItsPermit() {
+		fail(4);
+		clock.addAndGet(Duration.ofSeconds(5).toNanos());
+		Permit probe1 = circuitBreaker.tryAcquire();
+		Permit probe2 = circuitBreaker.tryAcquire();
+
+		circuitBreaker.release(probe2);
+
+		assertThat(circuitBreaker.tryAcquire()).isNotNull();
+		circuitBreaker.onSuccess(probe1);
+	}
+
+	@Test
+	public void callsFromAnotherStateAreIgnored() {
+		Permit beforeOpening = circuitBreaker.tryAcquire();
+		fail(4);
+		clock.addAndGet(Duration.ofSeconds(5).toNanos());
+		Permit probe = circuitBreaker.tryAcquire();
+
+		circuitBreaker.onFailure(beforeOpening);
+		circuitBreaker.onSuccess(probe);
+		circuitBreaker.onSuccess(circuitBreaker.tryAcquire());
+
+		assertThat(circuitBreaker.getState()).isEqualTo(State.CLOSED);
+	}
+
+	private void succeed(int calls) {
+		for (int i = 0; i < calls; i++) {
+			circuitBreaker.onSuccess(circuitBreaker.tryAcquire());
+		}
+	}
+
+	private void fail(int calls) {
+		for (int i = 0; i < calls; i++) {
+			circuitBreaker.onFailure(circuitBreaker.tryAcquire());
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.concurrency;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdaptiveLimitTests {
+
+	private static final long MS = 1_000_000;
+
+	@Test
+	public void gradientGrowsWhileLatencyIsStable() {
+		GradientLimit limit = new GradientLimit(10, 1, 100, 1.5);
+
+		sample(limit, 200, 10 * MS);
+
+		assertThat(limit.getLimit()).isEqualTo(100);
+	}
+
+	@Test
+	public void gradientShrinksWhenLatencyRises() {
+		GradientLimit limit = new GradientLimit(50, 1, 100, 1.5);
+		sample(limit, 100, 10 * MS);
+		int before = limit.getLimit();
+
+		sample(limit, 20, 40 * MS);
+
+		assertThat(limit.getLimit()).isLessThan(before / 2);
+	}
+
+	@Test
+	public void gradientShrinksOnDrops() {
+		GradientLimit limit = new GradientLimit(50, 10, 100, 1.5);
+
+		for (int i = 0; i < 50; i++) {
+			limit.onSample(10 * MS, limit.getLimit(), true);
+		}
+
+		assertThat(limit.getLimit()).isEqualTo(10);
+	}
+
+	@Test
+	public void gradientIgnoresUnusedLimit() {
+		GradientLimit limit = new GradientLimit(50, 1, 100, 1.5);
+
+		for (int i = 0; i < 100; i++) {
+			limit.onSample(10 * MS, 5, false);
+		}
+
+		assertThat(limit.getLimit()).isEqualTo(50);
+	}
+
+	@Test
+	public void vegasGrowsWithoutQueueing() {
+		VegasLimit limit = new VegasLimit(10, 1, 100);
+
+		sample(limit, 100, 10 * MS);
+
+		assertThat(limit.getLimit()).isEqualTo(100);
+	}
+
+	@Test
+	public void vegasShrinksWhenCallsQueue() {
+		VegasLimit limit = new VegasLimit(50, 1, 100);
+		limit.onSample(10 * MS, 50, false);
+		int before = limit.getLimit();
+
+		// half of the round trip time is spent queueing
+		for (int i = 0; i < 10; i++) {
+			limit.onSample(20 * MS, limit.getLimit(), false);
+		}
+
+		assertThat(limit.getLimit()).isLessThan(before);
+	}
+
+	@Test
+	public void vegasShrinksOnDrops() {
+		VegasLimit limit = new VegasLimit(20, 5, 100);
+
+		for (int i = 0; i < 20; i++) {
+			limit.onSample(10 * MS, limit.getLimit(), true);
+		}
+
+		assertThat(limit.getLimit()).isEqualTo(5);
+	}
+
+	private static void sample(AdaptiveLimit limit, int times, long rtt) {
+		for (int i = 0; i < times; i++) {
+			limit.onSample(rtt, limit.getLimit(), false);
+		}
+	}
+}
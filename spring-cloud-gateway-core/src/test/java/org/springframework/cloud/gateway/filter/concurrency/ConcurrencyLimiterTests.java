@@ -0,0 +1,180 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.concurrency;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.cloud.gateway.filter.concurrency.ConcurrencyLimiter.Permit;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.MonoProcessor;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConcurrencyLimiterTests {
+
+	private final AtomicLong clock = new AtomicLong();
+
+	private final VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+
+	private final FixedLimit limit = new FixedLimit(2);
+
+	private final ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", limit, 1, Duration.ofMillis(100),
+			scheduler, clock::get);
+
+	@After
+	public void shutdown() {
+		scheduler.dispose();
+	}
+
+	@Test
+	public void rejectsOverTheLimitWithoutQueue() {
+		ConcurrencyLimiter unqueued = new ConcurrencyLimiter("test", limit, 0, Duration.ofMillis(100),
+				scheduler, clock::get);
+
+		assertThat(unqueued.acquire().block()).isNotNull();
+		assertThat(unqueued.acquire().block()).isNotNull();
+		assertThat(unqueued.acquire().block()).isNull();
+		assertThat(unqueued.getInFlight()).isEqualTo(2);
+	}
+
+	@Test
+	public void waiterGetsReleasedPermit() {
+		Permit first = limiter.tryAcquire();
+		limiter.tryAcquire();
+		MonoProcessor<Permit> waiting = limiter.acquire().toProcessor();
+		assertThat(waiting.isTerminated()).isFalse();
+		assertThat(limiter.getQueued()).isEqualTo(1);
+
+		limiter.release(first);
+
+		assertThat(waiting.peek()).isNotNull();
+		assertThat(limiter.getQueued()).isZero();
+		assertThat(limiter.getInFlight()).isEqualTo(2);
+	}
+
+	@Test
+	public void waiterIsRejectedAfterMaxWait() {
+		limiter.tryAcquire();
+		limiter.tryAcquire();
+		MonoProcessor<Permit> waiting = limiter.acquire().toProcessor();
+
+		scheduler.advanceTimeBy(Duration.ofMillis(100));
+
+		assertThat(waiting.isSuccess()).isTrue();
+		assertThat(waiting.peek()).isNull();
+		assertThat(limiter.getQueued()).isZero();
+	}
+
+	@Test
+	public void rejectsWhenQueueIsFull() {
+		limiter.tryAcquire();
+		limiter.tryAcquire();
+		limiter.acquire().subscribe();
+
+		MonoProcessor<Permit> rejected = limiter.acquire().toProcessor();
+
+		assertThat(rejected.isSuccess()).isTrue();
+		assertThat(rejected.peek()).isNull();
+	}
+
+	@Test
+	public void cancelledWaiterLeavesTheQueue() {
+		Permit first = limiter.tryAcquire();
+		limiter.tryAcquire();
+		Disposable waiting = limiter.acquire().subscribe();
+
+		waiting.dispose();
+		limiter.release(first);
+
+		assertThat(limiter.getQueued()).isZero();
+		assertThat(limiter.getInFlight()).isEqualTo(1);
+	}
+
+	@Test
+	public void samplesRoundTripTime() {
+		Permit permit = limiter.tryAcquire();
+		clock.addAndGet(50);
+
+		limiter.onDropped(permit);
+
+		assertThat(limit.rtt).isEqualTo(50);
+		assertThat(limit.inFlight).isEqualTo(1);
+		assertThat(limit.dropped).isTrue();
+		assertThat(limiter.getInFlight()).isZero();
+	}
+
+	@Test
+	public void timeInQueueIsNotPartOfRoundTripTime() {
+		Permit first = limiter.tryAcquire();
+		limiter.tryAcquire();
+		MonoProcessor<Permit> waiting = limiter.acquire().toProcessor();
+		clock.addAndGet(30);
+		limiter.onSuccess(first);
+		clock.addAndGet(20);
+
+		limiter.onSuccess(waiting.peek());
+
+		assertThat(limit.rtt).isEqualTo(20);
+		assertThat(limit.dropped).isFalse();
+	}
+
+	@Test
+	public void waitersAreServedBeforeNewCalls() {
+		Permit first = limiter.tryAcquire();
+		limiter.tryAcquire();
+		MonoProcessor<Permit> waiting = limiter.acquire().toProcessor();
+		limit.limit = 3;
+
+		assertThat(limiter.acquire().block()).isNull();
+		limiter.release(first);
+
+		assertThat(waiting.peek()).isNotNull();
+	}
+
+	private static class FixedLimit implements AdaptiveLimit {
+
+		private volatile int limit;
+
+		private long rtt;
+
+		private int inFlight;
+
+		private boolean dropped;
+
+		FixedLimit(int limit) {
+			this.limit = limit;
+		}
+
+		@Override
+		public int getLimit() {
+			return limit;
+		}
+
+		@Override
+		public void onSample(long rttNanos, int inFlight, boolean dropped) {
+			this.rtt = rttNanos;
+			this.inFlight = inFlight;
+			this.dropped = dropped;
+		}
+	}
+}
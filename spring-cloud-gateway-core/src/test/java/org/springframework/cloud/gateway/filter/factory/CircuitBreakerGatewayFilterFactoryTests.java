@@ -0,0 +1,178 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.factory;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.gateway.filter.circuitbreaker.CircuitBreaker;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.cloud.gateway.route.builder.RouteLocatorBuilder;
+import org.springframework.cloud.gateway.test.BaseWebClientTests;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = RANDOM_PORT)
+@DirtiesContext
+@ActiveProfiles("circuit-breaker")
+public class CircuitBreakerGatewayFilterFactoryTests extends BaseWebClientTests {
+
+	@Autowired
+	private CircuitBreakerGatewayFilterFactory factory;
+
+	@Test
+	public void circuitBreakerFilterWorks() {
+		testClient.get().uri("/get")
+				.header("Host", "www.circuitbreakersuccess.org")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().valueEquals(ROUTE_ID_HEADER, "circuitbreaker_success_test");
+	}
+
+	@Test
+	public void circuitBreakerFilterTimesout() {
+		testClient.get().uri("/delay/3")
+				.header("Host", "www.circuitbreakerfailure.org")
+				.exchange()
+				.expectStatus().isEqualTo(HttpStatus.GATEWAY_TIMEOUT);
+	}
+
+	@Test
+	public void circuitBreakerFilterFallback() {
+		testClient.get().uri("/delay/3?a=b")
+				.header("Host", "www.circuitbreakerfallback.org")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody().json("{\"from\":\"fallbackcontroller\"}");
+	}
+
+	@Test
+	public void openCircuitRejectsCalls() {
+		for (int i = 0; i < 2; i++) {
+			testClient.get().uri("/delay/1")
+					.header("Host", "www.circuitbreakeropen.org")
+					.exchange()
+					.expectStatus().isEqualTo(HttpStatus.GATEWAY_TIMEOUT);
+		}
+		assertThat(factory.getCircuitBreakers().get("opencb").getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+		testClient.get().uri("/get")
+				.header("Host", "www.circuitbreakeropen.org")
+				.exchange()
+				.expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+	}
+
+	@Test
+	public void serverErrorsCountAsFailuresWhenConfigured() {
+		for (int i = 0; i < 2; i++) {
+			testClient.get().uri("/status/500")
+					.header("Host", "www.circuitbreakerstatus.org")
+					.exchange()
+					.expectStatus().isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+		assertThat(factory.getCircuitBreakers().get("statuscb").getState()).isEqualTo(CircuitBreaker.State.OPEN);
+	}
+
+	@Test
+	public void openCircuitUsesFallbackJavaDsl() {
+		for (int i = 0; i < 3; i++) {
+			testClient.get().uri("/delay/1")
+					.header("Host", "www.circuitbreakerjava.org")
+					.exchange()
+					.expectStatus().isOk()
+					.expectBody().json("{\"from\":\"fallbackcontroller2\"}");
+		}
+		assertThat(factory.getCircuitBreakers().get("circuitbreaker_java").getState())
+				.isEqualTo(CircuitBreaker.State.OPEN);
+	}
+
+	@Test
+	public void circuitBreakerIsReplacedOnlyWhenItsConfigChanges() {
+		factory.apply(config -> config.setName("refreshedcb").setMinimumNumberOfCalls(5));
+		CircuitBreaker circuitBreaker = factory.getCircuitBreakers().get("refreshedcb");
+
+		// routes refreshed without changes
+		factory.apply(config -> config.setName("refreshedcb").setMinimumNumberOfCalls(5));
+		assertThat(factory.getCircuitBreakers().get("refreshedcb")).isSameAs(circuitBreaker);
+
+		factory.apply(config -> config.setName("refreshedcb").setMinimumNumberOfCalls(10));
+		assertThat(factory.getCircuitBreakers().get("refreshedcb")).isNotSameAs(circuitBreaker);
+	}
+
+	@EnableAutoConfiguration
+	@SpringBootConfiguration
+	@Import(DefaultTestConfig.class)
+	@RestController
+	public static class TestConfig {
+
+		@Value("${test.uri}")
+		private String uri;
+
+		@RequestMapping("/fallbackcontroller")
+		public Map<String, String> fallbackcontroller(@RequestParam("a") String a) {
+			return Collections.singletonMap("from", "fallbackcontroller");
+		}
+
+		@RequestMapping("/fallbackcontroller2")
+		public Map<String, String> fallbackcontroller2() {
+			return Collections.singletonMap("from", "fallbackcontroller2");
+		}
+
+		@Bean
+		public RouteLocator circuitBreakerRouteLocator(RouteLocatorBuilder builder) {
+			return builder.routes()
+					.route("circuitbreaker_open", r -> r.host("**.circuitbreakeropen.org")
+							.filters(f -> f.prefixPath("/httpbin")
+									.circuitBreaker(config -> config.setName("opencb")
+											.setTimeout(Duration.ofMillis(200)).setMinimumNumberOfCalls(2)))
+							.uri(uri))
+					.route("circuitbreaker_status", r -> r.host("**.circuitbreakerstatus.org")
+							.filters(f -> f.prefixPath("/httpbin")
+									.circuitBreaker(config -> config.setName("statuscb").setMinimumNumberOfCalls(2)
+											.setFailureStatusSeries(Collections.singletonList(HttpStatus.Series.SERVER_ERROR))))
+							.uri(uri))
+					// without a name, the circuit breaker of the route
+					.route("circuitbreaker_java", r -> r.host("**.circuitbreakerjava.org")
+							.filters(f -> f.prefixPath("/httpbin")
+									.circuitBreaker(config -> config.setTimeout(Duration.ofMillis(200))
+											.setMinimumNumberOfCalls(2).setFallbackUri("forward:/fallbackcontroller2")))
+							.uri(uri))
+					.build();
+		}
+	}
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.factory;
+
+import java.time.Duration;
+import java.util.List;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.gateway.filter.concurrency.ConcurrencyLimiter;
+import org.springframework.cloud.gateway.filter.concurrency.ConcurrencyLimiterMetrics;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.cloud.gateway.route.builder.RouteLocatorBuilder;
+import org.springframework.cloud.gateway.test.BaseWebClientTests;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import reactor.core.publisher.Flux;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = RANDOM_PORT)
+@DirtiesContext
+public class ConcurrencyLimiterGatewayFilterFactoryTests extends BaseWebClientTests {
+
+	@Autowired
+	private ConcurrencyLimiterGatewayFilterFactory factory;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Test
+	public void callsWithinLimitPass() {
+		testClient.get().uri("/get")
+				.header("Host", "www.concurrencylimited.org")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().valueEquals(ROUTE_ID_HEADER, "concurrency_limited");
+
+		assertThat(factory.getLimiter("concurrency_limited").getInFlight()).isZero();
+	}
+
+	@Test
+	public void callsOverLimitAreRejected() {
+		List<HttpStatus> statuses = Flux.range(0, 3)
+				.flatMap(i -> webClient.get().uri("/delay/1")
+						.header("Host", "www.concurrencyfixed.org")
+						.exchange())
+				.map(response -> response.statusCode())
+				.collectList()
+				.block(Duration.ofSeconds(10));
+
+		assertThat(statuses).containsOnly(HttpStatus.OK, HttpStatus.SERVICE_UNAVAILABLE);
+		assertThat(statuses).filteredOn(status -> status == HttpStatus.OK).hasSize(1);
+		assertThat(factory.getLimiter("fixed").getInFlight()).isZero();
+		assertThat(meterRegistry.get(ConcurrencyLimiterMetrics.REJECTIONS).tag("name", "fixed").counter().count())
+				.isEqualTo(2);
+		assertThat(meterRegistry.get(ConcurrencyLimiterMetrics.LIMIT).tag("name", "fixed").gauge().value())
+				.isEqualTo(1);
+	}
+
+	@Test
+	public void limiterIsKeptWhenRouteIsRebuiltWithSameSettings() {
+		ConcurrencyLimiterGatewayFilterFactory factory = new ConcurrencyLimiterGatewayFilterFactory();
+		ConcurrencyLimiterGatewayFilterFactory.Config config = new ConcurrencyLimiterGatewayFilterFactory.Config()
+				.setName("shared").setInitialLimit(5);
+
+		factory.apply(config);
+		ConcurrencyLimiter limiter = factory.getLimiter("shared");
+		factory.apply(new ConcurrencyLimiterGatewayFilterFactory.Config().setName("shared").setInitialLimit(5));
+
+		assertThat(factory.getLimiter("shared")).isSameAs(limiter);
+
+		factory.apply(new ConcurrencyLimiterGatewayFilterFactory.Config().setName("shared").setInitialLimit(10));
+
+		assertThat(factory.getLimiter("shared")).isNotSameAs(limiter);
+	}
+
+	@EnableAutoConfiguration
+	@SpringBootConfiguration
+	@Import(DefaultTestConfig.class)
+	public static class TestConfig {
+
+		@Value("${test.uri}")
+		private String uri;
+
+		@Bean
+		public RouteLocator concurrencyLimiterRouteLocator(RouteLocatorBuilder builder) {
+			return builder.routes()
+					.route("concurrency_limited", r -> r.host("**.concurrencylimited.org")
+							.filters(f -> f.prefixPath("/httpbin")
+									.concurrencyLimiter(config -> config.setAlgorithm(
+											ConcurrencyLimiterGatewayFilterFactory.Algorithm.VEGAS)))
+							.uri(uri))
+					.route("concurrency_fixed", r -> r.host("**.concurrencyfixed.org")
+							.filters(f -> f.prefixPath("/httpbin")
+									.concurrencyLimiter(config -> config.setName("fixed")
+											.setInitialLimit(1).setMaxLimit(1)))
+							.uri(uri))
+					.build();
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.factory;
+
+import java.lang.reflect.Constructor;
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.http.HttpCookie;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.web.util.pattern.PathPattern.PathMatchInfo;
+
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.gateway.filter.factory.ConsistentHashGatewayFilterFactory.Source.COOKIE;
+import static org.springframework.cloud.gateway.filter.factory.ConsistentHashGatewayFilterFactory.Source.HEADER;
+import static org.springframework.cloud.gateway.filter.factory.ConsistentHashGatewayFilterFactory.Source.PATH_VARIABLE;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.HASH_KEY_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.URI_TEMPLATE_VARIABLES_ATTRIBUTE;
+
+public class ConsistentHashGatewayFilterFactoryTests {
+
+	@Test
+	public void keyFromHeader() {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/")
+				.header("X-User", "user1").build());
+
+		assertThat(hashKey(exchange, c -> c.setSource(HEADER).setName("X-User"))).isEqualTo("user1");
+	}
+
+	@Test
+	public void keyFromCookie() {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/")
+				.cookie(new HttpCookie("SESSION", "session1")).build());
+
+		assertThat(hashKey(exchange, c -> c.setSource(COOKIE).setName("SESSION"))).isEqualTo("session1");
+	}
+
+	@Test
+	public void keyFromPathVariable() throws Exception {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/users/user2").build());
+		Constructor<PathMatchInfo> constructor = ReflectionUtils.accessibleConstructor(PathMatchInfo.class, Map.class, Map.class);
+		exchange.getAttributes().put(URI_TEMPLATE_VARIABLES_ATTRIBUTE,
+				constructor.newInstance(Collections.singletonMap("user", "user2"), Collections.emptyMap()));
+
+		assertThat(hashKey(exchange, c -> c.setSource(PATH_VARIABLE).setName("user"))).isEqualTo("user2");
+	}
+
+	@Test
+	public void keyFromKeyResolver() {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/").build());
+
+		assertThat(hashKey(exchange, c -> c.setKeyResolver(e -> Mono.just("resolved")))).isEqualTo("resolved");
+	}
+
+	@Test
+	public void noKeyWhenMissing() {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/").build());
+
+		assertThat(hashKey(exchange, c -> c.setSource(HEADER).setName("X-User"))).isNull();
+	}
+
+	private String hashKey(MockServerWebExchange exchange, Consumer<ConsistentHashGatewayFilterFactory.Config> config) {
+		GatewayFilter filter = new ConsistentHashGatewayFilterFactory().apply(config);
+		String[] key = new String[1];
+		StepVerifier.create(filter.filter(exchange, e -> {
+			key[0] = e.getAttribute(HASH_KEY_ATTR);
+			return Mono.empty();
+		})).verifyComplete();
+		return key[0];
+	}
+}
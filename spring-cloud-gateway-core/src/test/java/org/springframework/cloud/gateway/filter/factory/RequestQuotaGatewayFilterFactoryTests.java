@@ -0,0 +1,174 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.factory;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
+import org.springframework.cloud.gateway.filter.ratelimit.QuotaLimiter;
+import org.springframework.cloud.gateway.filter.ratelimit.QuotaLimiter.Quota;
+import org.springframework.cloud.gateway.filter.ratelimit.QuotaLimiter.Response;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ConfigurationUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.validation.BindException;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+
+import reactor.core.publisher.Mono;
+
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.groups.Tuple.tuple;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+public class RequestQuotaGatewayFilterFactoryTests {
+
+	private String routeId;
+
+	private List<Quota> quotas;
+
+	private int tokens;
+
+	private boolean filtered;
+
+	private final QuotaLimiter quotaLimiter = (routeId, quotas, tokens) -> {
+		this.routeId = routeId;
+		this.quotas = quotas;
+		this.tokens = tokens;
+		return Mono.just(new Response(!quotas.get(0).getKey().equals("denied"), null, singletonList(0L)));
+	};
+
+	private final RequestQuotaGatewayFilterFactory factory = new RequestQuotaGatewayFilterFactory(quotaLimiter);
+
+	@Test
+	public void resolvesAllDimensions() {
+		GatewayFilter filter = factory.apply(config -> config
+				.addDimension("user", exchange -> Mono.just("user1"), 10, 20)
+				.addDimension("tenant", exchange -> Mono.just("tenant1"), 100, 200)
+				.setCost(3));
+
+		MockServerWebExchange exchange = filter(filter);
+
+		assertThat(filtered).isTrue();
+		assertThat(routeId).isEqualTo("myroute");
+		assertThat(tokens).isEqualTo(3);
+		assertThat(quotas).extracting(Quota::getName, Quota::getKey, Quota::getReplenishRate, Quota::getBurstCapacity)
+				.containsExactly(tuple("user", "user1", 10, 20),
+						tuple("tenant", "tenant1", 100, 200));
+		assertThat(exchange.getResponse().getStatusCode()).isNull();
+	}
+
+	@Test
+	public void deniedRequestGets429() {
+		GatewayFilter filter = factory.apply(config -> config
+				.addDimension("user", exchange -> Mono.just("denied"), 10, 20));
+
+		MockServerWebExchange exchange = filter(filter);
+
+		assertThat(filtered).isFalse();
+		assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+	}
+
+	@Test
+	public void dimensionsWithoutKeyAreSkipped() {
+		GatewayFilter filter = factory.apply(config -> config
+				.addDimension("user", exchange -> Mono.empty(), 10, 20)
+				.addDimension("tenant", exchange -> Mono.just("tenant1"), 100, 200));
+
+		filter(filter);
+
+		assertThat(quotas).extracting(Quota::getName).containsExactly("tenant");
+	}
+
+	@Test
+	public void passesWithoutAnyKey() {
+		GatewayFilter filter = factory.apply(config -> config
+				.addDimension("user", exchange -> Mono.empty(), 10, 20));
+
+		filter(filter);
+
+		assertThat(filtered).isTrue();
+		assertThat(quotas).isNull();
+	}
+
+	@Test
+	public void dimensionsBoundFromFilterArgs() {
+		KeyResolver resolver = exchange -> Mono.just("user1");
+		Map<String, Object> args = new HashMap<>();
+		args.put("dimensions[0].name", "user");
+		args.put("dimensions[0].key-resolver", resolver);
+		args.put("dimensions[0].replenish-rate", "10");
+		args.put("dimensions[0].burst-capacity", "20");
+		args.put("cost-expression", "request.method.name() == 'GET' ? 1 : 5");
+
+		RequestQuotaGatewayFilterFactory.Config config = new RequestQuotaGatewayFilterFactory.Config();
+		ConfigurationUtils.bind(config, args, "", "RequestQuota", null);
+
+		assertThat(config.getDimensions()).hasSize(1);
+		assertThat(config.getDimensions().get(0).getKeyResolver()).isSameAs(resolver);
+		assertThat(config.getDimensions().get(0).getBurstCapacity()).isEqualTo(20);
+
+		filter(factory.apply(config));
+
+		assertThat(tokens).isEqualTo(1);
+		assertThat(quotas).extracting(Quota::getKey).containsExactly("user1");
+	}
+
+	@Test
+	public void dimensionWithoutRateFailsValidation() {
+		Map<String, Object> args = new HashMap<>();
+		args.put("dimensions[0].name", "user");
+		args.put("dimensions[0].key-resolver", (KeyResolver) exchange -> Mono.just("user1"));
+		args.put("dimensions[0].burst-capacity", "20");
+		LocalValidatorFactoryBean validator = new LocalValidatorFactoryBean();
+		validator.afterPropertiesSet();
+
+		assertThatThrownBy(() -> ConfigurationUtils.bind(new RequestQuotaGatewayFilterFactory.Config(), args,
+				"", "RequestQuota", validator))
+				.hasRootCauseInstanceOf(BindException.class)
+				.hasMessageContaining("replenishRate");
+
+		// the Java DSL is not bound, the dimensions are validated when applied
+		assertThatThrownBy(() -> factory.apply(config -> config
+				.addDimension("user", exchange -> Mono.just("user1"), 0, 20)))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("replenishRate");
+	}
+
+	private MockServerWebExchange filter(GatewayFilter filter) {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/").build());
+		exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, Route.builder().id("myroute")
+				.uri(URI.create("http://localhost"))
+				.order(0)
+				.predicate(swe -> true)
+				.build());
+		filter.filter(exchange, ex -> {
+			filtered = true;
+			return Mono.empty();
+		}).block();
+		return exchange;
+	}
+}
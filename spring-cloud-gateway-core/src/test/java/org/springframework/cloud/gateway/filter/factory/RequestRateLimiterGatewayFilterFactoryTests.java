@@ -10,7 +10,9 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.ratelimit.HeavyHitters;
 import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
+import org.springframework.cloud.gateway.filter.ratelimit.LocalInFlightRateLimiter;
 import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
 import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter.Response;
 import org.springframework.cloud.gateway.route.Route;
@@ -27,10 +29,12 @@ import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.tuple.Tuple;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
 import static org.mockito.Mockito.when;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
 import static org.springframework.tuple.TupleBuilder.tuple;
 
+import reactor.core.Disposable;
 import reactor.core.publisher.Mono;
 
 /**
@@ -69,6 +73,82 @@ public class RequestRateLimiterGatewayFilterFactoryTests extends BaseWebClientTe
 		assertFilterFactory(resolver2, "notallowedkey", false, HttpStatus.TOO_MANY_REQUESTS);
 	}
 
+	@Test
+	public void costIsPassedToRateLimiter() {
+		when(rateLimiter.isAllowed("myroute", "allowedkey", 5))
+				.thenReturn(Mono.just(new Response(false, 2)));
+
+		MockServerHttpRequest request = MockServerHttpRequest.post("/").build();
+		MockServerWebExchange exchange = MockServerWebExchange.from(request);
+		exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR,
+				Route.builder().id("myroute").predicate(ex -> true)
+						.uri("http://localhost").build());
+
+		RequestRateLimiterGatewayFilterFactory factory = this.context.getBean(RequestRateLimiterGatewayFilterFactory.class);
+		GatewayFilter filter = factory.apply(config -> config.setKeyResolver(resolver1)
+				.setCostExpression("request.method.name() == 'GET' ? 1 : 5"));
+
+		filter.filter(exchange, this.filterChain).block();
+
+		assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+	}
+
+	@Test
+	public void inFlightPermitsAreReleased() {
+		LocalInFlightRateLimiter inFlightLimiter = new LocalInFlightRateLimiter(1);
+		RequestRateLimiterGatewayFilterFactory factory = this.context.getBean(RequestRateLimiterGatewayFilterFactory.class);
+		GatewayFilter filter = factory.apply(config -> config.setKeyResolver(resolver1)
+				.setRateLimiter(inFlightLimiter));
+
+		// completed
+		filter.filter(routedExchange(), exchange -> Mono.empty()).block();
+		assertThat(inFlightLimiter.getInFlight("myroute", "allowedkey")).isZero();
+
+		// failed
+		filter.filter(routedExchange(), exchange -> Mono.error(new IllegalStateException()))
+				.onErrorResume(throwable -> Mono.empty()).block();
+		assertThat(inFlightLimiter.getInFlight("myroute", "allowedkey")).isZero();
+
+		// cancelled while in flight, the second request is denied meanwhile
+		Disposable call = filter.filter(routedExchange(), exchange -> Mono.never()).subscribe();
+		assertThat(inFlightLimiter.getInFlight("myroute", "allowedkey")).isEqualTo(1);
+		MockServerWebExchange denied = routedExchange();
+		filter.filter(denied, exchange -> Mono.empty()).block();
+		assertThat(denied.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+
+		call.dispose();
+		assertThat(inFlightLimiter.getInFlight("myroute", "allowedkey")).isZero();
+	}
+
+	@Test
+	public void resolvedKeysAreTracked() {
+		HeavyHitters heavyHitters = new HeavyHitters();
+		RequestRateLimiterGatewayFilterFactory factory = new RequestRateLimiterGatewayFilterFactory(
+				new LocalInFlightRateLimiter(1), resolver1);
+		factory.setHeavyHitters(heavyHitters);
+		GatewayFilter filter = factory.apply(config -> {});
+
+		// denied requests are counted too
+		Disposable call = filter.filter(routedExchange(), exchange -> Mono.never()).subscribe();
+		filter.filter(routedExchange(), exchange -> Mono.empty()).block();
+		call.dispose();
+
+		assertThat(heavyHitters.getTop()).hasSize(1).allSatisfy(hitter -> {
+			assertThat(hitter.getRouteId()).isEqualTo("myroute");
+			assertThat(hitter.getKey()).isEqualTo("allowedkey");
+			// two requests, spread over a minute and a half by the default half-life
+			assertThat(hitter.getRate()).isCloseTo(2 * Math.log(2) / 60, within(0.001));
+		});
+	}
+
+	private MockServerWebExchange routedExchange() {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/").build());
+		exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR,
+				Route.builder().id("myroute").predicate(ex -> true)
+						.uri("http://localhost").build());
+		return exchange;
+	}
+
 	private void assertFilterFactory(KeyResolver keyResolver, String key, boolean allowed, HttpStatus expectedStatus) {
 
 		Tuple args = tuple().build();
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.springframework.expression.spel.SpelEvaluationException;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CostResolverTests {
+
+	@Test
+	public void contentLengthCost() {
+		ContentLengthCostResolver resolver = new ContentLengthCostResolver(1000);
+
+		assertThat(resolver.resolve(exchange(MockServerHttpRequest.get("/"))).block()).isEqualTo(1);
+		assertThat(resolver.resolve(exchange(MockServerHttpRequest.post("/").contentLength(1000))).block())
+				.isEqualTo(1);
+		assertThat(resolver.resolve(exchange(MockServerHttpRequest.post("/").contentLength(2500))).block())
+				.isEqualTo(3);
+	}
+
+	@Test
+	public void headerCost() {
+		HeaderCostResolver resolver = new HeaderCostResolver("X-Cost");
+
+		assertThat(resolver.resolve(exchange(MockServerHttpRequest.get("/").header("X-Cost", "7"))).block())
+				.isEqualTo(7);
+		assertThat(resolver.resolve(exchange(MockServerHttpRequest.get("/").header("X-Cost", "many"))).block())
+				.isNull();
+		assertThat(resolver.resolve(exchange(MockServerHttpRequest.get("/"))).block()).isNull();
+	}
+
+	@Test
+	public void expressionCost() {
+		ExpressionCostResolver resolver = new ExpressionCostResolver(
+				"request.method.name() == 'GET' ? 1 : request.headers.contentLength / 100");
+
+		assertThat(resolver.resolve(exchange(MockServerHttpRequest.get("/"))).block()).isEqualTo(1);
+		assertThat(resolver.resolve(exchange(MockServerHttpRequest.put("/").contentLength(500))).block())
+				.isEqualTo(5);
+		assertThat(new ExpressionCostResolver("request.headers.getFirst('X-Cost')")
+				.resolve(exchange(MockServerHttpRequest.get("/").header("X-Cost", "4"))).block()).isEqualTo(4);
+	}
+
+	@Test
+	public void expressionCannotReachTypesNorReflection() {
+		for (String expression : Arrays.asList("T(java.lang.Runtime).getRuntime().availableProcessors()",
+				"new java.lang.StringBuilder('1').length()",
+				"request.getClass().forName('java.lang.Runtime') == null ? 1 : 2",
+				"request.class.forName('java.lang.Runtime') == null ? 1 : 2",
+				"request.class.classLoader == null ? 1 : 2",
+				"@environment == null ? 1 : 2")) {
+			assertThatThrownBy(() -> new ExpressionCostResolver(expression)
+					.resolve(exchange(MockServerHttpRequest.get("/"))).block())
+					.as(expression).isInstanceOf(SpelEvaluationException.class);
+		}
+	}
+
+	@Test
+	public void expressionCanOnlyReadTheRequest() {
+		for (String expression : Arrays.asList("applicationContext.close() == null ? 1 : 2",
+				"getApplicationContext().getBean('environment') == null ? 1 : 2",
+				"response.setComplete() == null ? 1 : 2",
+				"getResponse().setStatusCode(null) == null ? 1 : 2",
+				"attributes.clear() == null ? 1 : 2",
+				"session == null ? 1 : 2",
+				"request.mutate() == null ? 1 : 2",
+				"request.headers.clear() == null ? 1 : 2",
+				"request.headers.set('X-Cost', '1') == null ? 1 : 2")) {
+			MockServerWebExchange exchange = exchange(MockServerHttpRequest.get("/"));
+			exchange.getAttributes().put("key", "value");
+
+			assertThatThrownBy(() -> new ExpressionCostResolver(expression).resolve(exchange).block())
+					.as(expression).isInstanceOf(SpelEvaluationException.class);
+			assertThat(exchange.getAttributes()).containsEntry("key", "value");
+			assertThat(exchange.getResponse().isCommitted()).isFalse();
+		}
+	}
+
+	@Test
+	public void expressionCannotAssign() {
+		assertThatThrownBy(() -> new ExpressionCostResolver("request.headers['X-Cost'] = '1'"))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	private static MockServerWebExchange exchange(MockServerHttpRequest.BaseBuilder<?> request) {
+		return MockServerWebExchange.from(request.build());
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter.Response;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DenyCacheTests {
+
+	private final AtomicLong clock = new AtomicLong(1_000_000);
+
+	private final DenyCache cache = new DenyCache(2, clock::get);
+
+	@Test
+	public void deniedUntilBucketRefills() {
+		cache.deny("myroute", "user", clock.get() + 100);
+
+		assertThat(cache.isDenied("myroute", "user")).isTrue();
+		assertThat(cache.isDenied("otherroute", "user")).isFalse();
+		assertThat(cache.isDenied("myroute", "other")).isFalse();
+
+		clock.addAndGet(100);
+
+		assertThat(cache.isDenied("myroute", "user")).isFalse();
+		assertThat(cache.size()).isZero();
+		assertThat(cache.getShortCircuited()).isEqualTo(1);
+	}
+
+	@Test
+	public void boundedToMaxKeys() {
+		cache.deny("myroute", "user1", clock.get() + 100);
+		cache.deny("myroute", "user2", clock.get() + 200);
+		cache.deny("myroute", "user3", clock.get() + 200);
+
+		assertThat(cache.size()).isEqualTo(2);
+		assertThat(cache.isDenied("myroute", "user3")).isFalse();
+
+		// expired keys make room
+		clock.addAndGet(100);
+		cache.deny("myroute", "user3", clock.get() + 100);
+
+		assertThat(cache.isDenied("myroute", "user3")).isTrue();
+		assertThat(cache.isDenied("myroute", "user2")).isTrue();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void rateLimiterSkipsRedisForDeniedKeys() {
+		ReactiveRedisTemplate<String, String> redisTemplate = mock(ReactiveRedisTemplate.class);
+		AtomicInteger calls = new AtomicInteger();
+		// version 2 returns the milliseconds until a token is available
+		when(redisTemplate.execute(any(RedisScript.class), anyList(), anyList())).thenAnswer(invocation -> {
+			calls.incrementAndGet();
+			return Flux.just(Arrays.asList(0L, 0L, 60_000L));
+		});
+		RedisRateLimiter rateLimiter = new RedisRateLimiter(redisTemplate, mock(RedisScript.class), null);
+		rateLimiter.setScriptVersion(2);
+		rateLimiter.setDenyCache(new DenyCache());
+		rateLimiter.getConfig().put("myroute", new RedisRateLimiter.Config()
+				.setReplenishRate(1)
+				.setBurstCapacity(1));
+
+		for (int i = 0; i < 10; i++) {
+			Response response = rateLimiter.isAllowed("myroute", "user").block();
+			assertThat(response.isAllowed()).isFalse();
+		}
+
+		assertThat(calls.get()).isEqualTo(1);
+		assertThat(rateLimiter.getDenyCache().getShortCircuited()).isEqualTo(9);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void costlyDenialsAreNotCachedWithVersion2() {
+		ReactiveRedisTemplate<String, String> redisTemplate = mock(ReactiveRedisTemplate.class);
+		List<List<String>> args = new ArrayList<>();
+		when(redisTemplate.execute(any(RedisScript.class), anyList(), anyList())).thenAnswer(invocation -> {
+			args.add(invocation.getArgument(2));
+			return Flux.just(Arrays.asList(0L, 0L, 5_000L));
+		});
+		RedisRateLimiter rateLimiter = new RedisRateLimiter(redisTemplate, mock(RedisScript.class), null);
+		rateLimiter.setScriptVersion(2);
+		rateLimiter.setDenyCache(new DenyCache());
+		rateLimiter.getConfig().put("myroute", new RedisRateLimiter.Config()
+				.setReplenishRate(1)
+				.setBurstCapacity(10));
+
+		// the 5 seconds are the ones of the 5 tokens, a single token may come earlier
+		assertThat(rateLimiter.isAllowed("myroute", "user", 5).block().isAllowed()).isFalse();
+		assertThat(rateLimiter.isAllowed("myroute", "user", 1).block().isAllowed()).isFalse();
+
+		assertThat(args).extracting(arg -> arg.get(3)).containsExactly("5", "1");
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void gcraDenialsAreCachedUntilRetry() {
+		ReactiveRedisTemplate<String, String> redisTemplate = mock(ReactiveRedisTemplate.class);
+		RedisScript<List<Long>> gcraScript = mock(RedisScript.class);
+		List<List<String>> keys = new ArrayList<>();
+		when(redisTemplate.execute(eq(gcraScript), anyList(), anyList())).thenAnswer(invocation -> {
+			keys.add(invocation.getArgument(1));
+			return Flux.just(Arrays.asList(0L, 0L, 60_000L));
+		});
+		RedisRateLimiter rateLimiter = new RedisRateLimiter(redisTemplate, mock(RedisScript.class), null);
+		rateLimiter.setGcraScript(gcraScript);
+		rateLimiter.setDenyCache(new DenyCache());
+		rateLimiter.getConfig().put("myroute", new RedisRateLimiter.Config()
+				.setReplenishRate(1)
+				.setBurstCapacity(10)
+				.setAlgorithm(RateLimiter.Algorithm.GCRA));
+
+		for (int i = 0; i < 3; i++) {
+			assertThat(rateLimiter.isAllowed("myroute", "user").block().isAllowed()).isFalse();
+		}
+
+		assertThat(keys).containsExactly(Collections.singletonList("request_rate_gcra.{user}"));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void allowedResponsesAreNotCached() {
+		ReactiveRedisTemplate<String, String> redisTemplate = mock(ReactiveRedisTemplate.class);
+		when(redisTemplate.execute(any(RedisScript.class), anyList(), anyList()))
+				.thenReturn(Flux.just(Arrays.asList(1L, 0L)));
+		RedisRateLimiter rateLimiter = new RedisRateLimiter(redisTemplate, mock(RedisScript.class), null);
+		rateLimiter.setDenyCache(new DenyCache());
+		rateLimiter.getConfig().put("myroute", new RedisRateLimiter.Config()
+				.setReplenishRate(1)
+				.setBurstCapacity(1));
+
+		assertThat(rateLimiter.isAllowed("myroute", "user").block().isAllowed()).isTrue();
+
+		assertThat(rateLimiter.getDenyCache().size()).isZero();
+	}
+
+	@Test
+	public void metricsArePublished() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		new DenyCacheMetrics(registry).monitor("redisRateLimiter", cache);
+		cache.deny("myroute", "user", clock.get() + 100);
+		cache.isDenied("myroute", "user");
+
+		assertThat(registry.get(DenyCacheMetrics.SHORT_CIRCUITED).tag("name", "redisRateLimiter")
+				.functionCounter().count()).isEqualTo(1);
+		assertThat(registry.get(DenyCacheMetrics.SIZE).gauge().value()).isEqualTo(1);
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.springframework.cloud.gateway.filter.ratelimit.HeavyHitters.HeavyHitter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class HeavyHittersTests {
+
+	private final AtomicLong now = new AtomicLong();
+
+	private final HeavyHitters heavyHitters = new HeavyHitters(4, 1024, 5, Duration.ofSeconds(10), now::get);
+
+	@Test
+	public void estimatesSteadyRates() {
+		// 100 requests/s for key1, 10 requests/s for key2, over 10 half-lives
+		for (int i = 0; i < 10_000; i++) {
+			heavyHitters.record("route1", "key1");
+			if (i % 10 == 0) {
+				heavyHitters.record("route1", "key2");
+			}
+			now.addAndGet(TimeUnit.MILLISECONDS.toNanos(10));
+		}
+
+		List<HeavyHitter> top = heavyHitters.getTop();
+		assertThat(top).extracting(HeavyHitter::getKey).containsExactly("key1", "key2");
+		assertThat(top.get(0).getRate()).isCloseTo(100, within(5d));
+		assertThat(top.get(1).getRate()).isCloseTo(10, within(1d));
+	}
+
+	@Test
+	public void findsHeavyKeysAmongManyLightOnes() {
+		Random random = new Random(42);
+		for (int i = 0; i < 100_000; i++) {
+			int heavy = random.nextInt(10);
+			if (heavy < 3) {
+				heavyHitters.record("route1", "heavy" + heavy);
+			}
+			else {
+				// each light key is seen a few times
+				heavyHitters.record("route1", "light" + random.nextInt(20_000));
+			}
+			now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+		}
+
+		List<HeavyHitter> top = heavyHitters.getTop();
+		assertThat(top).hasSize(5);
+		assertThat(top.subList(0, 3)).extracting(HeavyHitter::getKey)
+				.containsExactlyInAnyOrder("heavy0", "heavy1", "heavy2");
+		// 100 requests/s each, light keys collide in 1024 counters but stay far below
+		assertThat(top.get(2).getRate()).isGreaterThan(90);
+		assertThat(top.get(3).getRate()).isLessThan(top.get(2).getRate() / 2);
+	}
+
+	@Test
+	public void keysAreTrackedPerRoute() {
+		heavyHitters.record("route1", "key1");
+		heavyHitters.record("route2", "key1");
+		heavyHitters.record("route2", "key1");
+
+		assertThat(heavyHitters.getTop()).extracting(HeavyHitter::getRouteId)
+				.containsExactly("route2", "route1");
+	}
+
+	@Test
+	public void keysWithTheSameStringHashAreCountedApart() {
+		assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+		for (int i = 0; i < 100; i++) {
+			heavyHitters.record("route1", "Aa");
+		}
+		heavyHitters.record("route1", "BB");
+
+		List<HeavyHitter> top = heavyHitters.getTop();
+		assertThat(top).extracting(HeavyHitter::getKey).containsExactly("Aa", "BB");
+		assertThat(top.get(1).getRate()).isLessThan(top.get(0).getRate() / 50);
+	}
+
+	@Test
+	public void ratesDecayAfterBursts() {
+		for (int i = 0; i < 1000; i++) {
+			heavyHitters.record("route1", "burst");
+		}
+		double rate = heavyHitters.getTop().get(0).getRate();
+
+		now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+		assertThat(heavyHitters.getTop().get(0).getRate()).isCloseTo(rate / 2, within(rate / 1000));
+
+		// a new key overtakes the burst once it faded
+		now.addAndGet(TimeUnit.SECONDS.toNanos(60));
+		for (int i = 0; i < 100; i++) {
+			heavyHitters.record("route1", "steady");
+		}
+		assertThat(heavyHitters.getTop()).extracting(HeavyHitter::getKey).containsExactly("steady", "burst");
+	}
+
+	@Test
+	public void countsAreRescaledOverLongPeriods() {
+		// e^30 is reached after about 7 minutes with a half-life of 10 seconds
+		for (int minute = 0; minute < 60; minute++) {
+			heavyHitters.record("route1", "key1");
+			heavyHitters.record("route1", "key1");
+			heavyHitters.record("route1", "key2");
+			now.addAndGet(TimeUnit.MINUTES.toNanos(1));
+		}
+
+		List<HeavyHitter> top = heavyHitters.getTop();
+		assertThat(top).extracting(HeavyHitter::getKey).containsExactly("key1", "key2");
+		assertThat(top).allMatch(hitter -> Double.isFinite(hitter.getRate()) && hitter.getRate() > 0);
+	}
+}
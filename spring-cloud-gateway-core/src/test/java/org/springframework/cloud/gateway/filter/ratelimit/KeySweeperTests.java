@@ -0,0 +1,96 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KeySweeperTests {
+
+	private final ConcurrentMap<String, Long> map = new ConcurrentHashMap<>();
+
+	private final KeySweeper<Long> sweeper = new KeySweeper<>(map, 4);
+
+	@Test
+	public void examinesAFewEntriesPerSweep() {
+		for (long i = 0; i < 1000; i++) {
+			map.put("key" + i, i);
+		}
+		Set<Long> examined = new HashSet<>();
+
+		assertThat(sweeper.sweep(examinedInto(examined), null)).isFalse();
+		assertThat(examined).hasSize(4);
+		assertThat(map).hasSize(1000);
+	}
+
+	@Test
+	public void sweepsResumeWhereThePreviousStopped() {
+		for (long i = 0; i < 10; i++) {
+			map.put("key" + i, i);
+		}
+		Set<Long> examined = new HashSet<>();
+
+		for (int i = 0; i < 3; i++) {
+			sweeper.sweep(examinedInto(examined), null);
+		}
+
+		// 3 sweeps of 4 entries cover the 10 entries, then start over
+		assertThat(examined).hasSize(10);
+	}
+
+	@Test
+	public void removesExpiredEntries() {
+		for (long i = 0; i < 4; i++) {
+			map.put("key" + i, i);
+		}
+
+		assertThat(sweeper.sweep(value -> value % 2 == 0, value -> value)).isTrue();
+
+		assertThat(map).containsOnlyKeys("key1", "key3");
+	}
+
+	@Test
+	public void removesHighestRankWhenNoneExpired() {
+		for (long i = 0; i < 4; i++) {
+			map.put("key" + i, i);
+		}
+
+		assertThat(sweeper.sweep(value -> false, value -> value)).isTrue();
+
+		assertThat(map).containsOnlyKeys("key0", "key1", "key2");
+	}
+
+	@Test
+	public void emptyMapRemovesNothing() {
+		assertThat(sweeper.sweep(value -> true, value -> value)).isFalse();
+	}
+
+	private static Predicate<Long> examinedInto(Set<Long> examined) {
+		return value -> {
+			examined.add(value);
+			return false;
+		};
+	}
+}
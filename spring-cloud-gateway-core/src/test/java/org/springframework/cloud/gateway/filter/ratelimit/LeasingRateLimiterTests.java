@@ -0,0 +1,215 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter.Response;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LeasingRateLimiterTests {
+
+	private final AtomicLong clock = new AtomicLong(1);
+
+	@SuppressWarnings("unchecked")
+	private final ReactiveRedisTemplate<String, String> redisTemplate = mock(ReactiveRedisTemplate.class);
+
+	private final LeasingRateLimiter rateLimiter = new LeasingRateLimiter(redisTemplate,
+			mock(RedisScript.class), null, clock::get);
+
+	private final AtomicInteger scriptCalls = new AtomicInteger();
+
+	// the tokens of the bucket in Redis, refilled by the tests
+	private final AtomicLong bucket = new AtomicLong();
+
+	private volatile List<String> lastArgs;
+
+	// delays the replies of Redis until it completes
+	private volatile Mono<Void> redisLatency = Mono.empty();
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setup() {
+		when(redisTemplate.execute(any(RedisScript.class), anyList(), anyList())).thenAnswer(invocation -> {
+			List<String> args = invocation.getArgument(2);
+			lastArgs = args;
+			scriptCalls.incrementAndGet();
+			return redisLatency.thenMany(Flux.defer(() -> {
+				long capacity = Long.parseLong(args.get(1));
+				long requested = Long.parseLong(args.get(3));
+				long returned = Long.parseLong(args.get(4));
+				long filled = Math.min(capacity, bucket.get() + returned);
+				long granted = Math.min(requested, filled);
+				bucket.set(filled - granted);
+				return Flux.just(Arrays.asList(granted, filled - granted));
+			}));
+		});
+	}
+
+	@Test
+	public void servesRequestsFromLease() {
+		configure(1000, 1000, 0.1);
+		bucket.set(1000);
+
+		int allowed = 0;
+		for (int i = 0; i < 500; i++) {
+			clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+			if (rateLimiter.isAllowed("myroute", "user").block().isAllowed()) {
+				allowed++;
+			}
+		}
+
+		assertThat(allowed).isEqualTo(500);
+		// leases grow with the rate, up to a tenth of the burst capacity
+		assertThat(scriptCalls.get()).isLessThan(50);
+		assertThat(Long.parseLong(lastArgs.get(3))).isEqualTo(100);
+		// the tokens leased never exceed the ones taken from the bucket
+		assertThat(1000 - bucket.get()).isGreaterThanOrEqualTo(500);
+	}
+
+	@Test
+	public void deniedWhenBucketIsEmpty() {
+		configure(10, 20, 0.5);
+		bucket.set(3);
+
+		long allowed = Flux.range(0, 10)
+				.flatMap(i -> rateLimiter.isAllowed("myroute", "user"))
+				.filter(Response::isAllowed)
+				.count()
+				.block();
+
+		assertThat(allowed).isEqualTo(3);
+	}
+
+	@Test
+	public void concurrentRequestsOfNewKeyAreLeasedTogether() {
+		configure(10, 20, 0.1);
+		bucket.set(20);
+		MonoProcessor<Void> latency = MonoProcessor.create();
+		redisLatency = latency;
+
+		List<Response> responses = new CopyOnWriteArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			rateLimiter.isAllowed("myroute", "user").subscribe(responses::add);
+		}
+		assertThat(responses).isEmpty();
+		latency.onComplete();
+
+		// the first lease only held a token, the others renew it with their demand
+		assertThat(responses).hasSize(10).allMatch(Response::isAllowed);
+		assertThat(scriptCalls.get()).isEqualTo(2);
+		assertThat(bucket.get()).isGreaterThanOrEqualTo(9);
+	}
+
+	@Test
+	public void expiredLeaseIsGivenBack() {
+		configure(1000, 1000, 0.1);
+		bucket.set(1000);
+		for (int i = 0; i < 10; i++) {
+			clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+			rateLimiter.isAllowed("myroute", "user").block();
+		}
+		long leased = 1000 - 10 - bucket.get();
+		assertThat(leased).isPositive();
+
+		clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+		rateLimiter.isAllowed("myroute", "user").block();
+
+		assertThat(Long.parseLong(lastArgs.get(4))).isEqualTo(leased);
+	}
+
+	@Test
+	public void costlyRequestsLeaseTheirCost() {
+		configure(10, 100, 0.1);
+		bucket.set(100);
+
+		// more than the 10 tokens of a full lease
+		assertThat(rateLimiter.isAllowed("myroute", "user", 30).block().isAllowed()).isTrue();
+		assertThat(Long.parseLong(lastArgs.get(3))).isEqualTo(30);
+		assertThat(bucket.get()).isEqualTo(70);
+
+		assertThat(rateLimiter.isAllowed("myroute", "user", 80).block().isAllowed()).isFalse();
+	}
+
+	@Test
+	public void zeroErrorLeasesOneTokenPerRequest() {
+		configure(10, 20, 0);
+		bucket.set(20);
+
+		for (int i = 0; i < 5; i++) {
+			assertThat(rateLimiter.isAllowed("myroute", "user").block().isAllowed()).isTrue();
+		}
+
+		assertThat(scriptCalls.get()).isEqualTo(5);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void allowedWhenRedisFails() {
+		configure(10, 20, 0.1);
+		when(redisTemplate.execute(any(RedisScript.class), anyList(), anyList()))
+				.thenReturn(Flux.error(new RedisConnectionFailureException("down")));
+
+		Response response = rateLimiter.isAllowed("myroute", "user").block();
+
+		assertThat(response.isAllowed()).isTrue();
+		assertThat(response.getTokensRemaining()).isEqualTo(-1);
+	}
+
+	@Test
+	public void keysOverMaxKeysAreNotCached() {
+		configure(10, 100, 0.5);
+		bucket.set(100);
+		rateLimiter.setMaxKeys(1);
+
+		rateLimiter.isAllowed("myroute", "user1").block();
+		int calls = scriptCalls.get();
+		rateLimiter.isAllowed("myroute", "user2").block();
+		rateLimiter.isAllowed("myroute", "user2").block();
+
+		assertThat(scriptCalls.get() - calls).isEqualTo(2);
+	}
+
+	private void configure(int replenishRate, int burstCapacity, double maxError) {
+		rateLimiter.getConfig().put("myroute", new LeasingRateLimiter.Config()
+				.setReplenishRate(replenishRate)
+				.setBurstCapacity(burstCapacity)
+				.setMaxError(maxError)
+				.setLeaseDuration(Duration.ofMillis(500)));
+	}
+}
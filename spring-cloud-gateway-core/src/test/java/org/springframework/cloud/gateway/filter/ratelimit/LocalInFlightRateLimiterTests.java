@@ -0,0 +1,151 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.springframework.cloud.gateway.event.FilterArgsEvent;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter.Permit;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter.Response;
+import org.springframework.validation.BindException;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LocalInFlightRateLimiterTests {
+
+	private final LocalInFlightRateLimiter rateLimiter = new LocalInFlightRateLimiter(2);
+
+	@Test
+	public void permitsAreCappedPerKey() {
+		Response first = rateLimiter.isAllowed("myroute", "user").block();
+		Response second = rateLimiter.tryAcquire("myroute", "user", 1);
+
+		assertThat(first).isInstanceOf(Permit.class);
+		assertThat(first.getTokensRemaining()).isEqualTo(1);
+		assertThat(second.getTokensRemaining()).isZero();
+		assertThat(rateLimiter.tryAcquire("myroute", "user", 1).isAllowed()).isFalse();
+		assertThat(rateLimiter.tryAcquire("myroute", "other", 1).isAllowed()).isTrue();
+
+		((Permit) first).release();
+
+		assertThat(rateLimiter.getInFlight("myroute", "user")).isEqualTo(1);
+		assertThat(rateLimiter.tryAcquire("myroute", "user", 1).isAllowed()).isTrue();
+	}
+
+	@Test
+	public void permitIsReleasedOnce() {
+		Permit permit = (Permit) rateLimiter.tryAcquire("myroute", "user", 1);
+		rateLimiter.tryAcquire("myroute", "user", 1);
+
+		permit.release();
+		permit.release();
+
+		assertThat(permit.isReleased()).isTrue();
+		assertThat(rateLimiter.getInFlight("myroute", "user")).isEqualTo(1);
+	}
+
+	@Test
+	public void keysWithoutRequestsInFlightAreDropped() {
+		Permit permit = (Permit) rateLimiter.tryAcquire("myroute", "user", 2);
+		assertThat(rateLimiter.getKeyCount("myroute")).isEqualTo(1);
+
+		permit.release();
+
+		assertThat(rateLimiter.getKeyCount("myroute")).isZero();
+	}
+
+	@Test
+	public void costlyRequestsTakeMorePermits() {
+		assertThat(rateLimiter.tryAcquire("myroute", "user", 3).isAllowed()).isFalse();
+		assertThat(rateLimiter.getInFlight("myroute", "user")).isZero();
+		assertThat(rateLimiter.isAllowed("myroute", "user", 2).block().isAllowed()).isTrue();
+		assertThat(rateLimiter.tryAcquire("myroute", "user", 1).isAllowed()).isFalse();
+	}
+
+	@Test
+	public void configuredFromFilterArgs() {
+		Map<String, Object> args = new HashMap<>();
+		args.put("local-in-flight-rate-limiter.maxInFlight", "5");
+
+		rateLimiter.onApplicationEvent(new FilterArgsEvent(this, "myroute", args));
+
+		assertThat(rateLimiter.getConfig().get("myroute").getMaxInFlight()).isEqualTo(5);
+	}
+
+	@Test
+	public void maxInFlightMustBePositive() {
+		Map<String, Object> args = new HashMap<>();
+		args.put("local-in-flight-rate-limiter.maxInFlight", "0");
+		LocalValidatorFactoryBean validator = new LocalValidatorFactoryBean();
+		validator.afterPropertiesSet();
+		LocalInFlightRateLimiter rateLimiter = new LocalInFlightRateLimiter(validator);
+
+		assertThatThrownBy(() -> rateLimiter.onApplicationEvent(new FilterArgsEvent(this, "myroute", args)))
+				.hasRootCauseInstanceOf(BindException.class)
+				.hasMessageContaining("maxInFlight");
+	}
+
+	@Test
+	public void maxInFlightMustBePositiveWithoutValidator() {
+		assertThatThrownBy(() -> new LocalInFlightRateLimiter(0)).isInstanceOf(IllegalArgumentException.class);
+
+		Map<String, Object> args = new HashMap<>();
+		args.put("local-in-flight-rate-limiter.maxInFlight", "0");
+
+		assertThatThrownBy(() -> rateLimiter.onApplicationEvent(new FilterArgsEvent(this, "myroute", args)))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("maxInFlight");
+		assertThat(rateLimiter.getConfig()).doesNotContainKey("myroute");
+	}
+
+	@Test
+	public void concurrentRequestsNeverExceedTheLimit() throws Exception {
+		LocalInFlightRateLimiter rateLimiter = new LocalInFlightRateLimiter(4);
+		AtomicInteger inFlight = new AtomicInteger();
+		AtomicInteger maxSeen = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		CountDownLatch done = new CountDownLatch(8);
+		for (int i = 0; i < 8; i++) {
+			executor.execute(() -> {
+				for (int j = 0; j < 10_000; j++) {
+					Response response = rateLimiter.tryAcquire("myroute", "user", 1);
+					if (response.isAllowed()) {
+						maxSeen.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+						inFlight.decrementAndGet();
+						((Permit) response).release();
+					}
+				}
+				done.countDown();
+			});
+		}
+		assertThat(done.await(30, TimeUnit.SECONDS)).isTrue();
+		executor.shutdown();
+
+		assertThat(maxSeen.get()).isLessThanOrEqualTo(4);
+		assertThat(rateLimiter.getInFlight("myroute", "user")).isZero();
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.springframework.cloud.gateway.filter.ratelimit.QuotaLimiter.Quota;
+import org.springframework.cloud.gateway.filter.ratelimit.QuotaLimiter.Response;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LocalQuotaLimiterTests {
+
+	private final AtomicLong clock = new AtomicLong();
+
+	private final LocalQuotaLimiter quotaLimiter = new LocalQuotaLimiter(32, clock::get);
+
+	@Test
+	public void allQuotasTakeTheTokens() {
+		List<Quota> quotas = quotas("user1", "tenant1");
+
+		Response response = quotaLimiter.isAllowed("myroute", quotas, 2).block();
+
+		assertThat(response.isAllowed()).isTrue();
+		assertThat(response.getDeniedBy()).isNull();
+		assertThat(response.getTokensRemaining()).containsExactly(3L, 98L);
+	}
+
+	@Test
+	public void deniedRequestTakesNoTokens() {
+		for (int i = 0; i < 5; i++) {
+			assertThat(quotaLimiter.tryAcquire("myroute", quotas("user1", "tenant1"), 1).isAllowed()).isTrue();
+		}
+
+		Response response = quotaLimiter.tryAcquire("myroute", quotas("user1", "tenant1"), 1);
+
+		assertThat(response.isAllowed()).isFalse();
+		assertThat(response.getDeniedBy()).isEqualTo("user");
+		// the tenant bucket kept the token of the denied request
+		assertThat(response.getTokensRemaining()).containsExactly(0L, 95L);
+		assertThat(quotaLimiter.tryAcquire("myroute", quotas("user2", "tenant1"), 1).getTokensRemaining())
+				.containsExactly(4L, 94L);
+	}
+
+	@Test
+	public void firstQuotaDenyingIsReported() {
+		List<Quota> quotas = Arrays.asList(new Quota("user", "user1", 1, 10),
+				new Quota("tenant", "tenant1", 1, 3));
+
+		assertThat(quotaLimiter.tryAcquire("myroute", quotas, 3).isAllowed()).isTrue();
+		Response response = quotaLimiter.tryAcquire("myroute", quotas, 1);
+
+		assertThat(response.getDeniedBy()).isEqualTo("tenant");
+		assertThat(response.getTokensRemaining()).containsExactly(7L, 0L);
+	}
+
+	@Test
+	public void bucketsRefill() {
+		assertThat(quotaLimiter.tryAcquire("myroute", quotas("user1", "tenant1"), 5).isAllowed()).isTrue();
+		assertThat(quotaLimiter.tryAcquire("myroute", quotas("user1", "tenant1"), 1).isAllowed()).isFalse();
+
+		clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+
+		assertThat(quotaLimiter.tryAcquire("myroute", quotas("user1", "tenant1"), 1).isAllowed()).isTrue();
+		assertThat(quotaLimiter.tryAcquire("myroute", quotas("user1", "tenant1"), 1).isAllowed()).isFalse();
+	}
+
+	@Test
+	public void sameKeyInOtherQuotaHasItsOwnBucket() {
+		List<Quota> quotas = Arrays.asList(new Quota("user", "same", 1, 1),
+				new Quota("tenant", "same", 1, 1));
+
+		assertThat(quotaLimiter.tryAcquire("myroute", quotas, 1).isAllowed()).isTrue();
+		assertThat(quotaLimiter.getKeyCount()).isEqualTo(2);
+	}
+
+	@Test
+	public void otherRouteHasItsOwnBuckets() {
+		assertThat(quotaLimiter.tryAcquire("myroute", quotas("user1", "tenant1"), 5).isAllowed()).isTrue();
+
+		assertThat(quotaLimiter.tryAcquire("otherroute", quotas("user1", "tenant1"), 5).isAllowed()).isTrue();
+		assertThat(quotaLimiter.getKeyCount()).isEqualTo(4);
+	}
+
+	@Test
+	public void keyCountIsBounded() {
+		for (int i = 0; i < 100; i++) {
+			quotaLimiter.tryAcquire("myroute", quotas("user" + i, "tenant1"), 1);
+		}
+
+		assertThat(quotaLimiter.getKeyCount()).isLessThanOrEqualTo(32);
+	}
+
+	private static List<Quota> quotas(String user, String tenant) {
+		return Arrays.asList(new Quota("user", user, 10, 5), new Quota("tenant", tenant, 100, 100));
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter.Algorithm;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter.Response;
+
+/**
+ * Measures the time {@link LocalRateLimiter} takes per request, for each algorithm, with
+ * few keys and with more keys than it keeps, which evicts a bucket for most requests.
+ * Run {@code main} from the test classpath, not part of the build.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class LocalRateLimiterBenchmark {
+
+	private static final int MAX_KEYS = 100_000;
+
+	@Param({"TOKEN_BUCKET", "GCRA", "SLIDING_WINDOW"})
+	private Algorithm algorithm;
+
+	// 1024 个限流键常驻内存，1000000 个限流键超过 maxKeys ，大部分请求需要淘汰
+	@Param({"1024", "1000000"})
+	private int keyCount;
+
+	private LocalRateLimiter rateLimiter;
+
+	private String[] keys;
+
+	@Setup
+	public void setup() {
+		this.rateLimiter = new LocalRateLimiter(null, MAX_KEYS);
+		this.rateLimiter.getConfig().put("myroute", new LocalRateLimiter.Config()
+				.setReplenishRate(1000).setBurstCapacity(100).setAlgorithm(this.algorithm));
+		this.keys = new String[this.keyCount];
+		for (int i = 0; i < this.keyCount; i++) {
+			this.keys[i] = "user" + i;
+		}
+	}
+
+	@Benchmark
+	public Response tryAcquire() {
+		String key = this.keys[ThreadLocalRandom.current().nextInt(this.keys.length)];
+		return this.rateLimiter.tryAcquire("myroute", key);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+				.include(LocalRateLimiterBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+}
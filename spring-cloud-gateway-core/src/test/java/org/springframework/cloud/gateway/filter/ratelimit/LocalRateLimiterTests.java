@@ -0,0 +1,287 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.springframework.cloud.gateway.event.FilterArgsEvent;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter.Response;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LocalRateLimiterTests {
+
+	private final AtomicLong clock = new AtomicLong();
+
+	private final LocalRateLimiter rateLimiter = new LocalRateLimiter(null, 32, clock::get);
+
+	@Test
+	public void burstThenSteadyRate() {
+		configure("myroute", 10, 20);
+
+		for (int i = 0; i < 20; i++) {
+			Response response = rateLimiter.isAllowed("myroute", "user").block();
+			assertThat(response.isAllowed()).as("Burst # %s is allowed", i).isTrue();
+			assertThat(response.getTokensRemaining()).isEqualTo(19 - i);
+		}
+		assertThat(rateLimiter.tryAcquire("myroute", "user").isAllowed()).isFalse();
+
+		clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+		assertThat(rateLimiter.tryAcquire("myroute", "user").isAllowed()).isTrue();
+		assertThat(rateLimiter.tryAcquire("myroute", "user").isAllowed()).isFalse();
+
+		// never more than the burst capacity
+		clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+		assertThat(rateLimiter.tryAcquire("myroute", "user").getTokensRemaining()).isEqualTo(19);
+	}
+
+	@Test
+	public void requestsTakeTheirCost() {
+		configure("myroute", 10, 20);
+
+		assertThat(rateLimiter.isAllowed("myroute", "user", 15).block().getTokensRemaining()).isEqualTo(5);
+		// a request costing more than what is left takes nothing
+		Response response = rateLimiter.tryAcquire("myroute", "user", 6);
+		assertThat(response.isAllowed()).isFalse();
+		assertThat(response.getTokensRemaining()).isEqualTo(5);
+		assertThat(rateLimiter.tryAcquire("myroute", "user", 5).isAllowed()).isTrue();
+
+		clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(300));
+		assertThat(rateLimiter.tryAcquire("myroute", "user", 3).isAllowed()).isTrue();
+		assertThat(rateLimiter.tryAcquire("myroute", "user").isAllowed()).isFalse();
+	}
+
+	@Test
+	public void keysAndRoutesHaveTheirOwnBuckets() {
+		configure("route1", 1, 1);
+		configure("route2", 1, 1);
+
+		assertThat(rateLimiter.tryAcquire("route1", "user1").isAllowed()).isTrue();
+		assertThat(rateLimiter.tryAcquire("route1", "user1").isAllowed()).isFalse();
+		assertThat(rateLimiter.tryAcquire("route1", "user2").isAllowed()).isTrue();
+		assertThat(rateLimiter.tryAcquire("route2", "user1").isAllowed()).isTrue();
+	}
+
+	@Test
+	public void usesDefaultConfig() {
+		LocalRateLimiter defaults = new LocalRateLimiter(1, 2);
+
+		assertThat(defaults.tryAcquire("anyroute", "user").isAllowed()).isTrue();
+		assertThat(defaults.tryAcquire("anyroute", "user").isAllowed()).isTrue();
+		assertThat(defaults.tryAcquire("anyroute", "user").isAllowed()).isFalse();
+	}
+
+	@Test
+	public void invalidConfigIsRejected() {
+		assertThatThrownBy(() -> new LocalRateLimiter(0, 2)).isInstanceOf(IllegalArgumentException.class);
+
+		// bound without a validator, the replenish rate is left at 0
+		Map<String, Object> args = new HashMap<>();
+		args.put("local-rate-limiter.burstCapacity", "7");
+		rateLimiter.onApplicationEvent(new FilterArgsEvent(this, "myroute", args));
+
+		assertThatThrownBy(() -> rateLimiter.tryAcquire("myroute", "user"))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("replenishRate");
+	}
+
+	@Test
+	public void configuredFromFilterArgs() {
+		Map<String, Object> args = new HashMap<>();
+		args.put("local-rate-limiter.replenishRate", "5");
+		args.put("local-rate-limiter.burstCapacity", "7");
+
+		rateLimiter.onApplicationEvent(new FilterArgsEvent(this, "myroute", args));
+
+		assertThat(rateLimiter.getConfig().get("myroute").getReplenishRate()).isEqualTo(5);
+		assertThat(rateLimiter.getConfig().get("myroute").getBurstCapacity()).isEqualTo(7);
+		assertThat(rateLimiter.getConfig().get("myroute").getAlgorithm()).isEqualTo(RateLimiter.Algorithm.TOKEN_BUCKET);
+	}
+
+	@Test
+	public void algorithmConfiguredFromFilterArgs() {
+		Map<String, Object> args = new HashMap<>();
+		args.put("local-rate-limiter.replenishRate", "5");
+		args.put("local-rate-limiter.burstCapacity", "7");
+		args.put("local-rate-limiter.algorithm", "sliding-window");
+
+		rateLimiter.onApplicationEvent(new FilterArgsEvent(this, "myroute", args));
+
+		assertThat(rateLimiter.getConfig().get("myroute").getAlgorithm()).isEqualTo(RateLimiter.Algorithm.SLIDING_WINDOW);
+	}
+
+	@Test
+	public void slidingWindowCountsTheRequestsOfTheLastWindow() {
+		// 20 requests in any 2 seconds
+		rateLimiter.getConfig().put("myroute", new LocalRateLimiter.Config()
+				.setReplenishRate(10)
+				.setBurstCapacity(20)
+				.setAlgorithm(RateLimiter.Algorithm.SLIDING_WINDOW));
+
+		for (int i = 0; i < 10; i++) {
+			assertThat(rateLimiter.tryAcquire("myroute", "user").getTokensRemaining()).isEqualTo(19 - i);
+		}
+		clock.set(TimeUnit.MILLISECONDS.toNanos(1000));
+		assertThat(rateLimiter.tryAcquire("myroute", "user", 10).isAllowed()).isTrue();
+
+		clock.set(TimeUnit.MILLISECONDS.toNanos(1999));
+		assertThat(rateLimiter.tryAcquire("myroute", "user").isAllowed()).isFalse();
+
+		// the first ten requests left the window
+		clock.set(TimeUnit.MILLISECONDS.toNanos(2000));
+		assertThat(rateLimiter.tryAcquire("myroute", "user", 11).isAllowed()).isFalse();
+		Response response = rateLimiter.tryAcquire("myroute", "user", 10);
+		assertThat(response.isAllowed()).isTrue();
+		assertThat(response.getTokensRemaining()).isZero();
+
+		clock.set(TimeUnit.MILLISECONDS.toNanos(2999));
+		assertThat(rateLimiter.tryAcquire("myroute", "user").isAllowed()).isFalse();
+		clock.set(TimeUnit.MILLISECONDS.toNanos(3000));
+		assertThat(rateLimiter.tryAcquire("myroute", "user").getTokensRemaining()).isEqualTo(9);
+	}
+
+	@Test
+	public void gcraPacesLikeTheTokenBucket() {
+		configure("bucket", 10, 20);
+		rateLimiter.getConfig().put("gcra", new LocalRateLimiter.Config()
+				.setReplenishRate(10)
+				.setBurstCapacity(20)
+				.setAlgorithm(RateLimiter.Algorithm.GCRA));
+
+		for (int i = 0; i < 100; i++) {
+			clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(37));
+			assertThat(rateLimiter.tryAcquire("gcra", "user").isAllowed())
+					.isEqualTo(rateLimiter.tryAcquire("bucket", "user").isAllowed());
+		}
+	}
+
+	@Test
+	public void fullBucketsAreDroppedFirst() {
+		configure("myroute", 10, 10);
+		for (int i = 0; i < 32; i++) {
+			rateLimiter.tryAcquire("myroute", "idle" + i);
+		}
+		clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+		for (int i = 0; i < 100; i++) {
+			rateLimiter.tryAcquire("myroute", "user" + i);
+		}
+
+		assertThat(rateLimiter.getKeyCount("myroute")).isLessThanOrEqualTo(32);
+	}
+
+	@Test
+	public void keyCountIsBoundedWhenNoBucketIsFull() {
+		configure("myroute", 1, 10);
+
+		for (int i = 0; i < 1000; i++) {
+			rateLimiter.tryAcquire("myroute", "user" + i);
+		}
+
+		assertThat(rateLimiter.getKeyCount("myroute")).isLessThanOrEqualTo(32);
+	}
+
+	@Test
+	public void slidingWindowKeysAreBoundedByTheirRequestTimes() {
+		LocalRateLimiter rateLimiter = new LocalRateLimiter(null, 1_000_000, clock::get);
+		int burstCapacity = LocalRateLimiter.MAX_WINDOW_SLOTS / 1000;
+		rateLimiter.getConfig().put("myroute", new LocalRateLimiter.Config()
+				.setReplenishRate(1)
+				.setBurstCapacity(burstCapacity)
+				.setAlgorithm(RateLimiter.Algorithm.SLIDING_WINDOW));
+
+		for (int i = 0; i < 2000; i++) {
+			rateLimiter.tryAcquire("myroute", "user" + i);
+		}
+
+		assertThat(rateLimiter.getKeyCount("myroute")).isLessThanOrEqualTo(1000);
+	}
+
+	@Test
+	public void slidingWindowBurstIsBoundedByTheRequestTimesOfAStripe() {
+		int burstCapacity = LocalRateLimiter.MAX_WINDOW_SLOTS / 16;
+		rateLimiter.getConfig().put("myroute", new LocalRateLimiter.Config()
+				.setReplenishRate(1)
+				.setBurstCapacity(burstCapacity + 1)
+				.setAlgorithm(RateLimiter.Algorithm.SLIDING_WINDOW));
+
+		assertThatThrownBy(() -> rateLimiter.tryAcquire("myroute", "user"))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("burstCapacity");
+
+		rateLimiter.getConfig().put("myroute", new LocalRateLimiter.Config()
+				.setReplenishRate(1)
+				.setBurstCapacity(burstCapacity)
+				.setAlgorithm(RateLimiter.Algorithm.SLIDING_WINDOW));
+		for (int i = 0; i < 20; i++) {
+			rateLimiter.tryAcquire("myroute", "user" + i);
+		}
+
+		// a window per stripe at most
+		assertThat((long) rateLimiter.getKeyCount("myroute") * burstCapacity)
+				.isLessThanOrEqualTo(LocalRateLimiter.MAX_WINDOW_SLOTS);
+	}
+
+	@Test
+	public void contendedKeyNeverExceedsBurst() throws Exception {
+		configure("myroute", 1, 1000);
+		int threads = 8;
+		AtomicInteger allowed = new AtomicInteger();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (int t = 0; t < threads; t++) {
+				executor.execute(() -> {
+					try {
+						start.await();
+					}
+					catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < 1000; i++) {
+						if (rateLimiter.tryAcquire("myroute", "hot").isAllowed()) {
+							allowed.incrementAndGet();
+						}
+					}
+				});
+			}
+			start.countDown();
+		}
+		finally {
+			executor.shutdown();
+			assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+		}
+
+		assertThat(allowed.get()).isEqualTo(1000);
+	}
+
+	private void configure(String routeId, int replenishRate, int burstCapacity) {
+		rateLimiter.getConfig().put(routeId, new LocalRateLimiter.Config()
+				.setReplenishRate(replenishRate)
+				.setBurstCapacity(burstCapacity));
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter.Algorithm;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.scripting.support.ResourceScriptSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assume.assumeThat;
+
+/**
+ * Runs the same simulated traffic through each {@link Algorithm}, in memory and, on a
+ * local Redis server, with its script, and compares the requests they allow. The clock
+ * is simulated, the Redis scripts are given the time of each request. The time the
+ * in-memory limiters take is measured by {@link LocalRateLimiterBenchmark}.
+ */
+public class RateLimiterAccuracyTests {
+
+	private static final int RATE = 10;
+
+	private static final int CAPACITY = 20;
+
+	// the window of the sliding window algorithm
+	private static final long WINDOW_MILLIS = 1000L * CAPACITY / RATE;
+
+	private LettuceConnectionFactory connectionFactory;
+
+	@After
+	public void cleanup() {
+		if (connectionFactory != null) {
+			connectionFactory.destroy();
+		}
+	}
+
+	@Test
+	public void steadyOverloadIsLimitedToTheRate() {
+		// four times the rate for 20 seconds
+		List<Long> traffic = new ArrayList<>();
+		for (long t = 0; t < 20_000; t += 25) {
+			traffic.add(t);
+		}
+
+		Map<Algorithm, List<Long>> allowed = runLocal(traffic);
+
+		// the burst capacity, then the tokens refilled until the last request
+		int refilled = (int) (traffic.get(traffic.size() - 1) * RATE / 1000);
+		assertThat(allowed.get(Algorithm.TOKEN_BUCKET)).hasSize(CAPACITY + refilled);
+		assertThat(allowed.get(Algorithm.GCRA)).hasSize(CAPACITY + refilled);
+		// the limit of every window
+		assertThat(allowed.get(Algorithm.SLIDING_WINDOW)).hasSize(CAPACITY * 10);
+	}
+
+	@Test
+	public void slidingWindowBoundsBurstsAfterIdlePeriods() {
+		// overloads of four seconds after idle periods, starting within a window
+		List<Long> traffic = new ArrayList<>();
+		for (long start = WINDOW_MILLIS * 3 / 4; start < 20_000; start += 8_000) {
+			for (long t = start; t < start + 4_000; t += 10) {
+				traffic.add(t);
+			}
+		}
+
+		Map<Algorithm, List<Long>> allowed = runLocal(traffic);
+
+		// a full bucket and the tokens refilled during the window
+		assertThat(maxInWindow(allowed.get(Algorithm.TOKEN_BUCKET))).isBetween(2 * CAPACITY - 1, 2 * CAPACITY);
+		assertThat(maxInWindow(allowed.get(Algorithm.GCRA))).isEqualTo(maxInWindow(allowed.get(Algorithm.TOKEN_BUCKET)));
+		// a fixed window would allow twice as many around its start
+		assertThat(maxInWindow(allowed.get(Algorithm.SLIDING_WINDOW))).isEqualTo(CAPACITY);
+	}
+
+	@Test
+	public void redisScriptsAllowTheSameRequests() {
+		assumeThat("Ignore on Circle",
+				System.getenv("CIRCLECI"), is(nullValue()));
+
+		List<Long> traffic = new ArrayList<>();
+		for (long t = 0; t < 10_000; t += 7 + t % 50) {
+			traffic.add(t);
+		}
+		connectionFactory = new LettuceConnectionFactory();
+		connectionFactory.afterPropertiesSet();
+		ReactiveRedisTemplate<String, String> redisTemplate = new ReactiveRedisTemplate<>(connectionFactory,
+				RedisSerializationContext.string());
+
+		Map<Algorithm, List<Long>> local = runLocal(traffic);
+		Map<Algorithm, String> scripts = new EnumMap<>(Algorithm.class);
+		scripts.put(Algorithm.TOKEN_BUCKET, "request_rate_limiter_v2.lua");
+		scripts.put(Algorithm.GCRA, "request_rate_gcra.lua");
+		scripts.put(Algorithm.SLIDING_WINDOW, "request_rate_sliding_window.lua");
+
+		scripts.forEach((algorithm, name) -> {
+			RedisScript<List<Long>> script = script(name);
+			List<String> keys = Collections.singletonList("request_rate_accuracy.{" + UUID.randomUUID() + "}");
+			List<Long> allowed = run(traffic, now -> redisTemplate.execute(script, keys,
+					Arrays.asList(RATE + "", CAPACITY + "", now + "", "1")).blockFirst().get(0) == 1L);
+
+			// the scripts count milliseconds, the local limiters nanoseconds
+			assertThat(allowed.size()).as(algorithm.toString())
+					.isCloseTo(local.get(algorithm).size(), within(2));
+		});
+	}
+
+	private Map<Algorithm, List<Long>> runLocal(List<Long> traffic) {
+		Map<Algorithm, List<Long>> allowed = new EnumMap<>(Algorithm.class);
+		for (Algorithm algorithm : Algorithm.values()) {
+			AtomicLong clock = new AtomicLong();
+			LocalRateLimiter rateLimiter = new LocalRateLimiter(null, 16, clock::get);
+			rateLimiter.getConfig().put("myroute", new LocalRateLimiter.Config()
+					.setReplenishRate(RATE).setBurstCapacity(CAPACITY).setAlgorithm(algorithm));
+			allowed.put(algorithm, run(traffic, now -> {
+				clock.set(TimeUnit.MILLISECONDS.toNanos(now));
+				return rateLimiter.tryAcquire("myroute", "user").isAllowed();
+			}));
+		}
+		return allowed;
+	}
+
+	private static List<Long> run(List<Long> traffic, Limiter limiter) {
+		List<Long> allowed = new ArrayList<>();
+		for (long now : traffic) {
+			if (limiter.tryAcquire(now)) {
+				allowed.add(now);
+			}
+		}
+		return allowed;
+	}
+
+	/**
+	 * @return the most requests allowed in a window of the sliding window algorithm
+	 */
+	private static int maxInWindow(List<Long> allowed) {
+		int max = 0;
+		int first = 0;
+		for (int last = 0; last < allowed.size(); last++) {
+			while (allowed.get(last) - allowed.get(first) >= WINDOW_MILLIS) {
+				first++;
+			}
+			max = Math.max(max, last - first + 1);
+		}
+		return max;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static RedisScript<List<Long>> script(String name) {
+		DefaultRedisScript redisScript = new DefaultRedisScript<>();
+		redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("META-INF/scripts/" + name)));
+		redisScript.setResultType(List.class);
+		return redisScript;
+	}
+
+	private interface Limiter {
+		boolean tryAcquire(long nowMillis);
+	}
+}
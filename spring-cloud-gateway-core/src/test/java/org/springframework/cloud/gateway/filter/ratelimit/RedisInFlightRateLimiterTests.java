@@ -0,0 +1,165 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter.Permit;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter.Response;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import reactor.core.publisher.Flux;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RedisInFlightRateLimiterTests {
+
+	@SuppressWarnings("unchecked")
+	private final ReactiveRedisTemplate<String, String> redisTemplate = mock(ReactiveRedisTemplate.class);
+
+	private final VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+
+	@SuppressWarnings("unchecked")
+	private final RedisInFlightRateLimiter rateLimiter = new RedisInFlightRateLimiter(redisTemplate,
+			mock(RedisScript.class), null, scheduler);
+
+	// the permits leased in Redis
+	private final Set<String> permits = ConcurrentHashMap.newKeySet();
+
+	private final List<String> operations = new ArrayList<>();
+
+	private volatile List<String> lastKeys;
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setup() {
+		rateLimiter.setLeaseDuration(Duration.ofSeconds(3));
+		rateLimiter.getConfig().put("myroute", new RedisInFlightRateLimiter.Config().setMaxInFlight(2));
+		when(redisTemplate.execute(any(RedisScript.class), anyList(), anyList())).thenAnswer(invocation -> {
+			lastKeys = invocation.getArgument(1);
+			List<String> args = invocation.getArgument(2);
+			String operation = args.get(0);
+			int max = Integer.parseInt(args.get(1));
+			String permit = args.get(4);
+			operations.add(operation);
+			long succeeded = 1;
+			if (operation.equals("release")) {
+				permits.remove(permit);
+			}
+			else if (operation.equals("renew")) {
+				succeeded = permits.contains(permit) ? 1 : 0;
+			}
+			else if (permits.size() < max) {
+				permits.add(permit);
+			}
+			else {
+				succeeded = 0;
+			}
+			return Flux.just(Arrays.asList(succeeded, (long) (max - permits.size())));
+		});
+	}
+
+	@After
+	public void cleanup() {
+		scheduler.dispose();
+	}
+
+	@Test
+	public void permitsAreLeasedPerKey() {
+		Response first = rateLimiter.isAllowed("myroute", "user").block();
+		Response second = rateLimiter.isAllowed("myroute", "user").block();
+		Response third = rateLimiter.isAllowed("myroute", "user").block();
+
+		assertThat(first).isInstanceOf(Permit.class);
+		assertThat(second.getTokensRemaining()).isZero();
+		assertThat(third.isAllowed()).isFalse();
+		assertThat(lastKeys).containsExactly("request_in_flight.{user}");
+
+		((Permit) first).release();
+
+		assertThat(permits).hasSize(1);
+		assertThat(rateLimiter.isAllowed("myroute", "user").block().isAllowed()).isTrue();
+	}
+
+	@Test
+	public void leasesAreRenewedUntilReleased() {
+		Permit permit = (Permit) rateLimiter.isAllowed("myroute", "user").block();
+
+		scheduler.advanceTimeBy(Duration.ofSeconds(5));
+		assertThat(operations).containsExactly("acquire", "renew", "renew");
+
+		permit.release();
+		scheduler.advanceTimeBy(Duration.ofSeconds(10));
+
+		assertThat(operations).containsExactly("acquire", "renew", "renew", "release");
+		assertThat(permits).isEmpty();
+	}
+
+	@Test
+	public void renewalsStopWhenLeaseExpired() {
+		rateLimiter.isAllowed("myroute", "user").block();
+
+		// the lease expired in Redis, its permits may have been taken
+		permits.clear();
+		scheduler.advanceTimeBy(Duration.ofSeconds(10));
+
+		assertThat(operations).containsExactly("acquire", "renew");
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void permitsAreReleasedWhenCancelledBeforeDelivered() {
+		when(redisTemplate.execute(any(RedisScript.class), anyList(), anyList())).thenAnswer(invocation -> {
+			List<String> args = invocation.getArgument(2);
+			operations.add(args.get(0));
+			// the reply to acquire is still on its way
+			return args.get(0).equals("acquire") ? Flux.never() : Flux.just(Arrays.asList(1L, 1L));
+		});
+
+		rateLimiter.isAllowed("myroute", "user").subscribe().dispose();
+
+		assertThat(operations).containsExactly("acquire", "release");
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void allowedWhenRedisFails() {
+		when(redisTemplate.execute(any(RedisScript.class), anyList(), anyList()))
+				.thenReturn(Flux.error(new RedisConnectionFailureException("down")));
+
+		Response response = rateLimiter.isAllowed("myroute", "user").block();
+
+		assertThat(response.isAllowed()).isTrue();
+		assertThat(response).isNotInstanceOf(Permit.class);
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.cloud.gateway.filter.ratelimit.QuotaLimiter.Quota;
+import org.springframework.cloud.gateway.filter.ratelimit.QuotaLimiter.Response;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import reactor.core.publisher.Flux;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RedisQuotaLimiterTests {
+
+	@SuppressWarnings("unchecked")
+	private final ReactiveRedisTemplate<String, String> redisTemplate = mock(ReactiveRedisTemplate.class);
+
+	@SuppressWarnings("unchecked")
+	private final RedisQuotaLimiter quotaLimiter = new RedisQuotaLimiter(redisTemplate, mock(RedisScript.class));
+
+	private final List<Quota> quotas = Arrays.asList(new Quota("user", "user1", 10, 20),
+			new Quota("tenant", "tenant1", 100, 200));
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void allQuotasInOneScriptCall() {
+		when(redisTemplate.execute(any(RedisScript.class), anyList(), anyList()))
+				.thenReturn(Flux.just(Arrays.asList(1L, 0L, 17L, 197L)));
+
+		Response response = quotaLimiter.isAllowed("myroute", quotas, 3).block();
+
+		assertThat(response.isAllowed()).isTrue();
+		assertThat(response.getDeniedBy()).isNull();
+		assertThat(response.getTokensRemaining()).containsExactly(17L, 197L);
+
+		ArgumentCaptor<List> keys = ArgumentCaptor.forClass(List.class);
+		ArgumentCaptor<List> args = ArgumentCaptor.forClass(List.class);
+		verify(redisTemplate).execute(any(RedisScript.class), keys.capture(), args.capture());
+		assertThat(keys.getValue()).containsExactly("request_quota.myroute.user.user1",
+				"request_quota.myroute.tenant.tenant1");
+		assertThat(args.getValue()).hasSize(6);
+		assertThat(args.getValue().get(0)).isEqualTo("3");
+		assertThat(args.getValue().subList(2, 6)).containsExactly("10", "20", "100", "200");
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void deniedByIsTheQuotaOfTheReturnedIndex() {
+		when(redisTemplate.execute(any(RedisScript.class), anyList(), anyList()))
+				.thenReturn(Flux.just(Arrays.asList(0L, 2L, 17L, 0L)));
+
+		Response response = quotaLimiter.isAllowed("myroute", quotas, 1).block();
+
+		assertThat(response.isAllowed()).isFalse();
+		assertThat(response.getDeniedBy()).isEqualTo("tenant");
+	}
+
+	@Test
+	public void hashTagPutsKeysInOneSlot() {
+		quotaLimiter.setHashTag("quota");
+
+		assertThat(quotaLimiter.getKey("myroute", quotas.get(0))).isEqualTo("{quota}.request_quota.myroute.user.user1");
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void allowedWhenRedisFails() {
+		when(redisTemplate.execute(any(RedisScript.class), anyList(), anyList()))
+				.thenReturn(Flux.error(new RedisConnectionFailureException("down")));
+
+		Response response = quotaLimiter.isAllowed("myroute", quotas, 1).block();
+
+		assertThat(response.isAllowed()).isTrue();
+		assertThat(response.getTokensRemaining()).containsExactly(-1L, -1L);
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter.Response;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RedisRateLimiterBatcherTests {
+
+	@SuppressWarnings("unchecked")
+	private final ReactiveRedisTemplate<String, String> redisTemplate = mock(ReactiveRedisTemplate.class);
+
+	@SuppressWarnings("unchecked")
+	private final RedisScript<List<Long>> script = mock(RedisScript.class);
+
+	private final VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+
+	private final List<List<String>> batches = new ArrayList<>();
+
+	private final AtomicInteger tokens = new AtomicInteger();
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setup() {
+		// a single bucket, each call of the batch takes a token in turn
+		when(redisTemplate.execute(any(RedisScript.class), anyList(), anyList())).thenAnswer(invocation -> {
+			List<String> keys = invocation.getArgument(1);
+			batches.add(keys);
+			List<Long> results = new ArrayList<>();
+			for (int i = 0; i < keys.size() / 2; i++) {
+				boolean allowed = tokens.get() > 0 && tokens.decrementAndGet() >= 0;
+				results.add(allowed ? 1L : 0L);
+				results.add((long) tokens.get());
+			}
+			return Flux.just(results);
+		});
+	}
+
+	@Test
+	public void concurrentCallsAreSentInOneBatch() {
+		tokens.set(3);
+		RedisRateLimiter rateLimiter = rateLimiter(10, Duration.ofMillis(1));
+
+		List<Mono<Response>> responses = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			responses.add(rateLimiter.isAllowed("myroute", "user" + i).toProcessor());
+		}
+		assertThat(batches).isEmpty();
+
+		scheduler.advanceTimeBy(Duration.ofMillis(1));
+
+		assertThat(batches).hasSize(1);
+		assertThat(batches.get(0)).hasSize(10).startsWith("request_rate_limiter.user0.tokens",
+				"request_rate_limiter.user0.timestamp", "request_rate_limiter.user1.tokens");
+		// the results are fanned out in the order of the calls
+		assertThat(responses).extracting(response -> response.block().isAllowed())
+				.containsExactly(true, true, true, false, false);
+		assertThat(responses.get(1).block().getTokensRemaining()).isEqualTo(1);
+	}
+
+	@Test
+	public void fullBatchIsSentWithoutWaiting() {
+		tokens.set(10);
+		RedisRateLimiter rateLimiter = rateLimiter(2, Duration.ofSeconds(1));
+
+		Mono<Response> first = rateLimiter.isAllowed("myroute", "user").toProcessor();
+		Mono<Response> second = rateLimiter.isAllowed("myroute", "user").toProcessor();
+		Mono<Response> third = rateLimiter.isAllowed("myroute", "user").toProcessor();
+
+		assertThat(batches).hasSize(1);
+		assertThat(first.block().isAllowed()).isTrue();
+		assertThat(second.block().isAllowed()).isTrue();
+
+		scheduler.advanceTimeBy(Duration.ofSeconds(1));
+
+		assertThat(batches).hasSize(2);
+		assertThat(batches.get(1)).hasSize(2);
+		assertThat(third.block().isAllowed()).isTrue();
+	}
+
+	@Test
+	public void callIsQueuedOnSubscription() {
+		tokens.set(10);
+		RedisRateLimiter rateLimiter = rateLimiter(1, Duration.ofMillis(1));
+
+		Mono<Response> response = rateLimiter.isAllowed("myroute", "user");
+		assertThat(batches).isEmpty();
+
+		assertThat(response.block().isAllowed()).isTrue();
+		assertThat(batches).hasSize(1);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void batchAllowedWhenRedisFails() {
+		when(redisTemplate.execute(any(RedisScript.class), anyList(), anyList()))
+				.thenReturn(Flux.error(new RedisConnectionFailureException("down")));
+		RedisRateLimiter rateLimiter = rateLimiter(10, Duration.ofMillis(1));
+
+		Mono<Response> first = rateLimiter.isAllowed("myroute", "user1").toProcessor();
+		Mono<Response> second = rateLimiter.isAllowed("myroute", "user2").toProcessor();
+		scheduler.advanceTimeBy(Duration.ofMillis(1));
+
+		assertThat(first.block().isAllowed()).isTrue();
+		assertThat(second.block().getTokensRemaining()).isEqualTo(-1);
+	}
+
+	private RedisRateLimiter rateLimiter(int maxSize, Duration window) {
+		RedisRateLimiter rateLimiter = new RedisRateLimiter(redisTemplate, script, null);
+		rateLimiter.setBatcher(new RedisRateLimiterBatcher(redisTemplate, script, maxSize, window, scheduler));
+		rateLimiter.getConfig().put("myroute", new RedisRateLimiter.Config()
+				.setReplenishRate(10)
+				.setBurstCapacity(20));
+		return rateLimiter;
+	}
+}
@@ -60,6 +60,15 @@ public class RedisRateLimiterConfigTests {
 				false);
 	}
 
+	@Test
+	public void redisRateAlgorithmConfiguredFromEnvironment() {
+		assertFilter("redis_rate_limiter_gcra_config_test", 5, 15, false);
+		assertThat(rateLimiter.getConfig().get("redis_rate_limiter_gcra_config_test").getAlgorithm())
+				.isEqualTo(RateLimiter.Algorithm.GCRA);
+		assertThat(rateLimiter.getConfig().get("redis_rate_limiter_config_test").getAlgorithm())
+				.isEqualTo(RateLimiter.Algorithm.TOKEN_BUCKET);
+	}
+
 	@Test
 	public void redisRateConfiguredFromJavaAPI() {
 		assertFilter("custom_redis_rate_limiter", 20, 40,
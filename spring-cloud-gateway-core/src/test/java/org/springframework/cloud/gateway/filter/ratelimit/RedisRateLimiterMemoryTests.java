@@ -0,0 +1,155 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.ratelimit;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.ReactiveRedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.scripting.support.ResourceScriptSource;
+
+import reactor.core.publisher.Flux;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assume.assumeThat;
+
+/**
+ * Compares the memory used by Redis for the buckets of both script versions, and of
+ * the GCRA script. Writes a million buckets of each to database 15 of a local Redis
+ * server, run with {@code -Dredis.memory.benchmark=true},
+ * {@code -Dredis.memory.benchmark.buckets} changes the number of buckets.
+ */
+public class RedisRateLimiterMemoryTests {
+
+	private static final Log log = LogFactory.getLog(RedisRateLimiterMemoryTests.class);
+
+	private static final int DATABASE = 15;
+
+	private LettuceConnectionFactory connectionFactory;
+
+	private ReactiveRedisTemplate<String, String> redisTemplate;
+
+	@Before
+	public void setup() {
+		assumeThat("Ignore on Circle",
+				System.getenv("CIRCLECI"), is(nullValue()));
+		assumeThat(System.getProperty("redis.memory.benchmark"), is(notNullValue()));
+
+		LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory();
+		connectionFactory.setDatabase(DATABASE);
+		connectionFactory.afterPropertiesSet();
+		if (dbSize(connectionFactory) > 0) {
+			// never flush a database in use
+			connectionFactory.destroy();
+			assumeThat("database " + DATABASE + " is empty", false, is(true));
+		}
+		this.connectionFactory = connectionFactory;
+		this.redisTemplate = new ReactiveRedisTemplate<>(connectionFactory, RedisSerializationContext.string());
+	}
+
+	@After
+	public void cleanup() {
+		if (connectionFactory != null) {
+			flushDb();
+			connectionFactory.destroy();
+		}
+	}
+
+	@Test
+	public void version2UsesLessMemory() {
+		int buckets = Integer.getInteger("redis.memory.benchmark.buckets", 1_000_000);
+		String now = System.currentTimeMillis() / 1000 + "";
+
+		long v1 = usedMemory(buckets, script("request_rate_limiter.lua"), id -> new String[] {
+				"request_rate_limiter." + id + ".tokens", "request_rate_limiter." + id + ".timestamp" }, now);
+		long v2 = usedMemory(buckets, script("request_rate_limiter_v2.lua"), id -> new String[] {
+				"request_rate_limiter.{" + id + "}" }, now + "000");
+
+		log.info(String.format("Redis memory per million buckets: version 1 %d MB, version 2 %d MB",
+				v1 * 1_000_000L / buckets >> 20, v2 * 1_000_000L / buckets >> 20));
+		assertThat(v2).isLessThan(v1);
+	}
+
+	@Test
+	public void gcraUsesLessMemoryThanVersion2() {
+		int buckets = Integer.getInteger("redis.memory.benchmark.buckets", 1_000_000);
+		String now = System.currentTimeMillis() + "";
+
+		long v2 = usedMemory(buckets, script("request_rate_limiter_v2.lua"), id -> new String[] {
+				"request_rate_limiter.{" + id + "}" }, now);
+		long gcra = usedMemory(buckets, script("request_rate_gcra.lua"), id -> new String[] {
+				"request_rate_gcra.{" + id + "}" }, now);
+
+		log.info(String.format("Redis memory per million buckets: version 2 %d MB, GCRA %d MB",
+				v2 * 1_000_000L / buckets >> 20, gcra * 1_000_000L / buckets >> 20));
+		assertThat(gcra).isLessThan(v2);
+	}
+
+	private long usedMemory(int buckets, RedisScript<List<Long>> script, Function<String, String[]> keys,
+			String now) {
+		flushDb();
+		long before = usedMemory();
+		Flux.range(0, buckets)
+				.flatMap(i -> redisTemplate.execute(script, Arrays.asList(keys.apply(UUID.randomUUID().toString())),
+						Arrays.asList("10", "3600", now, "1")), 256)
+				.blockLast();
+		return usedMemory() - before;
+	}
+
+	@SuppressWarnings("unchecked")
+	private RedisScript<List<Long>> script(String name) {
+		DefaultRedisScript redisScript = new DefaultRedisScript<>();
+		redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("META-INF/scripts/" + name)));
+		redisScript.setResultType(List.class);
+		return redisScript;
+	}
+
+	private long usedMemory() {
+		try (ReactiveRedisConnection connection = connectionFactory.getReactiveConnection()) {
+			return Long.parseLong(connection.serverCommands().info("memory").block().getProperty("used_memory"));
+		}
+	}
+
+	private static long dbSize(LettuceConnectionFactory connectionFactory) {
+		try (ReactiveRedisConnection connection = connectionFactory.getReactiveConnection()) {
+			return connection.serverCommands().dbSize().block();
+		}
+	}
+
+	private void flushDb() {
+		try (ReactiveRedisConnection connection = connectionFactory.getReactiveConnection()) {
+			connection.serverCommands().flushDb().block();
+		}
+	}
+}
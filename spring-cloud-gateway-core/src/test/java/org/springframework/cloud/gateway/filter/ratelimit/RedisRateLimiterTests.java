@@ -1,16 +1,20 @@
 package org.springframework.cloud.gateway.filter.ratelimit;
 
+import java.util.List;
 import java.util.UUID;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.SpringBootConfiguration;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter.Response;
 import org.springframework.cloud.gateway.test.BaseWebClientTests;
 import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.tuple.Tuple;
@@ -33,6 +37,13 @@ public class RedisRateLimiterTests extends BaseWebClientTests {
 	@Autowired
 	private RedisRateLimiter rateLimiter;
 
+	@Autowired
+	private ReactiveRedisTemplate<String, String> redisTemplate;
+
+	@Autowired
+	@Qualifier(RedisRateLimiter.REDIS_SCRIPT_V2_NAME)
+	private RedisScript<List<Long>> scriptV2;
+
 	@Test
 	public void redisRateLimiterWorks() throws Exception {
 		assumeThat("Ignore on Circle",
@@ -72,6 +83,106 @@ public class RedisRateLimiterTests extends BaseWebClientTests {
 		assertThat(response.isAllowed()).as("steady state # %s is allowed", replenishRate).isFalse();
 	}
 
+	@Test
+	public void redisRateLimiterV2Works() throws Exception {
+		assumeThat("Ignore on Circle",
+				System.getenv("CIRCLECI"), is(nullValue()));
+
+		String id = UUID.randomUUID().toString();
+		RedisRateLimiter rateLimiter = rateLimiterV2(10, false);
+
+		for (int i = 0; i < 20; i++) {
+			Response response = rateLimiter.isAllowed("myroute", id).block();
+			assertThat(response.isAllowed()).as("Burst # %s is allowed", i).isTrue();
+		}
+		assertThat(rateLimiter.isAllowed("myroute", id).block().isAllowed()).isFalse();
+		assertThat(redisTemplate.hasKey("request_rate_limiter.{" + id + "}").block()).isTrue();
+
+		// tokens are refilled every 100ms, not once a second
+		Thread.sleep(250);
+		assertThat(rateLimiter.isAllowed("myroute", id).block().isAllowed()).isTrue();
+		assertThat(rateLimiter.isAllowed("myroute", id).block().isAllowed()).isTrue();
+		assertThat(rateLimiter.isAllowed("myroute", id).block().isAllowed()).isFalse();
+	}
+
+	@Test
+	public void redisRateLimiterV2MigratesKeys() {
+		assumeThat("Ignore on Circle",
+				System.getenv("CIRCLECI"), is(nullValue()));
+
+		String id = UUID.randomUUID().toString();
+		rateLimiter.getConfig().put("myroute", new RedisRateLimiter.Config()
+				.setBurstCapacity(20)
+				.setReplenishRate(1));
+		for (int i = 0; i < 20; i++) {
+			rateLimiter.isAllowed("myroute", id).block();
+		}
+
+		Response response = rateLimiterV2(1, true).isAllowed("myroute", id).block();
+
+		// a new bucket would have 19 tokens left, the version 1 timestamp is in seconds
+		// so that up to a second of tokens may be added
+		assertThat(response.getTokensRemaining()).isLessThan(5);
+		assertThat(redisTemplate.hasKey("request_rate_limiter." + id + ".tokens").block()).isFalse();
+	}
+
+	@Test
+	public void redisRateLimiterGcraWorks() throws Exception {
+		assumeThat("Ignore on Circle",
+				System.getenv("CIRCLECI"), is(nullValue()));
+
+		String id = UUID.randomUUID().toString();
+		rateLimiter.getConfig().put("gcraroute", new RedisRateLimiter.Config()
+				.setBurstCapacity(20)
+				.setReplenishRate(10)
+				.setAlgorithm(RateLimiter.Algorithm.GCRA));
+
+		for (int i = 0; i < 20; i++) {
+			Response response = rateLimiter.isAllowed("gcraroute", id).block();
+			assertThat(response.isAllowed()).as("Burst # %s is allowed", i).isTrue();
+			assertThat(response.getTokensRemaining()).isEqualTo(19 - i);
+		}
+		assertThat(rateLimiter.isAllowed("gcraroute", id).block().isAllowed()).isFalse();
+		// a single timestamp per key
+		assertThat(redisTemplate.opsForValue().get("request_rate_gcra.{" + id + "}").block()).isNotNull();
+
+		Thread.sleep(250);
+		assertThat(rateLimiter.isAllowed("gcraroute", id).block().isAllowed()).isTrue();
+		assertThat(rateLimiter.isAllowed("gcraroute", id).block().isAllowed()).isTrue();
+		assertThat(rateLimiter.isAllowed("gcraroute", id).block().isAllowed()).isFalse();
+	}
+
+	@Test
+	public void redisRateLimiterSlidingWindowWorks() {
+		assumeThat("Ignore on Circle",
+				System.getenv("CIRCLECI"), is(nullValue()));
+
+		String id = UUID.randomUUID().toString();
+		// 20 requests in any 2 seconds
+		rateLimiter.getConfig().put("slidingroute", new RedisRateLimiter.Config()
+				.setBurstCapacity(20)
+				.setReplenishRate(10)
+				.setAlgorithm(RateLimiter.Algorithm.SLIDING_WINDOW));
+
+		for (int i = 0; i < 20; i++) {
+			Response response = rateLimiter.isAllowed("slidingroute", id).block();
+			assertThat(response.isAllowed()).as("Request # %s is allowed", i).isTrue();
+			assertThat(response.getTokensRemaining()).isEqualTo(19 - i);
+		}
+		assertThat(rateLimiter.isAllowed("slidingroute", id).block().isAllowed()).isFalse();
+		assertThat(redisTemplate.opsForZSet().size("request_rate_sliding_window.{" + id + "}").block()).isEqualTo(20);
+	}
+
+	private RedisRateLimiter rateLimiterV2(int replenishRate, boolean migrateKeys) {
+		RedisRateLimiter rateLimiter = new RedisRateLimiter(redisTemplate, scriptV2, null);
+		rateLimiter.setScriptVersion(2);
+		rateLimiter.setMigrateKeys(migrateKeys);
+		rateLimiter.getConfig().put("myroute", new RedisRateLimiter.Config()
+				.setBurstCapacity(20)
+				.setReplenishRate(replenishRate));
+		return rateLimiter;
+	}
+
 	@EnableAutoConfiguration
 	@SpringBootConfiguration
 	@Import(BaseWebClientTests.DefaultTestConfig.class)
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.shedding;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cloud.gateway.filter.shedding.LoadSheddingWebFilter.Priority;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LoadSheddingWebFilterTests {
+
+	private double saturation;
+
+	private final SaturationMonitor monitor = new SaturationMonitor(null, Duration.ZERO, 1.0,
+			Duration.ofMillis(100), System::nanoTime, () -> saturation);
+
+	private final LoadSheddingWebFilter filter = new LoadSheddingWebFilter(monitor);
+
+	private int calls;
+
+	@Before
+	public void setup() {
+		filter.setPriorityHeader("X-Request-Priority");
+		Map<Priority, List<String>> paths = new EnumMap<>(Priority.class);
+		paths.put(Priority.LOW, Collections.singletonList("/reports/**"));
+		paths.put(Priority.CRITICAL, Arrays.asList("/payments/**", "/reports/critical"));
+		filter.setPriorityPaths(paths);
+	}
+
+	@Test
+	public void classifiesRequests() {
+		assertThat(filter.priorityOf(MockServerHttpRequest.get("/reports/daily").build())).isEqualTo(Priority.LOW);
+		assertThat(filter.priorityOf(MockServerHttpRequest.get("/payments/1").build())).isEqualTo(Priority.CRITICAL);
+		// higher priorities are matched first
+		assertThat(filter.priorityOf(MockServerHttpRequest.get("/reports/critical").build()))
+				.isEqualTo(Priority.CRITICAL);
+		assertThat(filter.priorityOf(MockServerHttpRequest.get("/users").build())).isEqualTo(Priority.NORMAL);
+		assertThat(filter.priorityOf(MockServerHttpRequest.get("/reports/daily")
+				.header("X-Request-Priority", "high").build())).isEqualTo(Priority.HIGH);
+		assertThat(filter.priorityOf(MockServerHttpRequest.get("/users")
+				.header("X-Request-Priority", "unknown").build())).isEqualTo(Priority.NORMAL);
+	}
+
+	@Test
+	public void priorityHeaderIsIgnoredUnlessConfigured() {
+		LoadSheddingWebFilter filter = new LoadSheddingWebFilter(monitor);
+
+		assertThat(filter.priorityOf(MockServerHttpRequest.get("/users")
+				.header("X-Request-Priority", "critical").build())).isEqualTo(Priority.NORMAL);
+	}
+
+	@Test
+	public void passesWhenNotSaturated() {
+		MockServerWebExchange exchange = exchange("/reports/daily");
+
+		filter(exchange);
+
+		assertThat(calls).isEqualTo(1);
+		assertThat(exchange.getResponse().getStatusCode()).isNull();
+	}
+
+	@Test
+	public void shedsLowestPrioritiesFirst() {
+		saturation = 0.7;
+		monitor.probe();
+
+		MockServerWebExchange low = exchange("/reports/daily");
+		filter(low);
+		filter(exchange("/users"));
+
+		assertThat(low.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+		assertThat(low.getResponse().getHeaders().getFirst("Retry-After")).isEqualTo("1");
+		assertThat(calls).isEqualTo(1);
+		assertThat(filter.getShed(Priority.LOW)).isEqualTo(1);
+		assertThat(filter.getShed(Priority.NORMAL)).isZero();
+	}
+
+	@Test
+	public void criticalRequestsAreNeverShedByDefault() {
+		saturation = 10;
+		monitor.probe();
+
+		filter(exchange("/users"));
+		filter(exchange("/payments/1"));
+
+		assertThat(calls).isEqualTo(1);
+	}
+
+	@Test
+	public void thresholdsAreConfigurable() {
+		filter.setThresholds(Collections.singletonMap(Priority.CRITICAL, 5.0));
+		saturation = 10;
+		monitor.probe();
+
+		filter(exchange("/payments/1"));
+
+		assertThat(calls).isZero();
+	}
+
+	@Test
+	public void countsRequestsInFlight() {
+		filter.setMaxInFlight(10);
+		MonoProcessor<Void> pending = MonoProcessor.create();
+		for (int i = 0; i < 6; i++) {
+			filter.filter(exchange("/users"), exchange -> pending).subscribe();
+		}
+
+		// 6 of 10 in flight reach the threshold of LOW, not the one of NORMAL
+		filter(exchange("/reports/daily"));
+		filter(exchange("/users"));
+		assertThat(calls).isEqualTo(1);
+
+		pending.onComplete();
+		filter(exchange("/reports/daily"));
+		assertThat(calls).isEqualTo(2);
+	}
+
+	private void filter(MockServerWebExchange exchange) {
+		filter.filter(exchange, e -> {
+			calls++;
+			return Mono.empty();
+		}).block();
+	}
+
+	private static MockServerWebExchange exchange(String path) {
+		return MockServerWebExchange.from(MockServerHttpRequest.get(path).build());
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.filter.shedding;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class SaturationMonitorTests {
+
+	private static final long MS = 1_000_000;
+
+	private final AtomicLong clock = new AtomicLong(1);
+
+	private final ManualLoop loop1 = new ManualLoop();
+
+	private final ManualLoop loop2 = new ManualLoop();
+
+	private double directMemoryRatio;
+
+	private final SaturationMonitor monitor = new SaturationMonitor(Arrays.asList(loop1, loop2),
+			Duration.ofMillis(100), 0.8, Duration.ofMillis(100), clock::get, () -> directMemoryRatio);
+
+	@Test
+	public void idleGatewayIsNotSaturated() {
+		monitor.probe();
+		loop1.runAll();
+		loop2.runAll();
+		clock.addAndGet(100 * MS);
+
+		monitor.probe();
+
+		assertThat(monitor.getSaturation()).isZero();
+	}
+
+	@Test
+	public void measuresLagOfSlowLoop() {
+		monitor.probe();
+		loop1.runAll();
+		clock.addAndGet(50 * MS);
+		loop2.runAll();
+
+		monitor.probe();
+
+		assertThat(monitor.getSaturation()).isCloseTo(0.5, within(0.01));
+		assertThat(monitor.getEventLoopLag()).isEqualTo(Duration.ofMillis(50));
+	}
+
+	@Test
+	public void blockedLoopLagsSinceItsProbe() {
+		monitor.probe();
+		loop1.runAll();
+		clock.addAndGet(200 * MS);
+
+		monitor.probe();
+
+		assertThat(monitor.getSaturation()).isCloseTo(2.0, within(0.01));
+		// the blocked loop is not probed again until it ran the pending probe
+		assertThat(loop2.tasks).hasSize(1);
+	}
+
+	@Test
+	public void measuresDirectMemory() {
+		directMemoryRatio = 0.4;
+
+		monitor.probe();
+
+		assertThat(monitor.getSaturation()).isCloseTo(0.5, within(0.01));
+	}
+
+	@Test
+	public void saturationDecaysByHalves() {
+		directMemoryRatio = 0.8;
+		monitor.probe();
+		directMemoryRatio = 0;
+
+		monitor.probe();
+		assertThat(monitor.getSaturation()).isCloseTo(0.5, within(0.01));
+		monitor.probe();
+		assertThat(monitor.getSaturation()).isCloseTo(0.25, within(0.01));
+	}
+
+	private static class ManualLoop implements Executor {
+
+		private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+		@Override
+		public void execute(Runnable command) {
+			tasks.add(command);
+		}
+
+		void runAll() {
+			Runnable task;
+			while ((task = tasks.poll()) != null) {
+				task.run();
+			}
+		}
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.gateway.loadbalancer.ActiveHealthChecker.Status;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ActiveHealthCheckerTests {
+
+	private final ServiceInstance instance1 = new DefaultServiceInstance("service1", "host1", 8080, false);
+
+	private final ServiceInstance instance2 = new DefaultServiceInstance("service1", "host2", 8080, false);
+
+	private final Map<String, Mono<Boolean>> results = new ConcurrentHashMap<>();
+
+	private final ActiveHealthChecker.Config config = new ActiveHealthChecker.Config();
+
+	private final AtomicLong clock = new AtomicLong();
+
+	private final ActiveHealthChecker checker = new ActiveHealthChecker(
+			target -> results.getOrDefault(target.getHost(), Mono.just(true)), config, Flux::empty, clock::get);
+
+	@Test
+	public void targetIsDownAfterUnhealthyThreshold() {
+		assertThat(checker.isHealthy(URI.create("http://host1:8080/get"))).isTrue();
+		results.put("host1", Mono.just(false));
+
+		checker.check().block();
+		checker.check().block();
+		assertThat(checker.isHealthy(URI.create("http://host1:8080/other"))).isTrue();
+
+		checker.check().block();
+		assertThat(checker.isHealthy(URI.create("http://host1:8080/other"))).isFalse();
+		assertThat(checker.getTargets().get("http://host1:8080").getStatus()).isEqualTo(Status.DOWN);
+		assertThat(checker.getTargets().get("http://host1:8080").getLastError()).isEqualTo("Unhealthy response");
+	}
+
+	@Test
+	public void targetIsUpAfterHealthyThreshold() {
+		results.put("host1", Mono.error(new IllegalStateException("connection refused")));
+		checker.isHealthy(instance1);
+		for (int i = 0; i < 3; i++) {
+			checker.check().block();
+		}
+		assertThat(checker.isHealthy(instance1)).isFalse();
+
+		results.remove("host1");
+		checker.check().block();
+		assertThat(checker.isHealthy(instance1)).isFalse();
+
+		checker.check().block();
+		assertThat(checker.isHealthy(instance1)).isTrue();
+		assertThat(checker.getTargets().get("http://host1:8080").getStatus()).isEqualTo(Status.UP);
+	}
+
+	@Test
+	public void slowProbesTimeOut() {
+		config.setTimeout(Duration.ofMillis(10));
+		results.put("host1", Mono.<Boolean>never());
+		checker.isHealthy(instance1);
+
+		for (int i = 0; i < 3; i++) {
+			checker.check().block();
+		}
+
+		assertThat(checker.isHealthy(instance1)).isFalse();
+		assertThat(checker.getTargets().get("http://host1:8080").getLastError()).contains("Timeout");
+	}
+
+	@Test
+	public void filtersDownInstances() {
+		List<ServiceInstance> instances = Arrays.asList(instance1, instance2);
+		assertThat(checker.filter(instances)).isSameAs(instances);
+		results.put("host1", Mono.just(false));
+		for (int i = 0; i < 3; i++) {
+			checker.check().block();
+		}
+
+		assertThat(checker.filter(instances)).containsExactly(instance2);
+
+		results.put("host2", Mono.just(false));
+		for (int i = 0; i < 3; i++) {
+			checker.check().block();
+		}
+		assertThat(checker.filter(instances)).isSameAs(instances);
+	}
+
+	@Test
+	public void unusedTargetsExpire() {
+		AtomicInteger probes = new AtomicInteger();
+		ActiveHealthChecker checker = new ActiveHealthChecker(target -> {
+			probes.incrementAndGet();
+			return Mono.just(true);
+		}, config, Flux::empty, clock::get);
+		checker.isHealthy(URI.create("http://host1:8080"));
+
+		checker.check().block();
+		clock.addAndGet(config.getExpireAfter().toNanos() + 1);
+		checker.check().block();
+
+		assertThat(probes.get()).isEqualTo(1);
+		assertThat(checker.getTargets()).isEmpty();
+	}
+
+	@Test
+	public void instanceTargetIsResolvedOnceWhileUsed() {
+		AtomicInteger uris = new AtomicInteger();
+		ServiceInstance instance = new DefaultServiceInstance("service1", "host1", 8080, false) {
+			@Override
+			public URI getUri() {
+				uris.incrementAndGet();
+				return super.getUri();
+			}
+		};
+		checker.isHealthy(instance);
+		checker.isHealthy(instance);
+		assertThat(uris.get()).isEqualTo(1);
+
+		clock.addAndGet(config.getExpireAfter().toNanos() + 1);
+		checker.check().block();
+		assertThat(checker.getTargets()).isEmpty();
+
+		// the target dropped meanwhile is registered again
+		checker.isHealthy(instance);
+		assertThat(uris.get()).isEqualTo(2);
+		assertThat(checker.getTargets()).containsOnlyKeys("http://host1:8080");
+	}
+
+	@Test
+	public void instancesOfReloadedServicesAreForgotten() {
+		for (int i = 0; i < 3; i++) {
+			// every reload of the service returns new instances of the same targets
+			List<ServiceInstance> instances = Arrays.asList(
+					new DefaultServiceInstance("service1", "host1", 8080, false),
+					new DefaultServiceInstance("service1", "host2", 8080, false));
+			checker.instancesChanged("service1", instances);
+			assertThat(checker.filter(instances)).isSameAs(instances);
+		}
+		checker.isHealthy(new DefaultServiceInstance("service2", "host3", 8080, false));
+
+		assertThat(checker.getInstanceCount()).isEqualTo(3);
+		assertThat(checker.getTargets()).hasSize(3);
+	}
+
+	@Test
+	public void seedsAreProbedBeforeUse() {
+		ActiveHealthChecker checker = new ActiveHealthChecker(target -> Mono.just(true), config,
+				() -> Flux.just(URI.create("https://host1/path"), URI.create("ws://host2:8080"),
+						URI.create("lb://service1"), URI.create("forward:/local")), clock::get);
+
+		checker.check().block();
+
+		assertThat(checker.getTargets()).containsOnlyKeys("https://host1:443", "http://host2:8080");
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.HASH_KEY_ATTR;
+
+public class ConsistentHashStrategyTests {
+
+	private static final int KEYS = 10000;
+
+	private final LoadBalancerStats stats = new LoadBalancerStats();
+
+	private final ServiceInstance fallback = instance(0);
+
+	private final ConsistentHashStrategy strategy = new ConsistentHashStrategy(
+			(serviceId, instances, exchange) -> fallback, stats);
+
+	@Test
+	public void usesDelegateWithoutHashKey() {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/").build());
+
+		assertThat(strategy.choose("service1", instances(1, 5), exchange)).isSameAs(fallback);
+	}
+
+	@Test
+	public void sameKeySameInstance() {
+		List<ServiceInstance> instances = instances(1, 5);
+
+		for (int i = 0; i < 100; i++) {
+			ServiceInstance chosen = choose(strategy, instances, "user" + i);
+			assertThat(choose(strategy, instances, "user" + i)).isSameAs(chosen);
+			// the position of an instance in the list does not matter
+			List<ServiceInstance> reordered = new ArrayList<>(instances(1, 5));
+			Collections.reverse(reordered);
+			assertThat(LoadBalancerStats.key(choose(strategy, reordered, "user" + i)))
+					.isEqualTo(LoadBalancerStats.key(chosen));
+		}
+	}
+
+	@Test
+	public void keysAreSpreadOverInstances() {
+		Map<String, Integer> counts = assign(strategy, instances(1, 5));
+
+		assertThat(counts).hasSize(5);
+		// 160 virtual nodes keep each instance within 25% of its fair share
+		assertThat(counts.values()).allMatch(count -> count > KEYS / 5 * 0.75 && count < KEYS / 5 * 1.25);
+	}
+
+	@Test
+	public void onlyKeysOfRemovedInstanceMove() {
+		Map<String, String> before = owners(strategy, instances(1, 5));
+		Map<String, String> after = owners(strategy, instances(1, 4));
+
+		before.forEach((key, owner) -> {
+			if (!owner.equals("host5:8080")) {
+				assertThat(after.get(key)).isEqualTo(owner);
+			}
+		});
+	}
+
+	@Test
+	public void onlyKeysOfAddedInstanceMove() {
+		Map<String, String> before = owners(strategy, instances(1, 5));
+		Map<String, String> after = owners(strategy, instances(1, 6));
+
+		int moved = 0;
+		for (Map.Entry<String, String> entry : before.entrySet()) {
+			if (!after.get(entry.getKey()).equals(entry.getValue())) {
+				assertThat(after.get(entry.getKey())).isEqualTo("host6:8080");
+				moved++;
+			}
+		}
+		assertThat(moved).isBetween(KEYS / 6 / 2, KEYS / 6 * 2);
+	}
+
+	@Test
+	public void subListsKeepTheirOwners() {
+		Map<String, String> all = owners(strategy, instances(1, 6));
+		// for example the instances of two zones, chosen in turn
+		Map<String, String> first = owners(strategy, instances(1, 3));
+		Map<String, String> second = owners(strategy, instances(4, 6));
+
+		all.forEach((key, owner) -> {
+			if (owner.compareTo("host4") < 0) {
+				assertThat(first.get(key)).isEqualTo(owner);
+			}
+			else {
+				assertThat(second.get(key)).isEqualTo(owner);
+			}
+		});
+	}
+
+	@Test
+	public void filteredCopiesOfTheListKeepTheirOwners() {
+		List<ServiceInstance> instances = instances(1, 5);
+		Map<String, String> all = owners(strategy, instances);
+
+		for (int ejected : new int[] {1, 3, 1}) {
+			String key = LoadBalancerStats.key(instances.get(ejected));
+			for (int i = 0; i < KEYS; i++) {
+				// a new list per request, as the instances of the cached list not ejected
+				List<ServiceInstance> filtered = new ArrayList<>(instances);
+				filtered.remove(ejected);
+				String owner = LoadBalancerStats.key(choose(strategy, filtered, "user" + i));
+				if (all.get("user" + i).equals(key)) {
+					assertThat(owner).isNotEqualTo(key);
+				}
+				else {
+					assertThat(owner).isEqualTo(all.get("user" + i));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void boundedLoadSkipsOverloadedInstance() {
+		ConsistentHashStrategy bounded = new ConsistentHashStrategy(
+				(serviceId, instances, exchange) -> fallback, stats, 160, 1.25);
+		List<ServiceInstance> instances = instances(1, 4);
+		ServiceInstance owner = choose(bounded, instances, "hot");
+
+		for (int i = 0; i < 10; i++) {
+			stats.getStats(owner).incrementOutstanding();
+		}
+
+		ServiceInstance chosen = choose(bounded, instances, "hot");
+		assertThat(chosen).isNotSameAs(owner);
+		// without bounded loads the hot key stays on its instance
+		assertThat(choose(strategy, instances, "hot")).isSameAs(owner);
+	}
+
+	private Map<String, Integer> assign(ConsistentHashStrategy strategy, List<ServiceInstance> instances) {
+		Map<String, Integer> counts = new HashMap<>();
+		owners(strategy, instances).values().forEach(owner -> counts.merge(owner, 1, Integer::sum));
+		return counts;
+	}
+
+	private Map<String, String> owners(ConsistentHashStrategy strategy, List<ServiceInstance> instances) {
+		Map<String, String> owners = new HashMap<>();
+		for (int i = 0; i < KEYS; i++) {
+			owners.put("user" + i, LoadBalancerStats.key(choose(strategy, instances, "user" + i)));
+		}
+		return owners;
+	}
+
+	private ServiceInstance choose(ConsistentHashStrategy strategy, List<ServiceInstance> instances, String key) {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/").build());
+		exchange.getAttributes().put(HASH_KEY_ATTR, key);
+		return strategy.choose("service1", instances, exchange);
+	}
+
+	private static List<ServiceInstance> instances(int from, int to) {
+		List<ServiceInstance> instances = new ArrayList<>();
+		for (int i = from; i <= to; i++) {
+			instances.add(instance(i));
+		}
+		return instances;
+	}
+
+	private static ServiceInstance instance(int i) {
+		return new DefaultServiceInstance("service1", "host" + i, 8080, false);
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DiscoveryClientReactiveLoadBalancerTests {
+
+	private final ServiceInstance busy = new DefaultServiceInstance("service1", "busy", 8080, false);
+
+	private final ServiceInstance idle = new DefaultServiceInstance("service1", "idle", 8080, false);
+
+	private final MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/").build());
+
+	private DiscoveryClient discoveryClient;
+
+	private LoadBalancerStats stats;
+
+	@Before
+	public void setup() {
+		discoveryClient = mock(DiscoveryClient.class);
+		stats = new LoadBalancerStats();
+	}
+
+	@Test
+	public void powerOfTwoChoicesPrefersLeastOutstanding() {
+		stats.getStats(busy).incrementOutstanding();
+		PowerOfTwoChoicesStrategy strategy = new PowerOfTwoChoicesStrategy(stats);
+		List<ServiceInstance> instances = Arrays.asList(busy, idle);
+
+		for (int i = 0; i < 100; i++) {
+			assertThat(strategy.choose("service1", instances, exchange)).isSameAs(idle);
+		}
+	}
+
+	@Test
+	public void choosesFromCachedInstances() {
+		when(discoveryClient.getInstances("service1")).thenReturn(Arrays.asList(busy, idle));
+		stats.getStats(busy).incrementOutstanding();
+		DiscoveryClientReactiveLoadBalancer loadBalancer = new DiscoveryClientReactiveLoadBalancer(
+				new ServiceInstanceCache(discoveryClient, Duration.ofMinutes(1)),
+				new PowerOfTwoChoicesStrategy(stats));
+
+		for (int i = 0; i < 3; i++) {
+			StepVerifier.create(loadBalancer.choose("service1", exchange))
+					.expectNext(idle)
+					.verifyComplete();
+		}
+		verify(discoveryClient, times(1)).getInstances("service1");
+	}
+
+	@Test
+	public void expiredInstancesAreServedWhileReloading() {
+		when(discoveryClient.getInstances("service1"))
+				.thenReturn(Collections.singletonList(busy), Collections.singletonList(idle));
+		ServiceInstanceCache cache = new ServiceInstanceCache(discoveryClient, Duration.ZERO);
+
+		StepVerifier.create(cache.getInstances("service1"))
+				.expectNext(Collections.singletonList(busy))
+				.verifyComplete();
+		StepVerifier.create(cache.getInstances("service1"))
+				.expectNext(Collections.singletonList(busy))
+				.verifyComplete();
+		verify(discoveryClient, timeout(1000).times(2)).getInstances("service1");
+	}
+
+	@Test
+	public void unknownServiceUsesFallback() {
+		when(discoveryClient.getInstances("service1")).thenReturn(Collections.emptyList());
+		DiscoveryClientReactiveLoadBalancer loadBalancer = new DiscoveryClientReactiveLoadBalancer(
+				new ServiceInstanceCache(discoveryClient, Duration.ofMinutes(1)),
+				new PowerOfTwoChoicesStrategy(stats),
+				(serviceId, exchange) -> Mono.just(idle));
+
+		StepVerifier.create(loadBalancer.choose("service1", exchange))
+				.expectNext(idle)
+				.verifyComplete();
+	}
+
+	@Test
+	public void unknownServiceWithoutFallbackIsEmpty() {
+		when(discoveryClient.getInstances("service1")).thenReturn(Collections.emptyList());
+		DiscoveryClientReactiveLoadBalancer loadBalancer = new DiscoveryClientReactiveLoadBalancer(
+				new ServiceInstanceCache(discoveryClient, Duration.ofMinutes(1)),
+				new PowerOfTwoChoicesStrategy(stats));
+
+		StepVerifier.create(loadBalancer.choose("service1", exchange))
+				.verifyComplete();
+	}
+}
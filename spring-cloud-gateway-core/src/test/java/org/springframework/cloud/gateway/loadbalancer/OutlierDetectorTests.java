@@ -0,0 +1,203 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OutlierDetectorTests {
+
+	private final ServiceInstance instance1 = new DefaultServiceInstance("service1", "host1", 8080, false);
+
+	private final ServiceInstance instance2 = new DefaultServiceInstance("service1", "host2", 8080, false);
+
+	private final ServiceInstance instance3 = new DefaultServiceInstance("service1", "host3", 8080, false);
+
+	private final ServiceInstance instance4 = new DefaultServiceInstance("service1", "host4", 8080, false);
+
+	private final List<ServiceInstance> instances = Arrays.asList(instance1, instance2, instance3, instance4);
+
+	private final AtomicLong clock = new AtomicLong();
+
+	private final OutlierDetector.Config config = new OutlierDetector.Config();
+
+	private final OutlierDetector detector = new OutlierDetector(config, clock::get);
+
+	@Test
+	public void ejectsAfterConsecutiveFailures() {
+		detector.filter("service1", instances);
+		for (int i = 0; i < 4; i++) {
+			detector.recordFailure(instance1);
+		}
+		detector.recordSuccess(instance1);
+		for (int i = 0; i < 4; i++) {
+			detector.recordFailure(instance1);
+		}
+		assertThat(detector.filter("service1", instances)).isSameAs(instances);
+
+		detector.recordFailure(instance1);
+
+		assertThat(detector.filter("service1", instances)).containsExactly(instance2, instance3, instance4);
+		assertThat(detector.getEjected()).containsOnlyKeys("service1");
+		assertThat(detector.getEjected().get("service1")).containsExactly("host1:8080");
+	}
+
+	@Test
+	public void ejectsOnLowSuccessRate() {
+		config.setConsecutiveFailures(Integer.MAX_VALUE);
+		detector.filter("service1", instances);
+		for (int i = 0; i < 9; i++) {
+			detector.recordSuccess(instance1);
+			detector.recordFailure(instance1);
+		}
+		assertThat(detector.isEjected(instance1)).isFalse();
+
+		// below 50% successes over 20 requests
+		detector.recordFailure(instance1);
+		detector.recordFailure(instance1);
+
+		assertThat(detector.isEjected(instance1)).isTrue();
+	}
+
+	@Test
+	public void successRateIsPerInterval() {
+		config.setConsecutiveFailures(Integer.MAX_VALUE);
+		detector.filter("service1", instances);
+		for (int i = 0; i < 15; i++) {
+			detector.recordFailure(instance1);
+		}
+		clock.addAndGet(config.getInterval().toNanos());
+		for (int i = 0; i < 10; i++) {
+			detector.recordSuccess(instance1);
+			detector.recordFailure(instance1);
+		}
+
+		assertThat(detector.isEjected(instance1)).isFalse();
+	}
+
+	@Test
+	public void readmitsAfterGrowingEjectionTime() {
+		config.setBaseEjectionTime(Duration.ofSeconds(30));
+		List<String> events = new ArrayList<>();
+		detector.addListener(new OutlierDetector.Listener() {
+			@Override
+			public void ejected(ServiceInstance instance, OutlierDetector.Reason reason) {
+				events.add("ejected " + reason);
+			}
+
+			@Override
+			public void readmitted(ServiceInstance instance) {
+				events.add("readmitted");
+			}
+		});
+		detector.filter("service1", instances);
+
+		eject(instance1);
+		clock.addAndGet(Duration.ofSeconds(30).toNanos());
+		assertThat(detector.filter("service1", instances)).contains(instance1);
+
+		// ejected again within the interval, for twice as long
+		eject(instance1);
+		clock.addAndGet(Duration.ofSeconds(30).toNanos());
+		assertThat(detector.filter("service1", instances)).doesNotContain(instance1);
+		clock.addAndGet(Duration.ofSeconds(30).toNanos());
+		assertThat(detector.filter("service1", instances)).contains(instance1);
+
+		assertThat(events).containsExactly("ejected CONSECUTIVE_FAILURES", "readmitted",
+				"ejected CONSECUTIVE_FAILURES", "readmitted");
+	}
+
+	@Test
+	public void ejectsAtMostMaxEjectionPercent() {
+		detector.filter("service1", instances);
+
+		eject(instance1);
+		eject(instance2);
+		eject(instance3);
+
+		assertThat(detector.filter("service1", instances)).containsExactly(instance3, instance4);
+		assertThat(detector.getEjectedCount("service1")).isEqualTo(2);
+	}
+
+	@Test
+	public void usesAllInstancesWhenAllAreEjected() {
+		config.setMaxEjectionPercent(100);
+		List<ServiceInstance> single = Arrays.asList(instance1);
+		detector.filter("service1", single);
+
+		eject(instance1);
+
+		assertThat(detector.isEjected(instance1)).isTrue();
+		assertThat(detector.filter("service1", single)).containsExactly(instance1);
+	}
+
+	@Test
+	public void ejectionsArePublishedAsMetrics() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		detector.addListener(new LoadBalancerMetrics(registry));
+		detector.filter("service1", instances);
+
+		eject(instance1);
+
+		assertThat(registry.get(LoadBalancerMetrics.EJECTIONS).tag("instance", "host1:8080")
+				.tag("reason", "CONSECUTIVE_FAILURES").counter().count()).isEqualTo(1);
+		assertThat(registry.get(LoadBalancerMetrics.EJECTED).tag("serviceId", "service1")
+				.gauge().value()).isEqualTo(1);
+	}
+
+	@Test
+	public void forgetsInstancesThatLeftTheService() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		detector.addListener(new LoadBalancerMetrics(registry));
+		List<ServiceInstance> pair = Arrays.asList(instance1, instance2);
+		detector.filter("service1", pair);
+		eject(instance1);
+		eject(instance2);
+		assertThat(detector.getEjectedCount("service1")).isEqualTo(1);
+
+		// instance1 is replaced while ejected
+		List<ServiceInstance> replaced = Arrays.asList(instance2, instance3);
+		detector.instancesChanged("service1", replaced);
+
+		assertThat(detector.getEjectedCount("service1")).isZero();
+		assertThat(detector.getEjected()).isEmpty();
+		assertThat(detector.filter("service1", replaced)).isSameAs(replaced);
+		assertThat(registry.get(LoadBalancerMetrics.EJECTED).tag("serviceId", "service1")
+				.gauge().value()).isZero();
+
+		// the ejection budget is available again
+		eject(instance2);
+		assertThat(detector.filter("service1", replaced)).containsExactly(instance3);
+	}
+
+	private void eject(ServiceInstance instance) {
+		for (int i = 0; i < config.getConsecutiveFailures(); i++) {
+			detector.recordFailure(instance);
+		}
+	}
+}
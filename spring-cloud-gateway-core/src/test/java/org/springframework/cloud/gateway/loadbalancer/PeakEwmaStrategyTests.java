@@ -0,0 +1,106 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.gateway.loadbalancer.LoadBalancerStats.InstanceStats;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class PeakEwmaStrategyTests {
+
+	private final ServiceInstance slow = new DefaultServiceInstance("service1", "slow", 8080, false);
+
+	private final ServiceInstance fast = new DefaultServiceInstance("service1", "fast", 8080, false);
+
+	private final List<ServiceInstance> instances = Arrays.asList(slow, fast);
+
+	private final MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/").build());
+
+	@Test
+	public void peakIsTakenAtOnce() {
+		InstanceStats stats = new LoadBalancerStats(Duration.ofMinutes(1)).getStats(slow);
+		stats.recordLatency(TimeUnit.MILLISECONDS.toNanos(10));
+		stats.recordLatency(TimeUnit.MILLISECONDS.toNanos(500));
+
+		assertThat(stats.getPeakEwmaMillis()).isCloseTo(500, within(1d));
+
+		// lower latencies only move the average slowly
+		stats.recordLatency(TimeUnit.MILLISECONDS.toNanos(10));
+		assertThat(stats.getPeakEwmaMillis()).isGreaterThan(400);
+	}
+
+	@Test
+	public void latencyDecays() throws Exception {
+		InstanceStats stats = new LoadBalancerStats(Duration.ofMillis(10)).getStats(slow);
+		stats.recordLatency(TimeUnit.MILLISECONDS.toNanos(500));
+
+		Thread.sleep(200);
+
+		assertThat(stats.getPeakEwmaMillis()).isLessThan(1);
+	}
+
+	@Test
+	public void outstandingRequestsWithoutLatencyArePenalized() {
+		LoadBalancerStats loadBalancerStats = new LoadBalancerStats();
+		loadBalancerStats.getStats(fast).recordLatency(TimeUnit.SECONDS.toNanos(1));
+		InstanceStats stats = loadBalancerStats.getStats(slow);
+		stats.incrementOutstanding();
+
+		assertThat(stats.getPeakEwmaCost()).isGreaterThan(loadBalancerStats.getStats(fast).getPeakEwmaCost());
+	}
+
+	@Test
+	public void choosesInstanceWithLowestCost() {
+		LoadBalancerStats stats = new LoadBalancerStats(Duration.ofMinutes(1));
+		stats.getStats(slow).recordLatency(TimeUnit.MILLISECONDS.toNanos(300));
+		stats.getStats(fast).recordLatency(TimeUnit.MILLISECONDS.toNanos(20));
+		PeakEwmaStrategy strategy = new PeakEwmaStrategy(stats);
+
+		for (int i = 0; i < 10; i++) {
+			assertThat(strategy.choose("service1", instances, exchange)).isSameAs(fast);
+		}
+
+		// enough requests in flight outweigh the latency
+		for (int i = 0; i < 20; i++) {
+			stats.getStats(fast).incrementOutstanding();
+		}
+		assertThat(strategy.choose("service1", instances, exchange)).isSameAs(slow);
+	}
+
+	@Test
+	public void statsAreGroupedByService() {
+		LoadBalancerStats stats = new LoadBalancerStats();
+		stats.getStats(slow).incrementOutstanding();
+		stats.getStats(new DefaultServiceInstance("service2", "other", 8080, false));
+
+		assertThat(stats.getStats()).containsOnlyKeys("service1", "service2");
+		assertThat(stats.getStats().get("service1")).containsOnlyKeys("slow:8080");
+		assertThat(stats.getStats().get("service1").get("slow:8080").getOutstanding()).isEqualTo(1);
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
+import org.springframework.context.ApplicationEventPublisher;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ServiceInstanceCacheTests {
+
+	private final ServiceInstance instance1 = new DefaultServiceInstance("service1", "host1", 8080, false);
+
+	private final ServiceInstance instance2 = new DefaultServiceInstance("service2", "host2", 8080, false);
+
+	private final AtomicLong clock = new AtomicLong();
+
+	private DiscoveryClient discoveryClient;
+
+	private ServiceInstanceCache cache;
+
+	@Before
+	public void setup() {
+		discoveryClient = mock(DiscoveryClient.class);
+		when(discoveryClient.getServices()).thenReturn(Arrays.asList("service1", "service2"));
+		when(discoveryClient.getInstances("service1")).thenReturn(Collections.singletonList(instance1));
+		when(discoveryClient.getInstances("service2")).thenReturn(Collections.singletonList(instance2));
+		cache = new ServiceInstanceCache(discoveryClient, Duration.ofSeconds(30), Duration.ofSeconds(15), clock::get);
+	}
+
+	@Test
+	public void refreshLoadsAllServices() {
+		cache.refresh().block();
+
+		assertThat(cache.getServices().block()).containsExactly("service1", "service2");
+		assertThat(cache.getInstances("service1").block()).containsExactly(instance1);
+		assertThat(cache.getInstances("service2").block()).containsExactly(instance2);
+		verify(discoveryClient, times(1)).getServices();
+		verify(discoveryClient, times(1)).getInstances("service1");
+	}
+
+	@Test
+	public void unchangedInstancesKeepTheirList() {
+		cache.refresh().block();
+		List<ServiceInstance> instances = cache.getInstances("service1").block();
+
+		cache.refresh().block();
+
+		assertThat(cache.getInstances("service1").block()).isSameAs(instances);
+	}
+
+	@Test
+	public void removedServiceIsDropped() {
+		cache.refresh().block();
+		when(discoveryClient.getServices()).thenReturn(Collections.singletonList("service1"));
+		when(discoveryClient.getInstances("service2")).thenReturn(Collections.emptyList());
+
+		cache.refresh().block();
+
+		assertThat(cache.getServices().block()).containsExactly("service1");
+		assertThat(cache.getInstances("service2").block()).isEmpty();
+	}
+
+	@Test
+	public void statsOfInstancesGoneAreDropped() {
+		ServiceInstance instance3 = new DefaultServiceInstance("service1", "host3", 8080, false);
+		LoadBalancerStats stats = new LoadBalancerStats();
+		ServiceInstanceCache.Listener listener = mock(ServiceInstanceCache.Listener.class);
+		cache.addListener(stats);
+		cache.addListener(listener);
+		cache.refresh().block();
+		stats.getStats(instance1).incrementOutstanding();
+		stats.getStats(instance2).incrementOutstanding();
+
+		cache.refresh().block();
+		verify(listener, never()).instancesChanged(any(), any());
+
+		when(discoveryClient.getServices()).thenReturn(Collections.singletonList("service1"));
+		when(discoveryClient.getInstances("service1")).thenReturn(Collections.singletonList(instance3));
+		when(discoveryClient.getInstances("service2")).thenReturn(Collections.emptyList());
+		cache.refresh().block();
+
+		verify(listener).instancesChanged("service1", Collections.singletonList(instance3));
+		verify(listener).instancesChanged("service2", Collections.emptyList());
+		assertThat(stats.getStats()).isEmpty();
+	}
+
+	@Test
+	public void keepsInstancesWhileDiscoveryFails() {
+		cache.refresh().block();
+		clock.addAndGet(Duration.ofSeconds(10).toNanos());
+		when(discoveryClient.getInstances("service2")).thenThrow(new IllegalStateException("down"));
+
+		cache.refresh().block();
+		clock.addAndGet(Duration.ofSeconds(5).toNanos());
+
+		assertThat(cache.getInstances("service2").block()).containsExactly(instance2);
+		// service1 was reloaded 5 seconds ago, service2 15 seconds ago
+		assertThat(cache.getStaleness()).isEqualTo(Duration.ofSeconds(15));
+
+		when(discoveryClient.getServices()).thenThrow(new IllegalStateException("down"));
+		try {
+			cache.refresh().block();
+		}
+		catch (IllegalStateException e) {
+			// expected
+		}
+		assertThat(cache.getServices().block()).containsExactly("service1", "service2");
+		assertThat(cache.getInstances("service1").block()).containsExactly(instance1);
+	}
+
+	@Test
+	public void heartbeatRefreshes() {
+		cache.onApplicationEvent(new HeartbeatEvent(this, 1L));
+		verify(discoveryClient, timeout(1000)).getInstances("service2");
+
+		// the same heartbeat does not refresh again
+		cache.onApplicationEvent(new HeartbeatEvent(this, 1L));
+		verify(discoveryClient, timeout(1000).times(1)).getServices();
+	}
+
+	@Test
+	public void routesAreRefreshedOnceServicesChange() {
+		ApplicationEventPublisher publisher = mock(ApplicationEventPublisher.class);
+		cache.setApplicationEventPublisher(publisher);
+
+		cache.refresh().block();
+		verify(publisher, times(1)).publishEvent(any(RefreshRoutesEvent.class));
+
+		// the same services in another order
+		when(discoveryClient.getServices()).thenReturn(Arrays.asList("service2", "service1"));
+		cache.refresh().block();
+		verify(publisher, times(1)).publishEvent(any(RefreshRoutesEvent.class));
+
+		when(discoveryClient.getServices()).thenReturn(Arrays.asList("service1", "service2", "service3"));
+		AtomicReference<List<String>> routedServices = new AtomicReference<>();
+		doAnswer(invocation -> {
+			routedServices.set(cache.getServices().block());
+			return null;
+		}).when(publisher).publishEvent(any(RefreshRoutesEvent.class));
+		cache.onApplicationEvent(new HeartbeatEvent(this, 1L));
+		verify(publisher, timeout(1000).times(2)).publishEvent(any(RefreshRoutesEvent.class));
+		// the routes are rebuilt from the new services
+		assertThat(routedServices.get()).contains("service3");
+	}
+
+	@Test
+	public void lookupLoadsUnknownService() {
+		assertThat(cache.getInstances("service1").block()).containsExactly(instance1);
+		verify(discoveryClient, never()).getServices();
+	}
+
+	@Test
+	public void stalenessIsPublished() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		new LoadBalancerMetrics(registry).monitor(cache);
+		cache.refresh().block();
+		clock.addAndGet(Duration.ofSeconds(20).toNanos());
+
+		assertThat(registry.get(LoadBalancerMetrics.STALENESS).gauge().value()).isEqualTo(20);
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.gateway.loadbalancer.SlowStartStrategy.Mode;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class SlowStartStrategyTests {
+
+	private final ServiceInstance warm = new DefaultServiceInstance("service1", "warm", 8080, false);
+
+	private final ServiceInstance joining = new DefaultServiceInstance("service1", "joining", 8080, false);
+
+	private final MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/").build());
+
+	private final AtomicLong clock = new AtomicLong();
+
+	@Test
+	public void initialInstancesAreWarm() {
+		SlowStartStrategy strategy = strategy(Mode.LINEAR, (serviceId, instances, e) -> instances.get(0));
+
+		strategy.choose("service1", Arrays.asList(warm, joining), exchange);
+
+		assertThat(strategy.getWeight(warm)).isEqualTo(1);
+		assertThat(strategy.getWeight(joining)).isEqualTo(1);
+	}
+
+	@Test
+	public void linearRamp() {
+		SlowStartStrategy strategy = strategy(Mode.LINEAR, (serviceId, instances, e) -> instances.get(0));
+		strategy.choose("service1", Collections.singletonList(warm), exchange);
+		strategy.choose("service1", Arrays.asList(warm, joining), exchange);
+
+		assertThat(strategy.getWeight(joining)).isCloseTo(0.1, within(0.001));
+		clock.addAndGet(Duration.ofSeconds(5).toNanos());
+		assertThat(strategy.getWeight(joining)).isCloseTo(0.55, within(0.001));
+		clock.addAndGet(Duration.ofSeconds(5).toNanos());
+		assertThat(strategy.getWeight(joining)).isEqualTo(1);
+		assertThat(strategy.getWeight(warm)).isEqualTo(1);
+	}
+
+	@Test
+	public void exponentialRamp() {
+		SlowStartStrategy strategy = strategy(Mode.EXPONENTIAL, (serviceId, instances, e) -> instances.get(0));
+		strategy.choose("service1", Collections.singletonList(warm), exchange);
+		strategy.choose("service1", Arrays.asList(warm, joining), exchange);
+
+		assertThat(strategy.getWeight(joining)).isCloseTo(0.1, within(0.001));
+		clock.addAndGet(Duration.ofSeconds(5).toNanos());
+		assertThat(strategy.getWeight(joining)).isCloseTo(Math.sqrt(0.1), within(0.001));
+	}
+
+	@Test
+	public void joiningInstanceGetsShareOfItsWeight() {
+		List<ServiceInstance> instances = Arrays.asList(warm, joining);
+		AtomicInteger calls = new AtomicInteger();
+		// alternates between the instances, so the warming instance is picked half of the time
+		SlowStartStrategy strategy = strategy(Mode.LINEAR,
+				(serviceId, list, e) -> list.get(calls.getAndIncrement() % list.size()));
+		strategy.choose("service1", Collections.singletonList(warm), exchange);
+
+		int chosen = 0;
+		for (int i = 0; i < 10000; i++) {
+			if (strategy.choose("service1", instances, exchange) == joining) {
+				chosen++;
+			}
+		}
+
+		// far below the 5000 requests it gets once warm
+		assertThat(chosen).isLessThan(1500);
+	}
+
+	@Test
+	public void instanceComingBackRampsUpAgain() {
+		SlowStartStrategy strategy = strategy(Mode.LINEAR, (serviceId, instances, e) -> instances.get(0));
+		strategy.choose("service1", Arrays.asList(warm, joining), exchange);
+		strategy.choose("service1", Collections.singletonList(warm), exchange);
+
+		strategy.choose("service1", Arrays.asList(warm, joining), exchange);
+
+		assertThat(strategy.getWeight(joining)).isCloseTo(0.1, within(0.001));
+	}
+
+	@Test
+	public void readmittedInstanceRampsUpAgain() {
+		SlowStartStrategy strategy = strategy(Mode.LINEAR, (serviceId, instances, e) -> instances.get(0));
+		strategy.choose("service1", Arrays.asList(warm, joining), exchange);
+
+		strategy.readmitted(joining);
+
+		assertThat(strategy.getWeight(joining)).isCloseTo(0.1, within(0.001));
+		assertThat(strategy.getWeight(warm)).isEqualTo(1);
+	}
+
+	@Test
+	public void weightsArePublishedAsMetrics() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		SlowStartStrategy strategy = strategy(Mode.LINEAR, (serviceId, instances, e) -> instances.get(0));
+		strategy.addListener(new LoadBalancerMetrics(registry));
+		strategy.choose("service1", Collections.singletonList(warm), exchange);
+		strategy.choose("service1", Arrays.asList(warm, joining), exchange);
+		clock.addAndGet(Duration.ofSeconds(5).toNanos());
+
+		assertThat(registry.get(LoadBalancerMetrics.WEIGHT).tag("instance", "joining:8080").gauge().value())
+				.isCloseTo(0.55, within(0.001));
+	}
+
+	@Test
+	public void weightsOfInstancesGoneAreNotPublished() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		LoadBalancerMetrics metrics = new LoadBalancerMetrics(registry);
+		SlowStartStrategy strategy = strategy(Mode.LINEAR, (serviceId, instances, e) -> instances.get(0));
+		strategy.addListener(metrics);
+		strategy.choose("service1", Collections.singletonList(warm), exchange);
+		strategy.choose("service1", Arrays.asList(warm, joining), exchange);
+
+		metrics.instancesChanged("service1", Collections.singletonList(warm));
+
+		assertThat(registry.get(LoadBalancerMetrics.WEIGHT).tag("instance", "joining:8080").gauge().value())
+				.isNaN();
+
+		// back again
+		strategy.choose("service1", Collections.singletonList(warm), exchange);
+		strategy.choose("service1", Arrays.asList(warm, joining), exchange);
+		assertThat(registry.get(LoadBalancerMetrics.WEIGHT).tag("instance", "joining:8080").gauge().value())
+				.isCloseTo(0.1, within(0.001));
+	}
+
+	private SlowStartStrategy strategy(Mode mode, LoadBalancerStrategy delegate) {
+		return new SlowStartStrategy(delegate, Duration.ofSeconds(10), mode, 0.1, clock::get);
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.loadbalancer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.HASH_KEY_ATTR;
+
+public class ZoneAwareStrategyTests {
+
+	private final MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/").build());
+
+	private final List<ServiceInstance> instances = Arrays.asList(instance(1, "us-east-1a"), instance(2, "us-east-1a"),
+			instance(3, "US-EAST-1A"), instance(4, "us-east-1b"), instance(5, "us-east-1b"), instance(6, null));
+
+	private final Set<ServiceInstance> unhealthy = new HashSet<>();
+
+	private final List<List<ServiceInstance>> chosenFrom = new ArrayList<>();
+
+	private final ZoneAwareStrategy strategy = new ZoneAwareStrategy((serviceId, candidates, e) -> {
+		chosenFrom.add(candidates);
+		return candidates.get(0);
+	}, "us-east-1a", ZoneAwareStrategy.DEFAULT_METADATA_KEY, 0.7, instance -> !unhealthy.contains(instance));
+
+	@Test
+	public void keepsTrafficInZone() {
+		for (int i = 0; i < 100; i++) {
+			strategy.choose("service1", instances, exchange);
+		}
+
+		assertThat(chosenFrom).allMatch(candidates -> candidates.equals(instances.subList(0, 3)));
+	}
+
+	@Test
+	public void spillsOverInProportion() {
+		unhealthy.add(instances.get(0));
+		unhealthy.add(instances.get(1));
+
+		int local = 0;
+		for (int i = 0; i < 10000; i++) {
+			ServiceInstance chosen = strategy.choose("service1", instances, exchange);
+			if (chosen == instances.get(0)) {
+				local++;
+			}
+		}
+
+		// 1 healthy of 3 local instances, 2.1 required: 1 / 2.1 of the requests stay local
+		assertThat(local).isBetween(4400, 5100);
+		assertThat(chosenFrom).allMatch(candidates -> candidates.equals(instances.subList(0, 3))
+				|| candidates.equals(instances.subList(3, 6)));
+	}
+
+	@Test
+	public void usesAllInstancesWithoutLocalInstances() {
+		List<ServiceInstance> remote = instances.subList(3, 6);
+
+		strategy.choose("service1", remote, exchange);
+
+		assertThat(chosenFrom).containsExactly(remote);
+	}
+
+	@Test
+	public void usesAllInstancesWithoutRemoteInstances() {
+		List<ServiceInstance> local = instances.subList(0, 3);
+		unhealthy.addAll(local);
+
+		strategy.choose("service1", local, exchange);
+
+		assertThat(chosenFrom).containsExactly(local);
+	}
+
+	@Test
+	public void sameSubListsForSameInstances() {
+		strategy.choose("service1", instances, exchange);
+		strategy.choose("service1", instances, exchange);
+
+		assertThat(chosenFrom.get(1)).isSameAs(chosenFrom.get(0));
+	}
+
+	@Test
+	public void composesWithConsistentHash() {
+		LoadBalancerStats stats = new LoadBalancerStats();
+		ZoneAwareStrategy zoneAware = new ZoneAwareStrategy(new ConsistentHashStrategy(
+				(serviceId, candidates, e) -> candidates.get(0), stats), "us-east-1a",
+				ZoneAwareStrategy.DEFAULT_METADATA_KEY, 0.7, instance -> true);
+
+		for (int i = 0; i < 100; i++) {
+			MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/").build());
+			exchange.getAttributes().put(HASH_KEY_ATTR, "user" + i);
+			assertThat(instances.subList(0, 3)).contains(zoneAware.choose("service1", instances, exchange));
+		}
+	}
+
+	private static ServiceInstance instance(int i, String zone) {
+		return new DefaultServiceInstance("service1", "host" + i, 8080, false,
+				zone == null ? Collections.emptyMap() : Collections.singletonMap("zone", zone));
+	}
+}
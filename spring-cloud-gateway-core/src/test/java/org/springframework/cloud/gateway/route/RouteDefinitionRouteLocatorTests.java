@@ -1,9 +1,13 @@
 package org.springframework.cloud.gateway.route;
 
+import java.net.URI;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -11,12 +15,21 @@ import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringBootConfiguration;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.cloud.gateway.filter.FilterDefinition;
+import org.springframework.cloud.gateway.filter.factory.AddRequestHeaderGatewayFilterFactory;
+import org.springframework.cloud.gateway.handler.predicate.PathRoutePredicateFactory;
+import org.springframework.cloud.gateway.support.NameUtils;
 import org.springframework.cloud.gateway.support.ShortcutConfigurable;
 import org.springframework.context.annotation.Bean;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.tuple.Tuple;
 
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.UnicastProcessor;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 @RunWith(SpringRunner.class)
@@ -47,6 +60,80 @@ public class RouteDefinitionRouteLocatorTests {
 		assertThat(tuple.getString("arg1")).isEqualTo("val1");
 	}
 
+	@Test
+	public void unchangedRoutesAreReused() {
+		InMemoryRouteDefinitionRepository repository = new InMemoryRouteDefinitionRepository();
+		RouteDefinition route1 = routeDefinition("route1");
+		RouteDefinition route2 = routeDefinition("route2");
+		repository.save(Mono.just(route1)).block();
+		repository.save(Mono.just(route2)).block();
+		RouteDefinitionRouteLocator locator = new RouteDefinitionRouteLocator(repository,
+				Collections.singletonList(new PathRoutePredicateFactory()),
+				Collections.singletonList(new AddRequestHeaderGatewayFilterFactory()), new GatewayProperties());
+
+		Map<String, Route> before = routes(locator);
+		route2.setUri(URI.create("http://other"));
+		Map<String, Route> after = routes(locator);
+
+		assertThat(after.get("route1")).isSameAs(before.get("route1"));
+		assertThat(after.get("route2")).isNotSameAs(before.get("route2"));
+		assertThat(after.get("route2").getUri()).isEqualTo(URI.create("http://other:80"));
+	}
+
+	@Test
+	public void routesAreConvertedAgainWhenTheirFiltersChange() {
+		InMemoryRouteDefinitionRepository repository = new InMemoryRouteDefinitionRepository();
+		RouteDefinition route1 = routeDefinition("route1");
+		repository.save(Mono.just(route1)).block();
+		GatewayProperties properties = new GatewayProperties();
+		RouteDefinitionRouteLocator locator = new RouteDefinitionRouteLocator(repository,
+				Collections.singletonList(new PathRoutePredicateFactory()),
+				Collections.singletonList(new AddRequestHeaderGatewayFilterFactory()), properties);
+
+		Route before = routes(locator).get("route1");
+		// the definition is changed in place, the locator compares it with its own copy
+		route1.getFilters().get(0).getArgs().put(NameUtils.generateName(1), "changed");
+		Route changed = routes(locator).get("route1");
+		properties.getDefaultFilters().add(new FilterDefinition("AddRequestHeader=X-Default,value"));
+		Route withDefaults = routes(locator).get("route1");
+
+		assertThat(changed).isNotSameAs(before);
+		assertThat(withDefaults).isNotSameAs(changed);
+		assertThat(withDefaults.getFilters()).hasSize(2);
+		assertThat(routes(locator).get("route1")).isSameAs(withDefaults);
+	}
+
+	@Test
+	public void overlappingRefreshesKeepNewerRoutes() {
+		RouteDefinition route1 = routeDefinition("route1");
+		RouteDefinition route2 = routeDefinition("route2");
+		UnicastProcessor<RouteDefinition> slow = UnicastProcessor.create();
+		Queue<Flux<RouteDefinition>> definitions = new LinkedList<>(Arrays.asList(slow,
+				Flux.just(route1, route2), Flux.just(route1, route2)));
+		RouteDefinitionRouteLocator locator = new RouteDefinitionRouteLocator(definitions::poll,
+				Collections.singletonList(new PathRoutePredicateFactory()),
+				Collections.singletonList(new AddRequestHeaderGatewayFilterFactory()), new GatewayProperties());
+
+		Mono<Map<String, Route>> older = locator.getRoutes().collectMap(Route::getId).toProcessor();
+		Map<String, Route> newer = routes(locator);
+		// the older refresh completes last, without the route added since
+		slow.onNext(route1);
+		slow.onComplete();
+		older.block();
+
+		assertThat(routes(locator).get("route2")).isSameAs(newer.get("route2"));
+	}
+
+	private Map<String, Route> routes(RouteDefinitionRouteLocator locator) {
+		return locator.getRoutes().collectMap(Route::getId).block();
+	}
+
+	private RouteDefinition routeDefinition(String id) {
+		RouteDefinition routeDefinition = new RouteDefinition(id + "=http://localhost,Path=/" + id + "/**");
+		routeDefinition.getFilters().add(new FilterDefinition("AddRequestHeader=X-Route," + id));
+		return routeDefinition;
+	}
+
 	@SpringBootConfiguration
 	protected static class TestConfig {
 		@Bean
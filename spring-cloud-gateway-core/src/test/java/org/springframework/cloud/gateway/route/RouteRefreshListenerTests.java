@@ -27,6 +27,7 @@ import org.springframework.context.ApplicationEventPublisher;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -54,6 +55,17 @@ public class RouteRefreshListenerTests {
 		verify(publisher, times(2)).publishEvent(any(RefreshRoutesEvent.class));
 	}
 
+	@Test
+	public void heartbeatIgnoredWhenInstancesAreCached() {
+		ApplicationEventPublisher publisher = mock(ApplicationEventPublisher.class);
+		RouteRefreshListener listener = new RouteRefreshListener(publisher);
+		listener.setRefreshOnHeartbeat(false);
+
+		listener.onApplicationEvent(new HeartbeatEvent(this, 1L));
+
+		verify(publisher, never()).publishEvent(any(RefreshRoutesEvent.class));
+	}
+
 	@Test
 	public void onParentHeartbeatEvent() {
 		ApplicationEventPublisher publisher = mock(ApplicationEventPublisher.class);
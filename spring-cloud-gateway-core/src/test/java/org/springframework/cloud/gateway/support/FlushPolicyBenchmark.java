@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.support;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Measures the time {@link FlushPolicy#group} takes to split a body into flush groups,
+ * for each mode. Run {@code main} from the test classpath, not part of the build.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlushPolicyBenchmark {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	@Param({"EACH", "SIZE", "IDLE", "END"})
+	private FlushPolicy.Mode mode;
+
+	// 1024 个 8KB 的缓冲区，共 8MB
+	@Param({"1024"})
+	private int bufferCount;
+
+	private FlushPolicy policy;
+
+	private Flux<byte[]> body;
+
+	@Setup
+	public void setup() {
+		this.policy = new FlushPolicy(this.mode).setSizeThreshold(64 * 1024)
+				.setIdleTimeout(Duration.ofMillis(10));
+		byte[][] buffers = new byte[this.bufferCount][];
+		for (int i = 0; i < this.bufferCount; i++) {
+			buffers[i] = new byte[BUFFER_SIZE];
+		}
+		this.body = Flux.fromArray(buffers);
+	}
+
+	@Benchmark
+	public Long group() {
+		return this.policy.group(this.body, buffer -> buffer.length)
+				.concatMap(Flux::count)
+				.count()
+				.block();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+				.include(FlushPolicyBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+}
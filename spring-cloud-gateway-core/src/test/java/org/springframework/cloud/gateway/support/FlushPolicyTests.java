@@ -0,0 +1,109 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.support;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.FLUSH_POLICY_ATTR;
+
+public class FlushPolicyTests {
+
+	@Test
+	public void eachFlushesEveryElement() {
+		StepVerifier.create(groupSizes(FlushPolicy.each(), Flux.just("a", "b", "c")))
+				.expectNext(Arrays.asList(1, 1, 1))
+				.verifyComplete();
+	}
+
+	@Test
+	public void endFlushesOnce() {
+		StepVerifier.create(groupSizes(FlushPolicy.end(), Flux.just("a", "b", "c")))
+				.expectNext(Collections.singletonList(3))
+				.verifyComplete();
+	}
+
+	@Test
+	public void sizeFlushesWhenThresholdIsReached() {
+		Flux<String> body = Flux.just("aa", "bb", "cc", "dd", "e");
+		StepVerifier.create(groupSizes(FlushPolicy.size(4), body))
+				.expectNext(Arrays.asList(2, 2, 1))
+				.verifyComplete();
+	}
+
+	@Test
+	public void idleFlushesAfterAPause() {
+		Flux<String> body = Flux.concat(Flux.just("a", "b"),
+				Flux.just("c").delaySubscription(Duration.ofMillis(200)));
+		StepVerifier.create(groupSizes(FlushPolicy.idle(Duration.ofMillis(50)), body))
+				.expectNext(Arrays.asList(2, 1))
+				.verifyComplete();
+	}
+
+	@Test
+	public void sizeThresholdMustBePositive() {
+		LocalValidatorFactoryBean validator = new LocalValidatorFactoryBean();
+		validator.afterPropertiesSet();
+
+		assertThat(validator.validate(FlushPolicy.size(0)))
+				.extracting(violation -> violation.getPropertyPath().toString())
+				.containsExactly("sizeThreshold");
+		assertThat(validator.validate(FlushPolicy.size(1))).isEmpty();
+	}
+
+	@Test
+	public void resolverPrefersRoutePolicyThenMediaTypeThenStreaming() {
+		MediaTypeFlushPolicy octetStream = new MediaTypeFlushPolicy(FlushPolicy.size(1024),
+				Collections.singletonList(MediaType.APPLICATION_OCTET_STREAM));
+		FlushPolicyResolver resolver = new FlushPolicyResolver(Collections.singletonList(octetStream),
+				Collections.singletonList(MediaType.TEXT_EVENT_STREAM), FlushPolicy.end());
+
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/").build());
+
+		assertThat(resolver.resolve(exchange, MediaType.APPLICATION_OCTET_STREAM)).isSameAs(octetStream);
+		assertThat(resolver.resolve(exchange, MediaType.TEXT_EVENT_STREAM).getMode())
+				.isEqualTo(FlushPolicy.Mode.EACH);
+		assertThat(resolver.resolve(exchange, MediaType.APPLICATION_JSON).getMode())
+				.isEqualTo(FlushPolicy.Mode.END);
+		assertThat(resolver.resolve(exchange, null).getMode()).isEqualTo(FlushPolicy.Mode.END);
+
+		FlushPolicy routePolicy = FlushPolicy.idle(Duration.ofMillis(1));
+		exchange.getAttributes().put(FLUSH_POLICY_ATTR, routePolicy);
+		assertThat(resolver.resolve(exchange, MediaType.TEXT_EVENT_STREAM)).isSameAs(routePolicy);
+	}
+
+	private Flux<List<Integer>> groupSizes(FlushPolicy policy, Flux<String> body) {
+		return policy.group(body, String::length)
+				.concatMap(group -> group.count().map(Long::intValue))
+				.filter(count -> count > 0)
+				.collectList()
+				.flux();
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.test;
+
+import java.net.URI;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.gateway.actuate.GatewayControllerEndpoint;
+import org.springframework.cloud.gateway.loadbalancer.ActiveHealthChecker;
+import org.springframework.cloud.gateway.loadbalancer.ActiveHealthChecker.Status;
+import org.springframework.cloud.gateway.loadbalancer.NettyHealthProbe;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import reactor.ipc.netty.http.client.HttpClient;
+import reactor.test.StepVerifier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {
+		"spring.cloud.gateway.health-check.enabled=true",
+		"spring.cloud.gateway.health-check.path=/httpbin/status/200"})
+@DirtiesContext
+public class ActiveHealthCheckTests extends BaseWebClientTests {
+
+	@Autowired
+	private HttpClient httpClient;
+
+	@Autowired
+	private ActiveHealthChecker healthChecker;
+
+	@Autowired
+	private GatewayControllerEndpoint endpoint;
+
+	@Test
+	public void probesThroughProxyHttpClient() {
+		URI target = URI.create(baseUri);
+
+		StepVerifier.create(new NettyHealthProbe(httpClient, "/httpbin/status/204").probe(target))
+				.expectNext(true)
+				.verifyComplete();
+		StepVerifier.create(new NettyHealthProbe(httpClient, "/httpbin/status/503").probe(target))
+				.expectNext(false)
+				.verifyComplete();
+	}
+
+	@Test
+	public void healthyRoutesAreProxiedAndListed() {
+		testClient.get().uri("/get")
+				.exchange()
+				.expectStatus().isOk();
+
+		healthChecker.check().block();
+
+		StepVerifier.create(endpoint.healthchecks())
+				.assertNext(targets -> assertThat(targets.get("http://localhost:" + port).getStatus())
+						.isNotEqualTo(Status.DOWN))
+				.verifyComplete();
+	}
+
+	@EnableAutoConfiguration
+	@SpringBootConfiguration
+	@Import(DefaultTestConfig.class)
+	public static class TestConfig {
+	}
+}
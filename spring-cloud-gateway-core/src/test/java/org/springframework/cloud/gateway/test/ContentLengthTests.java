@@ -0,0 +1,142 @@
+/*
+ * Copyright 2013-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.springframework.cloud.gateway.test;
+
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.server.ServerWebExchange;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.web.reactive.function.BodyExtractors.toMono;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = RANDOM_PORT)
+@DirtiesContext
+@SuppressWarnings("unchecked")
+public class ContentLengthTests extends BaseWebClientTests {
+
+	@Test
+	public void fixedLengthResponseKeepsContentLength() {
+		testClient.get()
+				.uri("/bytes/20000")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().valueEquals(HttpHeaders.CONTENT_LENGTH, "20000")
+				.expectHeader().doesNotExist(HttpHeaders.TRANSFER_ENCODING)
+				.expectBody(byte[].class).consumeWith(result ->
+						assertThat(result.getResponseBody()).hasSize(20000));
+	}
+
+	@Test
+	public void chunkedResponseStaysChunked() {
+		testClient.get()
+				.uri("/stream/10")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().valueEquals(HttpHeaders.TRANSFER_ENCODING, "chunked")
+				.expectHeader().doesNotExist(HttpHeaders.CONTENT_LENGTH);
+	}
+
+	@Test
+	public void fixedLengthRequestKeepsContentLength() {
+		Mono<Map> result = webClient.post()
+				.uri("/headers")
+				.contentType(MediaType.TEXT_PLAIN)
+				.contentLength(8)
+				.syncBody("testdata")
+				.exchange()
+				.flatMap(response -> response.body(toMono(Map.class)));
+
+		StepVerifier.create(result)
+				.consumeNextWith(map -> {
+					HttpHeaders headers = upstreamHeaders(map);
+					assertThat(headers.getContentLength()).isEqualTo(8);
+					assertThat(headers).doesNotContainKey(HttpHeaders.TRANSFER_ENCODING);
+				})
+				.expectComplete()
+				.verify(DURATION);
+	}
+
+	@Test
+	public void chunkedRequestStaysChunked() {
+		Mono<Map> result = webClient.post()
+				.uri("/headers")
+				.contentType(MediaType.TEXT_PLAIN)
+				.body(Flux.just("test", "data"), String.class)
+				.exchange()
+				.flatMap(response -> response.body(toMono(Map.class)));
+
+		StepVerifier.create(result)
+				.consumeNextWith(map -> {
+					HttpHeaders headers = upstreamHeaders(map);
+					assertThat(headers.getFirst(HttpHeaders.TRANSFER_ENCODING)).isEqualTo("chunked");
+					assertThat(headers).doesNotContainKey(HttpHeaders.CONTENT_LENGTH);
+				})
+				.expectComplete()
+				.verify(DURATION);
+	}
+
+	private HttpHeaders upstreamHeaders(Map map) {
+		HttpHeaders headers = new HttpHeaders();
+		((Map<String, String>) map.get("headers")).forEach(headers::add);
+		return headers;
+	}
+
+	@EnableAutoConfiguration
+	@SpringBootConfiguration
+	@Import(DefaultTestConfig.class)
+	public static class TestConfig {
+
+		// framing must not depend on the headers filters passing Content-Length through
+		@Bean
+		public HttpHeadersFilter removeContentLengthHeadersFilter() {
+			return new HttpHeadersFilter() {
+				@Override
+				public HttpHeaders filter(HttpHeaders input, ServerWebExchange exchange) {
+					HttpHeaders filtered = new HttpHeaders();
+					filtered.putAll(input);
+					filtered.remove(HttpHeaders.CONTENT_LENGTH);
+					return filtered;
+				}
+
+				@Override
+				public boolean supports(Type type) {
+					return true;
+				}
+			};
+		}
+	}
+
+}
@@ -35,6 +35,7 @@ import reactor.core.publisher.Mono;
 
 import java.io.IOException;
 import java.time.Duration;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -113,6 +114,18 @@ public class HttpBinCompatibleController {
 		});
 	}
 
+	@RequestMapping(path = "/bytes/{count}", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+	public ResponseEntity<byte[]> bytes(@PathVariable int count) {
+		byte[] body = new byte[Math.min(count, 100 * 1024)];
+		Arrays.fill(body, (byte) 'x');
+		return ResponseEntity.ok().contentLength(body.length).body(body);
+	}
+
+	@RequestMapping(path = "/stream/{count}", produces = MediaType.TEXT_PLAIN_VALUE)
+	public Flux<String> stream(@PathVariable int count) {
+		return Flux.range(0, Math.min(count, 100)).map(i -> "line " + i + "\n");
+	}
+
 	@RequestMapping("/status/{status}")
 	public ResponseEntity<String> status(@PathVariable int status) {
 		return ResponseEntity.status(status).body("Failed with "+status);
@@ -42,6 +42,8 @@ public class ThrottleGatewayFilter implements GatewayFilter {
     int refillPeriod;
     TimeUnit refillUnit;
 
+	private volatile TokenBucket tokenBucket;
+
 	public int getCapacity() {
 		return capacity;
 	}
@@ -78,13 +80,28 @@ public class ThrottleGatewayFilter implements GatewayFilter {
 		return this;
 	}
 
+	// the bucket must outlive a request to limit anything, it is built once configured
+	private TokenBucket getTokenBucket() {
+		TokenBucket tokenBucket = this.tokenBucket;
+		if (tokenBucket == null) {
+			synchronized (this) {
+				tokenBucket = this.tokenBucket;
+				if (tokenBucket == null) {
+					tokenBucket = TokenBuckets.builder()
+							.withCapacity(capacity)
+							.withFixedIntervalRefillStrategy(refillTokens, refillPeriod, refillUnit)
+							.build();
+					this.tokenBucket = tokenBucket;
+				}
+			}
+		}
+		return tokenBucket;
+	}
+
 	@Override
 	public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
 
-		TokenBucket tokenBucket = TokenBuckets.builder()
-				.withCapacity(capacity)
-				.withFixedIntervalRefillStrategy(refillTokens, refillPeriod, refillUnit)
-				.build();
+		TokenBucket tokenBucket = getTokenBucket();
 
         //TODO: get a token bucket for a key
         log.debug("TokenBucket capacity: " + tokenBucket.getCapacity());